@@ -0,0 +1,434 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.Snmp;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * A set of long-lived, listening SNMP4J sessions shared by all requests.
+ *
+ * An {@link Snmp} session matches responses to outstanding requests by
+ * request ID, so any number of threads can send through the same session.
+ * Sharing sessions avoids creating a UDP socket and a listen thread for
+ * every GET, GETNEXT, SET and walk.
+ *
+ * SNMPv1 and SNMPv2c requests are spread round-robin over a fixed number of
+ * sessions.  SNMPv3 requests need the user in the session's USM, so one
+ * session is kept per distinct set of v3 credentials; the USM of that session
+ * then also caches the engine IDs and times discovered for the agents.  The
+ * v3 sessions are keyed by a digest of the credentials, so no pass phrase is
+ * kept outside of the USM.  Callers hand a session back with
+ * {@link #release(Snmp)}; v3 sessions nobody uses are closed once they have
+ * been idle for a while, or sooner when there are more of them than allowed.
+ *
+ * A session whose transport stopped listening, for example because its
+ * socket was closed under it, is never handed out again: it is closed and
+ * replaced by a new one the next time it would be used, or as soon as a
+ * caller reports a failed send with {@link #invalidate(Snmp)}.
+ *
+ * Shared sessions are used unless the
+ * <code>org.opennms.snmp.snmp4j.sharedSessions</code> system property is set
+ * to false.  The number of v1/v2c sessions is set with
+ * <code>org.opennms.snmp.snmp4j.sharedSessionCount</code>, the number of v3
+ * sessions kept open with <code>org.opennms.snmp.snmp4j.maxV3Sessions</code>
+ * and their idle timeout in milliseconds with
+ * <code>org.opennms.snmp.snmp4j.v3SessionIdleTimeout</code>.
+ */
+public class Snmp4JSessionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    private static final Snmp4JSessionPool s_instance = new Snmp4JSessionPool(Integer.getInteger("org.opennms.snmp.snmp4j.sharedSessionCount", 4),
+                                                                                  Integer.getInteger("org.opennms.snmp.snmp4j.maxV3Sessions", 64),
+                                                                                  Long.getLong("org.opennms.snmp.snmp4j.v3SessionIdleTimeout", 300000L));
+
+    private final Snmp[] m_sessions;
+
+    private final int m_maxV3Sessions;
+
+    private final long m_v3IdleTimeout;
+
+    /**
+     * The v3 sessions by credential digest, least recently handed out first.
+     * Guarded by itself, as is {@link #m_v3SessionsInUse}.
+     */
+    private final LinkedHashMap<String, V3Session> m_v3Sessions = new LinkedHashMap<String, V3Session>(16, 0.75f, true);
+
+    private final Map<Snmp, V3Session> m_v3SessionsInUse = new IdentityHashMap<Snmp, V3Session>();
+
+    private final AtomicInteger m_next = new AtomicInteger(0);
+
+    private final AtomicLong m_requests = new AtomicLong(0);
+
+    private final AtomicInteger m_sessionsCreated = new AtomicInteger(0);
+
+    private final AtomicInteger m_sessionsEvicted = new AtomicInteger(0);
+
+    private static final class V3Session {
+        private final String m_key;
+        private final Snmp m_session;
+        private int m_users;
+        private long m_lastUsed;
+
+        private V3Session(final String key, final Snmp session) {
+            m_key = key;
+            m_session = session;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("org.opennms.snmp.snmp4j.sharedSessions", "true"));
+    }
+
+    public static Snmp4JSessionPool getInstance() {
+        return s_instance;
+    }
+
+    Snmp4JSessionPool(final int sessionCount, final int maxV3Sessions, final long v3IdleTimeout) {
+        m_sessions = new Snmp[Math.max(1, sessionCount)];
+        m_maxV3Sessions = Math.max(1, maxV3Sessions);
+        m_v3IdleTimeout = v3IdleTimeout;
+    }
+
+    /**
+     * Returns a listening session that can be used to send requests to the
+     * given agent.  The session is shared and must not be closed by the
+     * caller, who hands it back with {@link #release(Snmp)} instead.
+     *
+     * @param agentConfig the agent the request will be sent to
+     * @return a shared {@link Snmp} session
+     * @throws IOException if a new session could not be created
+     */
+    public Snmp getSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        m_requests.incrementAndGet();
+
+        if (agentConfig.isSnmpV3()) {
+            return getV3Session(agentConfig);
+        }
+
+        final int index = (m_next.getAndIncrement() & Integer.MAX_VALUE) % m_sessions.length;
+        Snmp dead = null;
+        try {
+            synchronized (m_sessions) {
+                if (m_sessions[index] != null && !isListening(m_sessions[index])) {
+                    dead = m_sessions[index];
+                    m_sessions[index] = null;
+                    m_sessionsEvicted.incrementAndGet();
+                    LOG.info("getSession: replacing shared SNMP session whose transport is no longer listening");
+                }
+                if (m_sessions[index] == null) {
+                    m_sessions[index] = createSession(agentConfig);
+                }
+                return m_sessions[index];
+            }
+        } finally {
+            closeQuietly(dead);
+        }
+    }
+
+    private Snmp getV3Session(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final String key = getUserKey(agentConfig);
+        final long now = System.currentTimeMillis();
+        final List<Snmp> evicted = new ArrayList<Snmp>();
+        try {
+            synchronized (m_v3Sessions) {
+                V3Session session = m_v3Sessions.get(key);
+                if (session != null && !isListening(session.m_session)) {
+                    removeV3Session(session, evicted);
+                    LOG.info("getSession: replacing SNMPv3 session whose transport is no longer listening");
+                    session = null;
+                }
+                if (session == null) {
+                    evictV3Sessions(now, evicted);
+                    session = new V3Session(key, createSession(agentConfig));
+                    m_v3Sessions.put(key, session);
+                    m_v3SessionsInUse.put(session.m_session, session);
+                }
+                session.m_users++;
+                session.m_lastUsed = now;
+                return session.m_session;
+            }
+        } finally {
+            // closing waits for the listen thread, so it is done outside of the lock
+            for (final Snmp session : evicted) {
+                closeQuietly(session);
+            }
+        }
+    }
+
+    /**
+     * Removes the v3 sessions that nobody uses and that have been idle for
+     * too long, then the least recently used unused ones while there is no
+     * room for another session.  Stops at the first session that is neither,
+     * as the ones after it were handed out more recently.  Sessions that are in use are never closed,
+     * so the pool can exceed its bound while they are.
+     */
+    private void evictV3Sessions(final long now, final List<Snmp> evicted) {
+        final int before = evicted.size();
+        final Iterator<V3Session> it = m_v3Sessions.values().iterator();
+        while (it.hasNext()) {
+            final V3Session session = it.next();
+            final boolean idle = now - session.m_lastUsed >= m_v3IdleTimeout;
+            if (!idle && m_v3Sessions.size() < m_maxV3Sessions) {
+                break;
+            }
+            if (session.m_users == 0) {
+                it.remove();
+                m_v3SessionsInUse.remove(session.m_session);
+                evicted.add(session.m_session);
+                m_sessionsEvicted.incrementAndGet();
+            }
+        }
+        if (evicted.size() > before) {
+            LOG.debug("evictV3Sessions: closing {} unused SNMPv3 sessions, {} left", evicted.size() - before, m_v3Sessions.size());
+        }
+    }
+
+    /**
+     * Hands back a session returned by {@link #getSession(Snmp4JAgentConfig)}
+     * once the request or walk it was used for is done.
+     *
+     * @param session the shared session
+     */
+    public void release(final Snmp session) {
+        if (session == null) {
+            return;
+        }
+        final List<Snmp> evicted = new ArrayList<Snmp>();
+        synchronized (m_v3Sessions) {
+            final V3Session v3Session = m_v3SessionsInUse.get(session);
+            if (v3Session == null) {
+                return;
+            }
+            if (v3Session.m_users > 0) {
+                v3Session.m_users--;
+            }
+            evictV3Sessions(System.currentTimeMillis(), evicted);
+        }
+        for (final Snmp idle : evicted) {
+            closeQuietly(idle);
+        }
+    }
+
+    /**
+     * Tells the pool that sending through a session failed.  If the session's
+     * transport is no longer listening, the session is dropped from the pool
+     * and closed, and the next request gets a new one; otherwise the error
+     * was about the request or the agent and the session is kept.
+     *
+     * @param session the shared session
+     */
+    public void invalidate(final Snmp session) {
+        if (session == null || isListening(session)) {
+            return;
+        }
+        final List<Snmp> evicted = new ArrayList<Snmp>();
+        synchronized (m_sessions) {
+            for (int i = 0; i < m_sessions.length; i++) {
+                if (m_sessions[i] == session) {
+                    m_sessions[i] = null;
+                    m_sessionsEvicted.incrementAndGet();
+                    evicted.add(session);
+                }
+            }
+        }
+        synchronized (m_v3Sessions) {
+            final V3Session v3Session = m_v3SessionsInUse.get(session);
+            if (v3Session != null && m_v3Sessions.get(v3Session.m_key) == v3Session) {
+                removeV3Session(v3Session, evicted);
+            }
+        }
+        if (!evicted.isEmpty()) {
+            LOG.info("invalidate: dropped shared SNMP session whose transport is no longer listening");
+        }
+        for (final Snmp dead : evicted) {
+            closeQuietly(dead);
+        }
+    }
+
+    /**
+     * Drops a v3 session from the pool, whether it is in use or not.  Its
+     * users are left with a session that no longer works, and get a new one
+     * the next time they ask.  Must be called with the v3 lock held.
+     */
+    private void removeV3Session(final V3Session session, final List<Snmp> evicted) {
+        m_v3Sessions.remove(session.m_key);
+        m_v3SessionsInUse.remove(session.m_session);
+        evicted.add(session.m_session);
+        m_sessionsEvicted.incrementAndGet();
+    }
+
+    /**
+     * @return true if every transport of the session is still listening for responses
+     */
+    static boolean isListening(final Snmp session) {
+        boolean listening = false;
+        for (final TransportMapping<?> transport : session.getMessageDispatcher().getTransportMappings()) {
+            if (!transport.isListening()) {
+                return false;
+            }
+            listening = true;
+        }
+        return listening;
+    }
+
+    private Snmp createSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final Snmp session = agentConfig.createSnmpSession();
+        try {
+            session.listen();
+        } catch (final IOException e) {
+            try {
+                session.close();
+            } catch (final IOException ce) {
+                LOG.debug("error closing SNMP session that failed to listen", ce);
+            }
+            throw e;
+        }
+        m_sessionsCreated.incrementAndGet();
+        LOG.debug("createSession: created shared SNMP session for {}", agentConfig.isSnmpV3() ? agentConfig.getSecurityName() : "v1/v2c");
+        return session;
+    }
+
+    /**
+     * A digest of everything that goes into the USM user; agents that share
+     * these can share a session.
+     */
+    static String getUserKey(final Snmp4JAgentConfig agentConfig) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        update(digest, agentConfig.getSecurityName());
+        update(digest, agentConfig.getAuthProtocol());
+        update(digest, agentConfig.getAuthPassPhrase());
+        update(digest, agentConfig.getPrivProtocol());
+        update(digest, agentConfig.getPrivPassPhrase());
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    private static void update(final MessageDigest digest, final Object value) {
+        final byte[] bytes;
+        if (value == null) {
+            bytes = null;
+        } else if (value instanceof OctetString) {
+            bytes = ((OctetString)value).getValue();
+        } else {
+            bytes = ((OID)value).toDottedString().getBytes(StandardCharsets.UTF_8);
+        }
+        // each field is prefixed with its length so that fields cannot run into each other
+        digest.update(ByteBuffer.allocate(4).putInt(bytes == null ? -1 : bytes.length).array());
+        if (bytes != null) {
+            digest.update(bytes);
+        }
+    }
+
+    /**
+     * @return the number of times a shared session was handed out
+     */
+    public long getRequestCount() {
+        return m_requests.get();
+    }
+
+    /**
+     * @return the number of shared sessions created, each with its own socket and listen thread
+     */
+    public int getSessionCount() {
+        return m_sessionsCreated.get();
+    }
+
+    /**
+     * @return the number of shared sessions that were closed to keep the pool small or because their transport died
+     */
+    public int getEvictedSessionCount() {
+        return m_sessionsEvicted.get();
+    }
+
+    /**
+     * @return the number of SNMPv3 sessions currently open
+     */
+    public int getV3SessionCount() {
+        synchronized (m_v3Sessions) {
+            return m_v3Sessions.size();
+        }
+    }
+
+    /**
+     * Closes all shared sessions.  Sessions are created again on demand.
+     */
+    public void close() {
+        synchronized (m_sessions) {
+            for (int i = 0; i < m_sessions.length; i++) {
+                closeQuietly(m_sessions[i]);
+                m_sessions[i] = null;
+            }
+        }
+        synchronized (m_v3Sessions) {
+            for (final V3Session session : m_v3Sessions.values()) {
+                closeQuietly(session.m_session);
+            }
+            m_v3Sessions.clear();
+            m_v3SessionsInUse.clear();
+        }
+        m_sessionsCreated.set(0);
+        m_sessionsEvicted.set(0);
+    }
+
+    private static void closeQuietly(final Snmp session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.close();
+        } catch (final IOException e) {
+            LOG.error("error closing shared SNMP session", e);
+        }
+    }
+}
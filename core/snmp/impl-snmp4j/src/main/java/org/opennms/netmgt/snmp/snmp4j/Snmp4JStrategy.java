@@ -242,17 +242,19 @@ public class Snmp4JStrategy implements SnmpStrategy {
      * adapted from default SnmpAgentConfig values to those compatible with the SNMP4J library.
      */
     protected SnmpValue[] send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse) {
+        final boolean shared = Snmp4JSessionPool.isEnabled();
         Snmp session;
 
         try {
-            session = agentConfig.createSnmpSession();
+            session = shared ? Snmp4JSessionPool.getInstance().getSession(agentConfig) : agentConfig.createSnmpSession();
         } catch (IOException e) {
             LOG.error("send: Could not create SNMP session for agent {}", agentConfig, e);
             return new SnmpValue[] { null };
         }
 
         try {
-            if (expectResponse) {
+            // shared sessions are already listening
+            if (expectResponse && !shared) {
                 try {
                     session.listen();
                 } catch (IOException e) {
@@ -271,13 +273,20 @@ public class Snmp4JStrategy implements SnmpStrategy {
                 }
             } catch (final IOException e) {
                 LOG.error("send: error during SNMP operation", e);
+                if (shared) {
+                    Snmp4JSessionPool.getInstance().invalidate(session);
+                }
                 return new SnmpValue[] { null };
             } catch (final RuntimeException e) {
                 LOG.error("send: unexpected error during SNMP operation", e);
                 return new SnmpValue[] { null };
             }
         } finally {
-            closeQuietly(session);
+            if (shared) {
+                Snmp4JSessionPool.getInstance().release(session);
+            } else {
+                closeQuietly(session);
+            }
         }
     }
     
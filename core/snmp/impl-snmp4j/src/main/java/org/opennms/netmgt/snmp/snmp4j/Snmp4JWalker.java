@@ -164,7 +164,13 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            ((Snmp)responseEvent.getSource()).cancel(responseEvent.getRequest(), this);
+
+            // a shared session is not closed with the walker, so late responses still arrive here
+            if (m_closed) {
+                LOG.debug("Ignoring response for closed walker {}", getName());
+                return;
+            }
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -186,6 +192,8 @@ public class Snmp4JWalker extends SnmpWalker {
     }
     
     private Snmp m_session;
+    private boolean m_sharedSession;
+    private volatile boolean m_closed = false;
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
@@ -218,12 +226,24 @@ public class Snmp4JWalker extends SnmpWalker {
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws IOException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
         if (m_session == null) {
-            m_session = m_agentConfig.createSnmpSession();
-            m_session.listen();
+            if (Snmp4JSessionPool.isEnabled()) {
+                m_session = Snmp4JSessionPool.getInstance().getSession(m_agentConfig);
+                m_sharedSession = true;
+            } else {
+                m_session = m_agentConfig.createSnmpSession();
+                m_session.listen();
+            }
         }
         
         LOG.debug("Sending tracker pdu of size {}", snmp4JPduBuilder.getPdu().size());
-        m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+        try {
+            m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+        } catch (final IOException e) {
+            if (m_sharedSession) {
+                Snmp4JSessionPool.getInstance().invalidate(m_session);
+            }
+            throw e;
+        }
     }
     
     protected int getVersion() {
@@ -232,8 +252,13 @@ public class Snmp4JWalker extends SnmpWalker {
 
     @Override
     public void close() throws IOException {
+        m_closed = true;
         if (m_session != null) {
-            m_session.close();
+            if (m_sharedSession) {
+                Snmp4JSessionPool.getInstance().release(m_session);
+            } else {
+                m_session.close();
+            }
             m_session = null;
         }
     }
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.snmp4j.Snmp;
+
+public class Snmp4JSessionPoolTest {
+
+    private Snmp4JSessionPool m_pool;
+
+    @After
+    public void tearDown() {
+        if (m_pool != null) {
+            m_pool.close();
+        }
+    }
+
+    private static Snmp4JAgentConfig createV3Config(final String securityName, final String authPassPhrase) throws Exception {
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+        config.setVersion(SnmpAgentConfig.VERSION3);
+        config.setSecurityLevel(SnmpAgentConfig.AUTH_PRIV);
+        config.setSecurityName(securityName);
+        config.setAuthProtocol("MD5");
+        config.setAuthPassPhrase(authPassPhrase);
+        config.setPrivProtocol("DES");
+        config.setPrivPassPhrase("privsecret");
+        return new Snmp4JAgentConfig(config);
+    }
+
+    @Test
+    public void testUserKeyHidesPassPhrases() throws Exception {
+        final String key = Snmp4JSessionPool.getUserKey(createV3Config("opennmsUser", "authsecret"));
+        assertFalse(key.contains("authsecret"));
+        assertFalse(key.contains("privsecret"));
+        assertEquals(key, Snmp4JSessionPool.getUserKey(createV3Config("opennmsUser", "authsecret")));
+        assertFalse(key.equals(Snmp4JSessionPool.getUserKey(createV3Config("opennmsUser", "othersecret"))));
+        // fields must not run into each other
+        assertFalse(Snmp4JSessionPool.getUserKey(createV3Config("ab", "cdefghij")).equals(Snmp4JSessionPool.getUserKey(createV3Config("abc", "defghij"))));
+    }
+
+    @Test
+    public void testDeadSessionsAreReplaced() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 4, 300000L);
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getLoopbackAddress());
+        config.setVersion(SnmpAgentConfig.VERSION2C);
+        final Snmp4JAgentConfig v2c = new Snmp4JAgentConfig(config);
+        final Snmp first = m_pool.getSession(v2c);
+        assertTrue(Snmp4JSessionPool.isListening(first));
+        assertSame(first, m_pool.getSession(v2c));
+
+        // the transport is closed under the pool
+        first.close();
+        assertFalse(Snmp4JSessionPool.isListening(first));
+        final Snmp second = m_pool.getSession(v2c);
+        assertNotSame(first, second);
+        assertTrue(Snmp4JSessionPool.isListening(second));
+        assertEquals(1, m_pool.getEvictedSessionCount());
+
+        // a failed send through a working session keeps it
+        m_pool.invalidate(second);
+        assertSame(second, m_pool.getSession(v2c));
+        assertEquals(1, m_pool.getEvictedSessionCount());
+    }
+
+    @Test
+    public void testInvalidatedV3SessionsAreReplaced() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 4, 300000L);
+        final Snmp first = m_pool.getSession(createV3Config("user1", "authsecret"));
+        first.close();
+        m_pool.invalidate(first);
+        assertEquals(0, m_pool.getV3SessionCount());
+        assertEquals(1, m_pool.getEvictedSessionCount());
+
+        // handing back the dropped session is harmless
+        m_pool.release(first);
+        final Snmp second = m_pool.getSession(createV3Config("user1", "authsecret"));
+        assertNotSame(first, second);
+        assertEquals(1, m_pool.getV3SessionCount());
+    }
+
+    @Test
+    public void testSessionsAreSharedPerUser() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 4, 300000L);
+        final Snmp first = m_pool.getSession(createV3Config("user1", "authsecret"));
+        final Snmp second = m_pool.getSession(createV3Config("user1", "authsecret"));
+        final Snmp other = m_pool.getSession(createV3Config("user2", "authsecret"));
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, m_pool.getV3SessionCount());
+    }
+
+    @Test
+    public void testUnusedSessionsAreEvictedWhenFull() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 2, 300000L);
+        final Snmp first = m_pool.getSession(createV3Config("user1", "authsecret"));
+        m_pool.release(first);
+        final Snmp second = m_pool.getSession(createV3Config("user2", "authsecret"));
+
+        // the least recently used unused session makes room for the new one
+        m_pool.getSession(createV3Config("user3", "authsecret"));
+        assertEquals(2, m_pool.getV3SessionCount());
+        assertEquals(1, m_pool.getEvictedSessionCount());
+        assertNotSame(first, m_pool.getSession(createV3Config("user1", "authsecret")));
+
+        // sessions in use are kept even if that exceeds the bound
+        assertEquals(3, m_pool.getV3SessionCount());
+        assertSame(second, m_pool.getSession(createV3Config("user2", "authsecret")));
+    }
+
+    @Test
+    public void testIdleSessionsAreEvicted() throws Exception {
+        m_pool = new Snmp4JSessionPool(1, 4, 0L);
+        final Snmp first = m_pool.getSession(createV3Config("user1", "authsecret"));
+        final Snmp second = m_pool.getSession(createV3Config("user2", "authsecret"));
+        assertEquals(2, m_pool.getV3SessionCount());
+
+        m_pool.release(first);
+        assertEquals(1, m_pool.getV3SessionCount());
+        m_pool.release(second);
+        assertEquals(0, m_pool.getV3SessionCount());
+        assertEquals(2, m_pool.getEvictedSessionCount());
+    }
+}
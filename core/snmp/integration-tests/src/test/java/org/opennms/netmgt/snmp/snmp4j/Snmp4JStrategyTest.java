@@ -31,6 +31,7 @@ package org.opennms.netmgt.snmp.snmp4j;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -92,6 +93,21 @@ public class Snmp4JStrategyTest extends MockSnmpAgentTestCase {
         assertSnmpValueEquals("values[0]", SnmpValue.SNMP_INT32, 42, values[0]);
     }
     
+    @Test
+    public void testSendReusesSharedSession() throws Exception {
+        SnmpObjId[] oids = new SnmpObjId[] { SnmpObjId.get(".1.3.5.1.1.3.0") };
+        Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(getAgentConfig());
+
+        Snmp4JSessionPool.getInstance().close();
+
+        for (int i = 0; i < 20; i++) {
+            SnmpValue[] values = m_strategy.send(agentConfig, m_strategy.buildPdu(agentConfig, PDU.GET, oids, null), true);
+            assertSnmpValueEquals("values[0]", SnmpValue.SNMP_INT32, 42, values[0]);
+        }
+
+        assertTrue("sessions should be shared between requests", Snmp4JSessionPool.getInstance().getSessionCount() <= 4);
+    }
+
     @Test
     public void testSendWithGetPduMultipleValues() throws Exception {
         SnmpObjId[] oids = new SnmpObjId[] {
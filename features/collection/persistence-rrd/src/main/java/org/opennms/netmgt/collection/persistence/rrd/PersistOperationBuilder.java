@@ -45,6 +45,7 @@ import org.opennms.netmgt.collection.api.NumericCollectionAttributeType;
 import org.opennms.netmgt.collection.api.ResourceIdentifier;
 import org.opennms.netmgt.collection.api.TimeKeeper;
 import org.opennms.netmgt.collection.support.DefaultTimeKeeper;
+import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdRepository;
@@ -64,7 +65,11 @@ public class PersistOperationBuilder {
     private final RrdRepository m_repository;
     private final String m_rrdName;
     private final ResourceIdentifier m_resource;
-    private final Map<CollectionAttributeType, String> m_declarations = new TreeMap<CollectionAttributeType, String>(new ByNameComparator());
+    /**
+     * The value of each declared attribute, either as the String handed to us
+     * by the collector or as a Double.
+     */
+    private final Map<CollectionAttributeType, Object> m_declarations = new TreeMap<CollectionAttributeType, Object>(new ByNameComparator());
     private final Map<String, String> m_metaData = new LinkedHashMap<String, String>();
     private TimeKeeper m_timeKeeper = new DefaultTimeKeeper();
     
@@ -121,6 +126,16 @@ public class PersistOperationBuilder {
     public void setAttributeValue(CollectionAttributeType attrType, String value) {
         m_declarations.put(attrType, value);
     }
+
+    /**
+     * <p>setAttributeValue</p>
+     *
+     * @param attrType a {@link org.opennms.netmgt.collection.api.CollectionAttributeType} object.
+     * @param value the value, or NaN if it is unknown
+     */
+    public void setAttributeValue(CollectionAttributeType attrType, double value) {
+        m_declarations.put(attrType, Double.valueOf(value));
+    }
     
     public void setAttributeMetadata(String metricIdentifier, String name) {
         if (metricIdentifier == null) {
@@ -174,7 +189,13 @@ public class PersistOperationBuilder {
             List<RrdDataSource> dataSources = getDataSources();
             if (dataSources != null && dataSources.size() > 0) {
                 RrdUtils.createRRD(ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList(), getAttributeMappings());
-                RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+                ResourceTypeUtils.fileWritten(new File(absolutePath), m_rrdName + RrdUtils.getExtension());
+                final double[] values = getNumericValues();
+                if (values != null) {
+                    RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), values);
+                } else {
+                    RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+                }
                 RrdUtils.createMetaDataFile(absolutePath, m_rrdName, m_metaData);
             }
         } catch (FileNotFoundException e) {
@@ -183,18 +204,69 @@ public class PersistOperationBuilder {
         }
     }
 
+    /**
+     * Returns the values as numbers, or null if any of them cannot be
+     * passed as a double without changing what gets written: values that
+     * do not parse (so the strategy reports them as before), and integers
+     * too long to survive the conversion, such as large Counter64 values.
+     */
+    private double[] getNumericValues() {
+        final double[] values = new double[m_declarations.size()];
+        int i = 0;
+        for (final Object value : m_declarations.values()) {
+            if (value instanceof Number) {
+                values[i++] = ((Number)value).doubleValue();
+                continue;
+            }
+            final String str = (String)value;
+            if (str == null || "U".equals(str)) {
+                values[i++] = Double.NaN;
+            } else if (isLongInteger(str)) {
+                return null;
+            } else {
+                try {
+                    values[i++] = Double.parseDouble(str);
+                } catch (final NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Integers with more than 15 digits may not be exactly representable
+     * as a double.
+     */
+    private static boolean isLongInteger(final String value) {
+        final int start = (value.startsWith("-") || value.startsWith("+")) ? 1 : 0;
+        if (value.length() - start <= 15) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private String getValues() {
         boolean first = true;
         StringBuffer values = new StringBuffer();
         for (Iterator<CollectionAttributeType> iter = m_declarations.keySet().iterator(); iter.hasNext();) {
         	CollectionAttributeType attrDef = iter.next();
-            String value = m_declarations.get(attrDef);
+            Object value = m_declarations.get(attrDef);
             if (!first) {
                 values.append(':');
             } else {
                 first = false;
             }
-            values.append(value);
+            if (value instanceof Number) {
+                values.append(RrdUtils.formatValue(((Number)value).doubleValue()));
+            } else {
+                values.append(value);
+            }
         }
         return values.toString();
     }
@@ -306,6 +306,17 @@ public abstract class AbstractEventUtil implements EventUtil {
 
 	private static EventUtil m_instance = null; 
 
+	/**
+	 * Shared cache of reverse lookups used to expand %interfaceresolve%.
+	 */
+	private static final ReverseDnsCache s_reverseDnsCache = new ReverseDnsCache(
+		Integer.getInteger("org.opennms.eventd.reverseDnsCache.threads", 4),
+		Integer.getInteger("org.opennms.eventd.reverseDnsCache.queueLength", 1000),
+		Integer.getInteger("org.opennms.eventd.reverseDnsCache.maxEntries", 10000),
+		Long.getLong("org.opennms.eventd.reverseDnsCache.maxAge", 3600000L),
+		Long.getLong("org.opennms.eventd.reverseDnsCache.wait", 1000L)
+	);
+
 	public static EventUtil getInstance() {
 		if (m_instance == null) {
 			return BeanUtils.getBean("eventDaemonContext", "eventUtil", EventUtil.class);
@@ -437,7 +448,7 @@ public abstract class AbstractEventUtil implements EventUtil {
 				}
 		} else if (parm.equals(TAG_INTERFACE_RESOLVE)) {
 			InetAddress addr = event.getInterfaceAddress();
-			if (addr != null) retParmVal = addr.getHostName();
+			if (addr != null) retParmVal = s_reverseDnsCache.getHostName(addr);
 		} else if (parm.equals(TAG_IFALIAS)) {
 			String ifAlias = null;
 			if (event.getNodeid() > 0 && event.getInterface() != null) {
@@ -541,10 +541,15 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
      * expansion.
      * </p>
      *
+     * <p>
+     * The event configuration lookup does not lock, so events may be expanded
+     * concurrently by any number of threads.
+     * </p>
+     *
      * @param e
      *            The event to expand if necessary.
      */
-    public synchronized void expandEvent(Event e) {
+    public void expandEvent(Event e) {
         org.opennms.netmgt.xml.eventconf.Event econf = lookup(m_eventConfDao, e);
 
         if (econf != null) {
@@ -44,8 +44,10 @@ import org.opennms.core.criteria.Order;
 import org.opennms.core.criteria.Alias.JoinType;
 import org.opennms.core.criteria.restrictions.EqRestriction;
 import org.opennms.core.criteria.restrictions.LikeRestriction;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.AssetRecordDao;
 import org.opennms.netmgt.dao.api.HwEntityDao;
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.SnmpInterfaceDao;
@@ -77,6 +79,16 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
     @Autowired
     private HwEntityDao hwEntityDao;
 
+    @Autowired(required=false)
+    private InterfaceToNodeCache interfaceToNodeCache;
+
+    /**
+     * The shared cache that eventd invalidates when nodes change, also when
+     * this instance lives in another daemon's context, e.g. notifd.
+     */
+    @Autowired(required=false)
+    private NodeContextCache nodeContextCache = NodeContextCache.getInstance();
+
 	private final Pattern ASSET_PARM_PATTERN = Pattern.compile("^asset\\[(.*)\\]$");
 
 	private final Pattern HW_PARM_PATTERN = Pattern.compile("^hardware\\[(.*):(.*)\\]$");
@@ -85,23 +97,41 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
 
 	private final static Map<String, PropertyDescriptor> hwEntityDescriptorsByName = getDescriptorsForStrings(OnmsHwEntity.class);
 
+	private static final String NODE_LABEL_KEY = "nodelabel";
+
+	private static final String IF_ALIAS_KEY_PREFIX = "ifalias:";
+
+	private static final String ASSET_KEY_PREFIX = "asset:";
+
+	private static final String HARDWARE_KEY_PREFIX = "hardware:";
+
     @Override
-    protected String getNodeLabel(long nodeId) {
-        return nodeDao.getLabelForId(Integer.valueOf((int)nodeId));
+    protected String getNodeLabel(final long nodeId) {
+        return nodeContextCache.get(nodeId, NODE_LABEL_KEY, new NodeContextCache.Loader() {
+            @Override
+            public String load(final Map<String, String> related) {
+                return nodeDao.getLabelForId(Integer.valueOf((int)nodeId));
+            }
+        });
     }
 
     @Override
-    protected String getIfAlias(long nodeId, String ipaddr) {
-        OnmsIpInterface iface = ipInterfaceDao.findByNodeIdAndIpAddress((int)nodeId, ipaddr);
-        if (iface != null && iface.getSnmpInterface() != null) {
-            return iface.getSnmpInterface().getIfAlias();
-        } else {
-            return null;
-        }
+    protected String getIfAlias(final long nodeId, final String ipaddr) {
+        return nodeContextCache.get(nodeId, IF_ALIAS_KEY_PREFIX + ipaddr, new NodeContextCache.Loader() {
+            @Override
+            public String load(final Map<String, String> related) {
+                OnmsIpInterface iface = ipInterfaceDao.findByNodeIdAndIpAddress((int)nodeId, ipaddr);
+                if (iface != null && iface.getSnmpInterface() != null) {
+                    return iface.getSnmpInterface().getIfAlias();
+                } else {
+                    return null;
+                }
+            }
+        });
     }
 
     @Override
-    protected String getAssetFieldValue(String parm, long nodeId) {
+    protected String getAssetFieldValue(final String parm, final long nodeId) {
         final Matcher matcher = ASSET_PARM_PATTERN.matcher(parm);
         if (!matcher.matches()) {
             LOG.warn("Unsupported asset field parameter '{}'.", parm);
@@ -109,16 +139,31 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
         }
         final String assetField = matcher.group(1).toLowerCase();
 
-        OnmsAssetRecord assetRecord = assetRecordDao.findByNodeId((int)nodeId);
-        if (assetRecord == null) {
-            return null;
-        }
-
-        return getStringPropertyByName(assetField, assetRecord, assetDescriptorsByName);
+        // All of the asset fields come from the same record, so cache them
+        // together when the first one is asked for.
+        return nodeContextCache.get(nodeId, ASSET_KEY_PREFIX + assetField, new NodeContextCache.Loader() {
+            @Override
+            public String load(final Map<String, String> related) {
+                OnmsAssetRecord assetRecord = assetRecordDao.findByNodeId((int)nodeId);
+                for (final String name : assetDescriptorsByName.keySet()) {
+                    related.put(ASSET_KEY_PREFIX + name, assetRecord == null ? null : getStringPropertyByName(name, assetRecord, assetDescriptorsByName));
+                }
+                return related.get(ASSET_KEY_PREFIX + assetField);
+            }
+        });
     }
 
     @Override
-    public String getHardwareFieldValue(String parm, long nodeId) {
+    public String getHardwareFieldValue(final String parm, final long nodeId) {
+        return nodeContextCache.get(nodeId, HARDWARE_KEY_PREFIX + parm, new NodeContextCache.Loader() {
+            @Override
+            public String load(final Map<String, String> related) {
+                return loadHardwareFieldValue(parm, nodeId);
+            }
+        });
+    }
+
+    private String loadHardwareFieldValue(String parm, long nodeId) {
         final Matcher matcher = HW_PARM_PATTERN.matcher(parm);
         if (!matcher.matches()) {
             LOG.warn("Unsupported hardware field parameter '{}'.", parm);
@@ -183,6 +228,15 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
      */
     @Override
     public String getHostName(final int nodeId, final String hostip) {
+        if (interfaceToNodeCache != null) {
+            try {
+                final String hostname = interfaceToNodeCache.getHostName(nodeId, InetAddressUtils.addr(hostip));
+                return (hostname == null) ? hostip : hostname;
+            } catch (final IllegalArgumentException e) {
+                LOG.debug("getHostName: {} is not a valid address", hostip, e);
+                return hostip;
+            }
+        }
 
         OnmsIpInterface ints = ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, hostip);
         if (ints == null) {
@@ -34,6 +34,7 @@ import java.util.Collection;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.dao.api.EventdServiceManager;
 import org.opennms.netmgt.eventd.adaptors.EventReceiver;
+import org.opennms.netmgt.events.api.EventProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -95,6 +96,11 @@ public final class Eventd extends AbstractServiceDaemon {
      */
     private Collection<EventReceiver> m_eventReceivers;
 
+    /**
+     * The writer used to persist events, exposed for statistics.
+     */
+    private EventProcessor m_eventWriter;
+
     /**
      * Constuctor creates the localhost address(to be used eventually when
      * eventd originates events during correlation) and the broadcast queue
@@ -201,4 +207,22 @@ public final class Eventd extends AbstractServiceDaemon {
     public void setEventReceivers(Collection<EventReceiver> eventReceivers) {
         m_eventReceivers = eventReceivers;
     }
+
+    /**
+     * <p>getEventWriter</p>
+     *
+     * @return a {@link org.opennms.netmgt.events.api.EventProcessor} object.
+     */
+    public EventProcessor getEventWriter() {
+        return m_eventWriter;
+    }
+
+    /**
+     * <p>setEventWriter</p>
+     *
+     * @param eventWriter a {@link org.opennms.netmgt.events.api.EventProcessor} object.
+     */
+    public void setEventWriter(EventProcessor eventWriter) {
+        m_eventWriter = eventWriter;
+    }
 }
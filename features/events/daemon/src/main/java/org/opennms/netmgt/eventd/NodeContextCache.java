@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the node related values used during event parameter expansion
+ * (node labels, interface aliases, asset and hardware fields) so that
+ * expanding the events of a busy node does not hit the database for every
+ * event. Entries expire after a configurable age and are dropped as soon as
+ * an event reports that the node changed.
+ *
+ * The daemons share a single instance, see {@link #getInstance()}, so that
+ * the invalidations done by eventd also apply to the expansion done by
+ * notifd.
+ *
+ * Both the age and the number of cached nodes can be tuned with the
+ * <code>org.opennms.eventd.nodeContextCache.maxAge</code> (milliseconds) and
+ * <code>org.opennms.eventd.nodeContextCache.maxNodes</code> system properties.
+ */
+public class NodeContextCache {
+    private static final Logger LOG = LoggerFactory.getLogger(NodeContextCache.class);
+
+    private static final long DEFAULT_MAX_AGE = Long.getLong("org.opennms.eventd.nodeContextCache.maxAge", 300000L);
+
+    private static final int DEFAULT_MAX_NODES = Integer.getInteger("org.opennms.eventd.nodeContextCache.maxNodes", 20000);
+
+    /**
+     * Stored in place of null so that values known to be missing are cached as well.
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * Loads a value missing from the cache.
+     */
+    public interface Loader {
+        /**
+         * @param related values for other keys of the same node that were
+         *        fetched by the same query and should be cached along with
+         *        the requested one
+         * @return the value for the requested key, may be null
+         */
+        String load(Map<String, String> related);
+    }
+
+    private static final class Context {
+        private final long m_created;
+        private final ConcurrentMap<String, Object> m_values = new ConcurrentHashMap<String, Object>();
+
+        private Context(final long created) {
+            m_created = created;
+        }
+    }
+
+    private static final NodeContextCache s_instance = new NodeContextCache();
+
+    private final ConcurrentMap<Long, Context> m_contexts = new ConcurrentHashMap<Long, Context>();
+    private final Object m_pruneLock = new Object();
+    private final long m_maxAge;
+    private final int m_maxNodes;
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    /**
+     * Returns the cache shared by every daemon running in this JVM.
+     *
+     * @return the shared {@link NodeContextCache}
+     */
+    public static NodeContextCache getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * <p>Constructor for NodeContextCache using the configured limits.</p>
+     */
+    public NodeContextCache() {
+        this(DEFAULT_MAX_AGE, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * <p>Constructor for NodeContextCache.</p>
+     *
+     * @param maxAge the number of milliseconds a node's values are kept
+     * @param maxNodes the maximum number of nodes to keep values for
+     */
+    public NodeContextCache(final long maxAge, final int maxNodes) {
+        m_maxAge = maxAge;
+        m_maxNodes = maxNodes;
+    }
+
+    /**
+     * Returns the cached value for the given node and key, calling the
+     * loader on a miss.
+     *
+     * @param nodeId the node the value belongs to
+     * @param key the key of the value, unique within the node
+     * @param loader used to fetch the value when it is not cached
+     * @return the value, may be null
+     */
+    public String get(final long nodeId, final String key, final Loader loader) {
+        final Context context = getContext(nodeId);
+        final Object value = context.m_values.get(key);
+        if (value != null) {
+            m_hits.incrementAndGet();
+            return value == NULL_VALUE ? null : (String)value;
+        }
+        m_misses.incrementAndGet();
+
+        final Map<String, String> related = new HashMap<String, String>();
+        final String loaded = loader.load(related);
+        for (final Map.Entry<String, String> entry : related.entrySet()) {
+            context.m_values.put(entry.getKey(), entry.getValue() == null ? NULL_VALUE : entry.getValue());
+        }
+        context.m_values.put(key, loaded == null ? NULL_VALUE : loaded);
+        return loaded;
+    }
+
+    /**
+     * Drops every value cached for the given node.
+     *
+     * @param nodeId the node that changed
+     */
+    public void invalidate(final long nodeId) {
+        if (m_contexts.remove(nodeId) != null) {
+            LOG.debug("invalidate: dropped cached values for node {}", nodeId);
+        }
+    }
+
+    /**
+     * Drops every cached value.
+     */
+    public void invalidateAll() {
+        m_contexts.clear();
+    }
+
+    /**
+     * @return the number of nodes values are currently cached for
+     */
+    public int size() {
+        return m_contexts.size();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to be loaded
+     */
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    private Context getContext(final long nodeId) {
+        final long now = System.currentTimeMillis();
+        final Long key = Long.valueOf(nodeId);
+        Context context = m_contexts.get(key);
+        if (context != null && now - context.m_created < m_maxAge) {
+            return context;
+        }
+        if (context != null) {
+            m_contexts.remove(key, context);
+        }
+
+        final Context created = new Context(now);
+        context = m_contexts.putIfAbsent(key, created);
+        if (context == null) {
+            context = created;
+            if (m_contexts.size() > m_maxNodes) {
+                prune(now);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Drops expired nodes and, if that is not enough, arbitrary ones until the
+     * cache is back under its limit.
+     */
+    private void prune(final long now) {
+        synchronized (m_pruneLock) {
+            final Iterator<Context> it = m_contexts.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().m_created >= m_maxAge) {
+                    it.remove();
+                }
+            }
+            final Iterator<Long> keys = m_contexts.keySet().iterator();
+            while (m_contexts.size() > m_maxNodes && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+}
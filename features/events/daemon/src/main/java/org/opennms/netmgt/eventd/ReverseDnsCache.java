@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of reverse DNS lookups used to expand
+ * <code>%interfaceresolve%</code>. Lookups run on a small resolver pool so a
+ * slow or unreachable name server never stalls the eventd threads for more
+ * than the configured wait; when a lookup does not finish in time the
+ * address itself is used and the name is picked up once it arrives. Expired
+ * names keep being served while they are refreshed in the background.
+ */
+final class ReverseDnsCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ReverseDnsCache.class);
+
+    private static final class Entry {
+        private final String m_name;
+        private final long m_resolved;
+
+        private Entry(final String name, final long resolved) {
+            m_name = name;
+            m_resolved = resolved;
+        }
+    }
+
+    private final ConcurrentMap<InetAddress, Entry> m_names = new ConcurrentHashMap<InetAddress, Entry>();
+    private final ConcurrentMap<InetAddress, Future<String>> m_pending = new ConcurrentHashMap<InetAddress, Future<String>>();
+    private final Object m_pruneLock = new Object();
+    private final ThreadPoolExecutor m_resolver;
+    private final int m_maxEntries;
+    private final long m_maxAge;
+    private final long m_wait;
+
+    /**
+     * @param threads the number of concurrent lookups
+     * @param queueLength the number of lookups that may wait for a resolver
+     *        thread, further ones are not started
+     * @param maxEntries the maximum number of names to keep
+     * @param maxAge the number of milliseconds a name is considered current
+     * @param wait the number of milliseconds a caller waits for a name that
+     *        is not cached yet
+     */
+    ReverseDnsCache(final int threads, final int queueLength, final int maxEntries, final long maxAge, final long wait) {
+        m_maxEntries = maxEntries;
+        m_maxAge = maxAge;
+        m_wait = wait;
+        m_resolver = new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(queueLength),
+            new LogPreservingThreadFactory(ReverseDnsCache.class.getSimpleName(), threads)
+        );
+        m_resolver.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the host name of the address, or its textual form if it does
+     * not resolve or could not be resolved in time.
+     */
+    String getHostName(final InetAddress addr) {
+        final Entry entry = m_names.get(addr);
+        if (entry != null && System.currentTimeMillis() - entry.m_resolved < m_maxAge) {
+            return entry.m_name;
+        }
+
+        final Future<String> lookup = resolve(addr);
+        if (entry != null) {
+            return entry.m_name;
+        }
+        if (lookup == null) {
+            return addr.getHostAddress();
+        }
+
+        try {
+            return lookup.get(m_wait, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            LOG.debug("getHostName: lookup of {} did not finish within {}ms", addr, m_wait);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            LOG.debug("getHostName: lookup of {} failed", addr, e.getCause());
+        }
+        return addr.getHostAddress();
+    }
+
+    int size() {
+        return m_names.size();
+    }
+
+    /**
+     * Starts a lookup unless one is already running for the address.
+     *
+     * @return the running lookup or null if the resolver is saturated
+     */
+    private Future<String> resolve(final InetAddress addr) {
+        final FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() {
+                try {
+                    final String name = addr.getHostName();
+                    store(addr, name);
+                    return name;
+                } finally {
+                    m_pending.remove(addr);
+                }
+            }
+        });
+
+        final Future<String> running = m_pending.putIfAbsent(addr, task);
+        if (running != null) {
+            return running;
+        }
+        try {
+            m_resolver.execute(task);
+            return task;
+        } catch (final RejectedExecutionException e) {
+            m_pending.remove(addr, task);
+            LOG.debug("resolve: too many pending lookups, not resolving {}", addr);
+            return null;
+        }
+    }
+
+    private void store(final InetAddress addr, final String name) {
+        final long now = System.currentTimeMillis();
+        m_names.put(addr, new Entry(name, now));
+        if (m_names.size() <= m_maxEntries) {
+            return;
+        }
+        synchronized (m_pruneLock) {
+            final Iterator<Entry> it = m_names.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().m_resolved >= m_maxAge) {
+                    it.remove();
+                }
+            }
+            final Iterator<InetAddress> keys = m_names.keySet().iterator();
+            while (m_names.size() > m_maxEntries && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+}
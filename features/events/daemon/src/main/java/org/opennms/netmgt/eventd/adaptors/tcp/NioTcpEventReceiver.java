@@ -0,0 +1,1096 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.eventd.adaptors.EventHandlerMBeanProxy;
+import org.opennms.netmgt.eventd.adaptors.EventReceiver;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A non-blocking replacement for {@link TcpEventReceiver}.
+ *
+ * Instead of two threads per connection, all connections are multiplexed
+ * over a small fixed number of selector loops.  Each loop reads the bytes
+ * of its connections and splits them into records at the closing
+ * <code>&lt;/log&gt;</code> tag, exactly like {@link TcpRecordHandler}.
+ * Complete records are parsed with StAX one <code>&lt;event&gt;</code> at a
+ * time and passed to the event handlers on a small worker pool.
+ *
+ * A connection has at most one record being processed at a time; while it
+ * does, and while more than {@link #getMaxRecordSize()} bytes are buffered,
+ * the loop stops reading from it so that TCP flow control pushes back on
+ * the sender.
+ *
+ * Select it by setting the <code>org.opennms.netmgt.eventd.tcpReceiverClass</code>
+ * system property to this class.
+ */
+public final class NioTcpEventReceiver implements EventReceiver, TcpEventReceiverMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioTcpEventReceiver.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String EVENT_NAMESPACE = "http://xmlns.opennms.org/xsd/event";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final List<EventHandler> m_eventHandlers = new ArrayList<EventHandler>(3);
+
+    private volatile int m_status = START_PENDING;
+
+    private int m_tcpPort;
+
+    private String m_ipAddress;
+
+    private String m_logPrefix = org.opennms.netmgt.eventd.Eventd.LOG4J_CATEGORY;
+
+    private int m_recsPerConn = TcpEventReceiver.UNLIMITED_EVENTS;
+
+    private int m_eventLoops = Integer.getInteger("org.opennms.netmgt.eventd.tcp.eventLoops", 2);
+
+    private int m_workerThreads = Integer.getInteger("org.opennms.netmgt.eventd.tcp.workerThreads", 4);
+
+    private int m_maxRecordSize = Integer.getInteger("org.opennms.netmgt.eventd.tcp.maxRecordSize", 16 * 1024 * 1024);
+
+    private ServerSocketChannel m_serverChannel;
+
+    private EventLoop[] m_loops;
+
+    private ExecutorService m_workers;
+
+    private final AtomicInteger m_nextLoop = new AtomicInteger();
+
+    private final AtomicInteger m_openConnections = new AtomicInteger();
+
+    private final AtomicLong m_connectionsAccepted = new AtomicLong();
+
+    private final AtomicLong m_recordsReceived = new AtomicLong();
+
+    private final AtomicLong m_recordsRejected = new AtomicLong();
+
+    private final AtomicLong m_eventsReceived = new AtomicLong();
+
+    /**
+     * Constructs a new receiver on the default TCP/IP port and address.
+     */
+    public NioTcpEventReceiver() {
+        this(TcpServer.TCP_PORT, TcpServer.DEFAULT_IP_ADDRESS);
+    }
+
+    /**
+     * Constructs a new receiver on the passed port and address. The server
+     * socket allocation is delayed until the fiber is actually started.
+     *
+     * @param port the port to listen on
+     * @param ipAddress the address to listen on, or "*" for all interfaces
+     */
+    public NioTcpEventReceiver(final int port, final String ipAddress) {
+        m_tcpPort = port;
+        m_ipAddress = ipAddress;
+    }
+
+    /**
+     * Binds the server socket and starts the selector loops and the worker
+     * pool.
+     *
+     * @throws java.lang.reflect.UndeclaredThrowableException
+     *             Thrown if an error occurs allocating the server socket.
+     */
+    @Override
+    public synchronized void start() {
+        assertNotRunning();
+
+        m_status = STARTING;
+        final InetAddress address = "*".equals(m_ipAddress) ? null : InetAddressUtils.addr(m_ipAddress);
+        try {
+            m_serverChannel = ServerSocketChannel.open();
+            m_serverChannel.socket().setReuseAddress(true);
+            m_serverChannel.socket().bind(new InetSocketAddress(address, m_tcpPort));
+            m_serverChannel.configureBlocking(false);
+
+            m_workers = Executors.newFixedThreadPool(Math.max(m_workerThreads, 1), new NamedThreadFactory("Event TCP Worker[" + m_tcpPort + "]"));
+            m_loops = new EventLoop[Math.max(m_eventLoops, 1)];
+            for (int i = 0; i < m_loops.length; i++) {
+                m_loops[i] = new EventLoop("Event TCP Loop[" + m_tcpPort + "]-" + i);
+            }
+            m_loops[0].registerServer(m_serverChannel);
+            for (final EventLoop loop : m_loops) {
+                loop.start();
+            }
+        } catch (final IOException e) {
+            closeQuietly();
+            m_status = STOPPED;
+            throw new UndeclaredThrowableException(e, "Error opening server socket on " + m_ipAddress + ":" + m_tcpPort + ": " + e);
+        }
+
+        LOG.debug("Non-blocking event receiver started on {}:{} with {} loops and {} workers", m_ipAddress, m_tcpPort, m_loops.length, m_workerThreads);
+        m_status = RUNNING;
+    }
+
+    /**
+     * Stops the receiver, closing the server socket and every open
+     * connection and waiting for the loops to exit.
+     */
+    @Override
+    public synchronized void stop() {
+        if (m_status == STOPPED) {
+            return;
+        }
+        if (m_status == START_PENDING) {
+            m_status = STOPPED;
+            return;
+        }
+
+        m_status = STOP_PENDING;
+        closeQuietly();
+        m_status = STOPPED;
+    }
+
+    private void closeQuietly() {
+        if (m_loops != null) {
+            for (final EventLoop loop : m_loops) {
+                if (loop != null) {
+                    loop.shutdown();
+                }
+            }
+        }
+        if (m_serverChannel != null) {
+            try {
+                m_serverChannel.close();
+            } catch (final IOException e) {
+                LOG.warn("An I/O exception occured closing the server socket", e);
+            }
+        }
+        if (m_workers != null) {
+            m_workers.shutdown();
+            try {
+                if (!m_workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                    m_workers.shutdownNow();
+                }
+            } catch (final InterruptedException e) {
+                LOG.warn("Interrupted while waiting for the event workers to finish", e);
+                m_workers.shutdownNow();
+            }
+        }
+        m_loops = null;
+        m_serverChannel = null;
+        m_workers = null;
+    }
+
+    private EventLoop nextLoop() {
+        final EventLoop[] loops = m_loops;
+        return loops[(m_nextLoop.getAndIncrement() & 0x7fffffff) % loops.length];
+    }
+
+    /**
+     * A selector with the thread that services it.  All channel operations
+     * happen on this thread; other threads hand work to it with
+     * {@link #execute(Runnable)}.
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector m_selector;
+        private final Thread m_thread;
+        private final Queue<Runnable> m_tasks = new ConcurrentLinkedQueue<Runnable>();
+        private volatile boolean m_stop = false;
+
+        EventLoop(final String name) throws IOException {
+            m_selector = Selector.open();
+            m_thread = new Thread(this, name);
+        }
+
+        void start() {
+            m_thread.start();
+        }
+
+        void registerServer(final ServerSocketChannel server) throws ClosedChannelException {
+            server.register(m_selector, SelectionKey.OP_ACCEPT);
+        }
+
+        void execute(final Runnable task) {
+            m_tasks.add(task);
+            m_selector.wakeup();
+        }
+
+        void shutdown() {
+            m_stop = true;
+            m_selector.wakeup();
+            if (m_thread.isAlive() && Thread.currentThread() != m_thread) {
+                try {
+                    m_thread.join();
+                } catch (final InterruptedException e) {
+                    LOG.warn("Interrupted while joining {}", m_thread.getName(), e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Logging.putPrefix(m_logPrefix);
+            try {
+                while (!m_stop && m_status != STOP_PENDING && m_status != STOPPED) {
+                    try {
+                        m_selector.select();
+                    } catch (final IOException e) {
+                        LOG.warn("An I/O exception occured while selecting", e);
+                        continue;
+                    }
+                    runTasks();
+                    final Iterator<SelectionKey> it = m_selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        final SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            final Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        }
+                    }
+                }
+            } finally {
+                for (final SelectionKey key : m_selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                try {
+                    m_selector.close();
+                } catch (final IOException e) {
+                    LOG.debug("An I/O exception occured closing the selector", e);
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = m_tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (final Throwable t) {
+                    LOG.warn("An exception occured running a task on {}", m_thread.getName(), t);
+                }
+            }
+        }
+
+        private void accept() {
+            final SocketChannel channel;
+            try {
+                channel = m_serverChannel.accept();
+            } catch (final IOException e) {
+                LOG.warn("An I/O exception occured accepting a connection", e);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            m_connectionsAccepted.incrementAndGet();
+            final EventLoop loop = nextLoop();
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loop.register(channel);
+                }
+            });
+        }
+
+        private void register(final SocketChannel channel) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                final Connection connection = new Connection(this, channel);
+                connection.m_key = channel.register(m_selector, SelectionKey.OP_READ, connection);
+                m_openConnections.incrementAndGet();
+                LOG.debug("Accepted connection from {}", connection.m_remote);
+            } catch (final IOException e) {
+                LOG.warn("An I/O exception occured registering a connection", e);
+                try {
+                    channel.close();
+                } catch (final IOException ce) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a single client connection.  Only touched from the
+     * connection's loop thread, except for the record being processed which
+     * is handed to a worker and handed back with {@link #recordProcessed}.
+     */
+    private final class Connection {
+        private final EventLoop m_loop;
+        private final SocketChannel m_channel;
+        private final String m_remote;
+        private SelectionKey m_key;
+
+        private final ByteBuffer m_readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final LogRecordScanner m_scanner = new LogRecordScanner();
+        private final LinkedList<ByteBuffer> m_output = new LinkedList<ByteBuffer>();
+
+        private int m_recordsLeft = m_recsPerConn;
+        private boolean m_processing = false;
+        private boolean m_eof = false;
+        private boolean m_closeWhenFlushed = false;
+        private boolean m_closed = false;
+
+        Connection(final EventLoop loop, final SocketChannel channel) {
+            m_loop = loop;
+            m_channel = channel;
+            final InetSocketAddress remote = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+            m_remote = remote == null ? "unknown" : InetAddressUtils.str(remote.getAddress()) + ":" + remote.getPort();
+        }
+
+        void onReadable() {
+            m_readBuffer.clear();
+            final int read;
+            try {
+                read = m_channel.read(m_readBuffer);
+            } catch (final IOException e) {
+                LOG.debug("An I/O exception occured reading from {}", m_remote, e);
+                close();
+                return;
+            }
+            if (read < 0) {
+                m_eof = true;
+                setReading(false);
+            } else if (read > 0) {
+                m_readBuffer.flip();
+                m_scanner.append(m_readBuffer);
+            }
+            dispatch();
+        }
+
+        /**
+         * Hand the next complete record to a worker, or decide whether to
+         * keep reading.
+         */
+        private void dispatch() {
+            if (m_closed || m_processing || m_closeWhenFlushed) {
+                return;
+            }
+            final byte[] record = m_scanner.nextRecord();
+            if (record != null) {
+                if (m_recordsLeft > 0) {
+                    m_recordsLeft--;
+                }
+                m_processing = true;
+                setReading(false);
+                m_recordsReceived.incrementAndGet();
+                try {
+                    m_workers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            processRecord(Connection.this, record);
+                        }
+                    });
+                } catch (final RuntimeException e) {
+                    LOG.warn("Could not queue event record from {}, closing connection", m_remote, e);
+                    close();
+                }
+                return;
+            }
+            if (m_scanner.buffered() > m_maxRecordSize) {
+                LOG.warn("Closing connection from {}: more than {} bytes without a complete event log", m_remote, m_maxRecordSize);
+                m_recordsRejected.incrementAndGet();
+                close();
+            } else if (m_eof) {
+                closeWhenFlushed();
+            } else {
+                setReading(true);
+            }
+        }
+
+        void recordProcessed(final byte[] receipt) {
+            if (m_closed) {
+                return;
+            }
+            m_processing = false;
+            if (receipt != null) {
+                m_output.add(ByteBuffer.wrap(receipt));
+                onWritable();
+            }
+            if (m_recordsLeft == 0) {
+                closeWhenFlushed();
+            } else {
+                dispatch();
+            }
+        }
+
+        void onWritable() {
+            try {
+                while (!m_output.isEmpty()) {
+                    final ByteBuffer buffer = m_output.getFirst();
+                    m_channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        break;
+                    }
+                    m_output.removeFirst();
+                }
+            } catch (final IOException e) {
+                LOG.warn("Failed to send event-receipt XML document to {}", m_remote, e);
+                close();
+                return;
+            }
+            if (m_output.isEmpty()) {
+                setInterest(SelectionKey.OP_WRITE, false);
+                if (m_closeWhenFlushed) {
+                    close();
+                }
+            } else {
+                setInterest(SelectionKey.OP_WRITE, true);
+            }
+        }
+
+        private void closeWhenFlushed() {
+            m_closeWhenFlushed = true;
+            setReading(false);
+            if (m_output.isEmpty()) {
+                close();
+            }
+        }
+
+        private void setReading(final boolean reading) {
+            setInterest(SelectionKey.OP_READ, reading && !m_eof);
+        }
+
+        private void setInterest(final int op, final boolean on) {
+            if (m_key == null || !m_key.isValid()) {
+                return;
+            }
+            final int ops = m_key.interestOps();
+            m_key.interestOps(on ? (ops | op) : (ops & ~op));
+        }
+
+        void close() {
+            if (m_closed) {
+                return;
+            }
+            m_closed = true;
+            m_openConnections.decrementAndGet();
+            if (m_key != null) {
+                m_key.cancel();
+            }
+            try {
+                m_channel.close();
+            } catch (final IOException e) {
+                LOG.warn("An I/O exception occured while closing the TCP/IP connection to {}", m_remote, e);
+            }
+            LOG.debug("Closed connection from {}", m_remote);
+        }
+    }
+
+    /**
+     * Parse and process a single event log record on a worker thread, then
+     * hand the receipt (if any) back to the connection's loop.
+     */
+    private void processRecord(final Connection connection, final byte[] record) {
+        Logging.putPrefix(m_logPrefix);
+        byte[] receiptBytes = null;
+        try {
+            final List<Event> events = parseEvents(record);
+            m_eventsReceived.addAndGet(events.size());
+            final EventReceipt receipt = handleEvents(events);
+            if (receipt != null) {
+                final StringWriter writer = new StringWriter();
+                JaxbUtils.marshal(receipt, writer);
+                receiptBytes = writer.toString().getBytes(UTF_8);
+                notifyReceiptSent(receipt);
+            }
+        } catch (final Throwable t) {
+            m_recordsRejected.incrementAndGet();
+            LOG.error("Could not unmarshall the XML record from {}.", connection.m_remote, t);
+        }
+
+        final byte[] receipt = receiptBytes;
+        connection.m_loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                connection.recordProcessed(receipt);
+            }
+        });
+    }
+
+    /**
+     * Pull-parse the events of a <code>&lt;log&gt;</code> document one
+     * <code>&lt;event&gt;</code> at a time, so the document itself is never
+     * materialized.  Like the legacy receiver, elements without a namespace
+     * are treated as being in the event namespace.
+     */
+    static List<Event> parseEvents(final byte[] record) throws XMLStreamException, JAXBException {
+        final List<Event> events = new ArrayList<Event>();
+        final XMLStreamReader reader = new EventNamespaceReader(XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(record)));
+        try {
+            final Unmarshaller unmarshaller = JaxbUtils.getUnmarshallerFor(Log.class, null, false);
+            int type = reader.getEventType();
+            while (true) {
+                if (type == XMLStreamConstants.START_ELEMENT && "event".equals(reader.getLocalName())) {
+                    events.add(unmarshaller.unmarshal(reader, Event.class).getValue());
+                    type = reader.getEventType();
+                    continue;
+                }
+                if (!reader.hasNext()) {
+                    break;
+                }
+                type = reader.next();
+            }
+        } finally {
+            reader.close();
+        }
+        return events;
+    }
+
+    /**
+     * Forces every element into the event namespace, which is what
+     * {@link JaxbUtils} does with a SAX filter for the legacy receiver.
+     */
+    private static final class EventNamespaceReader extends StreamReaderDelegate {
+        EventNamespaceReader(final XMLStreamReader reader) {
+            super(reader);
+        }
+
+        private boolean isElement() {
+            final int type = getEventType();
+            return type == XMLStreamConstants.START_ELEMENT || type == XMLStreamConstants.END_ELEMENT;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return isElement() ? EVENT_NAMESPACE : super.getNamespaceURI();
+        }
+
+        @Override
+        public QName getName() {
+            return new QName(EVENT_NAMESPACE, getLocalName());
+        }
+    }
+
+    /**
+     * Pass the events to every handler and build a receipt for the events
+     * that at least one handler accepted and that carry a UUID.
+     *
+     * @return the receipt, or null if no receipt needs to be sent
+     */
+    private EventReceipt handleEvents(final List<Event> eventList) {
+        if (eventList.isEmpty()) {
+            LOG.debug("The agent sent an empty event stream");
+            return null;
+        }
+
+        // sort the events by time, events without a time first
+        final Event[] events = eventList.toArray(new Event[eventList.size()]);
+        Arrays.sort(events, new Comparator<Event>() {
+            @Override
+            public int compare(final Event e1, final Event e2) {
+                if (e1.getTime() == null) {
+                    return e2.getTime() == null ? 0 : -1;
+                } else if (e2.getTime() == null) {
+                    return 1;
+                }
+                return e1.getTime().compareTo(e2.getTime());
+            }
+        });
+
+        final List<Event> okEvents = new ArrayList<Event>(events.length);
+        final List<EventHandler> handlers;
+        synchronized (m_eventHandlers) {
+            handlers = new ArrayList<EventHandler>(m_eventHandlers);
+        }
+        for (final EventHandler hdl : handlers) {
+            for (final Event event : events) {
+                try {
+                    LOG.debug("handling event: {}", event);
+                    if (hdl.processEvent(event) && !okEvents.contains(event)) {
+                        okEvents.add(event);
+                    }
+                } catch (final Throwable t) {
+                    LOG.warn("An exception occured while processing an event.", t);
+                }
+            }
+        }
+
+        EventReceipt receipt = null;
+        for (final Event event : okEvents) {
+            if (event.getUuid() != null) {
+                if (receipt == null) {
+                    receipt = new EventReceipt();
+                }
+                receipt.addUuid(event.getUuid());
+            }
+        }
+        return receipt;
+    }
+
+    private void notifyReceiptSent(final EventReceipt receipt) {
+        final List<EventHandler> handlers;
+        synchronized (m_eventHandlers) {
+            handlers = new ArrayList<EventHandler>(m_eventHandlers);
+        }
+        for (final EventHandler hdl : handlers) {
+            try {
+                hdl.receiptSent(receipt);
+            } catch (final Throwable t) {
+                LOG.warn("An exception occured while processing an event receipt.", t);
+            }
+        }
+    }
+
+    /**
+     * Splits a byte stream into event log records.  A record starts at the
+     * first '&lt;' after the previous record and ends with a closing
+     * <code>&lt;/log&gt;</code> tag with an optional namespace prefix, the
+     * same framing as {@link TcpRecordHandler}.
+     */
+    static final class LogRecordScanner {
+        private static final int BETWEEN_RECORDS = 8;
+
+        private byte[] m_buffer = new byte[READ_BUFFER_SIZE];
+        private int m_length = 0;
+        private int m_scanned = 0;
+        private int m_recordStart = -1;
+        private int m_state = BETWEEN_RECORDS;
+
+        void append(final ByteBuffer data) {
+            final int needed = m_length + data.remaining();
+            if (needed > m_buffer.length) {
+                // drop the consumed part before growing
+                compact();
+                if (m_length + data.remaining() > m_buffer.length) {
+                    m_buffer = Arrays.copyOf(m_buffer, Math.max(m_buffer.length * 2, m_length + data.remaining()));
+                }
+            }
+            final int count = data.remaining();
+            data.get(m_buffer, m_length, count);
+            m_length += count;
+        }
+
+        void append(final byte[] data) {
+            append(ByteBuffer.wrap(data));
+        }
+
+        /**
+         * @return the number of bytes buffered but not yet returned as a record
+         */
+        int buffered() {
+            return m_recordStart < 0 ? 0 : m_length - m_recordStart;
+        }
+
+        private void compact() {
+            final int keepFrom = m_recordStart < 0 ? m_scanned : m_recordStart;
+            if (keepFrom > 0) {
+                System.arraycopy(m_buffer, keepFrom, m_buffer, 0, m_length - keepFrom);
+                m_length -= keepFrom;
+                m_scanned -= keepFrom;
+                if (m_recordStart >= 0) {
+                    m_recordStart -= keepFrom;
+                }
+            }
+        }
+
+        /**
+         * @return the next complete record, or null if more data is needed
+         */
+        byte[] nextRecord() {
+            while (m_scanned < m_length) {
+                final char ch = (char) (m_buffer[m_scanned] & 0xff);
+                final int pos = m_scanned++;
+                switch (m_state) {
+                case BETWEEN_RECORDS:
+                    if (ch == '<') {
+                        m_recordStart = pos;
+                        m_state = 1;
+                    }
+                    break;
+                case 0:
+                    m_state = ch == '<' ? 1 : 0;
+                    break;
+                case 1:
+                    m_state = ch == '/' ? 2 : (ch == '<' ? 1 : 0);
+                    break;
+                case 2:
+                    m_state = ch == 'l' ? 5 : (Character.isLetterOrDigit(ch) ? 3 : next(ch));
+                    break;
+                case 3:
+                    m_state = ch == ':' ? 4 : (Character.isLetterOrDigit(ch) ? 3 : next(ch));
+                    break;
+                case 4:
+                    m_state = ch == 'l' ? 5 : next(ch);
+                    break;
+                case 5:
+                    m_state = ch == 'o' ? 6 : next(ch);
+                    break;
+                case 6:
+                    m_state = ch == 'g' ? 7 : next(ch);
+                    break;
+                case 7:
+                    if (ch == '>') {
+                        final byte[] record = Arrays.copyOfRange(m_buffer, m_recordStart, m_scanned);
+                        m_recordStart = -1;
+                        m_state = BETWEEN_RECORDS;
+                        return record;
+                    }
+                    m_state = next(ch);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown state " + m_state);
+                }
+            }
+            if (m_recordStart < 0) {
+                // nothing worth keeping
+                m_length = 0;
+                m_scanned = 0;
+            }
+            return null;
+        }
+
+        private static int next(final char ch) {
+            return ch == '<' ? 1 : 0;
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String m_prefix;
+        private final AtomicInteger m_count = new AtomicInteger();
+
+        NamedThreadFactory(final String prefix) {
+            m_prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(r, m_prefix + "-" + m_count.incrementAndGet());
+        }
+    }
+
+    /**
+     * Returns the name of this Fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return "Event TCP Receiver[" + m_tcpPort + "]";
+    }
+
+    /**
+     * Returns the status of this Fiber.
+     *
+     * @return a int.
+     */
+    @Override
+    public int getStatus() {
+        return m_status;
+    }
+
+    /**
+     * <p>getStatusText</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getStatusText() {
+        return STATUS_NAMES[getStatus()];
+    }
+
+    /**
+     * <p>status</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String status() {
+        return getStatusText();
+    }
+
+    /**
+     * Called when the fiber is initialized
+     */
+    @Override
+    public void init() {
+        // do nothing
+    }
+
+    /**
+     * Called when the fiber is destroyed
+     */
+    @Override
+    public void destroy() {
+        // do nothing
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addEventHandler(final EventHandler handler) {
+        synchronized (m_eventHandlers) {
+            if (!m_eventHandlers.contains(handler)) {
+                m_eventHandlers.add(handler);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void removeEventHandler(final EventHandler handler) {
+        synchronized (m_eventHandlers) {
+            m_eventHandlers.remove(handler);
+        }
+    }
+
+    /**
+     * <p>getEventHandlers</p>
+     *
+     * @return a {@link java.util.List} object.
+     */
+    public List<EventHandler> getEventHandlers() {
+        synchronized (m_eventHandlers) {
+            return Collections.unmodifiableList(new ArrayList<EventHandler>(m_eventHandlers));
+        }
+    }
+
+    /**
+     * <p>setEventHandlers</p>
+     *
+     * @param eventHandlers a {@link java.util.List} object.
+     */
+    public void setEventHandlers(final List<EventHandler> eventHandlers) {
+        synchronized (m_eventHandlers) {
+            m_eventHandlers.clear();
+            m_eventHandlers.addAll(eventHandlers);
+        }
+    }
+
+    /**
+     * <p>getIpAddress</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getIpAddress() {
+        return m_ipAddress;
+    }
+
+    /**
+     * <p>setIpAddress</p>
+     *
+     * @param ipAddress a {@link java.lang.String} object.
+     */
+    public void setIpAddress(final String ipAddress) {
+        assertNotRunning();
+        m_ipAddress = ipAddress;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Integer getPort() {
+        return m_tcpPort;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setPort(final Integer port) {
+        assertNotRunning();
+        m_tcpPort = port;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addEventHandler(final String name) throws MalformedObjectNameException, InstanceNotFoundException {
+        addEventHandler(new EventHandlerMBeanProxy(new ObjectName(name)));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void removeEventHandler(final String name) throws MalformedObjectNameException, InstanceNotFoundException {
+        removeEventHandler(new EventHandlerMBeanProxy(new ObjectName(name)));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void setLogPrefix(final String prefix) {
+        m_logPrefix = prefix;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void setEventsPerConnection(final Integer number) {
+        assertNotRunning();
+        m_recsPerConn = number.intValue();
+    }
+
+    /**
+     * <p>setEventLoops</p>
+     *
+     * @param eventLoops the number of selector threads
+     */
+    public void setEventLoops(final int eventLoops) {
+        assertNotRunning();
+        m_eventLoops = eventLoops;
+    }
+
+    /**
+     * <p>setWorkerThreads</p>
+     *
+     * @param workerThreads the number of threads that parse and process records
+     */
+    public void setWorkerThreads(final int workerThreads) {
+        assertNotRunning();
+        m_workerThreads = workerThreads;
+    }
+
+    /**
+     * <p>getMaxRecordSize</p>
+     *
+     * @return the largest event log, in bytes, buffered for a connection
+     */
+    public int getMaxRecordSize() {
+        return m_maxRecordSize;
+    }
+
+    /**
+     * <p>setMaxRecordSize</p>
+     *
+     * @param maxRecordSize a int.
+     */
+    public void setMaxRecordSize(final int maxRecordSize) {
+        assertNotRunning();
+        m_maxRecordSize = maxRecordSize;
+    }
+
+    /**
+     * <p>getOpenConnections</p>
+     *
+     * @return a int.
+     */
+    public int getOpenConnections() {
+        return m_openConnections.get();
+    }
+
+    /**
+     * <p>getConnectionsAccepted</p>
+     *
+     * @return a long.
+     */
+    public long getConnectionsAccepted() {
+        return m_connectionsAccepted.get();
+    }
+
+    /**
+     * <p>getRecordsReceived</p>
+     *
+     * @return a long.
+     */
+    public long getRecordsReceived() {
+        return m_recordsReceived.get();
+    }
+
+    /**
+     * <p>getRecordsRejected</p>
+     *
+     * @return a long.
+     */
+    public long getRecordsRejected() {
+        return m_recordsRejected.get();
+    }
+
+    /**
+     * <p>getEventsReceived</p>
+     *
+     * @return a long.
+     */
+    public long getEventsReceived() {
+        return m_eventsReceived.get();
+    }
+
+    private void assertNotRunning() {
+        Assert.state(m_status == START_PENDING || m_status == STOPPED, "The fiber is already running and cannot be modified or started");
+    }
+}
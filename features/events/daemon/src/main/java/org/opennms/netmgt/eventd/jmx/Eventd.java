@@ -29,6 +29,9 @@
 package org.opennms.netmgt.eventd.jmx;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.dao.api.AbstractInterfaceToNodeCache;
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
+import org.opennms.netmgt.eventd.processor.JdbcEventWriter;
 
 /**
  * <p>Eventd class.</p>
@@ -48,4 +51,93 @@ public class Eventd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     protected String getSpringContext() {
         return "eventDaemonContext";       
     }
+
+    @Override
+    public long getEventsPersisted() {
+        if (getWriterStatsStatus()) {
+            return getWriter().getEventsPersisted();
+        } else {
+            return 0L;
+        }
+    }
+
+    @Override
+    public long getPersistBatchesFlushed() {
+        if (getWriterStatsStatus()) {
+            return getWriter().getBatchesFlushed();
+        } else {
+            return 0L;
+        }
+    }
+
+    @Override
+    public double getAveragePersistBatchSize() {
+        if (getWriterStatsStatus()) {
+            return getWriter().getAverageBatchSize();
+        } else {
+            return 0.0;
+        }
+    }
+
+    @Override
+    public double getAveragePersistFlushLatency() {
+        if (getWriterStatsStatus()) {
+            return getWriter().getAverageFlushLatency();
+        } else {
+            return 0.0;
+        }
+    }
+
+    @Override
+    public long getPersistQueueDepth() {
+        if (getWriterStatsStatus()) {
+            return getWriter().getStagedEventCount();
+        } else {
+            return 0L;
+        }
+    }
+
+    @Override
+    public long getInterfaceToNodeCacheHits() {
+        final InterfaceToNodeCache cache = AbstractInterfaceToNodeCache.getInstance();
+        return cache == null ? 0L : cache.getHits();
+    }
+
+    @Override
+    public long getInterfaceToNodeCacheMisses() {
+        final InterfaceToNodeCache cache = AbstractInterfaceToNodeCache.getInstance();
+        return cache == null ? 0L : cache.getMisses();
+    }
+
+    @Override
+    public long getInterfaceToNodeCacheHostNameHits() {
+        final InterfaceToNodeCache cache = AbstractInterfaceToNodeCache.getInstance();
+        return cache == null ? 0L : cache.getHostNameHits();
+    }
+
+    @Override
+    public long getInterfaceToNodeCacheHostNameMisses() {
+        final InterfaceToNodeCache cache = AbstractInterfaceToNodeCache.getInstance();
+        return cache == null ? 0L : cache.getHostNameMisses();
+    }
+
+    @Override
+    public long getInterfaceToNodeCacheRefreshes() {
+        final InterfaceToNodeCache cache = AbstractInterfaceToNodeCache.getInstance();
+        return cache == null ? 0L : cache.getRefreshes();
+    }
+
+    @Override
+    public long getInterfaceToNodeCacheSize() {
+        final InterfaceToNodeCache cache = AbstractInterfaceToNodeCache.getInstance();
+        return cache == null ? 0L : cache.size();
+    }
+
+    private JdbcEventWriter getWriter() {
+        return (JdbcEventWriter) getDaemon().getEventWriter();
+    }
+
+    private boolean getWriterStatsStatus() {
+        return (getDaemon().getEventWriter() instanceof JdbcEventWriter);
+    }
 }
@@ -37,4 +37,58 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventdMBean extends BaseOnmsMBean {
+    /**
+     * @return The number of events persisted by the batching event writer since startup
+     */
+    public long getEventsPersisted();
+
+    /**
+     * @return The number of batches flushed by the batching event writer since startup
+     */
+    public long getPersistBatchesFlushed();
+
+    /**
+     * @return The average number of events per flushed batch
+     */
+    public double getAveragePersistBatchSize();
+
+    /**
+     * @return The average time in milliseconds taken to flush a batch
+     */
+    public double getAveragePersistFlushLatency();
+
+    /**
+     * @return The number of events currently waiting to be persisted
+     */
+    public long getPersistQueueDepth();
+
+    /**
+     * @return The number of interface to node lookups answered from the shared cache
+     */
+    public long getInterfaceToNodeCacheHits();
+
+    /**
+     * @return The number of interface to node lookups that missed the shared cache
+     */
+    public long getInterfaceToNodeCacheMisses();
+
+    /**
+     * @return The number of interface host name lookups answered from the shared cache
+     */
+    public long getInterfaceToNodeCacheHostNameHits();
+
+    /**
+     * @return The number of interface host name lookups that missed the shared cache
+     */
+    public long getInterfaceToNodeCacheHostNameMisses();
+
+    /**
+     * @return The number of full reloads of the shared interface to node cache
+     */
+    public long getInterfaceToNodeCacheRefreshes();
+
+    /**
+     * @return The number of interfaces currently held by the shared interface to node cache
+     */
+    public long getInterfaceToNodeCacheSize();
 }
@@ -32,6 +32,8 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -90,6 +92,8 @@ public abstract class AbstractJdbcPersister implements InitializingBean, EventWr
 
     private String m_getNextIdString;
 
+    private String m_getNextIdBlockString;
+
     /**
      * <p>Constructor for AbstractJdbcPersister.</p>
      */
@@ -222,6 +226,31 @@ public abstract class AbstractJdbcPersister implements InitializingBean, EventWr
         return new JdbcTemplate(getDataSource()).queryForObject(getGetNextIdString(), Integer.class);
     }
 
+    /**
+     * Allocates a block of event IDs.  When getNextIdBlockString is set the
+     * whole block is fetched in a single query, otherwise getNextIdString is
+     * run once per ID.
+     *
+     * @param count the number of IDs to allocate
+     * @return a {@link java.util.List} of count IDs
+     * @throws java.sql.SQLException if any.
+     */
+    protected List<Integer> getNextIds(int count) throws SQLException {
+        if (m_getNextIdBlockString != null) {
+            final List<Integer> ids = new JdbcTemplate(getDataSource()).queryForList(m_getNextIdBlockString, Integer.class, count);
+            if (ids.size() != count) {
+                throw new SQLException("Expected " + count + " IDs from '" + m_getNextIdBlockString + "' but got " + ids.size());
+            }
+            return ids;
+        }
+
+        final List<Integer> ids = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(getNextId());
+        }
+        return ids;
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      *
@@ -297,6 +326,27 @@ public abstract class AbstractJdbcPersister implements InitializingBean, EventWr
         m_getNextIdString = getNextIdString;
     }
 
+    /**
+     * <p>getGetNextIdBlockString</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getGetNextIdBlockString() {
+        return m_getNextIdBlockString;
+    }
+
+    /**
+     * Sets the query used to allocate a block of IDs at once.  The query
+     * takes the block size as its only parameter, e.g.
+     * <code>SELECT nextval('eventsNxtId') FROM generate_series(1, ?)</code>
+     *
+     * @param getNextIdBlockString a {@link java.lang.String} object.
+     */
+    public void setGetNextIdBlockString(String getNextIdBlockString) {
+        // an empty query falls back to one getNextIdString query per ID
+        m_getNextIdBlockString = getNextIdBlockString == null || getNextIdBlockString.trim().isEmpty() ? null : getNextIdBlockString;
+    }
+
     /**
      * <p>checkEventSanityAndDoWeProcess</p>
      *
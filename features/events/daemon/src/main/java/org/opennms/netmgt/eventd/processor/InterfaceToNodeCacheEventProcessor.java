@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2002-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.processor;
+
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventProcessor;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * EventProcessor that keeps the shared {@link InterfaceToNodeCache} up to date
+ * as interfaces are added, deleted and reparented, so the daemons that resolve
+ * source addresses to nodes never have to reload the whole mapping. Node
+ * updates drop the cached host names of the node's interfaces.
+ */
+public class InterfaceToNodeCacheEventProcessor implements EventProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(InterfaceToNodeCacheEventProcessor.class);
+
+    @Autowired(required=false)
+    private InterfaceToNodeCache m_cache;
+
+    /** {@inheritDoc} */
+    @Override
+    public void process(Header eventHeader, Event event) {
+        if (m_cache == null || event.getUei() == null) {
+            return;
+        }
+
+        final String uei = event.getUei();
+        if (EventConstants.NODE_UPDATED_EVENT_UEI.equals(uei) || EventConstants.INTERFACE_IP_HOSTNAME_CHANGED_EVENT_UEI.equals(uei)) {
+            if (event.hasNodeid()) {
+                m_cache.clearHostNames(event.getNodeid().intValue());
+                LOG.debug("process: cleared host names of node {}", event.getNodeid());
+            }
+            return;
+        }
+
+        if (event.getInterfaceAddress() == null) {
+            return;
+        }
+        if (EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI.equals(uei) || EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(uei)) {
+            if (event.hasNodeid()) {
+                m_cache.setNodeId(event.getInterfaceAddress(), event.getNodeid().intValue());
+                LOG.debug("process: mapped {} to node {}", event.getInterface(), event.getNodeid());
+            }
+        } else if (EventConstants.INTERFACE_DELETED_EVENT_UEI.equals(uei)) {
+            m_cache.removeNodeId(event.getInterfaceAddress());
+            LOG.debug("process: removed mapping for {}", event.getInterface());
+        }
+    }
+
+    /**
+     * <p>getInterfaceToNodeCache</p>
+     *
+     * @return a {@link org.opennms.netmgt.dao.api.InterfaceToNodeCache} object.
+     */
+    public InterfaceToNodeCache getInterfaceToNodeCache() {
+        return m_cache;
+    }
+
+    /**
+     * <p>setInterfaceToNodeCache</p>
+     *
+     * @param cache a {@link org.opennms.netmgt.dao.api.InterfaceToNodeCache} object.
+     */
+    public void setInterfaceToNodeCache(InterfaceToNodeCache cache) {
+        m_cache = cache;
+    }
+}
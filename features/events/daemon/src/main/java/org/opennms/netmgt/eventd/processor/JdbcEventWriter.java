@@ -34,7 +34,14 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.opennms.core.utils.DBUtils;
 import org.opennms.netmgt.dao.util.AutoAction;
@@ -53,6 +60,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessException;
+import org.springframework.util.Assert;
 
 /**
  * EventWriter loads the information in each 'Event' into the database.
@@ -82,10 +90,81 @@ import org.springframework.dao.DataAccessException;
  */
 public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriter.class);
+
+    /**
+     * Default maximum number of events inserted in one JDBC batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Default number of events that may be waiting to be persisted before
+     * callers block.
+     */
+    public static final int DEFAULT_QUEUE_LENGTH = 10000;
+
+    private int m_batchSize = DEFAULT_BATCH_SIZE;
+
+    private int m_queueLength = DEFAULT_QUEUE_LENGTH;
+
+    private long m_batchDelay = 0;
+
+    private BlockingQueue<PendingInsert> m_stagingQueue;
+
+    private final Lock m_flushLock = new ReentrantLock();
+
+    private final AtomicLong m_eventsPersisted = new AtomicLong();
+
+    private final AtomicLong m_batchesFlushed = new AtomicLong();
+
+    private final AtomicLong m_flushMillis = new AtomicLong();
+
+    private volatile int m_lastBatchSize = 0;
+
+    /**
+     * An event waiting in the staging queue for its batch to be committed.
+     */
+    private static final class PendingInsert {
+        private final Header m_header;
+        private final Event m_event;
+        private int m_eventId;
+        private Throwable m_failure;
+        private volatile boolean m_done = false;
+
+        public PendingInsert(final Header header, final Event event) {
+            m_header = header;
+            m_event = event;
+        }
+
+        public boolean isDone() {
+            return m_done;
+        }
+
+        public void complete(final Throwable failure) {
+            m_failure = failure;
+            m_done = true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        super.afterPropertiesSet();
+        Assert.state(m_batchSize > 0, "property batchSize must be greater than zero");
+        Assert.state(m_queueLength > 0, "property queueLength must be greater than zero");
+        m_stagingQueue = new LinkedBlockingQueue<PendingInsert>(m_queueLength);
+    }
+
     /**
      * {@inheritDoc}
      *
-     * The method that inserts the event into the database
+     * The method that inserts the event into the database.
+     *
+     * Events from all eventd handler threads are staged in a bounded queue
+     * and written as a group: whichever caller holds the flush lock inserts
+     * everything that is waiting in one JDBC batch and one transaction.
+     * This method only returns once the event has been committed, so the
+     * database ID is set before the event is broadcast.  When the staging
+     * queue is full callers block, which backs up the eventd handler queue.
      */
     @Override
     public void process(final Header eventHeader, final Event event) throws EventProcessorException {
@@ -95,257 +174,445 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
 
         LOG.debug("JdbcEventWriter: processing {} nodeid: {} ipaddr: {} serviceid: {} time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
 
-        Connection connection;
+        final PendingInsert pending = new PendingInsert(eventHeader, event);
         try {
-            connection = getDataSource().getConnection();
-        } catch (final SQLException e) {
+            m_stagingQueue.put(pending);
+
+            while (!pending.isDone()) {
+                m_flushLock.lock();
+                try {
+                    if (!pending.isDone()) {
+                        flush();
+                    }
+                } finally {
+                    m_flushLock.unlock();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new EventProcessorException(e);
         }
 
+        if (pending.m_failure != null) {
+            throw new EventProcessorException(pending.m_failure);
+        }
+
+        LOG.debug("EventWriter finished for : {}", event.getUei());
+    }
+
+    /**
+     * Drains up to batchSize staged events and inserts them in a single
+     * transaction.  If the batch fails, the events are retried one at a time
+     * so that a single bad event does not fail the others.
+     */
+    private void flush() throws InterruptedException {
+        final List<PendingInsert> batch = new ArrayList<PendingInsert>(m_batchSize);
+        m_stagingQueue.drainTo(batch, m_batchSize);
+
+        if (m_batchDelay > 0) {
+            final long deadline = System.currentTimeMillis() + m_batchDelay;
+            while (batch.size() < m_batchSize) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                final PendingInsert next = m_stagingQueue.poll(remaining, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+                m_stagingQueue.drainTo(batch, m_batchSize - batch.size());
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final long persistedBefore = m_eventsPersisted.get();
+        Connection connection = null;
         try {
+            final List<Integer> eventIds = getNextIds(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                final PendingInsert pending = batch.get(i);
+                pending.m_eventId = eventIds.get(i);
+                LOG.debug("DBID: {}", pending.m_eventId);
+                synchronized (pending.m_event) {
+                    pending.m_event.setDbid(pending.m_eventId);
+                }
+            }
+
+            connection = getDataSource().getConnection();
             connection.setAutoCommit(false);
 
             try {
-                insertEvent(eventHeader, event, connection);
-
+                insertEvents(batch, connection);
                 connection.commit();
+                complete(batch, null);
             } catch (final SQLException e) {
-                LOG.warn("Error inserting event into the datastore.", e);
-                try {
-                    connection.rollback();
-                } catch (final Throwable e2) {
-                    LOG.warn("Rollback of transaction failed.", e2);
-                }
-
-                throw e;
+                LOG.warn("Error inserting a batch of {} events into the datastore.", batch.size(), e);
+                rollback(connection);
+                insertIndividually(batch, connection, e);
             } catch (final DataAccessException e) {
-                LOG.warn("Error inserting event into the datastore.", e);
-                try {
-                    connection.rollback();
-                } catch (final Throwable e2) {
-                    LOG.warn("Rollback of transaction failed.", e2);
-                }
-
-                throw e;
+                LOG.warn("Error inserting a batch of {} events into the datastore.", batch.size(), e);
+                rollback(connection);
+                insertIndividually(batch, connection, e);
             }
+        } catch (final SQLException e) {
+            LOG.warn("Error inserting events into the datastore.", e);
+            complete(batch, e);
         } catch (final DataAccessException e) {
-            throw new EventProcessorException(e);
-        } catch (SQLException e) {
-            throw new EventProcessorException(e);
+            LOG.warn("Error inserting events into the datastore.", e);
+            complete(batch, e);
         } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (final SQLException e) {
+                    LOG.warn("SQLException while closing database connection.", e);
+                }
+            }
+            // make sure nobody waits forever on an event that was never completed
+            for (final PendingInsert pending : batch) {
+                if (!pending.isDone()) {
+                    pending.complete(new IllegalStateException("event was not persisted"));
+                }
+            }
+            // only flushes that persisted events count towards the batch statistics
+            final long persisted = m_eventsPersisted.get() - persistedBefore;
+            if (persisted > 0) {
+                m_lastBatchSize = (int) persisted;
+                m_batchesFlushed.incrementAndGet();
+                m_flushMillis.addAndGet(System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    private void insertIndividually(final List<PendingInsert> batch, final Connection connection, final Throwable batchFailure) {
+        if (batch.size() == 1) {
+            complete(batch, batchFailure);
+            return;
+        }
+
+        for (final PendingInsert pending : batch) {
             try {
-                connection.close();
+                insertEvents(Collections.singletonList(pending), connection);
+                connection.commit();
+                complete(Collections.singletonList(pending), null);
             } catch (final SQLException e) {
-                LOG.warn("SQLException while closing database connection.", e);
+                LOG.warn("Error inserting event into the datastore.", e);
+                rollback(connection);
+                pending.complete(e);
+            } catch (final DataAccessException e) {
+                LOG.warn("Error inserting event into the datastore.", e);
+                rollback(connection);
+                pending.complete(e);
             }
         }
+    }
 
-        LOG.debug("EventWriter finished for : {}", event.getUei());
+    private void complete(final List<PendingInsert> batch, final Throwable failure) {
+        for (final PendingInsert pending : batch) {
+            pending.complete(failure);
+        }
+        if (failure == null) {
+            m_eventsPersisted.addAndGet(batch.size());
+        }
+    }
+
+    private static void rollback(final Connection connection) {
+        try {
+            connection.rollback();
+        } catch (final Throwable e) {
+            LOG.warn("Rollback of transaction failed.", e);
+        }
     }
 
     /**
      * Insert values into the EVENTS table
      * 
      * @exception java.sql.SQLException
-     *                Thrown if there is an error adding the event to the
+     *                Thrown if there is an error adding the events to the
      *                database.
-     * @exception java.lang.NullPointerException
-     *                Thrown if a required resource cannot be found in the
-     *                properties file.
      */
-    private void insertEvent(final Header eventHeader, final Event event, final Connection connection) throws SQLException {
-        // Execute the statement to get the next event id
-        final int eventID = getNextId();
-
-        LOG.debug("DBID: {}", eventID);
-
-        synchronized (event) {
-            event.setDbid(eventID);
-        }
+    private void insertEvents(final List<PendingInsert> batch, final Connection connection) throws SQLException {
         final DBUtils d = new DBUtils(getClass());
 
         try {
             final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
             d.watch(insStmt);
 
-            // eventID
-            insStmt.setInt(1, eventID);
+            for (final PendingInsert pending : batch) {
+                insStmt.clearParameters();
+                setEventValues(insStmt, pending.m_header, pending.m_event, pending.m_eventId);
+                insStmt.addBatch();
+            }
 
-            // eventUEI
-            insStmt.setString(2, EventDatabaseConstants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
+            // execute
+            insStmt.executeBatch();
+        } finally {
+            d.cleanUp();
+        }
 
-            // nodeID
-            final Long nodeid = event.getNodeid();
-            set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
+        LOG.debug("SUCCESSFULLY added {} events into the EVENTS table.", batch.size());
+    }
+
+    /**
+     * Sets the insert statement parameters for a single event.
+     */
+    private void setEventValues(final PreparedStatement insStmt, final Header eventHeader, final Event event, final int eventID) throws SQLException {
+        // eventID
+        insStmt.setInt(1, eventID);
 
-            // eventTime
-            insStmt.setTimestamp(4, getEventTime(event));
+        // eventUEI
+        insStmt.setString(2, EventDatabaseConstants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
 
-            // Resolve the event host to a hostname using the ipInterface table
-            String hostname = getEventHost(event);
+        // nodeID
+        final Long nodeid = event.getNodeid();
+        set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
 
-            // eventHost
-            set(insStmt, 5, EventDatabaseConstants.format(hostname, EVENT_HOST_FIELD_SIZE));
+        // eventTime
+        insStmt.setTimestamp(4, getEventTime(event));
 
-            // ipAddr
-            set(insStmt, 6, EventDatabaseConstants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
+        // Resolve the event host to a hostname using the ipInterface table
+        String hostname = getEventHost(event);
 
-            // eventDpName
-            String dpName = "localhost";
-            if (eventHeader != null && eventHeader.getDpName() != null) {
-                dpName = EventDatabaseConstants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
-            } else if (event.getDistPoller() != null) {
-                dpName = EventDatabaseConstants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
-            }
-            insStmt.setString(7, dpName);
+        // eventHost
+        set(insStmt, 5, EventDatabaseConstants.format(hostname, EVENT_HOST_FIELD_SIZE));
 
-            // eventSnmpHost
-            set(insStmt, 8, EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
+        // ipAddr
+        set(insStmt, 6, EventDatabaseConstants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
 
-            // service identifier - convert the service name to a service id
-            set(insStmt, 9, getEventServiceId(event));
+        // eventDpName
+        String dpName = "localhost";
+        if (eventHeader != null && eventHeader.getDpName() != null) {
+            dpName = EventDatabaseConstants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
+        } else if (event.getDistPoller() != null) {
+            dpName = EventDatabaseConstants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
+        }
+        insStmt.setString(7, dpName);
 
-            // eventSnmp
-            if (event.getSnmp() != null) {
-                insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
-            } else {
-                insStmt.setNull(10, Types.VARCHAR);
-            }
+        // eventSnmpHost
+        set(insStmt, 8, EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
-            // eventParms
-
-            // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
-            final String parametersString=EventParameterUtils.format(event);
-            set(insStmt, 11, EventDatabaseConstants.format(parametersString, 0));
-
-            // eventCreateTime
-            final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
-            insStmt.setTimestamp(12, eventCreateTime);
-
-            // eventDescr
-            set(insStmt, 13, EventDatabaseConstants.format(event.getDescr(), 0));
-
-            // eventLoggroup
-            set(insStmt, 14, (event.getLoggroupCount() > 0) ? EventDatabaseConstants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
-
-            // eventLogMsg
-            // eventLog
-            // eventDisplay
-            if (event.getLogmsg() != null) {
-                // set log message
-                set(insStmt, 15, EventDatabaseConstants.format(event.getLogmsg().getContent(), 0));
-                String logdest = event.getLogmsg().getDest();
-                if (logdest.equals("logndisplay")) {
-                    // if 'logndisplay' set both log and display column to yes
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("logonly")) {
-                    // if 'logonly' set log column to true
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_NO);
-                } else if (logdest.equals("displayonly")) {
-                    // if 'displayonly' set display column to true
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("suppress")) {
-                    // if 'suppress' set both log and display to false
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_NO);
-                }
-            } else {
-                insStmt.setNull(15, Types.VARCHAR);
-
-                /*
-                 * If this is an event that had no match in the event conf
-                 * mark it as to be logged and displayed so that there
-                 * are no events that slip through the system
-                 * without the user knowing about them
-                 */
+        // service identifier - convert the service name to a service id
+        set(insStmt, 9, getEventServiceId(event));
+
+        // eventSnmp
+        if (event.getSnmp() != null) {
+            insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
+        } else {
+            insStmt.setNull(10, Types.VARCHAR);
+        }
+
+        // eventParms
+
+        // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
+        final String parametersString=EventParameterUtils.format(event);
+        set(insStmt, 11, EventDatabaseConstants.format(parametersString, 0));
+
+        // eventCreateTime
+        final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
+        insStmt.setTimestamp(12, eventCreateTime);
+
+        // eventDescr
+        set(insStmt, 13, EventDatabaseConstants.format(event.getDescr(), 0));
+
+        // eventLoggroup
+        set(insStmt, 14, (event.getLoggroupCount() > 0) ? EventDatabaseConstants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
+
+        // eventLogMsg
+        // eventLog
+        // eventDisplay
+        if (event.getLogmsg() != null) {
+            // set log message
+            set(insStmt, 15, EventDatabaseConstants.format(event.getLogmsg().getContent(), 0));
+            String logdest = event.getLogmsg().getDest();
+            if (logdest.equals("logndisplay")) {
+                // if 'logndisplay' set both log and display column to yes
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("logonly")) {
+                // if 'logonly' set log column to true
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_NO);
+            } else if (logdest.equals("displayonly")) {
+                // if 'displayonly' set display column to true
+                set(insStmt, 16, MSG_NO);
                 set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("suppress")) {
+                // if 'suppress' set both log and display to false
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_NO);
             }
+        } else {
+            insStmt.setNull(15, Types.VARCHAR);
+
+            /*
+             * If this is an event that had no match in the event conf
+             * mark it as to be logged and displayed so that there
+             * are no events that slip through the system
+             * without the user knowing about them
+             */
+            set(insStmt, 17, MSG_YES);
+        }
 
-            // eventSeverity
-            set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
+        // eventSeverity
+        set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
 
-            // eventPathOutage
-            set(insStmt, 19, (event.getPathoutage() != null) ? EventDatabaseConstants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
+        // eventPathOutage
+        set(insStmt, 19, (event.getPathoutage() != null) ? EventDatabaseConstants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
 
-            // eventCorrelation
-            set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
+        // eventCorrelation
+        set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
 
-            // eventSuppressedCount
-            insStmt.setNull(21, Types.INTEGER);
+        // eventSuppressedCount
+        insStmt.setNull(21, Types.INTEGER);
 
-            // eventOperInstruct
-            set(insStmt, 22, EventDatabaseConstants.format(event.getOperinstruct(), 0)); // the field should be text on the DB
+        // eventOperInstruct
+        set(insStmt, 22, EventDatabaseConstants.format(event.getOperinstruct(), 0)); // the field should be text on the DB
 
-            // eventAutoAction
-            set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
+        // eventAutoAction
+        set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
 
-            // eventOperAction / eventOperActionMenuText
-            if (event.getOperactionCount() > 0) {
-                final List<Operaction> a = new ArrayList<Operaction>();
-                final List<String> b = new ArrayList<String>();
+        // eventOperAction / eventOperActionMenuText
+        if (event.getOperactionCount() > 0) {
+            final List<Operaction> a = new ArrayList<Operaction>();
+            final List<String> b = new ArrayList<String>();
 
-                for (final Operaction eoa : event.getOperactionCollection()) {
-                    a.add(eoa);
-                    b.add(eoa.getMenutext());
-                }
-
-                set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
-                set(insStmt, 25, EventDatabaseConstants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
-            } else {
-                insStmt.setNull(24, Types.VARCHAR);
-                insStmt.setNull(25, Types.VARCHAR);
+            for (final Operaction eoa : event.getOperactionCollection()) {
+                a.add(eoa);
+                b.add(eoa.getMenutext());
             }
 
-            // eventNotification, this column no longer needed
-            insStmt.setNull(26, Types.VARCHAR);
+            set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
+            set(insStmt, 25, EventDatabaseConstants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
+        } else {
+            insStmt.setNull(24, Types.VARCHAR);
+            insStmt.setNull(25, Types.VARCHAR);
+        }
 
-            // eventTroubleTicket / eventTroubleTicket state
-            if (event.getTticket() != null) {
-                set(insStmt, 27, EventDatabaseConstants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
-                set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
-            } else {
-                insStmt.setNull(27, Types.VARCHAR);
-                insStmt.setNull(28, Types.INTEGER);
-            }
+        // eventNotification, this column no longer needed
+        insStmt.setNull(26, Types.VARCHAR);
 
-            // eventForward
-            set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+        // eventTroubleTicket / eventTroubleTicket state
+        if (event.getTticket() != null) {
+            set(insStmt, 27, EventDatabaseConstants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
+            set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
+        } else {
+            insStmt.setNull(27, Types.VARCHAR);
+            insStmt.setNull(28, Types.INTEGER);
+        }
 
-            // eventmouseOverText
-            set(insStmt, 30, EventDatabaseConstants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+        // eventForward
+        set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
 
-            // eventAckUser
-            if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
-                set(insStmt, 31, EventDatabaseConstants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+        // eventmouseOverText
+        set(insStmt, 30, EventDatabaseConstants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
 
-                // eventAckTime - if autoacknowledge is present,
-                // set time to event create time
-                set(insStmt, 32, eventCreateTime);
-            } else {
-                insStmt.setNull(31, Types.INTEGER);
-                insStmt.setNull(32, Types.TIMESTAMP);
-            }
+        // eventAckUser
+        if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
+            set(insStmt, 31, EventDatabaseConstants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
 
-            // eventSource
-            set(insStmt, 33, EventDatabaseConstants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+            // eventAckTime - if autoacknowledge is present,
+            // set time to event create time
+            set(insStmt, 32, eventCreateTime);
+        } else {
+            insStmt.setNull(31, Types.INTEGER);
+            insStmt.setNull(32, Types.TIMESTAMP);
+        }
 
-            // ifindex
-            if (event.hasIfIndex()) {
-                set(insStmt, 34, event.getIfIndex());
-            } else {
-                insStmt.setNull(34, Types.INTEGER);
-            }
-            
-            // execute
-            insStmt.executeUpdate();
-        } finally {
-            d.cleanUp();
+        // eventSource
+        set(insStmt, 33, EventDatabaseConstants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+
+        // ifindex
+        if (event.hasIfIndex()) {
+            set(insStmt, 34, event.getIfIndex());
+        } else {
+            insStmt.setNull(34, Types.INTEGER);
         }
+    }
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return the maximum number of events inserted in one batch
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the maximum number of events inserted in one batch
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>getQueueLength</p>
+     *
+     * @return the number of events that may be staged before callers block
+     */
+    public int getQueueLength() {
+        return m_queueLength;
+    }
+
+    /**
+     * <p>setQueueLength</p>
+     *
+     * @param queueLength the number of events that may be staged before callers block
+     */
+    public void setQueueLength(final int queueLength) {
+        m_queueLength = queueLength;
+    }
+
+    /**
+     * <p>getBatchDelay</p>
+     *
+     * @return the number of milliseconds to wait for a batch to fill up
+     */
+    public long getBatchDelay() {
+        return m_batchDelay;
+    }
+
+    /**
+     * <p>setBatchDelay</p>
+     *
+     * @param batchDelay the number of milliseconds to wait for a batch to fill
+     * up before flushing it; 0 flushes whatever is waiting immediately
+     */
+    public void setBatchDelay(final long batchDelay) {
+        m_batchDelay = batchDelay;
+    }
+
+    public long getEventsPersisted() {
+        return m_eventsPersisted.get();
+    }
+
+    public long getBatchesFlushed() {
+        return m_batchesFlushed.get();
+    }
+
+    public int getLastBatchSize() {
+        return m_lastBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        final long batches = m_batchesFlushed.get();
+        return batches == 0 ? 0.0 : m_eventsPersisted.get() / (double) batches;
+    }
+
+    public double getAverageFlushLatency() {
+        final long batches = m_batchesFlushed.get();
+        return batches == 0 ? 0.0 : m_flushMillis.get() / (double) batches;
+    }
 
-        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+    public int getStagedEventCount() {
+        return m_stagingQueue == null ? 0 : m_stagingQueue.size();
     }
 
     /**
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2002-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.opennms.netmgt.eventd.NodeContextCache;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventProcessor;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * EventProcessor that drops the values cached for parameter expansion when
+ * an event reports that the node they belong to has changed. It runs ahead
+ * of the expander so the triggering event is already expanded with current
+ * values.
+ */
+public class NodeContextCacheEventProcessor implements EventProcessor, InitializingBean {
+    private static final Set<String> INVALIDATING_UEIS = new HashSet<String>(Arrays.asList(
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+        EventConstants.HARDWARE_INVENTORY_SUCCESSFUL_UEI,
+        EventConstants.REINITIALIZE_PRIMARY_SNMP_INTERFACE_EVENT_UEI
+    ));
+
+    private NodeContextCache m_nodeContextCache;
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.lang.IllegalStateException if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws IllegalStateException {
+        Assert.state(m_nodeContextCache != null, "property nodeContextCache must be set");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void process(Header eventHeader, Event event) {
+        if (event.hasNodeid() && INVALIDATING_UEIS.contains(event.getUei())) {
+            m_nodeContextCache.invalidate(event.getNodeid());
+        }
+    }
+
+    /**
+     * <p>getNodeContextCache</p>
+     *
+     * @return a {@link org.opennms.netmgt.eventd.NodeContextCache} object.
+     */
+    public NodeContextCache getNodeContextCache() {
+        return m_nodeContextCache;
+    }
+
+    /**
+     * <p>setNodeContextCache</p>
+     *
+     * @param nodeContextCache a {@link org.opennms.netmgt.eventd.NodeContextCache} object.
+     */
+    public void setNodeContextCache(NodeContextCache nodeContextCache) {
+        m_nodeContextCache = nodeContextCache;
+    }
+}
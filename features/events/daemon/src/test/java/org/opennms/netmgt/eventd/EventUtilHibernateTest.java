@@ -73,9 +73,13 @@ public class EventUtilHibernateTest {
     @Autowired
     private HwEntityDao m_hwEntityDao;
 
+    @Autowired
+    private NodeContextCache m_nodeContextCache;
+
     @Before
     public void setUp() throws Exception {
     	m_populator.populateDatabase();
+    	m_nodeContextCache.invalidateAll();
     }
 
     @Test
@@ -113,6 +117,23 @@ public class EventUtilHibernateTest {
         assertEquals("42", asset);
     }
 
+    @Test
+    public void testCachedValuesAreInvalidated() {
+        OnmsNode node1 = m_populator.getNode1();
+        OnmsAssetRecord asset1 = node1.getAssetRecord();
+        asset1.setAdmin("first-admin");
+        m_assetRecordDao.saveOrUpdate(asset1);
+        assertEquals("first-admin", eventUtilDaoImpl.getAssetFieldValue("asset[admin]", node1.getId()));
+
+        // Served from the cache until the node is invalidated
+        asset1.setAdmin("second-admin");
+        m_assetRecordDao.saveOrUpdate(asset1);
+        assertEquals("first-admin", eventUtilDaoImpl.getAssetFieldValue("asset[admin]", node1.getId()));
+
+        m_nodeContextCache.invalidate(node1.getId());
+        assertEquals("second-admin", eventUtilDaoImpl.getAssetFieldValue("asset[admin]", node1.getId()));
+    }
+
     @Test
     public void getHardwareFieldValue() {
         OnmsNode node1 = m_populator.getNode1();
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class NodeContextCacheTest {
+
+    private static class CountingLoader implements NodeContextCache.Loader {
+        private final AtomicInteger m_loads = new AtomicInteger();
+        private final String m_value;
+
+        private CountingLoader(final String value) {
+            m_value = value;
+        }
+
+        @Override
+        public String load(final Map<String, String> related) {
+            m_loads.incrementAndGet();
+            return m_value;
+        }
+    }
+
+    @Test
+    public void testValuesAreCachedPerNode() {
+        final NodeContextCache cache = new NodeContextCache(60000, 100);
+        final CountingLoader loader = new CountingLoader("node1");
+
+        assertEquals("node1", cache.get(1, "nodelabel", loader));
+        assertEquals("node1", cache.get(1, "nodelabel", loader));
+        assertEquals(1, loader.m_loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // another node has its own values
+        assertEquals("node1", cache.get(2, "nodelabel", loader));
+        assertEquals(2, loader.m_loads.get());
+    }
+
+    @Test
+    public void testMissingValuesAreCached() {
+        final NodeContextCache cache = new NodeContextCache(60000, 100);
+        final CountingLoader loader = new CountingLoader(null);
+
+        assertNull(cache.get(1, "ifalias:192.168.1.1", loader));
+        assertNull(cache.get(1, "ifalias:192.168.1.1", loader));
+        assertEquals(1, loader.m_loads.get());
+    }
+
+    @Test
+    public void testRelatedValuesAreCachedTogether() {
+        final NodeContextCache cache = new NodeContextCache(60000, 100);
+        final NodeContextCache.Loader assetLoader = new NodeContextCache.Loader() {
+            @Override
+            public String load(final Map<String, String> related) {
+                related.put("asset:admin", "root");
+                related.put("asset:serialnumber", "42");
+                return "root";
+            }
+        };
+
+        assertEquals("root", cache.get(1, "asset:admin", assetLoader));
+        assertEquals("42", cache.get(1, "asset:serialnumber", new CountingLoader("wrong")));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final NodeContextCache cache = new NodeContextCache(60000, 100);
+        final CountingLoader loader = new CountingLoader("node1");
+
+        cache.get(1, "nodelabel", loader);
+        cache.get(2, "nodelabel", loader);
+        cache.invalidate(1);
+        cache.get(1, "nodelabel", loader);
+        cache.get(2, "nodelabel", loader);
+        assertEquals(3, loader.m_loads.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final NodeContextCache cache = new NodeContextCache(10, 100);
+        final CountingLoader loader = new CountingLoader("node1");
+
+        cache.get(1, "nodelabel", loader);
+        Thread.sleep(20);
+        cache.get(1, "nodelabel", loader);
+        assertEquals(2, loader.m_loads.get());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        final NodeContextCache cache = new NodeContextCache(60000, 10);
+        final CountingLoader loader = new CountingLoader("node");
+
+        for (int i = 0; i < 100; i++) {
+            cache.get(i, "nodelabel", loader);
+        }
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    public void testInstanceIsShared() {
+        assertSame(NodeContextCache.getInstance(), NodeContextCache.getInstance());
+    }
+}
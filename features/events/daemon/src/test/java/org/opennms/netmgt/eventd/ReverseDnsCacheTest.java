@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+public class ReverseDnsCacheTest {
+
+    /**
+     * An address created with a host name answers getHostName() without
+     * asking a name server.
+     */
+    private static InetAddress addr(final String name, final int lastOctet) throws Exception {
+        return InetAddress.getByAddress(name, new byte[] { 10, 0, 0, (byte)lastOctet });
+    }
+
+    @Test
+    public void testNameIsResolvedAndCached() throws Exception {
+        final ReverseDnsCache cache = new ReverseDnsCache(1, 10, 100, 60000, 5000);
+        final InetAddress router = addr("router.example.org", 1);
+
+        assertEquals(0, cache.size());
+        assertEquals("router.example.org", cache.getHostName(router));
+        assertEquals(1, cache.size());
+
+        // an address for the same IP without a name is answered from the cache
+        assertEquals("router.example.org", cache.getHostName(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 })));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testExpiredNameIsServedWhileRefreshing() throws Exception {
+        final ReverseDnsCache cache = new ReverseDnsCache(1, 10, 100, 1, 5000);
+
+        assertEquals("old.example.org", cache.getHostName(addr("old.example.org", 2)));
+        Thread.sleep(10);
+
+        // the expired name is returned right away, the new one once the refresh is done
+        assertEquals("old.example.org", cache.getHostName(addr("new.example.org", 2)));
+        final long deadline = System.currentTimeMillis() + 5000;
+        String name = null;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            name = cache.getHostName(addr("new.example.org", 2));
+            if ("new.example.org".equals(name)) {
+                break;
+            }
+        }
+        assertEquals("new.example.org", name);
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        final ReverseDnsCache cache = new ReverseDnsCache(2, 10, 3, 60000, 5000);
+        for (int i = 1; i <= 10; i++) {
+            assertEquals("host" + i + ".example.org", cache.getHostName(addr("host" + i + ".example.org", i)));
+        }
+        assertTrue("cache holds " + cache.size() + " names", cache.size() <= 3);
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+
+public class NioTcpEventReceiverTest {
+
+    private NioTcpEventReceiver m_receiver;
+
+    @After
+    public void tearDown() {
+        if (m_receiver != null) {
+            m_receiver.stop();
+        }
+    }
+
+    @Test
+    public void testRecordFraming() {
+        final NioTcpEventReceiver.LogRecordScanner scanner = new NioTcpEventReceiver.LogRecordScanner();
+
+        scanner.append("  \n<log><events/></lo".getBytes());
+        assertNull(scanner.nextRecord());
+
+        scanner.append("g>\r\n<e:log xmlns:e=\"x\"></e:log><log>".getBytes());
+        assertEquals("<log><events/></log>", new String(scanner.nextRecord()));
+        assertEquals("<e:log xmlns:e=\"x\"></e:log>", new String(scanner.nextRecord()));
+        assertNull(scanner.nextRecord());
+        assertEquals(5, scanner.buffered());
+    }
+
+    @Test
+    public void testParseEvents() throws Exception {
+        final List<Event> events = NioTcpEventReceiver.parseEvents((
+                "<log><events>"
+                + "<event><uuid>1</uuid><uei>uei.opennms.org/test/one</uei></event>"
+                + "<event><uuid>2</uuid><uei>uei.opennms.org/test/two</uei></event>"
+                + "</events></log>").getBytes("UTF-8"));
+
+        assertEquals(2, events.size());
+        assertEquals("uei.opennms.org/test/one", events.get(0).getUei());
+        assertEquals("2", events.get(1).getUuid());
+    }
+
+    @Test(timeout = 30000)
+    public void testReceiveAndAcknowledge() throws Exception {
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final ServerSocket probe = new ServerSocket(0);
+        final int port = probe.getLocalPort();
+        probe.close();
+
+        m_receiver = new NioTcpEventReceiver(port, "127.0.0.1");
+        m_receiver.setEventLoops(1);
+        m_receiver.addEventHandler(new EventHandler() {
+            @Override
+            public boolean processEvent(final Event event) {
+                received.add(event.getUei());
+                return true;
+            }
+
+            @Override
+            public void receiptSent(final EventReceipt receipt) {
+            }
+        });
+        m_receiver.start();
+
+        final Socket socket = new Socket("127.0.0.1", port);
+        try {
+            final OutputStream out = socket.getOutputStream();
+            for (int i = 0; i < 3; i++) {
+                out.write(("<log xmlns=\"http://xmlns.opennms.org/xsd/event\"><events>"
+                        + "<event><uuid>" + i + "</uuid><uei>uei.opennms.org/test/" + i + "</uei></event>"
+                        + "</events></log>").getBytes("UTF-8"));
+            }
+            socket.shutdownOutput();
+
+            final InputStream in = socket.getInputStream();
+            final ByteArrayOutputStream receipts = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                receipts.write(buffer, 0, read);
+            }
+
+            final String xml = receipts.toString("UTF-8");
+            for (int i = 0; i < 3; i++) {
+                assertTrue(xml, xml.contains("<uuid>" + i + "</uuid>"));
+            }
+        } finally {
+            socket.close();
+        }
+
+        assertEquals(3, received.size());
+        assertEquals(3, m_receiver.getRecordsReceived());
+        assertEquals(3, m_receiver.getEventsReceived());
+    }
+}
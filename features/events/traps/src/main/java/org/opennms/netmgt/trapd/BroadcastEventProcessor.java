@@ -84,9 +84,15 @@ public final class BroadcastEventProcessor implements EventListener, Initializin
     }
 
     /**
-     * Create message selector to set to the subscription
+     * Create message selector to set to the subscription. Nothing is
+     * subscribed when the manager is backed by the shared interface to node
+     * cache, which eventd already keeps current.
      */
     public void open() {
+        if (usesSharedCache()) {
+            LOG.debug("Not subscribing to interface events: the interface to node cache is updated by eventd");
+            return;
+        }
         List<String> ueiList = new ArrayList<String>();
         ueiList.add(EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI);
         ueiList.add(EventConstants.INTERFACE_DELETED_EVENT_UEI);
@@ -98,7 +104,13 @@ public final class BroadcastEventProcessor implements EventListener, Initializin
      * Unsubscribe from eventd
      */
     public void close() {
-        m_eventMgr.removeEventListener(this);
+        if (!usesSharedCache()) {
+            m_eventMgr.removeEventListener(this);
+        }
+    }
+
+    private boolean usesSharedCache() {
+        return m_trapdIpMgr instanceof HibernateTrapdIpMgr;
     }
 
     /**
@@ -113,7 +113,7 @@ public class EventCreator implements TrapProcessor {
     public void setTrapAddress(InetAddress trapAddress) {
         m_eventBuilder.setSnmpHost(str(trapAddress));
         m_eventBuilder.setInterface(trapAddress);
-        long nodeId = m_trapdIpMgr.getNodeId(str(trapAddress));
+        long nodeId = m_trapdIpMgr.getNodeId(trapAddress);
         if (nodeId != -1) {
             m_eventBuilder.setNodeid(nodeId);
         }
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -35,6 +36,7 @@ import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.opennms.core.utils.InetAddressUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
@@ -97,6 +99,15 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         return longValue(m_knownips.get(addr));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getNodeId(InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        return getNodeId(InetAddressUtils.str(addr));
+    }
+
     /* (non-Javadoc)
      * @see org.opennms.netmgt.trapd.TrapdIpMgr#setNodeId(java.lang.String, long)
      */
@@ -65,6 +65,7 @@ import org.opennms.netmgt.model.OnmsLocationMonitor.MonitorStatus;
 import org.opennms.netmgt.model.OnmsLocationSpecificStatus;
 import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsMonitoringLocationDefinition;
+import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.model.ServiceSelector;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.poller.DistributionContext;
@@ -609,6 +610,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
             final File rrdFile = new File(rrdDir, dsName);
             if (!rrdFile.exists()) {
                 RrdUtils.createRRD(locationMonitor, rrdDir, dsName, m_pollerConfig.getStep(pkg), "GAUGE", 600, "U", "U", m_pollerConfig.getRRAList(pkg));
+                ResourceTypeUtils.fileWritten(new File(rrdDir), dsName + RrdUtils.getExtension());
             }
             RrdUtils.updateRRD(locationMonitor, rrdDir, dsName, System.currentTimeMillis(), String.valueOf(responseTime));
         } catch (final RrdException e) {
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2010-2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.measurements.fetch;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Reduces fetch results to a maximum number of rows.
+ *
+ * Two strategies are available, selected with the
+ * <code>org.opennms.web.rest.measurements.downsampling</code> system property:
+ * <ul>
+ * <li><b>average</b> (default) merges consecutive rows into buckets and
+ * averages the values of each bucket, like RRD consolidation does.</li>
+ * <li><b>lttb</b> keeps the row of each bucket that forms the largest
+ * triangle with its neighbours (Largest-Triangle-Three-Buckets). Peaks and
+ * dips are kept as they are instead of being averaged away. All the columns
+ * share the timestamps, so the area is summed over the columns, each scaled
+ * by its own range.</li>
+ * </ul>
+ */
+public final class Downsampler {
+
+    public static final String AVERAGE = "average";
+
+    public static final String LTTB = "lttb";
+
+    private static final String STRATEGY = System.getProperty("org.opennms.web.rest.measurements.downsampling", AVERAGE);
+
+    private Downsampler() {
+    }
+
+    /**
+     * Downsamples the results with the configured strategy.
+     *
+     * @param results the results to reduce
+     * @param maxrows maximum number of rows - no limit when <= 0
+     * @return the given results if they are already small enough
+     */
+    public static FetchResults downsample(final FetchResults results, final int maxrows) {
+        if (maxrows <= 0 || results.getTimestamps().length <= maxrows) {
+            return results;
+        }
+        if (LTTB.equalsIgnoreCase(STRATEGY)) {
+            return largestTriangleThreeBuckets(results, maxrows);
+        }
+        return average(results, maxrows);
+    }
+
+    /**
+     * Averages consecutive rows. Each bucket is stamped with the timestamp
+     * of its last row and NaN values are ignored.
+     */
+    public static FetchResults average(final FetchResults results, final int maxrows) {
+        final long[] timestamps = results.getTimestamps();
+        final int rows = timestamps.length;
+        if (maxrows <= 0 || rows <= maxrows) {
+            return results;
+        }
+
+        final int rowsPerBucket = (rows + maxrows - 1) / maxrows;
+        final int buckets = (rows + rowsPerBucket - 1) / rowsPerBucket;
+
+        final long[] bucketTimestamps = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            bucketTimestamps[i] = timestamps[Math.min(rows, (i + 1) * rowsPerBucket) - 1];
+        }
+
+        final Map<String, double[]> columns = Maps.newHashMapWithExpectedSize(results.getColumns().size());
+        for (final Map.Entry<String, double[]> column : results.getColumns().entrySet()) {
+            final double[] values = column.getValue();
+            final double[] averages = new double[buckets];
+            for (int i = 0; i < buckets; i++) {
+                double sum = 0;
+                int count = 0;
+                for (int j = i * rowsPerBucket; j < Math.min(rows, (i + 1) * rowsPerBucket); j++) {
+                    if (!Double.isNaN(values[j])) {
+                        sum += values[j];
+                        count++;
+                    }
+                }
+                averages[i] = count > 0 ? sum / count : Double.NaN;
+            }
+            columns.put(column.getKey(), averages);
+        }
+
+        return new FetchResults(bucketTimestamps, columns, results.getStep() * rowsPerBucket, results.getConstants());
+    }
+
+    /**
+     * Selects rows with the Largest-Triangle-Three-Buckets algorithm. The
+     * first and last rows are always kept.
+     */
+    public static FetchResults largestTriangleThreeBuckets(final FetchResults results, final int maxrows) {
+        final long[] timestamps = results.getTimestamps();
+        final int rows = timestamps.length;
+        if (maxrows <= 0 || rows <= maxrows) {
+            return results;
+        }
+        if (maxrows < 3) {
+            return average(results, maxrows);
+        }
+
+        final String[] labels = results.getColumns().keySet().toArray(new String[results.getColumns().size()]);
+        final double[][] values = new double[labels.length][];
+        final double[] scales = new double[labels.length];
+        for (int c = 0; c < labels.length; c++) {
+            values[c] = results.getColumns().get(labels[c]);
+            scales[c] = getRange(values[c]);
+        }
+
+        final int[] selected = new int[maxrows];
+        final double bucketSize = (double) (rows - 2) / (maxrows - 2);
+        final double[] nextAverages = new double[labels.length];
+        int a = 0;
+        selected[0] = 0;
+        for (int i = 0; i < maxrows - 2; i++) {
+            final int bucketStart = (int) Math.floor(i * bucketSize) + 1;
+            final int bucketEnd = (int) Math.floor((i + 1) * bucketSize) + 1;
+
+            // Average point of the next bucket, the last row for the last bucket
+            final int nextStart = bucketEnd;
+            final int nextEnd = Math.min(rows, (int) Math.floor((i + 2) * bucketSize) + 1);
+            double nextTimestamp = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                nextTimestamp += timestamps[j];
+            }
+            nextTimestamp /= nextEnd - nextStart;
+            for (int c = 0; c < labels.length; c++) {
+                nextAverages[c] = average(values[c], nextStart, nextEnd);
+            }
+
+            double maxArea = -1;
+            int maxRow = bucketStart;
+            for (int b = bucketStart; b < bucketEnd; b++) {
+                double area = 0;
+                for (int c = 0; c < labels.length; c++) {
+                    final double ay = values[c][a];
+                    final double by = values[c][b];
+                    final double cy = nextAverages[c];
+                    if (Double.isNaN(ay) || Double.isNaN(by) || Double.isNaN(cy)) {
+                        continue;
+                    }
+                    area += Math.abs((timestamps[a] - nextTimestamp) * (by - ay)
+                            - (timestamps[a] - timestamps[b]) * (cy - ay)) / scales[c];
+                }
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxRow = b;
+                }
+            }
+            selected[i + 1] = maxRow;
+            a = maxRow;
+        }
+        selected[maxrows - 1] = rows - 1;
+
+        final long[] selectedTimestamps = new long[maxrows];
+        for (int i = 0; i < maxrows; i++) {
+            selectedTimestamps[i] = timestamps[selected[i]];
+        }
+        final Map<String, double[]> columns = Maps.newHashMapWithExpectedSize(labels.length);
+        for (int c = 0; c < labels.length; c++) {
+            final double[] selectedValues = new double[maxrows];
+            for (int i = 0; i < maxrows; i++) {
+                selectedValues[i] = values[c][selected[i]];
+            }
+            columns.put(labels[c], selectedValues);
+        }
+
+        final long step = results.getStep() * (long) Math.ceil((double) rows / maxrows);
+        return new FetchResults(selectedTimestamps, columns, step, results.getConstants());
+    }
+
+    private static double average(final double[] values, final int from, final int to) {
+        double sum = 0;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(values[i])) {
+                sum += values[i];
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    private static double getRange(final double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (final double value : values) {
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        return max > min ? max - min : 1.0;
+    }
+}
@@ -29,25 +29,40 @@
 package org.opennms.web.rest.measurements.fetch;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.jrobin.core.RrdException;
 import org.jrobin.data.DataProcessor;
 import org.opennms.netmgt.dao.api.ResourceDao;
 import org.opennms.web.rest.measurements.model.Source;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
  * Used to fetch measurements from JRB files.
  *
+ * The sources are grouped by file and the files are processed in parallel
+ * on the pool owned by the {@link MeasurementFetchStrategyFactory}.
+ * The results are merged on the finest step of the files and reduced to
+ * <code>maxrows</code> with the {@link Downsampler}.
+ *
  * @author Jesse White <jesse@opennms.org>
  * @author Dustin Frisch <fooker@lab.sh>
  */
 public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy {
 
-    public JrobinFetchStrategy(final ResourceDao resourceDao) {
+    private final ExecutorService m_fetchPool;
+
+    public JrobinFetchStrategy(final ResourceDao resourceDao, final ExecutorService fetchPool) {
         super(resourceDao);
+        m_fetchPool = fetchPool;
     }
 
     /**
@@ -66,38 +81,150 @@ public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy {
             stepInSeconds = 1;
         }
 
-        final DataProcessor dproc = new DataProcessor(startInSeconds, endInSeconds);
-        if (maxrows > 0) {
-            dproc.setPixelCount(maxrows);
-        }
-        dproc.setFetchRequestResolution(stepInSeconds);
-
+        // Group the sources by file, so that each file is only processed once
+        final Map<String, List<Source>> sourcesByRrd = Maps.newLinkedHashMap();
         for (final Map.Entry<Source, String> entry : rrdsBySource.entrySet()) {
-            final Source source = entry.getKey();
-            final String rrdFile = entry.getValue();
+            List<Source> sources = sourcesByRrd.get(entry.getValue());
+            if (sources == null) {
+                sources = Lists.newArrayList();
+                sourcesByRrd.put(entry.getValue(), sources);
+            }
+            sources.add(entry.getKey());
+        }
 
-            dproc.addDatasource(source.getLabel(), rrdFile, source.getAttribute(),
-                    source.getAggregation());
+        if (sourcesByRrd.isEmpty()) {
+            return new FetchResults(new long[0], Maps.<String, double[]>newHashMap(), stepInSeconds * 1000, constants);
         }
 
+        final List<Future<FileResults>> futures = Lists.newArrayListWithCapacity(sourcesByRrd.size());
         try {
-            dproc.processData();
-        } catch (IOException e) {
+            for (final Map.Entry<String, List<Source>> entry : sourcesByRrd.entrySet()) {
+                futures.add(m_fetchPool.submit(new FileFetcher(startInSeconds, endInSeconds, stepInSeconds,
+                        entry.getKey(), entry.getValue())));
+            }
+
+            final List<FileResults> fileResults = Lists.newArrayListWithCapacity(futures.size());
+            for (final Future<FileResults> future : futures) {
+                fileResults.add(future.get());
+            }
+            return Downsampler.downsample(merge(fileResults, constants), maxrows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RrdException("JRB processing was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RrdException) {
+                throw (RrdException) e.getCause();
+            }
             throw new RrdException("JRB processing failed.", e);
+        } finally {
+            for (final Future<FileResults> future : futures) {
+                future.cancel(true);
+            }
         }
+    }
 
-        final long[] timestamps = dproc.getTimestamps();
+    /**
+     * Merges the results of the files on the timestamps of the file with
+     * the finest step. Files with a coarser step, which use a different
+     * archive, contribute the value of the row that covers each timestamp.
+     */
+    private static FetchResults merge(final List<FileResults> fileResults, final Map<String, Object> constants) {
+        FileResults finest = fileResults.get(0);
+        for (final FileResults results : fileResults) {
+            if (results.m_step < finest.m_step) {
+                finest = results;
+            }
+        }
+
+        final long[] timestamps = finest.m_timestamps;
+        final Map<String, double[]> columns = Maps.newHashMap();
+        for (final FileResults results : fileResults) {
+            if (Arrays.equals(results.m_timestamps, timestamps)) {
+                columns.putAll(results.m_columns);
+                continue;
+            }
+            for (final Map.Entry<String, double[]> column : results.m_columns.entrySet()) {
+                columns.put(column.getKey(), resample(results.m_timestamps, results.m_step, column.getValue(), timestamps));
+            }
+        }
 
         // Convert the timestamps to milliseconds
+        final long[] timestampsInMs = new long[timestamps.length];
         for (int i = 0; i < timestamps.length; i++) {
-            timestamps[i] *= 1000;
+            timestampsInMs[i] = timestamps[i] * 1000;
         }
 
-        final Map<String, double[]> columns = Maps.newHashMapWithExpectedSize(rrdsBySource.keySet().size());
-        for (Source source : rrdsBySource.keySet()) {
-            columns.put(source.getLabel(), dproc.getValues(source.getLabel()));
+        return new FetchResults(timestampsInMs, columns, finest.m_step * 1000, constants);
+    }
+
+    /**
+     * A row stamped with t holds the value for the interval (t - step, t].
+     */
+    private static double[] resample(final long[] timestamps, final long step, final double[] values, final long[] targetTimestamps) {
+        final double[] resampled = new double[targetTimestamps.length];
+        int row = 0;
+        for (int i = 0; i < targetTimestamps.length; i++) {
+            final long t = targetTimestamps[i];
+            while (row < timestamps.length && timestamps[row] < t) {
+                row++;
+            }
+            resampled[i] = row < timestamps.length && timestamps[row] - step < t ? values[row] : Double.NaN;
         }
+        return resampled;
+    }
+
+    private static class FileResults {
+        private final long[] m_timestamps;
+        private final long m_step;
+        private final Map<String, double[]> m_columns;
+
+        private FileResults(final long[] timestamps, final long step, final Map<String, double[]> columns) {
+            m_timestamps = timestamps;
+            m_step = step;
+            m_columns = columns;
+        }
+    }
+
+    /**
+     * Processes all the sources of one file.
+     */
+    private static class FileFetcher implements Callable<FileResults> {
+        private final long m_start;
+        private final long m_end;
+        private final long m_step;
+        private final String m_rrdFile;
+        private final List<Source> m_sources;
+
+        private FileFetcher(final long start, final long end, final long step, final String rrdFile, final List<Source> sources) {
+            m_start = start;
+            m_end = end;
+            m_step = step;
+            m_rrdFile = rrdFile;
+            m_sources = sources;
+        }
+
+        @Override
+        public FileResults call() throws RrdException {
+            final DataProcessor dproc = new DataProcessor(m_start, m_end);
+            dproc.setFetchRequestResolution(m_step);
+
+            for (final Source source : m_sources) {
+                dproc.addDatasource(source.getLabel(), m_rrdFile, source.getAttribute(),
+                        source.getAggregation());
+            }
 
-        return new FetchResults(timestamps, columns, dproc.getStep() * 1000, constants);
+            try {
+                dproc.processData();
+            } catch (IOException e) {
+                throw new RrdException("JRB processing failed.", e);
+            }
+
+            final Map<String, double[]> columns = Maps.newHashMapWithExpectedSize(m_sources.size());
+            for (final Source source : m_sources) {
+                columns.put(source.getLabel(), dproc.getValues(source.getLabel()));
+            }
+
+            return new FileResults(dproc.getTimestamps(), dproc.getStep(), columns);
+        }
     }
 }
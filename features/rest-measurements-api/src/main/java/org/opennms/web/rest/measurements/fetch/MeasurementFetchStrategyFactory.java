@@ -28,6 +28,9 @@
 
 package org.opennms.web.rest.measurements.fetch;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.opennms.netmgt.dao.api.ResourceDao;
 import org.opennms.netmgt.rrd.MultiOutputRrdStrategy;
 import org.opennms.netmgt.rrd.QueuingRrdStrategy;
@@ -35,32 +38,50 @@ import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.netmgt.rrd.jrobin.JRobinRrdStrategy;
 import org.opennms.netmgt.rrd.rrdtool.JniRrdStrategy;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Used to instantiate a fetch strategy based on the
  * current persistence strategy.
  *
+ * The JRB files are fetched on a pool shared by all the strategies,
+ * sized with the <code>org.opennms.web.rest.measurements.fetchThreads</code>
+ * system property and shut down with the factory.
+ *
  * @author Jesse White <jesse@opennms.org>
  * @author Dustin Frisch <fooker@lab.sh>
  */
-public class MeasurementFetchStrategyFactory {
+public class MeasurementFetchStrategyFactory implements DisposableBean {
+
+    private static final int FETCH_THREADS = Integer.getInteger("org.opennms.web.rest.measurements.fetchThreads",
+            Runtime.getRuntime().availableProcessors());
 
     @Autowired
     private ResourceDao m_resourceDao;
 
+    private final ExecutorService m_fetchPool = Executors.newFixedThreadPool(Math.max(1, FETCH_THREADS),
+            new ThreadFactoryBuilder().setNameFormat("Measurements-Fetch-%d").setDaemon(true).build());
+
 	public MeasurementFetchStrategy getFetchStrategy() {
 		RrdStrategy<?, ?> strategy = findRrdStrategy();
 
 		if (strategy instanceof JniRrdStrategy) {
 			return new RrdtoolXportFetchStrategy(m_resourceDao);
         } else if (strategy instanceof JRobinRrdStrategy) {
-		return new JrobinFetchStrategy(m_resourceDao);
+		return new JrobinFetchStrategy(m_resourceDao, m_fetchPool);
         } else {
             throw new RuntimeException("Unsupported RRD strategy: " + strategy.getClass());
         }
 	}
 
+    @Override
+    public void destroy() {
+        m_fetchPool.shutdownNow();
+    }
+
 	private static RrdStrategy<?, ?> findRrdStrategy() {
         return findRrdStrategy(RrdUtils.getStrategy());
     }
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2010-2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.measurements.fetch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class DownsamplerTest {
+
+    private static FetchResults createResults(final double[]... columns) {
+        final long[] timestamps = new long[columns[0].length];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = (i + 1) * 300000L;
+        }
+        final Map<String, double[]> columnsByLabel = Maps.newHashMap();
+        for (int i = 0; i < columns.length; i++) {
+            columnsByLabel.put("c" + i, columns[i]);
+        }
+        return new FetchResults(timestamps, columnsByLabel, 300000L, Maps.<String, Object>newHashMap());
+    }
+
+    @Test
+    public void canLeaveSmallResultsUntouched() {
+        final FetchResults results = createResults(new double[] { 1, 2, 3 });
+        assertSame(results, Downsampler.average(results, 3));
+        assertSame(results, Downsampler.largestTriangleThreeBuckets(results, 0));
+    }
+
+    @Test
+    public void canAverageBuckets() {
+        final FetchResults results = Downsampler.average(createResults(new double[] { 1, 3, Double.NaN, 5, Double.NaN, Double.NaN, 7 }), 3);
+
+        assertArrayEquals(new long[] { 900000L, 1800000L, 2100000L }, results.getTimestamps());
+        assertArrayEquals(new double[] { 2, 5, 7 }, results.getColumns().get("c0"), 0.0001);
+        assertEquals(900000L, results.getStep());
+
+        final FetchResults gaps = Downsampler.average(createResults(new double[] { Double.NaN, Double.NaN, 1, 1 }), 2);
+        assertEquals(Double.NaN, gaps.getColumns().get("c0")[0], 0.0);
+    }
+
+    @Test
+    public void canKeepPeaksWithLttb() {
+        final double[] values = new double[100];
+        final double[] flat = new double[100];
+        values[37] = 100;
+        values[71] = -50;
+        final FetchResults results = Downsampler.largestTriangleThreeBuckets(createResults(values, flat), 10);
+
+        assertEquals(10, results.getTimestamps().length);
+        assertEquals(300000L, results.getTimestamps()[0]);
+        assertEquals(30000000L, results.getTimestamps()[9]);
+
+        double max = Double.NEGATIVE_INFINITY;
+        double min = Double.POSITIVE_INFINITY;
+        for (final double value : results.getColumns().get("c0")) {
+            max = Math.max(max, value);
+            min = Math.min(min, value);
+        }
+        assertEquals(100, max, 0.0);
+        assertEquals(-50, min, 0.0);
+        assertEquals(10, results.getColumns().get("c1").length);
+
+        // the rows are shared by all columns
+        assertEquals(38 * 300000L, results.getTimestamps()[indexOf(results.getColumns().get("c0"), 100)]);
+    }
+
+    private static int indexOf(final double[] values, final double value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -28,12 +28,13 @@
 
 package org.opennms.features.topology.plugins.topo.linkd.internal;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
 import org.apache.commons.lang.StringUtils;
-import org.opennms.core.criteria.restrictions.EqRestriction;
+import org.opennms.core.criteria.restrictions.InRestriction;
 import org.opennms.core.utils.LldpUtils.LldpPortIdSubType;
 import org.opennms.features.topology.api.GraphContainer;
 import org.opennms.features.topology.api.OperationContext;
@@ -51,6 +52,7 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.xml.bind.JAXBException;
 
 import java.io.File;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.util.*;
 
@@ -497,13 +499,20 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
 
     private void getOspfLinks() {
         List<OspfLink> allLinks =  getOspfLinkDao().findAll();
+
+        // Index the links by their own address so that the remote side of
+        // each link is found with a lookup instead of a scan of every link
+        Multimap<InetAddress, OspfLink> linksByIpAddr = ArrayListMultimap.create();
+        for (OspfLink link : allLinks) {
+            linksByIpAddr.put(link.getOspfIpAddr(), link);
+        }
+
         Set<OspfLinkDetail> combinedLinkDetails = new HashSet<OspfLinkDetail>();
         for(OspfLink sourceLink : allLinks) {
 
-            for (OspfLink targetLink : allLinks) {
-                boolean ipAddrCheck = sourceLink.getOspfRemIpAddr().equals(targetLink.getOspfIpAddr()) && targetLink.getOspfRemIpAddr().equals(sourceLink.getOspfIpAddr());
+            for (OspfLink targetLink : linksByIpAddr.get(sourceLink.getOspfRemIpAddr())) {
+                boolean ipAddrCheck = targetLink.getOspfRemIpAddr().equals(sourceLink.getOspfIpAddr());
                 if(ipAddrCheck) {
-//                    String id = "ospf::" + Math.min(sourceLink.getId(), targetLink.getId()) + "||" + Math.max(sourceLink.getId(), targetLink.getId());
                     AbstractVertex source = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, sourceLink.getNode().getNodeId(), sourceLink.getNode().getLabel());
                     source.setIpAddress(sourceLink.getOspfIpAddr().getHostAddress());
 
@@ -524,71 +533,105 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         }
     }
 
+    /**
+     * The (chassis id, port id, port description, port id subtype) tuple
+     * identifying the local end of an LLDP link.
+     */
+    private static List<Object> getLldpLocalKey(LldpElement element, LldpLink link) {
+        return Arrays.<Object>asList(element.getLldpChassisId(), link.getLldpPortId(), link.getLldpPortDescr(), link.getLldpPortIdSubType());
+    }
+
+    /**
+     * The tuple identifying the remote end of an LLDP link, comparable with
+     * {@link #getLldpLocalKey(LldpElement, LldpLink)} of the link seen from
+     * the other side.
+     */
+    private static List<Object> getLldpRemoteKey(LldpLink link) {
+        return Arrays.<Object>asList(link.getLldpRemChassisId(), link.getLldpRemPortId(), link.getLldpRemPortDescr(), link.getLldpRemPortIdSubType());
+    }
+
     private void getLldpLinks() {
         List<LldpLink> allLinks = m_lldpLinkDao.findAll();
+
+        // Index the links by their local end so that the other side of
+        // each link is found with a lookup instead of a scan of every link
+        Map<Integer, List<Object>> localKeys = new HashMap<Integer, List<Object>>();
+        Multimap<List<Object>, LldpLink> linksByLocalKey = ArrayListMultimap.create();
+        for (LldpLink link : allLinks) {
+            LldpElement element = link.getNode().getLldpElement();
+            if (element == null) {
+                LOG.debug("loadtopology: node of lldp link with id '{}' has no lldp element, skipping", link.getId());
+                continue;
+            }
+            List<Object> localKey = getLldpLocalKey(element, link);
+            localKeys.put(link.getId(), localKey);
+            linksByLocalKey.put(localKey, link);
+        }
+
         Set<LldpLinkDetail> combinedLinkDetails = new HashSet<LldpLinkDetail>();
         Set<Integer> parsed = new HashSet<Integer>();
+        List<LldpLink> unmatched = new ArrayList<LldpLink>();
         for (LldpLink sourceLink : allLinks) {
             LOG.debug("loadtopology: parsing lldp link with id '{}' link '{}' ", sourceLink.getId(), sourceLink);
-            if (parsed.contains(sourceLink.getId())) {
-                LOG.debug("loadtopology: lldp link with id '{]' already parsed, skipping", sourceLink.getId());
+            List<Object> sourceKey = localKeys.get(sourceLink.getId());
+            if (sourceKey == null || parsed.contains(sourceLink.getId())) {
+                LOG.debug("loadtopology: lldp link with id '{}' already parsed, skipping", sourceLink.getId());
                 continue;
             }
             parsed.add(sourceLink.getId());
             OnmsNode sourceNode = sourceLink.getNode();
-            LldpElement sourceElement = sourceNode.getLldpElement();
-            Vertex source = getVertex(getVertexNamespace(), sourceNode.getNodeId());
-            if (source == null) {
-                source = getVertex(sourceNode);
-                addVertices(source);
+            if (getVertex(getVertexNamespace(), sourceNode.getNodeId()) == null) {
+                addVertices(getVertex(sourceNode));
             }
 
             LldpLink targetLink = null;
-            for (LldpLink link : allLinks) {
-                LOG.debug("loadtopology: parsing lldp link with id '{}' link '{}' ", link.getId(), link);
+            for (LldpLink link : linksByLocalKey.get(getLldpRemoteKey(sourceLink))) {
                 if (parsed.contains(link.getId())) {
-                    LOG.debug("loadtopology: lldp link with id '{]' already parsed, skipping", link.getId());
                     continue;
                 }
-                LldpElement element = link.getNode().getLldpElement();
-                //Compare the remote data to the targetNode element data
-                if (!sourceLink.getLldpRemChassisId().equals(element.getLldpChassisId()) || !link.getLldpRemChassisId().equals(sourceElement.getLldpChassisId())) 
-                    continue;
-                boolean bool1 = sourceLink.getLldpRemPortId().equals(link.getLldpPortId()) && link.getLldpRemPortId().equals(sourceLink.getLldpPortId());
-                boolean bool2 = sourceLink.getLldpRemPortDescr().equals(link.getLldpPortDescr()) && link.getLldpRemPortDescr().equals(sourceLink.getLldpPortDescr());
-                boolean bool3 = sourceLink.getLldpRemPortIdSubType() == link.getLldpPortIdSubType() && link.getLldpRemPortIdSubType() == sourceLink.getLldpPortIdSubType();
-
-                if (bool1 && bool2 && bool3) {
+                //Compare the remote data of the candidate to the source link
+                if (getLldpRemoteKey(link).equals(sourceKey)) {
                     targetLink=link;
                     parsed.add(targetLink.getId());
                     LOG.debug("loadtopology: found lldp mutual link: '{}' and '{}' ", sourceLink,targetLink);
                     break;
                 }
             }
-            
-            if (targetLink == null) {
-                final org.opennms.core.criteria.Criteria criteria = new org.opennms.core.criteria.Criteria(OnmsNode.class).addRestriction(new EqRestriction("sysName", sourceLink.getLldpRemSysname()));
-                List<OnmsNode> nodes = m_nodeDao.findMatching(criteria);
-                if (nodes.size() == 1) {
-                    targetLink = reverseLldpLink(nodes.get(0), sourceLink.getNode().getLldpElement(), sourceLink); 
-                    LOG.debug("loadtopology: found lldp link using lldp rem sysname: '{}' and '{}'", sourceLink, targetLink);
-                }
-            }
-            
+
             if (targetLink == null) {
-                LOG.debug("loadtopology: cannot found target node for link: '{}'", sourceLink);
+                unmatched.add(sourceLink);
                 continue;
             }
-                
-            OnmsNode targetNode = targetLink.getNode();
-            Vertex target = getVertex(getVertexNamespace(), targetNode.getNodeId());
-            if (target == null) {
-                target = getVertex(targetNode);
-                addVertices(target);
+            addLldpLinkDetail(combinedLinkDetails, sourceLink, targetLink);
+        }
+
+        if (!unmatched.isEmpty()) {
+            // Fall back to the remote system name, looking up the nodes of
+            // all of the unmatched links at once
+            Set<String> sysNames = new HashSet<String>();
+            for (LldpLink sourceLink : unmatched) {
+                if (sourceLink.getLldpRemSysname() != null) {
+                    sysNames.add(sourceLink.getLldpRemSysname());
+                }
+            }
+            Multimap<String, OnmsNode> nodesBySysName = ArrayListMultimap.create();
+            if (!sysNames.isEmpty()) {
+                final org.opennms.core.criteria.Criteria criteria = new org.opennms.core.criteria.Criteria(OnmsNode.class).addRestriction(new InRestriction("sysName", sysNames));
+                for (OnmsNode node : m_nodeDao.findMatching(criteria)) {
+                    nodesBySysName.put(node.getSysName(), node);
+                }
             }
-            combinedLinkDetails.add(new LldpLinkDetail(Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
-                                                       source, sourceLink, target, targetLink));
 
+            for (LldpLink sourceLink : unmatched) {
+                Collection<OnmsNode> nodes = nodesBySysName.get(sourceLink.getLldpRemSysname());
+                if (nodes.size() != 1) {
+                    LOG.debug("loadtopology: cannot found target node for link: '{}'", sourceLink);
+                    continue;
+                }
+                LldpLink targetLink = reverseLldpLink(nodes.iterator().next(), sourceLink.getNode().getLldpElement(), sourceLink);
+                LOG.debug("loadtopology: found lldp link using lldp rem sysname: '{}' and '{}'", sourceLink, targetLink);
+                addLldpLinkDetail(combinedLinkDetails, sourceLink, targetLink);
+            }
         }
 
         for (LldpLinkDetail linkDetail : combinedLinkDetails) {
@@ -597,6 +640,24 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         }
     }
 
+    private void addLldpLinkDetail(Set<LldpLinkDetail> combinedLinkDetails, LldpLink sourceLink, LldpLink targetLink) {
+        OnmsNode sourceNode = sourceLink.getNode();
+        Vertex source = getVertex(getVertexNamespace(), sourceNode.getNodeId());
+        if (source == null) {
+            source = getVertex(sourceNode);
+            addVertices(source);
+        }
+
+        OnmsNode targetNode = targetLink.getNode();
+        Vertex target = getVertex(getVertexNamespace(), targetNode.getNodeId());
+        if (target == null) {
+            target = getVertex(targetNode);
+            addVertices(target);
+        }
+        combinedLinkDetails.add(new LldpLinkDetail(Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
+                                                   source, sourceLink, target, targetLink));
+    }
+
     private void getCdpLinks() {
         List<CdpTopologyLink> cdpLinks = m_cdpLinkDao.findLinksForTopology();
 
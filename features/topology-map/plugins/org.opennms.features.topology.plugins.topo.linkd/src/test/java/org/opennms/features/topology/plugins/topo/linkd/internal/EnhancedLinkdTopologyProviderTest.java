@@ -35,21 +35,29 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.JAXBException;
 
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.core.criteria.restrictions.InRestriction;
+import org.opennms.core.criteria.restrictions.Restriction;
 import org.opennms.core.test.MockLogAppender;
 import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.LldpUtils.LldpChassisIdSubType;
+import org.opennms.core.utils.LldpUtils.LldpPortIdSubType;
 import org.opennms.features.topology.api.Constants;
 import org.opennms.features.topology.api.OperationContext;
 import org.opennms.features.topology.api.topo.AbstractVertex;
@@ -66,6 +74,7 @@ import org.opennms.features.topology.api.topo.WrappedLeafVertex;
 import org.opennms.features.topology.api.topo.WrappedVertex;
 import org.opennms.netmgt.dao.api.DataLinkInterfaceDao;
 import org.opennms.netmgt.dao.api.LldpLinkDao;
+import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.OspfLinkDao;
 import org.opennms.netmgt.model.DataLinkInterface;
 import org.opennms.netmgt.model.FilterManager;
@@ -336,6 +345,65 @@ public class EnhancedLinkdTopologyProviderTest {
         m_topologyProvider.setLldpLinkDao(dao);
     }
 
+    @Test
+    public void testLldpSysNameFallbackUsesOneQuery() throws Exception {
+        OnmsNode node3 = m_databasePopulator.getNode3();
+        node3.setSysName("node3SysName");
+        OnmsNode node4 = m_databasePopulator.getNode4();
+        node4.setSysName("node4SysName");
+
+        // None of these links has a mutual link, so all of them fall back
+        // to the remote system name
+        LldpLink link53 = createUnmatchedLldpLink(20053, m_databasePopulator.getNode5(), "node3SysName");
+        LldpLink link64 = createUnmatchedLldpLink(20064, m_databasePopulator.getNode6(), "node4SysName");
+        LldpLink link7x = createUnmatchedLldpLink(20070, m_databasePopulator.getNode7(), "unknownSysName");
+
+        LldpLinkDao mockLldpLinkDao = EasyMock.createMock(LldpLinkDao.class);
+        EasyMock.expect(mockLldpLinkDao.findAll()).andReturn(Arrays.asList(link53, link64, link7x)).anyTimes();
+        EasyMock.replay(mockLldpLinkDao);
+        m_topologyProvider.setLldpLinkDao(mockLldpLinkDao);
+
+        Capture<Criteria> criteria = new Capture<Criteria>();
+        NodeDao mockNodeDao = EasyMock.createNiceMock(NodeDao.class);
+        EasyMock.expect(mockNodeDao.findMatching(EasyMock.capture(criteria))).andReturn(Arrays.asList(node3, node4)).once();
+        EasyMock.replay(mockNodeDao);
+        m_topologyProvider.setNodeDao(mockNodeDao);
+
+        m_topologyProvider.load(null);
+
+        EasyMock.verify(mockNodeDao);
+        Collection<Restriction> restrictions = criteria.getValue().getRestrictions();
+        assertEquals(1, restrictions.size());
+        InRestriction sysNames = (InRestriction)restrictions.iterator().next();
+        assertEquals("sysName", sysNames.getAttribute());
+        assertEquals(new HashSet<Object>(Arrays.asList("node3SysName", "node4SysName", "unknownSysName")), new HashSet<Object>(sysNames.getValues()));
+
+        assertEquals(2, countEdges(EnhancedLinkdTopologyProvider.LLDP_EDGE_NAMESPACE));
+        assertEquals(1, m_topologyProvider.getEdgeIdsForVertex(m_topologyProvider.getVertex("nodes", "3")).length);
+        assertEquals(1, m_topologyProvider.getEdgeIdsForVertex(m_topologyProvider.getVertex("nodes", "4")).length);
+        assertEquals(1, m_topologyProvider.getEdgeIdsForVertex(m_topologyProvider.getVertex("nodes", "5")).length);
+        assertEquals(1, m_topologyProvider.getEdgeIdsForVertex(m_topologyProvider.getVertex("nodes", "6")).length);
+        assertEquals(0, m_topologyProvider.getEdgeIdsForVertex(m_topologyProvider.getVertex("nodes", "7")).length);
+    }
+
+    @Test
+    public void testLldpLinksOfNodeWithoutLldpElementAreSkipped() throws Exception {
+        // node8 is linked to node7 and node1
+        m_databasePopulator.getNode8().setLldpElement(null);
+
+        NodeDao mockNodeDao = EasyMock.createNiceMock(NodeDao.class);
+        EasyMock.expect(mockNodeDao.findMatching(EasyMock.anyObject(Criteria.class))).andReturn(new ArrayList<OnmsNode>()).once();
+        EasyMock.replay(mockNodeDao);
+        m_topologyProvider.setNodeDao(mockNodeDao);
+
+        m_topologyProvider.load(null);
+
+        // the other links are still loaded
+        EasyMock.verify(mockNodeDao);
+        assertEquals(6, countEdges(EnhancedLinkdTopologyProvider.LLDP_EDGE_NAMESPACE));
+        assertEquals(null, m_topologyProvider.getVertex("nodes", "8"));
+    }
+
     @Test
     public void testLoadSimpleGraph() throws Exception {
 		/*
@@ -531,6 +599,24 @@ public class EnhancedLinkdTopologyProviderTest {
         }
     }
 
+    private LldpLink createUnmatchedLldpLink(int id, OnmsNode node, String remSysname) {
+        LldpLink link = new LldpLink(node, 1, 1, "portId", "portDescr", LldpPortIdSubType.LLDP_PORTID_SUBTYPE_LOCAL,
+                                     "unknownChassisId", remSysname, LldpChassisIdSubType.LLDP_CHASSISID_SUBTYPE_LOCAL,
+                                     "remPortId", LldpPortIdSubType.LLDP_PORTID_SUBTYPE_LOCAL, "remPortDescr");
+        link.setId(id);
+        return link;
+    }
+
+    private int countEdges(String namespace) {
+        int count = 0;
+        for (Edge edge : m_topologyProvider.getEdges()) {
+            if (edge.getNamespace().equals(namespace)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     private VertexRef addVertexToTopr() {
         return m_topologyProvider.addVertex(0, 0);
     }
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.List;
+
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.xml.event.Event;
 import org.springframework.transaction.annotation.Transactional;
@@ -49,4 +51,29 @@ public interface AlarmPersister {
     @Transactional
     public abstract OnmsAlarm persist(Event event);
 
+    /**
+     * <p>Queues a reduction of an already known alarm to be written by a later
+     * {@link #flush()} instead of persisting it immediately.</p>
+     *
+     * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @return true if the event was queued, false if it must be passed to {@link #persist(Event)}
+     */
+    public abstract boolean defer(Event event);
+
+    /**
+     * <p>isFlushDue</p>
+     *
+     * @return true if queued reductions should be written now
+     */
+    public abstract boolean isFlushDue();
+
+    /**
+     * <p>Writes all queued reductions in a single transaction, coalescing the
+     * reductions of each alarm into one update.</p>
+     *
+     * @return the alarms that were updated
+     */
+    @Transactional
+    public abstract List<OnmsAlarm> flush();
+
 }
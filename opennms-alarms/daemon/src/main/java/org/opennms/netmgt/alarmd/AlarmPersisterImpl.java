@@ -28,6 +28,12 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -42,6 +48,13 @@ import org.springframework.util.Assert;
 /**
  * Singleton to persist OnmsAlarms.
  *
+ * When <code>org.opennms.alarmd.writeBehindInterval</code> is set to a positive
+ * number of milliseconds, reductions of alarms that are already known are
+ * queued by {@link #defer(Event)} and written by {@link #flush()}, so that all
+ * reductions of one alarm within the interval result in a single update.
+ * Resolution events are never queued and force a flush of everything queued
+ * before them, so clears are always applied in event order.
+ *
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  * @version $Id: $
  */
@@ -51,6 +64,31 @@ public class AlarmPersisterImpl implements AlarmPersister {
     private AlarmDao m_alarmDao;
     private EventDao m_eventDao;
 
+    private long m_writeBehindInterval = Long.getLong("org.opennms.alarmd.writeBehindInterval", 0L);
+    private int m_maxPendingReductions = Integer.getInteger("org.opennms.alarmd.maxPendingReductions", 1000);
+    private int m_maxKnownReductionKeys = Integer.getInteger("org.opennms.alarmd.maxKnownReductionKeys", 10000);
+
+    /**
+     * Reduction keys of alarms that were persisted by this instance, used to
+     * decide which events may be queued.  Guarded by m_pending.
+     */
+    private final Map<String, Integer> m_knownReductionKeys = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Integer> eldest) {
+            return size() > m_maxKnownReductionKeys;
+        }
+    };
+
+    /**
+     * Queued events, grouped by reduction key in arrival order.
+     */
+    private final Map<String, List<Event>> m_pending = new LinkedHashMap<String, List<Event>>();
+    private int m_pendingCount = 0;
+    private long m_oldestPending = 0;
+    private boolean m_flushRequired = false;
+
     /** {@inheritDoc} 
      * @return */
     @Override
@@ -60,7 +98,136 @@ public class AlarmPersisterImpl implements AlarmPersister {
         }
         LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
 
-        return addOrReduceEventAsAlarm(event);
+        final OnmsAlarm alarm = addOrReduceEventAsAlarm(event);
+        if (alarm != null && m_writeBehindInterval > 0) {
+            synchronized (m_pending) {
+                m_knownReductionKeys.put(alarm.getReductionKey(), alarm.getId());
+            }
+        }
+        return alarm;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean defer(final Event event) {
+        if (m_writeBehindInterval <= 0 || !checkEventSanityAndDoWeProcess(event) || event.getDbid() == null || event.getDbid() <= 0) {
+            return false;
+        }
+
+        final String reductionKey = event.getAlarmData().getReductionKey();
+        synchronized (m_pending) {
+            if (event.getAlarmData().getAlarmType() == 2) {
+                // a resolution may clear any of the queued problems, so they have to be written first
+                m_flushRequired = m_pendingCount > 0;
+                return false;
+            }
+            if (reductionKey == null) {
+                return false;
+            }
+
+            // get() refreshes the key in the LRU; a key that was evicted
+            // while it still has queued events must keep queueing, or this
+            // event would be written before the older ones
+            List<Event> events = m_pending.get(reductionKey);
+            if (m_knownReductionKeys.get(reductionKey) == null && events == null) {
+                return false;
+            }
+            if (events == null) {
+                events = new ArrayList<Event>();
+                m_pending.put(reductionKey, events);
+            }
+            events.add(event);
+            if (m_pendingCount++ == 0) {
+                m_oldestPending = System.currentTimeMillis();
+            }
+        }
+        LOG.debug("defer: queued reduction of {} to alarm with reductionKey: {}", event.getUei(), reductionKey);
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isFlushDue() {
+        synchronized (m_pending) {
+            return m_pendingCount > 0 && (m_flushRequired || m_pendingCount >= m_maxPendingReductions || System.currentTimeMillis() - m_oldestPending >= m_writeBehindInterval);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<OnmsAlarm> flush() {
+        final Map<String, List<Event>> batch;
+        final int count;
+        synchronized (m_pending) {
+            m_flushRequired = false;
+            if (m_pendingCount == 0) {
+                return Collections.emptyList();
+            }
+            batch = new LinkedHashMap<String, List<Event>>(m_pending);
+            count = m_pendingCount;
+            m_pending.clear();
+            m_pendingCount = 0;
+        }
+
+        final List<OnmsAlarm> alarms = new ArrayList<OnmsAlarm>(batch.size());
+        for (final Map.Entry<String, List<Event>> entry : batch.entrySet()) {
+            final OnmsAlarm alarm = reduceEventsToAlarm(entry.getKey(), entry.getValue());
+            if (alarm != null) {
+                alarms.add(alarm);
+            }
+        }
+        LOG.debug("flush: wrote {} queued reductions to {} alarms", count, alarms.size());
+        return alarms;
+    }
+
+    /**
+     * Applies the given events in order to the alarm with the given reduction
+     * key and writes the alarm once.  The alarm is created from the first event
+     * if it has been deleted since the events were queued.
+     */
+    private OnmsAlarm reduceEventsToAlarm(final String reductionKey, final List<Event> events) {
+        OnmsAlarm alarm = m_alarmDao.findByReductionKey(reductionKey);
+        boolean created = false;
+        OnmsEvent lastEvent = null;
+        OnmsEvent autoCleanEvent = null;
+
+        for (final Event event : events) {
+            final OnmsEvent e = m_eventDao.get(event.getDbid());
+            if (e == null) {
+                LOG.warn("reduceEventsToAlarm: event {} was deleted before it could be reduced to alarm with reductionKey: {}", event.getDbid(), reductionKey);
+                continue;
+            }
+
+            if (alarm == null) {
+                LOG.debug("reduceEventsToAlarm: reductionKey:{} not found, instantiating new alarm", reductionKey);
+                alarm = createNewAlarm(e, event);
+                m_alarmDao.save(alarm);
+                m_eventDao.saveOrUpdate(e);
+                created = true;
+            } else {
+                reduceEvent(e, alarm, event);
+                m_eventDao.update(e);
+                if (event.getAlarmData().isAutoClean()) {
+                    autoCleanEvent = e;
+                }
+            }
+            lastEvent = e;
+        }
+
+        if (alarm == null || lastEvent == null) {
+            return null;
+        }
+        if (!created) {
+            m_alarmDao.update(alarm);
+        }
+        if (autoCleanEvent != null) {
+            // deleting everything before the last auto-clean event covers all earlier ones as well
+            m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), autoCleanEvent);
+        }
+        synchronized (m_pending) {
+            m_knownReductionKeys.put(reductionKey, alarm.getId());
+        }
+        return alarm;
     }
 
     private OnmsAlarm addOrReduceEventAsAlarm(Event event) {
@@ -245,6 +412,42 @@ public class AlarmPersisterImpl implements AlarmPersister {
         m_eventDao = eventDao;
     }
 
+    /**
+     * <p>setWriteBehindInterval</p>
+     *
+     * @param writeBehindInterval the maximum time in milliseconds a reduction is queued, or 0 to persist every event immediately
+     */
+    public void setWriteBehindInterval(long writeBehindInterval) {
+        m_writeBehindInterval = writeBehindInterval;
+    }
+
+    /**
+     * <p>getWriteBehindInterval</p>
+     *
+     * @return the maximum time in milliseconds a reduction is queued
+     */
+    public long getWriteBehindInterval() {
+        return m_writeBehindInterval;
+    }
+
+    /**
+     * <p>setMaxPendingReductions</p>
+     *
+     * @param maxPendingReductions the number of queued reductions that forces a flush
+     */
+    public void setMaxPendingReductions(int maxPendingReductions) {
+        m_maxPendingReductions = maxPendingReductions;
+    }
+
+    /**
+     * <p>setMaxKnownReductionKeys</p>
+     *
+     * @param maxKnownReductionKeys the number of alarms whose reductions may be queued
+     */
+    public void setMaxKnownReductionKeys(int maxKnownReductionKeys) {
+        m_maxKnownReductionKeys = maxKnownReductionKeys;
+    }
+
     /**
      * <p>getEventDao</p>
      *
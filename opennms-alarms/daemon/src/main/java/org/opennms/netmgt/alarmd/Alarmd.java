@@ -28,8 +28,12 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import org.opennms.netmgt.alarmd.api.NorthboundAlarm;
 import org.opennms.netmgt.alarmd.api.Northbounder;
@@ -62,15 +66,23 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
     /** Constant <code>NAME="Alarmd"</code> */
     public static final String NAME = "Alarmd";
 
+    /** How often queued reductions are checked for being due, in milliseconds. */
+    private static final long FLUSH_CHECK_INTERVAL = 250;
+
     private EventForwarder m_eventForwarder;
     
     private List<Northbounder> m_northboundInterfaces;
 
     private AlarmPersister m_persister;
-    
-    
-    
-    
+
+    /**
+     * Serializes persisting and flushing so that queued reductions are always
+     * written in event order.
+     */
+    private final Object m_persistLock = new Object();
+
+    private Timer m_flushTimer;
+
     //Get all events
     /**
      * <p>onEvent</p>
@@ -84,16 +96,74 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
     		return;
     	}
     	
-        OnmsAlarm alarm = m_persister.persist(e);
-        
-        if (alarm != null) {
-        	NorthboundAlarm a = new NorthboundAlarm(alarm);
+        final List<OnmsAlarm> alarms = new ArrayList<OnmsAlarm>(1);
+        synchronized (m_persistLock) {
+            final boolean deferred = m_persister.defer(e);
+            if (deferred) {
+                startFlushTimer();
+            }
+            if (m_persister.isFlushDue()) {
+                alarms.addAll(flush());
+            }
+            if (!deferred) {
+                final OnmsAlarm alarm = m_persister.persist(e);
+                if (alarm != null) {
+                    alarms.add(alarm);
+                }
+            }
+        }
+
+        forwardAlarms(alarms);
+    }
+
+    /**
+     * Writes all reductions queued by the persister and forwards the updated
+     * alarms to the northbound interfaces.
+     */
+    private void flushPendingReductions(final boolean force) {
+        List<OnmsAlarm> alarms = Collections.emptyList();
+        synchronized (m_persistLock) {
+            if (force || m_persister.isFlushDue()) {
+                alarms = flush();
+            }
+        }
+        forwardAlarms(alarms);
+    }
+
+    /**
+     * A failed flush must not keep the event that triggered it from being
+     * persisted; the queued events stay in the events table without an alarm.
+     */
+    private List<OnmsAlarm> flush() {
+        try {
+            return m_persister.flush();
+        } catch (final RuntimeException e) {
+            LOG.error("Failed to write queued alarm reductions", e);
+            return Collections.emptyList();
+        }
+    }
+
+    private void forwardAlarms(final List<OnmsAlarm> alarms) {
+        for (final OnmsAlarm alarm : alarms) {
+            NorthboundAlarm a = new NorthboundAlarm(alarm);
 
             for (Northbounder nbi : m_northboundInterfaces) {
                 nbi.onAlarm(a);
             }
         }
-        
+    }
+
+    private void startFlushTimer() {
+        if (m_flushTimer != null) {
+            return;
+        }
+        m_flushTimer = new Timer("Alarmd-WriteBehind", true);
+        m_flushTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flushPendingReductions(false);
+            }
+        }, FLUSH_CHECK_INTERVAL, FLUSH_CHECK_INTERVAL);
     }
 
     @EventHandler(uei = "uei.opennms.org/internal/reloadDaemonConfig")
@@ -186,6 +256,13 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
      */
     @Override
     public void destroy() throws Exception {
+        synchronized (m_persistLock) {
+            if (m_flushTimer != null) {
+                m_flushTimer.cancel();
+                m_flushTimer = null;
+            }
+        }
+        flushPendingReductions(true);
     }
 
     /**
@@ -28,6 +28,15 @@
 
 package org.opennms.netmgt.alarmd;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.opennms.core.spring.BeanUtils;
@@ -36,6 +45,11 @@ import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -79,4 +93,91 @@ public class AlarmPersisterTest implements InitializingBean {
         // Do something?
     }
 
+    @Test
+    public void testWriteBehindReductions() {
+        final AlarmPersisterImpl persister = new AlarmPersisterImpl();
+        persister.setAlarmDao(m_alarmDao);
+        persister.setEventDao(m_eventDao);
+        persister.setWriteBehindInterval(60000);
+
+        // the first occurrence is never queued since the alarm does not exist yet
+        final Event first = createEvent("writeBehind", 1);
+        assertFalse(persister.defer(first));
+        final OnmsAlarm alarm = persister.persist(first);
+        assertNotNull(alarm);
+        assertEquals(1, alarm.getCounter().intValue());
+
+        Event last = null;
+        for (int i = 0; i < 3; i++) {
+            last = createEvent("writeBehind", 1);
+            assertTrue(persister.defer(last));
+        }
+        assertFalse(persister.isFlushDue());
+        assertEquals(1, m_alarmDao.findByReductionKey("writeBehind").getCounter().intValue());
+
+        // a resolution forces the queued problems to be written first
+        assertFalse(persister.defer(createEvent("writeBehind:cleared", 2)));
+        assertTrue(persister.isFlushDue());
+
+        final List<OnmsAlarm> flushed = persister.flush();
+        assertEquals(1, flushed.size());
+        final OnmsAlarm reduced = m_alarmDao.findByReductionKey("writeBehind");
+        assertSame(reduced, flushed.get(0));
+        assertEquals(4, reduced.getCounter().intValue());
+        assertEquals(Integer.valueOf(last.getDbid()), reduced.getLastEvent().getId());
+        assertSame(reduced, m_eventDao.get(last.getDbid()).getAlarm());
+
+        assertFalse(persister.isFlushDue());
+        assertEquals(0, persister.flush().size());
+    }
+
+    @Test
+    public void testEvictedKeyWithPendingReductionsStaysQueued() {
+        final AlarmPersisterImpl persister = new AlarmPersisterImpl();
+        persister.setAlarmDao(m_alarmDao);
+        persister.setEventDao(m_eventDao);
+        persister.setWriteBehindInterval(60000);
+        persister.setMaxKnownReductionKeys(1);
+
+        final Event first = createEvent("evicted", 1);
+        assertNotNull(persister.persist(first));
+        final Event queued = createEvent("evicted", 1);
+        assertTrue(persister.defer(queued));
+
+        // persisting another alarm pushes "evicted" out of the known keys
+        assertNotNull(persister.persist(createEvent("other", 1)));
+
+        // the newer event must be queued behind the older one, not written ahead of it
+        final Event last = createEvent("evicted", 1);
+        assertTrue(persister.defer(last));
+        assertEquals(1, m_alarmDao.findByReductionKey("evicted").getCounter().intValue());
+
+        assertEquals(1, persister.flush().size());
+        final OnmsAlarm reduced = m_alarmDao.findByReductionKey("evicted");
+        assertEquals(3, reduced.getCounter().intValue());
+        assertEquals(Integer.valueOf(last.getDbid()), reduced.getLastEvent().getId());
+    }
+
+    private Event createEvent(final String reductionKey, final int alarmType) {
+        final OnmsEvent e = new OnmsEvent();
+        e.setEventUei("uei.opennms.org/test/writeBehind");
+        e.setEventTime(new Date());
+        e.setEventCreateTime(e.getEventTime());
+        e.setEventSource("test");
+        e.setEventSeverity(OnmsSeverity.MAJOR.getId());
+        e.setEventLog("Y");
+        e.setEventDisplay("Y");
+        m_eventDao.save(e);
+
+        final AlarmData data = new AlarmData();
+        data.setAlarmType(alarmType);
+        data.setReductionKey(reductionKey);
+
+        final Event event = new Event();
+        event.setUei(e.getEventUei());
+        event.setDbid(e.getId());
+        event.setAlarmData(data);
+        return event;
+    }
+
 }
@@ -903,6 +903,14 @@ public class Event implements Serializable, Comparable<Event> {
 		}
 	}
 
+	/**
+	 * True when this event has no mask and will therefore be matched on the
+	 * UEI alone.
+	 */
+	boolean isUeiOnlyMatch() {
+		return m_uei != null && (m_mask == null || m_mask.getMaskelementCount() <= 0);
+	}
+
 	public boolean matches(org.opennms.netmgt.xml.event.Event matchingEvent) {
 		//System.err.println("Attempting to match " + m_matcher);
 		return m_matcher.matches(matchingEvent);
@@ -39,13 +39,12 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -102,13 +101,7 @@ public class Events implements Serializable {
 	private Map<String, Events> m_loadedEventFiles = new LinkedHashMap<String, Events>();
 
 	@XmlTransient
-	private Partition m_partition;
-	
-	@XmlTransient
-	private Map<String, List<Event>> m_partitionedEvents;
-	
-	@XmlTransient
-	private List<Event> m_nullPartitionedEvents;
+	private volatile MatchIndex m_matchIndex = MatchIndex.EMPTY;
 	
         @XmlTransient
         private List<Event> m_wildcardEvents;
@@ -393,51 +386,20 @@ public class Events implements Serializable {
 	}
 	
 	private void partitionEvents(Partition partition) {
-		m_partition = partition;
-
-		m_partitionedEvents = new LinkedHashMap<String, List<Event>>();
-		m_nullPartitionedEvents = new ArrayList<Event>();
-		
-		for(Event event : m_events) {
-			List<String> keys = partition.group(event);
-			if (keys == null) {
-				m_nullPartitionedEvents.add(event);
-			} else {
-				for(String key : keys) {
-					List<Event> events = m_partitionedEvents.get(key);
-					if (events == null) {
-						events = new ArrayList<Event>(1);
-						m_partitionedEvents.put(key, events);
-					}
-					events.add(event);
-				}
-			}
-		}
-		
-		
+		// build the new index completely before publishing it so that
+		// concurrent lookups see either the old or the new index, never a mix
+		m_matchIndex = new MatchIndex(partition, m_events);
 	}
 	
 	public Event findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event matchingEvent) {
-		String key = m_partition.group(matchingEvent);
-		SortedSet<Event> potentialMatches = new TreeSet<Event>(m_nullPartitionedEvents);
-		if (key != null) {
-			List<Event> events = m_partitionedEvents.get(key);
-			if (events != null) {
-			    potentialMatches.addAll(events);
-			}
-		}
-			
-			
-		
-		for(Event event : potentialMatches) {
-			if (event.matches(matchingEvent)) {
-				return event;
-			}
+		Event event = m_matchIndex.findFirstMatchingEvent(matchingEvent);
+		if (event != null) {
+			return event;
 		}
 		
 		for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
 			Events subEvents = loadedEvents.getValue();
-			Event event = subEvents.findFirstMatchingEvent(matchingEvent);
+			event = subEvents.findFirstMatchingEvent(matchingEvent);
 			if (event != null) {
 				return event;
 			}
@@ -564,4 +526,112 @@ public class Events implements Serializable {
 		
 		saveEvents(resource);
 	}
+
+	/**
+	 * Immutable lookup structure used by {@link #findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}.
+	 * 
+	 * Events that have a partition key (the enterprise id) get a precomputed
+	 * candidate list that already contains the unpartitioned events merged in
+	 * configuration order.  Unpartitioned events that only match on UEI are
+	 * hashed by UEI so that only the events with a real mask need to be
+	 * scanned.
+	 */
+	private static final class MatchIndex {
+		
+		static final MatchIndex EMPTY = new MatchIndex(null, Collections.<Event>emptyList());
+		
+		private final Partition m_partition;
+		private final Map<String, List<Event>> m_candidatesByKey = new HashMap<String, List<Event>>();
+		private final Map<String, Event> m_ueiOnlyEvents = new HashMap<String, Event>();
+		private final List<Event> m_maskedEvents = new ArrayList<Event>();
+		
+		MatchIndex(Partition partition, List<Event> events) {
+			m_partition = partition;
+			
+			final List<Event> nullPartitionedEvents = new ArrayList<Event>();
+			final Map<String, List<Event>> partitionedEvents = new LinkedHashMap<String, List<Event>>();
+			
+			for(Event event : events) {
+				List<String> keys = partition == null ? null : partition.group(event);
+				if (keys == null) {
+					nullPartitionedEvents.add(event);
+					if (event.isUeiOnlyMatch()) {
+						if (!m_ueiOnlyEvents.containsKey(event.getUei())) {
+							m_ueiOnlyEvents.put(event.getUei(), event);
+						}
+					} else {
+						m_maskedEvents.add(event);
+					}
+				} else {
+					for(String key : keys) {
+						List<Event> keyEvents = partitionedEvents.get(key);
+						if (keyEvents == null) {
+							keyEvents = new ArrayList<Event>(1);
+							partitionedEvents.put(key, keyEvents);
+						}
+						keyEvents.add(event);
+					}
+				}
+			}
+			
+			for(Entry<String, List<Event>> entry : partitionedEvents.entrySet()) {
+				m_candidatesByKey.put(entry.getKey(), merge(entry.getValue(), nullPartitionedEvents));
+			}
+		}
+		
+		/**
+		 * Both lists are in configuration order so a single merge pass keeps
+		 * the result sorted without building a TreeSet on each lookup.
+		 */
+		private static List<Event> merge(List<Event> a, List<Event> b) {
+			final List<Event> merged = new ArrayList<Event>(a.size() + b.size());
+			int i = 0, j = 0;
+			while (i < a.size() && j < b.size()) {
+				int cmp = a.get(i).compareTo(b.get(j));
+				if (cmp < 0) {
+					merged.add(a.get(i++));
+				} else if (cmp > 0) {
+					merged.add(b.get(j++));
+				} else {
+					merged.add(a.get(i++));
+					j++;
+				}
+			}
+			while (i < a.size()) merged.add(a.get(i++));
+			while (j < b.size()) merged.add(b.get(j++));
+			return merged;
+		}
+		
+		Event findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event matchingEvent) {
+			if (m_partition == null) {
+				return null;
+			}
+			
+			String key = m_partition.group(matchingEvent);
+			if (key != null) {
+				List<Event> candidates = m_candidatesByKey.get(key);
+				if (candidates != null) {
+					for(Event event : candidates) {
+						if (event.matches(matchingEvent)) {
+							return event;
+						}
+					}
+					return null;
+				}
+			}
+			
+			// only the masked events configured before the first UEI match can win
+			Event ueiMatch = matchingEvent.getUei() == null ? null : m_ueiOnlyEvents.get(matchingEvent.getUei());
+			for(Event event : m_maskedEvents) {
+				if (ueiMatch != null && event.compareTo(ueiMatch) > 0) {
+					break;
+				}
+				if (event.matches(matchingEvent)) {
+					return event;
+				}
+			}
+			return ueiMatch;
+		}
+	}
+
 }
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventsMatchingTest {
+
+    private Events m_events;
+    private Event m_maskedBeforeUei;
+    private Event m_ueiOnly;
+    private Event m_maskedAfterUei;
+    private Event m_enterprise;
+
+    @Before
+    public void setUp() {
+        m_events = new Events();
+
+        m_maskedBeforeUei = maskedEvent("uei.opennms.org/test/masked", "source", "before");
+        m_ueiOnly = ueiEvent("uei.opennms.org/test/plain");
+        m_maskedAfterUei = maskedEvent("uei.opennms.org/test/plain", "source", "after");
+        m_enterprise = maskedEvent("uei.opennms.org/test/enterprise", "id", ".1.3.6.1.4.1.5813");
+
+        m_events.addEvent(m_maskedBeforeUei);
+        m_events.addEvent(m_ueiOnly);
+        m_events.addEvent(m_maskedAfterUei);
+        m_events.addEvent(m_enterprise);
+
+        m_events.initialize(new EnterpriseIdPartition(), new EventOrdering());
+    }
+
+    @Test
+    public void testUeiMatch() {
+        assertSame(m_ueiOnly, m_events.findFirstMatchingEvent(event("uei.opennms.org/test/plain", "after", null)));
+    }
+
+    @Test
+    public void testEarlierMaskWinsOverUeiMatch() {
+        assertSame(m_maskedBeforeUei, m_events.findFirstMatchingEvent(event("uei.opennms.org/test/plain", "before", null)));
+    }
+
+    @Test
+    public void testPartitionedCandidatesKeepConfigurationOrder() {
+        assertSame(m_maskedBeforeUei, m_events.findFirstMatchingEvent(event(null, "before", ".1.3.6.1.4.1.5813")));
+        assertSame(m_ueiOnly, m_events.findFirstMatchingEvent(event("uei.opennms.org/test/plain", null, ".1.3.6.1.4.1.5813")));
+        assertSame(m_enterprise, m_events.findFirstMatchingEvent(event(null, null, ".1.3.6.1.4.1.5813")));
+    }
+
+    @Test
+    public void testNoMatch() {
+        assertNull(m_events.findFirstMatchingEvent(event("uei.opennms.org/test/unknown", "nobody", null)));
+    }
+
+    private static Event ueiEvent(String uei) {
+        Event event = new Event();
+        event.setUei(uei);
+        return event;
+    }
+
+    private static Event maskedEvent(String uei, String mename, String mevalue) {
+        Maskelement element = new Maskelement();
+        element.setMename(mename);
+        element.addMevalue(mevalue);
+        Mask mask = new Mask();
+        mask.addMaskelement(element);
+        Event event = ueiEvent(uei);
+        event.setMask(mask);
+        return event;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event event(String uei, String source, String enterpriseId) {
+        org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setUei(uei);
+        event.setSource(source);
+        if (enterpriseId != null) {
+            org.opennms.netmgt.xml.event.Snmp snmp = new org.opennms.netmgt.xml.event.Snmp();
+            snmp.setId(enterpriseId);
+            event.setSnmp(snmp);
+        }
+        return event;
+    }
+}
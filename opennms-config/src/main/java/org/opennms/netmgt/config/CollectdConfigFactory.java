@@ -45,6 +45,8 @@ import org.apache.commons.io.IOUtils;
 import org.opennms.core.utils.ConfigFileConstants;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.config.collectd.CollectdConfiguration;
+import org.opennms.netmgt.config.collectd.ExcludeRange;
+import org.opennms.netmgt.config.collectd.IncludeRange;
 import org.opennms.netmgt.config.collectd.Package;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.model.OnmsIpInterface;
@@ -78,6 +80,42 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
     private final String m_serverName;
     private final boolean m_verifyServer;
 
+    /**
+     * Hashed filter results and compiled specifics and ranges of each package.
+     */
+    private final PackageMembershipIndex<Package> m_packageIndex = new PackageMembershipIndex<Package>() {
+        @Override
+        protected AddressRules compileRules(final Package pkg) {
+            // unlike the other daemons, a reversed range matches nothing here
+            final AddressRules.Builder builder = new AddressRules.Builder().setReversedRangeMatchesBegin(false);
+            for (final String specific : pkg.getSpecifics()) {
+                builder.addSpecific(specific);
+            }
+            for (final IncludeRange rng : pkg.getIncludeRanges()) {
+                builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+            }
+            for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+                builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+            }
+            return builder.build();
+        }
+
+        @Override
+        protected int getRuleSignature(final Package pkg) {
+            final RuleSignature signature = new RuleSignature();
+            for (final String specific : pkg.getSpecifics()) {
+                signature.addSpecific(specific);
+            }
+            for (final IncludeRange rng : pkg.getIncludeRanges()) {
+                signature.addIncludeRange(rng.getBegin(), rng.getEnd());
+            }
+            for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+                signature.addExcludeRange(rng.getBegin(), rng.getEnd());
+            }
+            return signature.getSignature();
+        }
+    };
+
     static {
         // Make sure that the OpennmsServerConfigFactory is initialized
         try {
@@ -126,6 +164,7 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
             CollectdConfiguration config = JaxbUtils.unmarshal(CollectdConfiguration.class, isr);
             synchronized (m_collectdConfigMutex) {
                 m_collectdConfig = config;
+                m_packageIndex.clear();
             }
         } finally {
             IOUtils.closeQuietly(isr);
@@ -340,7 +379,7 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         LOG.debug("interfaceInFilter: package is {}. filter rules are {}", pkg.getName(), filterRules);
         try {
             ipList = FilterDaoFactory.getInstance().getActiveIPAddressList(filterRules);
-            filterPassed = ipList.contains(ifaceAddress);
+            filterPassed = m_packageIndex.isInFilter(pkg, ipList, ifaceAddress);
             if (!filterPassed) {
                 LOG.debug("interfaceInFilter: Interface {} passed filter for package {}?: false", iface, pkg.getName());
             }
@@ -382,13 +421,10 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
 
         byte[] addr = toIpAddrBytes(iface);
 
-        boolean has_range_include = pkg.hasIncludeRange(iface);
-        boolean has_specific = pkg.hasSpecific(addr);
-
-        has_specific = pkg.hasSpecificUrl(iface, has_specific);
-        boolean has_range_exclude = pkg.hasExcludeRange(iface);
+        final PackageMembershipIndex.AddressRules rules = m_packageIndex.getRules(pkg);
+        boolean has_specific = pkg.hasSpecificUrl(iface, rules.hasSpecific(addr));
 
-        boolean packagePassed = has_specific || (has_range_include && !has_range_exclude);
+        boolean packagePassed = rules.matches(addr, has_specific);
         if(packagePassed) {
             LOG.info("interfaceInPackage: Interface {} passed filter and specific/range for package {}?: {}", iface, pkg.getName(), packagePassed);
         } else {
@@ -60,7 +60,6 @@ import org.opennms.core.utils.IteratorIterator;
 import org.opennms.core.xml.CastorUtils;
 import org.opennms.netmgt.config.api.DiscoveryConfigurationFactory;
 import org.opennms.netmgt.config.discovery.DiscoveryConfiguration;
-import org.opennms.netmgt.config.discovery.ExcludeRange;
 import org.opennms.netmgt.config.discovery.IncludeRange;
 import org.opennms.netmgt.config.discovery.IncludeUrl;
 import org.opennms.netmgt.config.discovery.Specific;
@@ -99,6 +98,11 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
      */
     private DiscoveryConfiguration m_config;
 
+    /**
+     * The exclude ranges of m_config, rebuilt when the configuration is replaced.
+     */
+    private volatile ExcludeRangeIndex m_excludeRangeIndex;
+
     /**
      * This member is set to true if the configuration file has been loaded.
      */
@@ -124,6 +128,7 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
 
     protected void setConfig(final FileSystemResource resource) throws MarshalException, ValidationException, IOException {
         m_config = CastorUtils.unmarshal(DiscoveryConfiguration.class, resource);
+        m_excludeRangeIndex = null;
     }
 
     public Lock getReadLock() {
@@ -263,6 +268,7 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
             final String xml = stringWriter.toString();
             LOG.debug("saving configuration...");
             saveXml(xml);
+            m_excludeRangeIndex = null;
         } finally {
             getWriteLock().unlock();
         }
@@ -518,22 +524,23 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
     public boolean isExcluded(final InetAddress address) {
         getReadLock().lock();
         try {
-            final List<ExcludeRange> excludeRange = getConfiguration().getExcludeRangeCollection();
-            if (excludeRange != null) {
-                final byte[] laddr = address.getAddress();
-
-                for (final ExcludeRange range : excludeRange) {
-                    if (InetAddressUtils.isInetAddressInRange(laddr, range.getBegin(), range.getEnd())) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+            return getExcludeRangeIndex().isExcluded(address.getAddress());
         } finally {
             getReadLock().unlock();
         }
     }
 
+    private ExcludeRangeIndex getExcludeRangeIndex() {
+        final DiscoveryConfiguration config = getConfiguration();
+        ExcludeRangeIndex index = m_excludeRangeIndex;
+        if (index == null || index.getSource() != config) {
+            index = new ExcludeRangeIndex(config, config.getExcludeRangeCollection());
+            m_excludeRangeIndex = index;
+            LOG.debug("Indexed exclude ranges into {} intervals", index.size());
+        }
+        return index;
+    }
+
     public String getForeignSource(InetAddress address) {
         getReadLock().lock();
         try {
@@ -596,6 +603,20 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
         }
     }
 
+    /**
+     * <p>getPacketsPerSecond</p>
+     *
+     * @return the configured rate of discovery pings
+     */
+    public int getPacketsPerSecond() {
+        getReadLock().lock();
+        try {
+            return getConfiguration().getPacketsPerSecond();
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
     /**
      * <p>getExcludingInterator</p>
      *
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.opennms.core.utils.ByteArrayComparator;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.discovery.ExcludeRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The exclude ranges of a discovery configuration, merged into sorted,
+ * disjoint intervals so that an address is checked with a binary search
+ * instead of a comparison against every range.
+ *
+ * Addresses are ordered by {@link ByteArrayComparator}, the order used by
+ * {@link InetAddressUtils#isInetAddressInRange(byte[], byte[], byte[])}.
+ * An index is immutable once built and safe to use from several threads.
+ */
+final class ExcludeRangeIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(ExcludeRangeIndex.class);
+
+    private static final ByteArrayComparator COMPARATOR = new ByteArrayComparator();
+
+    private final Object m_source;
+    private final byte[][] m_begins;
+    private final byte[][] m_ends;
+
+    ExcludeRangeIndex(final Object source, final List<ExcludeRange> excludeRanges) {
+        m_source = source;
+
+        final List<byte[][]> ranges = new ArrayList<byte[][]>();
+        if (excludeRanges != null) {
+            for (final ExcludeRange range : excludeRanges) {
+                final byte[] begin;
+                final byte[] end;
+                try {
+                    begin = InetAddressUtils.toIpAddrBytes(range.getBegin());
+                    end = InetAddressUtils.toIpAddrBytes(range.getEnd());
+                } catch (final Throwable e) {
+                    LOG.warn("Exclude range of discovery configuration is invalid, discarding: {} - {}", range.getBegin(), range.getEnd());
+                    continue;
+                }
+                // a range that ends before it begins does not match anything
+                if (COMPARATOR.compare(begin, end) <= 0) {
+                    ranges.add(new byte[][] { begin, end });
+                }
+            }
+        }
+
+        Collections.sort(ranges, new Comparator<byte[][]>() {
+            @Override
+            public int compare(final byte[][] a, final byte[][] b) {
+                return COMPARATOR.compare(a[0], b[0]);
+            }
+        });
+
+        final List<byte[][]> merged = new ArrayList<byte[][]>(ranges.size());
+        for (final byte[][] range : ranges) {
+            final byte[][] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && COMPARATOR.compare(range[0], last[1]) <= 0) {
+                if (COMPARATOR.compare(range[1], last[1]) > 0) {
+                    last[1] = range[1];
+                }
+            } else {
+                merged.add(range);
+            }
+        }
+
+        m_begins = new byte[merged.size()][];
+        m_ends = new byte[merged.size()][];
+        for (int i = 0; i < merged.size(); i++) {
+            m_begins[i] = merged.get(i)[0];
+            m_ends[i] = merged.get(i)[1];
+        }
+    }
+
+    /**
+     * @return the configuration this index was built from
+     */
+    Object getSource() {
+        return m_source;
+    }
+
+    /**
+     * @return the number of disjoint intervals
+     */
+    int size() {
+        return m_begins.length;
+    }
+
+    boolean isExcluded(final byte[] address) {
+        // find the last interval that begins at or before the address
+        int low = 0;
+        int high = m_begins.length - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (COMPARATOR.compare(m_begins[mid], address) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found >= 0 && COMPARATOR.compare(address, m_ends[found]) <= 0;
+    }
+}
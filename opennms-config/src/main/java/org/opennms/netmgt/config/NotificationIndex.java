@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The notifications of a {@link Notifications} configuration indexed by UEI.
+ *
+ * Exact UEIs are looked up in a hash map; <code>MATCH-ANY-UEI</code> and
+ * regular expression (<code>~</code>) UEIs are matched with patterns
+ * compiled once, and the combined result for each UEI is remembered.
+ * Candidates are always returned in configuration order, because with
+ * <code>match-all="false"</code> the first matching notification wins.
+ *
+ * An index is immutable once built and safe to use from several threads;
+ * it has to be rebuilt whenever the configuration changes.
+ */
+final class NotificationIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationIndex.class);
+
+    static final String MATCH_ANY_UEI = "MATCH-ANY-UEI";
+
+    private static final int MAX_CACHED_UEIS = Integer.getInteger("org.opennms.netmgt.notifd.maxCachedUeis", 10000);
+
+    /**
+     * A notification with its precompiled patterns.
+     */
+    static final class Entry {
+        private final int m_order;
+        private final Notification m_notification;
+        private final Pattern m_ueiPattern;
+        private final Pattern m_severityPattern;
+        private final boolean m_valid;
+
+        private Entry(final int order, final Notification notification) {
+            m_order = order;
+            m_notification = notification;
+
+            boolean valid = true;
+            Pattern ueiPattern = null;
+            if (isRegex(notification.getUei())) {
+                try {
+                    ueiPattern = Pattern.compile(notification.getUei().substring(1));
+                } catch (final PatternSyntaxException e) {
+                    LOG.error("Invalid UEI regular expression {} in notification {}, it will never match", notification.getUei(), notification.getName(), e);
+                    valid = false;
+                }
+            }
+            m_ueiPattern = ueiPattern;
+
+            Pattern severityPattern = null;
+            if (notification.getEventSeverity() != null) {
+                try {
+                    severityPattern = Pattern.compile(notification.getEventSeverity().toLowerCase());
+                } catch (final PatternSyntaxException e) {
+                    LOG.error("Invalid event severity expression {} in notification {}, it will never match", notification.getEventSeverity(), notification.getName(), e);
+                    valid = false;
+                }
+            }
+            m_severityPattern = severityPattern;
+            m_valid = valid;
+        }
+
+        /**
+         * @return the notification
+         */
+        Notification getNotification() {
+            return m_notification;
+        }
+
+        /**
+         * @param severity the event severity
+         * @return true if the notification has no event severity or it
+         *         matches the (lower cased) severity
+         */
+        boolean matchesSeverity(final String severity) {
+            return m_severityPattern == null || m_severityPattern.matcher(severity.toLowerCase()).matches();
+        }
+    }
+
+    private final Notifications m_source;
+    private final Map<String, List<Entry>> m_byUei = new HashMap<String, List<Entry>>();
+    private final List<Entry> m_wildcards = new ArrayList<Entry>();
+    private final ConcurrentMap<String, List<Entry>> m_candidates = new ConcurrentHashMap<String, List<Entry>>();
+
+    /**
+     * @param source the configuration; the caller must keep it from being
+     *        modified while the index is built
+     */
+    NotificationIndex(final Notifications source) {
+        m_source = source;
+        int order = 0;
+        for (final Notification notification : source.getNotificationCollection()) {
+            final String uei = notification.getUei();
+            if (uei == null) {
+                LOG.warn("Notification {} has no UEI and will never match", notification.getName());
+                continue;
+            }
+            final Entry entry = new Entry(order++, notification);
+            if (!entry.m_valid) {
+                continue;
+            }
+            if (MATCH_ANY_UEI.equals(uei) || isRegex(uei)) {
+                m_wildcards.add(entry);
+            } else {
+                List<Entry> entries = m_byUei.get(uei);
+                if (entries == null) {
+                    entries = new ArrayList<Entry>(1);
+                    m_byUei.put(uei, entries);
+                }
+                entries.add(entry);
+            }
+        }
+        LOG.debug("Indexed {} notifications: {} distinct UEIs, {} wildcards", order, m_byUei.size(), m_wildcards.size());
+    }
+
+    /**
+     * @return the configuration this index was built from
+     */
+    Notifications getSource() {
+        return m_source;
+    }
+
+    /**
+     * @param uei an event UEI
+     * @return the notifications whose UEI matches, in configuration order;
+     *         status, severity, parameters and rule still have to be checked
+     */
+    List<Entry> getCandidates(final String uei) {
+        if (uei == null) {
+            return Collections.emptyList();
+        }
+        List<Entry> candidates = m_candidates.get(uei);
+        if (candidates == null) {
+            candidates = findCandidates(uei);
+            if (m_candidates.size() >= MAX_CACHED_UEIS) {
+                m_candidates.clear();
+            }
+            m_candidates.put(uei, candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * @param uei an event UEI
+     * @return true if any notification matches the UEI
+     */
+    boolean hasUei(final String uei) {
+        return !getCandidates(uei).isEmpty();
+    }
+
+    private List<Entry> findCandidates(final String uei) {
+        final List<Entry> exact = m_byUei.get(uei);
+        final List<Entry> candidates = exact == null ? new ArrayList<Entry>() : new ArrayList<Entry>(exact);
+        boolean merged = false;
+        for (final Entry entry : m_wildcards) {
+            if (entry.m_ueiPattern == null || entry.m_ueiPattern.matcher(uei).matches()) {
+                candidates.add(entry);
+                merged = true;
+            }
+        }
+        if (merged && exact != null) {
+            Collections.sort(candidates, new Comparator<Entry>() {
+                @Override
+                public int compare(final Entry a, final Entry b) {
+                    return a.m_order < b.m_order ? -1 : (a.m_order == b.m_order ? 0 : 1);
+                }
+            });
+        }
+        return Collections.unmodifiableList(candidates);
+    }
+
+    private static boolean isRegex(final String uei) {
+        return uei.length() > 0 && uei.charAt(0) == '~';
+    }
+}
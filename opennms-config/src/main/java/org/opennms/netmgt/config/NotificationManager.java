@@ -150,6 +150,11 @@ public abstract class NotificationManager {
     NotifdConfigManager m_configManager;
     private DataSource m_dataSource;
 
+    /**
+     * Index of m_notifications by UEI, rebuilt on first use after a change
+     */
+    private volatile NotificationIndex m_notificationIndex;
+
     /**
      * A parameter expansion algorithm, designed to replace strings delimited by
      * percent signs '%' with a value supplied by a Map object.
@@ -197,6 +202,7 @@ public abstract class NotificationManager {
     public synchronized void parseXML(final Reader reader) throws MarshalException, ValidationException {
         m_notifications = CastorUtils.unmarshal(Notifications.class, reader, true);
         oldHeader = m_notifications.getHeader();
+        m_notificationIndex = null;
     }
 
     /**
@@ -209,6 +215,7 @@ public abstract class NotificationManager {
     public synchronized void parseXML(final InputStream stream) throws MarshalException, ValidationException {
         m_notifications = CastorUtils.unmarshal(Notifications.class, stream, true);
         oldHeader = m_notifications.getHeader();
+        m_notificationIndex = null;
     }
 
     /**
@@ -223,18 +230,26 @@ public abstract class NotificationManager {
     public boolean hasUei(final String uei) throws IOException, MarshalException, ValidationException {
         update();
 
-        for (Notification notif : m_notifications.getNotificationCollection()) {
-            if (uei.equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
-                return true;
-            } else if (notif.getUei().charAt(0) == '~') {
-                if (uei.matches(notif.getUei().substring(1))) {
-                    return true;
-                }
+        return getNotificationIndex().hasUei(uei);
+    }
 
+    /**
+     * Returns the index for the current configuration, building it if the
+     * configuration was reloaded or changed since it was last built.
+     */
+    private NotificationIndex getNotificationIndex() {
+        NotificationIndex index = m_notificationIndex;
+        if (index == null || index.getSource() != m_notifications) {
+            // the modifying methods are synchronized too, so the configuration can't change while it's indexed
+            synchronized (this) {
+                index = m_notificationIndex;
+                if (index == null || index.getSource() != m_notifications) {
+                    index = new NotificationIndex(m_notifications);
+                    m_notificationIndex = index;
+                }
             }
         }
-
-        return false;
+        return index;
     }
 
     /**
@@ -262,73 +277,55 @@ public abstract class NotificationManager {
             return null;
         }
 
-        for (Notification curNotif : m_notifications.getNotificationCollection()) {
+        for (final NotificationIndex.Entry entry : getNotificationIndex().getCandidates(event.getUei())) {
+            final Notification curNotif = entry.getNotification();
 
             LOG.debug("Checking notification {} against event {} with UEI {}", curNotif.getUei(), event.getDbid(), event.getUei());
 
-            if (event.getUei().equals(curNotif.getUei()) || "MATCH-ANY-UEI".equals(curNotif.getUei())) {
-                // Match!
-            } else if (curNotif.getUei().charAt(0) == '~') {
-                if (event.getUei().matches(curNotif.getUei().substring(1))) {
-                    // Match!
-                } else {
-
-                    LOG.debug("Notification regex {} failed to match event UEI: {}", event.getUei(), curNotif.getUei());
-                    continue;
-                }
-            } else {
-
-                LOG.debug("Notification UEI {} did not match UEI of event {}: {}", curNotif.getUei(), event.getDbid(), event.getUei());
-                continue;
-            }
-
             /**
              * Check if event severity matches pattern in notification
              */
 
             LOG.debug("Checking event severity: {} against notification severity: {}", curNotif.getEventSeverity(), event.getSeverity());
-            // parameter is optional, return true if not set
-            if (curNotif.getEventSeverity() == null) {
-                // Skip matching on severity
-            } else if (event.getSeverity().toLowerCase().matches(curNotif.getEventSeverity().toLowerCase())) {
-                // Severities match
-            } else {
+            // parameter is optional, matches if not set
+            if (!entry.matchesSeverity(event.getSeverity())) {
 
                 LOG.debug("Event severity: {} did not match notification severity: {}", curNotif.getEventSeverity(), event.getSeverity());
                 continue;
             }
 
             // The notice has to be "on"
-            // The notice has to match a severity if configured - currHasSeverity should be true if there is no severity rule 
-            // The notice has to match the UEI of the event or MATCH-ANY-UEI
+            // The notice has to match a severity if configured - matchesSeverity() is true if there is no severity rule
+            // The notice has to match the UEI of the event or MATCH-ANY-UEI - the index only returns those
             // If all those things are true:
-            // Then the service has to match if configured, the interface if configured, and the node if configured.
+            // Then the parameters have to match, and the service has to match if configured, the interface if configured, and the node if configured.
+            // The parameters are checked first since the node/interface/service check may have to go to the database.
 
-            if (curNotif.getStatus().equals("on")) {
-                if (nodeInterfaceServiceValid(curNotif, event)) {
-                    boolean parmsmatched = getConfigManager().matchNotificationParameters(event, curNotif);
+            if (!"on".equals(curNotif.getStatus())) {
 
-                    if (!parmsmatched) {
+                LOG.debug("Current notification with UEI {} is turned off.", curNotif.getUei());
+                continue;
+            }
 
-                        LOG.debug("Event {} did not match parameters for notice {}", curNotif.getName(), event.getUei());
-                        continue;
-                    }
-                    // Add this notification to the return value
-                    notifList.add(curNotif);
+            if (!getConfigManager().matchNotificationParameters(event, curNotif)) {
 
+                LOG.debug("Event {} did not match parameters for notice {}", curNotif.getName(), event.getUei());
+                continue;
+            }
 
-                    LOG.debug("Event {} matched notice {}", curNotif.getName(), event.getUei());
+            if (!nodeInterfaceServiceValid(curNotif, event)) {
 
-                    if (!matchAll)
-                        break;
-                } else {
+                LOG.debug("Node/interface/service combination in the event was invalid");
+                continue;
+            }
 
-                    LOG.debug("Node/interface/service combination in the event was invalid");
-                }
-            } else {
+            // Add this notification to the return value
+            notifList.add(curNotif);
 
-                LOG.debug("Current notification with UEI {} is turned off.", curNotif.getUei());
-            }
+            LOG.debug("Event {} matched notice {}", curNotif.getName(), event.getUei());
+
+            if (!matchAll)
+                break;
         }
 
         if (!notifList.isEmpty()) {
@@ -1109,6 +1106,8 @@ public abstract class NotificationManager {
      * @throws java.lang.ClassNotFoundException if any.
      */
     public synchronized void saveCurrent() throws MarshalException, ValidationException, IOException, ClassNotFoundException {
+        // every change to the notifications in memory ends up here
+        m_notificationIndex = null;
         m_notifications.setHeader(rebuildHeader());
 
         // Marshal to a string first, then write the string to the file. This
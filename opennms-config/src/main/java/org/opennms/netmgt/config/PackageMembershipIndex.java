@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.core.utils.ByteArrayComparator;
+
+/**
+ * Answers "is this interface in this package?" for the daemon configuration
+ * managers (poller, collectd, threshd) without scanning lists.
+ *
+ * For every package the index keeps the addresses selected by the package
+ * filter in a hash set, and compiles the package's specifics into a hash
+ * set and its include and exclude ranges into sorted, merged intervals that
+ * are searched with a binary search.  Packages are looked up by identity
+ * first, since the configuration packages have deep (and expensive)
+ * <code>hashCode()</code> implementations, and by equality otherwise.
+ *
+ * Compiled rules are cached per package instance, so a lookup is a plain
+ * map read.  {@link #rebuild(Map)} and {@link #refreshRules()} compute the
+ * {@link RuleSignature} of every cached package once and drop the rules of
+ * the packages whose specifics or ranges were added, removed or edited;
+ * {@link #clear()} drops them all.
+ *
+ * @param <P> the package type of the configuration
+ */
+public abstract class PackageMembershipIndex<P> {
+
+    private static final ByteArrayComparator COMPARATOR = new ByteArrayComparator();
+
+    /**
+     * Filter addresses by package, as set by {@link #rebuild(Map)}.
+     */
+    private volatile Addresses<P> m_addresses = new Addresses<P>(Collections.<P, Set<InetAddress>>emptyMap());
+
+    /**
+     * Filter addresses by package, memoized from the result lists passed to
+     * {@link #isInFilter(Object, List, InetAddress)}.
+     */
+    private volatile Map<P, FilterResult> m_filterResults = new IdentityHashMap<P, FilterResult>();
+
+    /**
+     * Compiled rules by package instance, copy-on-write.
+     */
+    private volatile Map<P, AddressRules> m_rules = new IdentityHashMap<P, AddressRules>();
+
+    /**
+     * Compile the specifics and ranges of a package.
+     *
+     * @param pkg the package
+     * @return the compiled rules
+     */
+    protected abstract AddressRules compileRules(P pkg);
+
+    /**
+     * A cheap value that changes when specifics or ranges of the package are
+     * added, removed or edited, usually built with a {@link RuleSignature}.
+     *
+     * @param pkg the package
+     * @return the signature
+     */
+    protected abstract int getRuleSignature(P pkg);
+
+    /**
+     * Replace the filter addresses of every package.  Compiled rules are
+     * kept for the packages in the map whose rules were not edited.
+     * Packages that are not in the map match no interface.
+     *
+     * @param addressesByPackage the filter result of each package
+     */
+    public void rebuild(final Map<P, ? extends Collection<InetAddress>> addressesByPackage) {
+        final Map<P, Set<InetAddress>> addresses = new HashMap<P, Set<InetAddress>>(addressesByPackage.size() * 2);
+        final Addresses<P> previous = m_addresses;
+        for (final Map.Entry<P, ? extends Collection<InetAddress>> entry : addressesByPackage.entrySet()) {
+            final Set<InetAddress> old = previous.get(entry.getKey());
+            // keep the previous set when the filter result did not change
+            if (old != null && old.size() == entry.getValue().size() && old.containsAll(entry.getValue())) {
+                addresses.put(entry.getKey(), old);
+            } else {
+                addresses.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<InetAddress>(entry.getValue())));
+            }
+        }
+        final Addresses<P> current = new Addresses<P>(addresses);
+        m_addresses = current;
+        synchronized (this) {
+            m_rules = currentRules(current);
+            m_filterResults = new IdentityHashMap<P, FilterResult>();
+        }
+    }
+
+    /**
+     * Drop the compiled rules of the packages whose specifics or ranges were
+     * edited in place since they were compiled.  Every cached package's
+     * signature is computed once here instead of on each lookup.
+     */
+    public synchronized void refreshRules() {
+        m_rules = currentRules(null);
+    }
+
+    /**
+     * Forget everything, for example after the configuration is reloaded.
+     */
+    public void clear() {
+        rebuild(Collections.<P, Collection<InetAddress>>emptyMap());
+    }
+
+    /**
+     * @param pkg the package
+     * @return the addresses selected by the package filter on the last
+     *         {@link #rebuild(Map)}, or null if it selected none
+     */
+    public Set<InetAddress> getAddresses(final P pkg) {
+        return m_addresses.get(pkg);
+    }
+
+    /**
+     * @return true if the address was selected by the package filter on the
+     *         last {@link #rebuild(Map)}
+     */
+    public boolean isInFilter(final P pkg, final InetAddress addr) {
+        final Set<InetAddress> addresses = m_addresses.get(pkg);
+        return addresses != null && addresses.contains(addr);
+    }
+
+    /**
+     * Checks an address against a filter result that the caller fetched
+     * itself, typically from the caching filter DAO.  The hash set built
+     * from the list is kept for as long as the same list instance is passed
+     * in.
+     *
+     * @return true if the address is in the filter result
+     */
+    public boolean isInFilter(final P pkg, final List<InetAddress> filterResult, final InetAddress addr) {
+        if (filterResult == null || filterResult.isEmpty()) {
+            return false;
+        }
+        FilterResult result = m_filterResults.get(pkg);
+        if (result == null || result.m_source != filterResult) {
+            result = new FilterResult(filterResult);
+            synchronized (this) {
+                final Map<P, FilterResult> results = new IdentityHashMap<P, FilterResult>(m_filterResults);
+                results.put(pkg, result);
+                m_filterResults = results;
+            }
+        }
+        return result.m_addresses.contains(addr);
+    }
+
+    /**
+     * @param pkg the package
+     * @return the compiled specifics and ranges of the package
+     */
+    public AddressRules getRules(final P pkg) {
+        AddressRules rules = m_rules.get(pkg);
+        if (rules == null) {
+            rules = compileRules(pkg);
+            rules.m_signature = getRuleSignature(pkg);
+            synchronized (this) {
+                final Map<P, AddressRules> allRules = new IdentityHashMap<P, AddressRules>(m_rules);
+                allRules.put(pkg, rules);
+                m_rules = allRules;
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * The cached rules that are still current: those of packages in the
+     * given filter addresses, or of any package if null, whose signature did
+     * not change.  Must be called with the lock held.
+     */
+    private Map<P, AddressRules> currentRules(final Addresses<P> addresses) {
+        final Map<P, AddressRules> rules = new IdentityHashMap<P, AddressRules>();
+        for (final Map.Entry<P, AddressRules> entry : m_rules.entrySet()) {
+            final P pkg = entry.getKey();
+            if ((addresses == null || addresses.contains(pkg)) && entry.getValue().m_signature == getRuleSignature(pkg)) {
+                rules.put(pkg, entry.getValue());
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Folds the specifics and range bounds of a package, in order, into a
+     * rule signature.
+     */
+    public static final class RuleSignature {
+        private int m_signature = 1;
+
+        public RuleSignature addSpecific(final String specific) {
+            return add(1, specific);
+        }
+
+        public RuleSignature addIncludeRange(final String begin, final String end) {
+            return add(2, begin).add(2, end);
+        }
+
+        public RuleSignature addExcludeRange(final String begin, final String end) {
+            return add(3, begin).add(3, end);
+        }
+
+        public int getSignature() {
+            return m_signature;
+        }
+
+        private RuleSignature add(final int kind, final String value) {
+            m_signature = 31 * (31 * m_signature + kind) + (value == null ? 0 : value.hashCode());
+            return this;
+        }
+    }
+
+    private static final class Addresses<P> {
+        private final Map<P, Set<InetAddress>> m_byEquality;
+        private final Map<P, Set<InetAddress>> m_byIdentity;
+
+        Addresses(final Map<P, Set<InetAddress>> addresses) {
+            m_byEquality = addresses;
+            m_byIdentity = new IdentityHashMap<P, Set<InetAddress>>(addresses);
+        }
+
+        Set<InetAddress> get(final P pkg) {
+            final Set<InetAddress> addresses = m_byIdentity.get(pkg);
+            return addresses != null || m_byEquality.isEmpty() ? addresses : m_byEquality.get(pkg);
+        }
+
+        boolean contains(final P pkg) {
+            return m_byIdentity.containsKey(pkg);
+        }
+    }
+
+    private static final class FilterResult {
+        private final List<InetAddress> m_source;
+        private final Set<InetAddress> m_addresses;
+
+        FilterResult(final List<InetAddress> source) {
+            m_source = source;
+            m_addresses = new HashSet<InetAddress>(source);
+        }
+    }
+
+    /**
+     * The specifics, include ranges and exclude ranges of a package.  Ranges
+     * are inclusive at both ends and ordered like {@link ByteArrayComparator}
+     * orders addresses.
+     */
+    public static final class AddressRules {
+        private final Set<ByteBuffer> m_specifics;
+        private final byte[][] m_includes;
+        private final byte[][] m_excludes;
+        private final boolean m_includeAll;
+        private int m_signature;
+
+        private AddressRules(final Set<ByteBuffer> specifics, final List<byte[][]> includes, final List<byte[][]> excludes, final boolean includeAll) {
+            m_specifics = specifics;
+            m_includes = merge(includes);
+            m_excludes = merge(excludes);
+            m_includeAll = includeAll;
+        }
+
+        /**
+         * @return true if the address is one of the specifics
+         */
+        public boolean hasSpecific(final byte[] addr) {
+            return m_specifics.contains(ByteBuffer.wrap(addr));
+        }
+
+        /**
+         * @return true if the address is in an include range, or if the
+         *         package has neither include ranges nor specifics
+         */
+        public boolean isIncluded(final byte[] addr) {
+            return m_includeAll || inRanges(m_includes, addr);
+        }
+
+        /**
+         * @return true if the address is in an exclude range
+         */
+        public boolean isExcluded(final byte[] addr) {
+            return inRanges(m_excludes, addr);
+        }
+
+        /**
+         * Combines the rules the way every configuration manager does: a
+         * specific always wins, otherwise the address must be included and
+         * not excluded.
+         *
+         * @param addr the address
+         * @param inUrl whether the address was found in one of the include URLs
+         */
+        public boolean matches(final byte[] addr, final boolean inUrl) {
+            return hasSpecific(addr) || inUrl || (isIncluded(addr) && !isExcluded(addr));
+        }
+
+        /**
+         * Sort the ranges by their start and merge overlapping ones into a
+         * flat [begin0, end0, begin1, end1, ...] array.
+         */
+        private static byte[][] merge(final List<byte[][]> ranges) {
+            if (ranges.isEmpty()) {
+                return new byte[0][];
+            }
+            final List<byte[][]> sorted = new ArrayList<byte[][]>(ranges);
+            Collections.sort(sorted, new Comparator<byte[][]>() {
+                @Override
+                public int compare(final byte[][] a, final byte[][] b) {
+                    return COMPARATOR.compare(a[0], b[0]);
+                }
+            });
+            final List<byte[]> merged = new ArrayList<byte[]>(sorted.size() * 2);
+            byte[] begin = sorted.get(0)[0];
+            byte[] end = sorted.get(0)[1];
+            for (int i = 1; i < sorted.size(); i++) {
+                final byte[][] range = sorted.get(i);
+                if (COMPARATOR.compare(range[0], end) <= 0) {
+                    if (COMPARATOR.compare(range[1], end) > 0) {
+                        end = range[1];
+                    }
+                } else {
+                    merged.add(begin);
+                    merged.add(end);
+                    begin = range[0];
+                    end = range[1];
+                }
+            }
+            merged.add(begin);
+            merged.add(end);
+            return merged.toArray(new byte[merged.size()][]);
+        }
+
+        private static boolean inRanges(final byte[][] ranges, final byte[] addr) {
+            // find the last range that begins at or before the address
+            int low = 0;
+            int high = ranges.length / 2 - 1;
+            int found = -1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (COMPARATOR.compare(ranges[mid * 2], addr) <= 0) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found >= 0 && COMPARATOR.compare(addr, ranges[found * 2 + 1]) <= 0;
+        }
+
+        /**
+         * Collects the rules of a package.
+         */
+        public static final class Builder {
+            private final Set<ByteBuffer> m_specifics = new HashSet<ByteBuffer>();
+            private final List<byte[][]> m_includes = new ArrayList<byte[][]>();
+            private final List<byte[][]> m_excludes = new ArrayList<byte[][]>();
+            private int m_includeRangeCount = 0;
+            private boolean m_reversedRangeMatchesBegin = true;
+
+            /**
+             * By default a range that ends before it begins matches only its
+             * beginning, like {@link org.opennms.core.utils.InetAddressUtils#isInetAddressInRange(byte[], byte[], byte[])}.
+             * Pass false to have such ranges match nothing instead.
+             */
+            public Builder setReversedRangeMatchesBegin(final boolean reversedRangeMatchesBegin) {
+                m_reversedRangeMatchesBegin = reversedRangeMatchesBegin;
+                return this;
+            }
+
+            public Builder addSpecific(final String specific) {
+                m_specifics.add(ByteBuffer.wrap(toIpAddrBytes(specific)));
+                return this;
+            }
+
+            public Builder addIncludeRange(final String begin, final String end) {
+                m_includeRangeCount++;
+                addRange(m_includes, begin, end);
+                return this;
+            }
+
+            public Builder addExcludeRange(final String begin, final String end) {
+                addRange(m_excludes, begin, end);
+                return this;
+            }
+
+            public AddressRules build() {
+                // no include ranges and no specifics means every address is included
+                return new AddressRules(m_specifics, m_includes, m_excludes, m_includeRangeCount == 0 && m_specifics.isEmpty());
+            }
+
+            private void addRange(final List<byte[][]> ranges, final String beginString, final String endString) {
+                final byte[] begin = toIpAddrBytes(beginString);
+                final byte[] end = toIpAddrBytes(endString);
+                if (COMPARATOR.compare(end, begin) >= 0) {
+                    ranges.add(new byte[][] { begin, end });
+                } else if (m_reversedRangeMatchesBegin) {
+                    ranges.add(new byte[][] { begin, Arrays.copyOf(begin, begin.length) });
+                }
+            }
+        }
+    }
+}
@@ -46,14 +46,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.io.IOUtils;
 import org.opennms.core.network.IpListFromUrl;
-import org.opennms.core.utils.ByteArrayComparator;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.core.xml.MarshallingResourceFailureException;
 import org.opennms.netmgt.config.poller.CriticalService;
@@ -153,7 +151,37 @@ abstract public class PollerConfigManager implements PollerConfig {
      * A mapping of the configured package to a list of IPs selected via filter
      * rules, so as to avoid repetitive database access.
      */
-    private AtomicReference<Map<Package, List<InetAddress>>> m_pkgIpMap = new AtomicReference<Map<Package, List<InetAddress>>>();;
+    private final PackageMembershipIndex<Package> m_packageIndex = new PackageMembershipIndex<Package>() {
+        @Override
+        protected AddressRules compileRules(final Package pkg) {
+            final AddressRules.Builder builder = new AddressRules.Builder();
+            for (final String specific : pkg.getSpecifics()) {
+                builder.addSpecific(specific);
+            }
+            for (final IncludeRange rng : pkg.getIncludeRanges()) {
+                builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+            }
+            for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+                builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+            }
+            return builder.build();
+        }
+
+        @Override
+        protected int getRuleSignature(final Package pkg) {
+            final RuleSignature signature = new RuleSignature();
+            for (final String specific : pkg.getSpecifics()) {
+                signature.addSpecific(specific);
+            }
+            for (final IncludeRange rng : pkg.getIncludeRanges()) {
+                signature.addIncludeRange(rng.getBegin(), rng.getEnd());
+            }
+            for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+                signature.addExcludeRange(rng.getBegin(), rng.getEnd());
+            }
+            return signature.getSignature();
+        }
+    };
     /**
      * A mapp of service names to service monitors. Constructed based on data in
      * the configuration file.
@@ -457,7 +485,7 @@ abstract public class PollerConfigManager implements PollerConfig {
                 
             }
             
-            m_pkgIpMap.set(pkgIpMap);
+            m_packageIndex.rebuild(pkgIpMap);
             
         } finally {
             getReadLock().unlock();
@@ -510,14 +538,8 @@ abstract public class PollerConfigManager implements PollerConfig {
      */
     @Override
     public boolean isInterfaceInPackage(final String iface, final Package pkg) {
-        boolean filterPassed = false;
         final InetAddress ifaceAddr = addr(iface);
-    
-        // get list of IPs in this package
-        final List<InetAddress> ipList = m_pkgIpMap.get().get(pkg);
-        if (ipList != null && ipList.size() > 0) {
-			filterPassed = ipList.contains(ifaceAddr);
-        }
+        final boolean filterPassed = m_packageIndex.isInFilter(pkg, ifaceAddr);
 
         LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", iface, pkg.getName(), Boolean.valueOf(filterPassed));
     
@@ -527,61 +549,15 @@ abstract public class PollerConfigManager implements PollerConfig {
         // Ensure that the interface is in the specific list or
         // that it is in the include range and is not excluded
         //
-        boolean has_specific = false;
-        boolean has_range_include = false;
-        boolean has_range_exclude = false;
- 
-        // if there are NO include ranges then treat act as if the user include
-        // the range of all valid addresses (0.0.0.0 - 255.255.255.255, ::1 - ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff)
-        has_range_include = pkg.getIncludeRanges().size() == 0 && pkg.getSpecifics().size() == 0;
-        
-        final byte[] addr = toIpAddrBytes(iface);
-
-        for (final IncludeRange rng : pkg.getIncludeRanges()) {
-            int comparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getBegin()));
-            if (comparison > 0) {
-                int endComparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getEnd()));
-                if (endComparison <= 0) {
-                    has_range_include = true;
-                    break;
-                }
-            } else if (comparison == 0) {
-                has_range_include = true;
-                break;
-            }
-        }
-
-        for (final String spec : pkg.getSpecifics()) {
-            if (new ByteArrayComparator().compare(addr, toIpAddrBytes(spec)) == 0) {
-                has_specific = true;
-                break;
-            }
-        }
-    
+        boolean inUrl = false;
         for (final String includeUrl : pkg.getIncludeUrls()) {
             if (interfaceInUrl(iface, includeUrl)) {
-                has_specific = true;
+                inUrl = true;
                 break;
             }
         }
 
-        if (!has_specific) {
-            for (final ExcludeRange rng : pkg.getExcludeRanges()) {
-                int comparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getBegin()));
-                if (comparison > 0) {
-                    int endComparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getEnd()));
-                    if (endComparison <= 0) {
-                        has_range_exclude = true;
-                        break;
-                    }
-                } else if (comparison == 0) {
-                    has_range_exclude = true;
-                    break;
-                }
-            }
-        }
-
-        return has_specific || (has_range_include && !has_range_exclude);
+        return m_packageIndex.getRules(pkg).matches(toIpAddrBytes(iface), inUrl);
     }
 
     /**
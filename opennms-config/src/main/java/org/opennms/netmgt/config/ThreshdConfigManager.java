@@ -32,7 +32,6 @@
 package org.opennms.netmgt.config;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
-import static org.opennms.core.utils.InetAddressUtils.isInetAddressInRange;
 import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
 
 import java.io.IOException;
@@ -48,7 +47,6 @@ import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.Marshaller;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.network.IpListFromUrl;
-import org.opennms.core.utils.ByteArrayComparator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.core.xml.CastorUtils;
@@ -78,10 +76,40 @@ public abstract class ThreshdConfigManager {
      */
     private Map<String, List<String>> m_urlIPMap;
     /**
-     * A mapping of the configured package to a list of IPs selected via filter
-     * rules, so as to avoid repetitive database access.
+     * The IPs selected via filter rules and the compiled specifics and ranges
+     * of each configured package, so as to avoid repetitive database access.
      */
-    private Map<Package, List<InetAddress>> m_pkgIpMap;
+    private final PackageMembershipIndex<Package> m_packageIndex = new PackageMembershipIndex<Package>() {
+        @Override
+        protected AddressRules compileRules(final Package pkg) {
+            final AddressRules.Builder builder = new AddressRules.Builder();
+            for (final String specific : pkg.getSpecificCollection()) {
+                builder.addSpecific(specific);
+            }
+            for (final IncludeRange rng : pkg.getIncludeRangeCollection()) {
+                builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+            }
+            for (final ExcludeRange rng : pkg.getExcludeRangeCollection()) {
+                builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+            }
+            return builder.build();
+        }
+
+        @Override
+        protected int getRuleSignature(final Package pkg) {
+            final RuleSignature signature = new RuleSignature();
+            for (final String specific : pkg.getSpecificCollection()) {
+                signature.addSpecific(specific);
+            }
+            for (final IncludeRange rng : pkg.getIncludeRangeCollection()) {
+                signature.addIncludeRange(rng.getBegin(), rng.getEnd());
+            }
+            for (final ExcludeRange rng : pkg.getExcludeRangeCollection()) {
+                signature.addExcludeRange(rng.getBegin(), rng.getEnd());
+            }
+            return signature.getSignature();
+        }
+    };
     /**
      * A boolean flag to indicate If a filter rule against the local OpenNMS
      * server has to be used.
@@ -139,7 +167,7 @@ public abstract class ThreshdConfigManager {
      */
     protected void createPackageIpListMap() {
     
-        m_pkgIpMap = new HashMap<Package, List<InetAddress>>();
+        final Map<Package, List<InetAddress>> pkgIpMap = new HashMap<Package, List<InetAddress>>();
     
         Enumeration<org.opennms.netmgt.config.threshd.Package> pkgEnum = m_config.enumeratePackage();
         while (pkgEnum.hasMoreElements()) {
@@ -166,12 +194,14 @@ public abstract class ThreshdConfigManager {
                 FilterDaoFactory.getInstance().flushActiveIpAddressListCache();
                 List<InetAddress> ipList = FilterDaoFactory.getInstance().getActiveIPAddressList(filterRules.toString());
                 if (ipList.size() > 0) {
-                    m_pkgIpMap.put(pkg, ipList);
+                    pkgIpMap.put(pkg, ipList);
                 }
             } catch (Throwable t) {
                 LOG.error("createPackageIpMap: failed to map package: {} to an IP List with filter \"{}\"", pkg.getName(), pkg.getFilter().getContent(), t);
             }
         }
+    
+        m_packageIndex.rebuild(pkgIpMap);
     }
 
     /**
@@ -303,19 +333,12 @@ public abstract class ThreshdConfigManager {
      * @return True if the interface is included in the package, false
      *         otherwise.
      */
-    public synchronized boolean interfaceInPackage(String iface, org.opennms.netmgt.config.threshd.Package pkg) {
+    public boolean interfaceInPackage(String iface, org.opennms.netmgt.config.threshd.Package pkg) {
     
         final InetAddress ifaceAddr = addr(iface);
-        boolean filterPassed = false;
-    
-        // get list of IPs in this package
-        java.util.List<InetAddress> ipList = m_pkgIpMap.get(pkg);
-        if (ipList != null && ipList.size() > 0) {
-			filterPassed = ipList.contains(ifaceAddr);
-        }
-    
+        final boolean filterPassed = m_packageIndex.isInFilter(pkg, ifaceAddr);
 
-        LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", filterPassed, iface, pkg.getName());
+        LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", iface, pkg.getName(), filterPassed);
     
         if (!filterPassed)
             return false;
@@ -324,42 +347,13 @@ public abstract class ThreshdConfigManager {
         // Ensure that the interface is in the specific list or
         // that it is in the include range and is not excluded
         //
-        boolean has_specific = false;
-        boolean has_range_include = false;
-        boolean has_range_exclude = false;
-        
-        has_range_include = pkg.getIncludeRangeCount() == 0 && pkg.getSpecificCount() == 0;
-    
-        for (IncludeRange rng : pkg.getIncludeRangeCollection()) {
-            if (isInetAddressInRange(iface, rng.getBegin(), rng.getEnd())) {
-                has_range_include = true;
-                break;
-            }
-        }
-
-        byte[] addr = toIpAddrBytes(iface);
-
-        for (String spec : pkg.getSpecificCollection()) {
-            byte[] speca = toIpAddrBytes(spec);
-            if (new ByteArrayComparator().compare(speca, addr) == 0) {
-                has_specific = true;
-                break;
-            }
-        }
-
+        boolean inUrl = false;
         Enumeration<String> eurl = pkg.enumerateIncludeUrl();
-        while (!has_specific && eurl.hasMoreElements()) {
-            has_specific = interfaceInUrl(iface, eurl.nextElement());
-        }
-    
-        for (ExcludeRange rng : pkg.getExcludeRangeCollection()) {
-            if (isInetAddressInRange(iface, rng.getBegin(), rng.getEnd())) {
-                has_range_exclude = true;
-                break;
-            }
+        while (!inUrl && eurl.hasMoreElements()) {
+            inUrl = interfaceInUrl(iface, eurl.nextElement());
         }
     
-        return has_specific || (has_range_include && !has_range_exclude);
+        return m_packageIndex.getRules(pkg).matches(toIpAddrBytes(iface), inUrl);
     }
 
     /**
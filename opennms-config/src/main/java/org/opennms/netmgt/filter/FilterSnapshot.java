@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.utils.DBUtils;
+import org.opennms.netmgt.filter.api.FilterParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory copy of the node, ipInterface, ifServices and category_node
+ * tables that {@link InMemoryFilterRule}s are evaluated against.
+ *
+ * The snapshot is loaded with four queries the first time it is used and
+ * then kept up to date one node at a time with {@link #refreshNode(int)}
+ * and {@link #removeNode(int)}, normally driven by provisioning events (see
+ * {@link FilterSnapshotEventListener}).  As a safety net it is reloaded
+ * completely once it is older than the configured maximum age, and
+ * {@link #invalidate()} forces a reload on the next use.
+ */
+public class FilterSnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(FilterSnapshot.class);
+
+    private static final String NODE_COLUMNS = "node.nodeID, node.nodeType, node.nodeLabel, node.nodeSysOID, node.nodeSysName, node.nodeSysDescription, node.nodeSysLocation, node.nodeSysContact, node.foreignSource, node.foreignID";
+    private static final String INTERFACE_COLUMNS = "ipInterface.id, ipInterface.nodeID, ipInterface.ipAddr, ipInterface.ipHostname, ipInterface.isManaged, ipInterface.isSnmpPrimary";
+    private static final String SERVICE_QUERY = "SELECT ifServices.ipInterfaceId, service.serviceName FROM ifServices, service WHERE ifServices.serviceID = service.serviceID";
+    private static final String CATEGORY_QUERY = "SELECT category_node.nodeID, categories.categoryName FROM category_node, categories WHERE categories.categoryID = category_node.categoryID";
+
+    /**
+     * A row of the node table with the categories the node is in.
+     */
+    static final class NodeEntry {
+        final int m_id;
+        final String m_type;
+        final String m_label;
+        final String m_sysOid;
+        final String m_sysName;
+        final String m_sysDescription;
+        final String m_sysLocation;
+        final String m_sysContact;
+        final String m_foreignSource;
+        final String m_foreignId;
+        final Set<String> m_categories = new TreeSet<String>();
+        final List<InterfaceEntry> m_interfaces = new ArrayList<InterfaceEntry>();
+
+        NodeEntry(final ResultSet rs) throws SQLException {
+            m_id = rs.getInt(1);
+            m_type = rs.getString(2);
+            m_label = rs.getString(3);
+            m_sysOid = rs.getString(4);
+            m_sysName = rs.getString(5);
+            m_sysDescription = rs.getString(6);
+            m_sysLocation = rs.getString(7);
+            m_sysContact = rs.getString(8);
+            m_foreignSource = rs.getString(9);
+            m_foreignId = rs.getString(10);
+        }
+    }
+
+    /**
+     * A row of the ipInterface table with the names of its services.
+     */
+    static final class InterfaceEntry {
+        final int m_id;
+        final NodeEntry m_node;
+        final String m_ipAddr;
+        final String m_ipHostname;
+        final String m_isManaged;
+        final String m_isSnmpPrimary;
+        final List<String> m_services = new ArrayList<String>(4);
+
+        InterfaceEntry(final NodeEntry node, final ResultSet rs) throws SQLException {
+            m_id = rs.getInt(1);
+            m_node = node;
+            m_ipAddr = rs.getString(3);
+            m_ipHostname = rs.getString(4);
+            m_isManaged = rs.getString(5);
+            m_isSnmpPrimary = rs.getString(6);
+        }
+    }
+
+    /**
+     * The nodes by ID and the interfaces by IP address.  The maps are
+     * concurrent so that a node can be replaced while rules are evaluated;
+     * entries themselves are never modified once published.
+     */
+    private static final class State {
+        final ConcurrentSkipListMap<Integer, NodeEntry> m_nodes = new ConcurrentSkipListMap<Integer, NodeEntry>();
+        final ConcurrentHashMap<String, List<InterfaceEntry>> m_interfacesByAddress = new ConcurrentHashMap<String, List<InterfaceEntry>>();
+        final long m_loadedAt = System.currentTimeMillis();
+    }
+
+    private final DataSource m_dataSource;
+    private final long m_maxAge;
+    private volatile State m_state;
+    private final Object m_writeLock = new Object();
+
+    private final AtomicLong m_loads = new AtomicLong();
+    private final AtomicLong m_nodeRefreshes = new AtomicLong();
+
+    /**
+     * @param dataSource the database to load from
+     * @param maxAge milliseconds after which the snapshot is reloaded completely
+     */
+    public FilterSnapshot(final DataSource dataSource, final long maxAge) {
+        m_dataSource = dataSource;
+        m_maxAge = maxAge;
+    }
+
+    /**
+     * @return all nodes, ordered by node ID
+     */
+    Collection<NodeEntry> getNodes() {
+        return getState().m_nodes.values();
+    }
+
+    /**
+     * @return the node with this ID, or null
+     */
+    NodeEntry getNode(final int nodeId) {
+        return getState().m_nodes.get(nodeId);
+    }
+
+    /**
+     * @return the interfaces with this address, never null
+     */
+    List<InterfaceEntry> getInterfaces(final String ipAddr) {
+        final List<InterfaceEntry> interfaces = getState().m_interfacesByAddress.get(ipAddr);
+        return interfaces == null ? Collections.<InterfaceEntry>emptyList() : interfaces;
+    }
+
+    /**
+     * @return true if any interface with this address has the service,
+     *         like <code>ipAddr IN (SELECT ifServices.ipAddr ...)</code>
+     */
+    boolean isServiceOnAddress(final String ipAddr, final String serviceName) {
+        for (final InterfaceEntry iface : getInterfaces(ipAddr)) {
+            if (iface.m_services.contains(serviceName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Force a complete reload on the next use.
+     */
+    public void invalidate() {
+        m_state = null;
+    }
+
+    /**
+     * Re-read a single node, its interfaces, services and categories.  If
+     * the node no longer exists it is removed.
+     *
+     * @param nodeId the node ID
+     */
+    public void refreshNode(final int nodeId) {
+        synchronized (m_writeLock) {
+            final State state = m_state;
+            if (state == null) {
+                // nothing loaded yet, the next use loads everything
+                return;
+            }
+            final Map<Integer, NodeEntry> nodes;
+            try {
+                nodes = load(" WHERE node.nodeID = ?", " AND ifServices.nodeID = ?", " AND category_node.nodeID = ?", nodeId);
+            } catch (final SQLException e) {
+                LOG.warn("Failed to refresh node {} in the filter snapshot, it will be reloaded", nodeId, e);
+                m_state = null;
+                return;
+            }
+            replaceNode(state, nodeId, nodes.get(nodeId));
+            m_nodeRefreshes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove a node without going to the database.
+     *
+     * @param nodeId the node ID
+     */
+    public void removeNode(final int nodeId) {
+        synchronized (m_writeLock) {
+            final State state = m_state;
+            if (state != null) {
+                replaceNode(state, nodeId, null);
+            }
+        }
+    }
+
+    /**
+     * @return the number of complete loads
+     */
+    public long getLoads() {
+        return m_loads.get();
+    }
+
+    /**
+     * @return the number of single node refreshes
+     */
+    public long getNodeRefreshes() {
+        return m_nodeRefreshes.get();
+    }
+
+    private static void replaceNode(final State state, final int nodeId, final NodeEntry node) {
+        final NodeEntry old = node == null ? state.m_nodes.remove(nodeId) : state.m_nodes.put(nodeId, node);
+        if (old != null) {
+            for (final InterfaceEntry iface : old.m_interfaces) {
+                final List<InterfaceEntry> current = state.m_interfacesByAddress.get(iface.m_ipAddr);
+                if (current != null) {
+                    final List<InterfaceEntry> remaining = new ArrayList<InterfaceEntry>(current);
+                    remaining.remove(iface);
+                    if (remaining.isEmpty()) {
+                        state.m_interfacesByAddress.remove(iface.m_ipAddr);
+                    } else {
+                        state.m_interfacesByAddress.put(iface.m_ipAddr, Collections.unmodifiableList(remaining));
+                    }
+                }
+            }
+        }
+        if (node != null) {
+            for (final InterfaceEntry iface : node.m_interfaces) {
+                final List<InterfaceEntry> current = state.m_interfacesByAddress.get(iface.m_ipAddr);
+                final List<InterfaceEntry> added = current == null ? new ArrayList<InterfaceEntry>(1) : new ArrayList<InterfaceEntry>(current);
+                added.add(iface);
+                state.m_interfacesByAddress.put(iface.m_ipAddr, Collections.unmodifiableList(added));
+            }
+        }
+    }
+
+    private State getState() {
+        State state = m_state;
+        if (state == null || System.currentTimeMillis() - state.m_loadedAt > m_maxAge) {
+            synchronized (m_writeLock) {
+                state = m_state;
+                if (state == null || System.currentTimeMillis() - state.m_loadedAt > m_maxAge) {
+                    state = loadAll();
+                    m_state = state;
+                }
+            }
+        }
+        return state;
+    }
+
+    private State loadAll() {
+        final long start = System.currentTimeMillis();
+        final Map<Integer, NodeEntry> nodes;
+        try {
+            nodes = load("", "", "", null);
+        } catch (final SQLException e) {
+            throw new FilterParseException("SQL Exception occurred loading the filter snapshot: " + e.getLocalizedMessage(), e);
+        }
+        final State state = new State();
+        for (final NodeEntry node : nodes.values()) {
+            replaceNode(state, node.m_id, node);
+        }
+        m_loads.incrementAndGet();
+        LOG.debug("Loaded {} nodes into the filter snapshot in {}ms", nodes.size(), System.currentTimeMillis() - start);
+        return state;
+    }
+
+    private Map<Integer, NodeEntry> load(final String nodeWhere, final String serviceWhere, final String categoryWhere, final Integer nodeId) throws SQLException {
+        final Map<Integer, NodeEntry> nodes = new HashMap<Integer, NodeEntry>();
+        final Map<Integer, InterfaceEntry> interfaces = new HashMap<Integer, InterfaceEntry>();
+
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection conn = m_dataSource.getConnection();
+            d.watch(conn);
+
+            ResultSet rs = query(d, conn, "SELECT " + NODE_COLUMNS + " FROM node" + nodeWhere, nodeId);
+            while (rs.next()) {
+                final NodeEntry node = new NodeEntry(rs);
+                nodes.put(node.m_id, node);
+            }
+
+            rs = query(d, conn, "SELECT " + INTERFACE_COLUMNS + " FROM ipInterface" + nodeWhere.replace("node.", "ipInterface."), nodeId);
+            while (rs.next()) {
+                final NodeEntry node = nodes.get(rs.getInt(2));
+                if (node != null) {
+                    final InterfaceEntry iface = new InterfaceEntry(node, rs);
+                    node.m_interfaces.add(iface);
+                    interfaces.put(iface.m_id, iface);
+                }
+            }
+
+            rs = query(d, conn, SERVICE_QUERY + serviceWhere, nodeId);
+            while (rs.next()) {
+                final InterfaceEntry iface = interfaces.get(rs.getInt(1));
+                if (iface != null) {
+                    iface.m_services.add(rs.getString(2));
+                }
+            }
+
+            rs = query(d, conn, CATEGORY_QUERY + categoryWhere, nodeId);
+            while (rs.next()) {
+                final NodeEntry node = nodes.get(rs.getInt(1));
+                if (node != null) {
+                    node.m_categories.add(rs.getString(2));
+                }
+            }
+        } finally {
+            d.cleanUp();
+        }
+        return nodes;
+    }
+
+    private static ResultSet query(final DBUtils d, final Connection conn, final String sql, final Integer nodeId) throws SQLException {
+        final PreparedStatement stmt = conn.prepareStatement(sql);
+        d.watch(stmt);
+        if (nodeId != null) {
+            stmt.setInt(1, nodeId);
+        }
+        final ResultSet rs = stmt.executeQuery();
+        d.watch(rs);
+        return rs;
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.filter.api.FilterDao;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Keeps the {@link FilterSnapshot} of a {@link JdbcFilterDao} up to date
+ * from provisioning events, so that rules evaluated in memory see node,
+ * interface, service and category changes without waiting for the next
+ * complete reload.  Does nothing unless in-memory evaluation is enabled.
+ */
+public class FilterSnapshotEventListener implements EventListener, InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(FilterSnapshotEventListener.class);
+
+    private static final List<String> UEIS = Arrays.asList(
+        EventConstants.NODE_ADDED_EVENT_UEI,
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+        EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+        EventConstants.SERVICE_UNMANAGED_EVENT_UEI,
+        EventConstants.SERVICE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI
+    );
+
+    private EventSubscriptionService m_eventSubscriptionService;
+    private FilterDao m_filterDao;
+
+    /**
+     * <p>setEventSubscriptionService</p>
+     *
+     * @param eventSubscriptionService a {@link org.opennms.netmgt.events.api.EventSubscriptionService} object.
+     */
+    public void setEventSubscriptionService(final EventSubscriptionService eventSubscriptionService) {
+        m_eventSubscriptionService = eventSubscriptionService;
+    }
+
+    /**
+     * <p>setFilterDao</p>
+     *
+     * @param filterDao a {@link org.opennms.netmgt.filter.api.FilterDao} object.
+     */
+    public void setFilterDao(final FilterDao filterDao) {
+        m_filterDao = filterDao;
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_eventSubscriptionService != null, "property eventSubscriptionService cannot be null");
+        Assert.state(m_filterDao != null, "property filterDao cannot be null");
+        m_eventSubscriptionService.addEventListener(this, UEIS);
+    }
+
+    /**
+     * <p>destroy</p>
+     */
+    @Override
+    public void destroy() {
+        m_eventSubscriptionService.removeEventListener(this, UEIS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return "FilterSnapshotEventListener";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onEvent(final Event e) {
+        if (!(m_filterDao instanceof JdbcFilterDao) || !((JdbcFilterDao)m_filterDao).isInMemory()) {
+            return;
+        }
+        final FilterSnapshot snapshot = ((JdbcFilterDao)m_filterDao).getSnapshot();
+        final String uei = e.getUei();
+
+        if (EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(uei)) {
+            // touches two nodes, just start over
+            LOG.debug("Interface reparented, reloading the filter snapshot");
+            snapshot.invalidate();
+            return;
+        }
+
+        final Long nodeId = e.getNodeid();
+        if (nodeId == null || nodeId <= 0) {
+            LOG.debug("Ignoring {} event without a node ID", uei);
+            return;
+        }
+        if (EventConstants.NODE_DELETED_EVENT_UEI.equals(uei)) {
+            snapshot.removeNode(nodeId.intValue());
+        } else {
+            snapshot.refreshNode(nodeId.intValue());
+        }
+    }
+}
@@ -0,0 +1,882 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.opennms.core.utils.IPLike;
+import org.opennms.netmgt.config.api.DatabaseSchemaConfig;
+import org.opennms.netmgt.config.filter.Table;
+import org.opennms.netmgt.filter.FilterSnapshot.InterfaceEntry;
+import org.opennms.netmgt.filter.FilterSnapshot.NodeEntry;
+
+/**
+ * A filter rule compiled into a predicate over a {@link FilterSnapshot}.
+ *
+ * Only the common subset of the filter syntax is supported: comparisons of
+ * node, interface, service and category columns with literals,
+ * <code>LIKE</code>, <code>IPLIKE</code>, <code>IS [NOT] NULL</code>, the
+ * <code>is</code>, <code>notis</code> and <code>catinc</code> prefixes, and
+ * <code>AND</code>/<code>OR</code>/<code>NOT</code> with parentheses.
+ * Anything else (asset columns, sub-selects, casts, ...) makes
+ * {@link #compile} throw {@link UnsupportedRuleException}, and the caller
+ * should run the rule as SQL instead.
+ *
+ * Rules are evaluated row by row over the same join the SQL would use:
+ * one row per interface, multiplied by its services when the rule uses
+ * the service name, and by its node's categories when it uses the
+ * category name.  Comparisons with NULL are unknown, as in SQL.
+ */
+final class InMemoryFilterRule {
+
+    /**
+     * Thrown when a rule uses something the in-memory evaluator does not
+     * implement.
+     */
+    static final class UnsupportedRuleException extends Exception {
+        private static final long serialVersionUID = 3781094557364025245L;
+
+        UnsupportedRuleException(final String message) {
+            super(message);
+        }
+    }
+
+    private enum Column {
+        IPADDR("ipAddr", "ipInterface"),
+        IPHOSTNAME("ipHostname", "ipInterface"),
+        ISMANAGED("isManaged", "ipInterface"),
+        ISSNMPPRIMARY("isSnmpPrimary", "ipInterface"),
+        NODEID("nodeID", "node"),
+        NODETYPE("nodeType", "node"),
+        NODELABEL("nodeLabel", "node"),
+        NODESYSOID("nodeSysOID", "node"),
+        NODESYSNAME("nodeSysName", "node"),
+        NODESYSDESCRIPTION("nodeSysDescription", "node"),
+        NODESYSLOCATION("nodeSysLocation", "node"),
+        NODESYSCONTACT("nodeSysContact", "node"),
+        FOREIGNSOURCE("foreignSource", "node"),
+        FOREIGNID("foreignID", "node"),
+        SERVICENAME("serviceName", "service"),
+        CATEGORYNAME("categoryName", "categories");
+
+        private final String m_name;
+        private final String m_table;
+
+        private Column(final String name, final String table) {
+            m_name = name;
+            m_table = table;
+        }
+
+        String value(final Row row) {
+            final InterfaceEntry iface = row.m_iface;
+            final NodeEntry node = iface.m_node;
+            switch (this) {
+            case IPADDR: return iface.m_ipAddr;
+            case IPHOSTNAME: return iface.m_ipHostname;
+            case ISMANAGED: return iface.m_isManaged;
+            case ISSNMPPRIMARY: return iface.m_isSnmpPrimary;
+            case NODEID: return Integer.toString(node.m_id);
+            case NODETYPE: return node.m_type;
+            case NODELABEL: return node.m_label;
+            case NODESYSOID: return node.m_sysOid;
+            case NODESYSNAME: return node.m_sysName;
+            case NODESYSDESCRIPTION: return node.m_sysDescription;
+            case NODESYSLOCATION: return node.m_sysLocation;
+            case NODESYSCONTACT: return node.m_sysContact;
+            case FOREIGNSOURCE: return node.m_foreignSource;
+            case FOREIGNID: return node.m_foreignId;
+            case SERVICENAME: return row.m_service;
+            case CATEGORYNAME: return row.m_category;
+            default: throw new IllegalStateException("unknown column " + this);
+            }
+        }
+
+        static Column find(final String name) {
+            for (final Column column : values()) {
+                if (column.m_name.equalsIgnoreCase(name)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The row of the join currently being evaluated.
+     */
+    private static final class Row {
+        private InterfaceEntry m_iface;
+        private String m_service;
+        private String m_category;
+    }
+
+    /**
+     * Receives matching rows; returns false to stop the scan.
+     */
+    private abstract static class RowHandler {
+        abstract boolean handle(Row row);
+    }
+
+    /**
+     * A boolean expression in SQL's three-valued logic: null is unknown.
+     */
+    private abstract static class Expr {
+        abstract Boolean eval(Row row, FilterSnapshot snapshot);
+    }
+
+    private static final class And extends Expr {
+        private final Expr m_left;
+        private final Expr m_right;
+
+        And(final Expr left, final Expr right) {
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final Boolean left = m_left.eval(row, snapshot);
+            if (Boolean.FALSE.equals(left)) {
+                return Boolean.FALSE;
+            }
+            final Boolean right = m_right.eval(row, snapshot);
+            if (Boolean.FALSE.equals(right)) {
+                return Boolean.FALSE;
+            }
+            return left == null || right == null ? null : Boolean.TRUE;
+        }
+    }
+
+    private static final class Or extends Expr {
+        private final Expr m_left;
+        private final Expr m_right;
+
+        Or(final Expr left, final Expr right) {
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final Boolean left = m_left.eval(row, snapshot);
+            if (Boolean.TRUE.equals(left)) {
+                return Boolean.TRUE;
+            }
+            final Boolean right = m_right.eval(row, snapshot);
+            if (Boolean.TRUE.equals(right)) {
+                return Boolean.TRUE;
+            }
+            return left == null || right == null ? null : Boolean.FALSE;
+        }
+    }
+
+    private static final class Not extends Expr {
+        private final Expr m_expr;
+
+        Not(final Expr expr) {
+            m_expr = expr;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final Boolean value = m_expr.eval(row, snapshot);
+            return value == null ? null : Boolean.valueOf(!value.booleanValue());
+        }
+    }
+
+    private static final class Equals extends Expr {
+        private final Column m_column;
+        private final String m_value;
+
+        Equals(final Column column, final String value) {
+            m_column = column;
+            m_value = value;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final String value = m_column.value(row);
+            return value == null ? null : Boolean.valueOf(value.equals(m_value));
+        }
+    }
+
+    private static final class NodeIdCompare extends Expr {
+        private final String m_op;
+        private final long m_value;
+
+        NodeIdCompare(final String op, final long value) {
+            m_op = op;
+            m_value = value;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final long nodeId = row.m_iface.m_node.m_id;
+            if ("<".equals(m_op)) return nodeId < m_value;
+            if ("<=".equals(m_op)) return nodeId <= m_value;
+            if (">".equals(m_op)) return nodeId > m_value;
+            if (">=".equals(m_op)) return nodeId >= m_value;
+            if ("=".equals(m_op)) return nodeId == m_value;
+            return nodeId != m_value;
+        }
+    }
+
+    private static final class Like extends Expr {
+        private final Column m_column;
+        private final Pattern m_pattern;
+
+        Like(final Column column, final String pattern) {
+            m_column = column;
+            m_pattern = toRegex(pattern);
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final String value = m_column.value(row);
+            return value == null ? null : Boolean.valueOf(m_pattern.matcher(value).matches());
+        }
+
+        /**
+         * Translate a SQL LIKE pattern, where % and _ are wildcards and a
+         * backslash escapes the next character.
+         */
+        private static Pattern toRegex(final String like) {
+            final StringBuilder regex = new StringBuilder();
+            final StringBuilder literal = new StringBuilder();
+            for (int i = 0; i < like.length(); i++) {
+                final char c = like.charAt(i);
+                if (c == '\\' && i + 1 < like.length()) {
+                    literal.append(like.charAt(++i));
+                } else if (c == '%' || c == '_') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '%' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+    }
+
+    private static final class IsNull extends Expr {
+        private final Column m_column;
+
+        IsNull(final Column column) {
+            m_column = column;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            return Boolean.valueOf(m_column.value(row) == null);
+        }
+    }
+
+    private static final class IpLike extends Expr {
+        private final String m_pattern;
+
+        IpLike(final String pattern) {
+            m_pattern = pattern;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final String ipAddr = row.m_iface.m_ipAddr;
+            return ipAddr == null ? null : Boolean.valueOf(IPLike.matches(ipAddr, m_pattern));
+        }
+    }
+
+    /**
+     * <code>notisVALUE</code>: no interface with this address has the service.
+     */
+    private static final class NotOnAddress extends Expr {
+        private final String m_service;
+
+        NotOnAddress(final String service) {
+            m_service = service;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            final String ipAddr = row.m_iface.m_ipAddr;
+            return ipAddr == null ? null : Boolean.valueOf(!snapshot.isServiceOnAddress(ipAddr, m_service));
+        }
+    }
+
+    /**
+     * <code>catincVALUE</code>: the node is in the category.
+     */
+    private static final class InCategory extends Expr {
+        private final String m_category;
+
+        InCategory(final String category) {
+            m_category = category;
+        }
+
+        @Override
+        Boolean eval(final Row row, final FilterSnapshot snapshot) {
+            return Boolean.valueOf(row.m_iface.m_node.m_categories.contains(m_category));
+        }
+    }
+
+    /**
+     * Stands for <code>(ipInterface.isManaged != 'D' OR ipInterface.isManaged IS NULL)</code>;
+     * the tokenizer never produces it.
+     */
+    private static final String NOT_DELETED = "\u0000notDeleted";
+
+    private final Expr m_expr;
+    private final boolean m_usesServices;
+    private final boolean m_usesCategories;
+    private final Integer m_nodeId;
+    private final String m_ipAddr;
+
+    private InMemoryFilterRule(final Set<Column> columns, final Expr expr) {
+        m_expr = expr;
+        m_usesServices = columns.contains(Column.SERVICENAME);
+        m_usesCategories = columns.contains(Column.CATEGORYNAME);
+
+        // an equality on nodeID or ipAddr ANDed with everything else narrows the scan
+        final List<Expr> conjuncts = new ArrayList<Expr>();
+        collectConjuncts(expr, conjuncts);
+        Integer nodeId = null;
+        String ipAddr = null;
+        for (final Expr conjunct : conjuncts) {
+            if (nodeId == null && conjunct instanceof NodeIdCompare && "=".equals(((NodeIdCompare)conjunct).m_op)) {
+                final long value = ((NodeIdCompare)conjunct).m_value;
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    nodeId = (int) value;
+                }
+            } else if (ipAddr == null && conjunct instanceof Equals && ((Equals)conjunct).m_column == Column.IPADDR) {
+                ipAddr = ((Equals)conjunct).m_value;
+            }
+        }
+        m_nodeId = nodeId;
+        m_ipAddr = nodeId == null ? ipAddr : null;
+    }
+
+    private static void collectConjuncts(final Expr expr, final List<Expr> conjuncts) {
+        if (expr instanceof And) {
+            collectConjuncts(((And)expr).m_left, conjuncts);
+            collectConjuncts(((And)expr).m_right, conjuncts);
+        } else {
+            conjuncts.add(expr);
+        }
+    }
+
+    /**
+     * Compile a rule.
+     *
+     * @param rule the filter rule
+     * @param excludeDeleted whether to add the same "not deleted" condition
+     *        as {@link JdbcFilterDao#getActiveIPAddressList(String)}
+     * @param schema the schema used to check that columns live in the
+     *        tables the evaluator expects them in
+     * @throws UnsupportedRuleException if the rule has to be run as SQL
+     */
+    static InMemoryFilterRule compile(final String rule, final boolean excludeDeleted, final DatabaseSchemaConfig schema) throws UnsupportedRuleException {
+        if (rule == null || rule.trim().length() == 0) {
+            throw new UnsupportedRuleException("empty rule");
+        }
+        if (excludeDeleted && rule.contains("isManaged")) {
+            // the SQL path decides whether to add the condition by looking at the generated SQL
+            throw new UnsupportedRuleException("rule mentions isManaged");
+        }
+        final List<String> tokens = tokenize(rule);
+        if (excludeDeleted) {
+            // appended without parentheses around the rule, exactly like the SQL
+            tokens.add("AND");
+            tokens.add(NOT_DELETED);
+        }
+        final Parser parser = new Parser(tokens, schema);
+        final Expr expr = parser.parse();
+        return new InMemoryFilterRule(parser.m_columns, expr);
+    }
+
+    /**
+     * @return true if at least one row matches, like <code>isRuleMatching()</code>
+     */
+    boolean matchesAny(final FilterSnapshot snapshot) {
+        final boolean[] found = new boolean[1];
+        scan(snapshot, m_usesServices, new RowHandler() {
+            @Override
+            boolean handle(final Row row) {
+                found[0] = true;
+                return false;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * @return the distinct IP addresses of the matching rows
+     */
+    List<String> getIpAddresses(final FilterSnapshot snapshot) {
+        final Set<String> addresses = new LinkedHashSet<String>();
+        scan(snapshot, m_usesServices, new RowHandler() {
+            @Override
+            boolean handle(final Row row) {
+                addresses.add(row.m_iface.m_ipAddr);
+                return true;
+            }
+        });
+        return new ArrayList<String>(addresses);
+    }
+
+    /**
+     * @return the IDs and labels of the nodes of the matching rows
+     */
+    SortedMap<Integer, String> getNodeMap(final FilterSnapshot snapshot) {
+        final SortedMap<Integer, String> nodes = new TreeMap<Integer, String>();
+        scan(snapshot, m_usesServices, new RowHandler() {
+            @Override
+            boolean handle(final Row row) {
+                nodes.put(row.m_iface.m_node.m_id, row.m_iface.m_node.m_label);
+                return true;
+            }
+        });
+        return nodes;
+    }
+
+    /**
+     * @return the services of the matching rows by IP address; every
+     *         interface is joined with its services whether or not the rule
+     *         mentions them
+     */
+    Map<String, Set<String>> getIpServiceMap(final FilterSnapshot snapshot) {
+        final Map<String, Set<String>> services = new LinkedHashMap<String, Set<String>>();
+        scan(snapshot, true, new RowHandler() {
+            @Override
+            boolean handle(final Row row) {
+                Set<String> names = services.get(row.m_iface.m_ipAddr);
+                if (names == null) {
+                    names = new TreeSet<String>();
+                    services.put(row.m_iface.m_ipAddr, names);
+                }
+                names.add(row.m_service);
+                return true;
+            }
+        });
+        return services;
+    }
+
+    private void scan(final FilterSnapshot snapshot, final boolean withServices, final RowHandler handler) {
+        final Collection<InterfaceEntry> candidates;
+        if (m_nodeId != null) {
+            final NodeEntry node = snapshot.getNode(m_nodeId);
+            candidates = node == null ? Collections.<InterfaceEntry>emptyList() : node.m_interfaces;
+        } else if (m_ipAddr != null) {
+            candidates = snapshot.getInterfaces(m_ipAddr);
+        } else {
+            candidates = null;
+        }
+
+        final Row row = new Row();
+        if (candidates != null) {
+            for (final InterfaceEntry iface : candidates) {
+                if (!scan(snapshot, iface, row, withServices, handler)) {
+                    return;
+                }
+            }
+        } else {
+            for (final NodeEntry node : snapshot.getNodes()) {
+                for (final InterfaceEntry iface : node.m_interfaces) {
+                    if (!scan(snapshot, iface, row, withServices, handler)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final List<String> NULL_ONLY = Collections.singletonList(null);
+
+    private boolean scan(final FilterSnapshot snapshot, final InterfaceEntry iface, final Row row, final boolean withServices, final RowHandler handler) {
+        // the service join is an inner join, the category join a left join
+        final Collection<String> services = withServices ? iface.m_services : NULL_ONLY;
+        final Collection<String> categories = m_usesCategories && !iface.m_node.m_categories.isEmpty() ? iface.m_node.m_categories : NULL_ONLY;
+        row.m_iface = iface;
+        for (final String service : services) {
+            row.m_service = service;
+            for (final String category : categories) {
+                row.m_category = category;
+                if (Boolean.TRUE.equals(m_expr.eval(row, snapshot)) && !handler.handle(row)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits a rule into tokens.  Quoted strings come back single quoted
+     * so the parser can tell them from words; as in
+     * {@link JdbcFilterDao}, double quoted strings are values too.
+     */
+    static List<String> tokenize(final String rule) throws UnsupportedRuleException {
+        final List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        final int length = rule.length();
+        while (i < length) {
+            final char c = rule.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                final StringBuilder value = new StringBuilder();
+                int j = i + 1;
+                boolean closed = false;
+                while (j < length) {
+                    final char d = rule.charAt(j);
+                    if (d == c) {
+                        if (j + 1 < length && rule.charAt(j + 1) == c) {
+                            value.append(c);
+                            j += 2;
+                            continue;
+                        }
+                        closed = true;
+                        break;
+                    }
+                    value.append(d);
+                    j++;
+                }
+                if (!closed) {
+                    throw new UnsupportedRuleException("unmatched quote");
+                }
+                tokens.add("'" + value + "'");
+                i = j + 1;
+            } else if (c == '(' || c == ')' || c == ',') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '&' || c == '|') {
+                tokens.add(c == '&' ? "AND" : "OR");
+                i += (i + 1 < length && rule.charAt(i + 1) == c) ? 2 : 1;
+            } else if (c == '!' || c == '=' || c == '<' || c == '>') {
+                final String two = i + 1 < length ? rule.substring(i, i + 2) : "";
+                if ("!=".equals(two) || "<>".equals(two)) {
+                    tokens.add("!=");
+                    i += 2;
+                } else if ("==".equals(two)) {
+                    tokens.add("=");
+                    i += 2;
+                } else if ("<=".equals(two) || ">=".equals(two)) {
+                    tokens.add(two);
+                    i += 2;
+                } else {
+                    tokens.add(c == '!' ? "NOT" : String.valueOf(c));
+                    i++;
+                }
+            } else if (isWordChar(c)) {
+                int j = i;
+                while (j < length && isWordChar(rule.charAt(j))) {
+                    j++;
+                }
+                final String word = rule.substring(i, j);
+                tokens.add(word);
+                i = j;
+                if ("IPLIKE".equalsIgnoreCase(word)) {
+                    // an unquoted IPLIKE pattern may contain commas
+                    int k = i;
+                    while (k < length && Character.isWhitespace(rule.charAt(k))) {
+                        k++;
+                    }
+                    int end = k;
+                    while (end < length && "0123456789abcdefABCDEF.:*,-".indexOf(rule.charAt(end)) >= 0) {
+                        end++;
+                    }
+                    if (end > k) {
+                        tokens.add("'" + rule.substring(k, end) + "'");
+                        i = end;
+                    }
+                }
+            } else {
+                throw new UnsupportedRuleException("unsupported character '" + c + "'");
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == '*' || c == ':';
+    }
+
+    /**
+     * A recursive descent parser with SQL precedence: NOT binds tighter than
+     * AND, which binds tighter than OR.
+     */
+    private static final class Parser {
+        private final List<String> m_tokens;
+        private final DatabaseSchemaConfig m_schema;
+        private int m_pos = 0;
+        private final Set<Column> m_columns = EnumSet.noneOf(Column.class);
+
+        Parser(final List<String> tokens, final DatabaseSchemaConfig schema) {
+            m_tokens = tokens;
+            m_schema = schema;
+        }
+
+        Expr parse() throws UnsupportedRuleException {
+            final Expr expr = parseOr();
+            if (m_pos != m_tokens.size()) {
+                throw new UnsupportedRuleException("unexpected token " + peek());
+            }
+            return expr;
+        }
+
+        private Expr parseOr() throws UnsupportedRuleException {
+            Expr expr = parseAnd();
+            while (isKeyword("OR")) {
+                m_pos++;
+                expr = new Or(expr, parseAnd());
+            }
+            return expr;
+        }
+
+        private Expr parseAnd() throws UnsupportedRuleException {
+            Expr expr = parseNot();
+            while (isKeyword("AND")) {
+                m_pos++;
+                expr = new And(expr, parseNot());
+            }
+            return expr;
+        }
+
+        private Expr parseNot() throws UnsupportedRuleException {
+            if (isKeyword("NOT")) {
+                m_pos++;
+                return new Not(parseNot());
+            }
+            return parsePrimary();
+        }
+
+        private Expr parsePrimary() throws UnsupportedRuleException {
+            final String token = next();
+            if (NOT_DELETED.equals(token)) {
+                return new Or(new Not(new Equals(Column.ISMANAGED, "D")), new IsNull(Column.ISMANAGED));
+            }
+            if ("(".equals(token)) {
+                final Expr expr = parseOr();
+                expect(")");
+                return expr;
+            }
+            if ("IPLIKE".equalsIgnoreCase(token) && "(".equals(peek())) {
+                m_pos++;
+                final Column column = column(next());
+                expect(",");
+                final String pattern = string(next());
+                expect(")");
+                return ipLike(column, pattern);
+            }
+            if (!isQuoted(token) && !isNumber(token)) {
+                // prefixed values, checked the same way as JdbcFilterDao.parseRule()
+                if (token.startsWith("is") && !"is".equalsIgnoreCase(token)) {
+                    useColumn(Column.SERVICENAME);
+                    return new Equals(Column.SERVICENAME, token.substring(2));
+                } else if (token.startsWith("notis")) {
+                    useColumn(Column.IPADDR);
+                    return new NotOnAddress(token.substring(5));
+                } else if (token.startsWith("catinc")) {
+                    useColumn(Column.NODEID);
+                    return new InCategory(token.substring(6));
+                }
+            }
+
+            if (!isQuoted(token) && !isNumber(token)) {
+                final Column column = column(token);
+                return parsePredicate(column);
+            }
+
+            // literal on the left: only <literal> = <column> and friends
+            final String op = next();
+            if (!isComparison(op)) {
+                throw new UnsupportedRuleException("unsupported expression after literal " + token);
+            }
+            final Column column = column(next());
+            return compare(column, flip(op), token);
+        }
+
+        private Expr parsePredicate(final Column column) throws UnsupportedRuleException {
+            final String op = next();
+            if (isComparison(op)) {
+                return compare(column, op, next());
+            }
+            if ("IPLIKE".equalsIgnoreCase(op)) {
+                return ipLike(column, string(next()));
+            }
+            if ("LIKE".equalsIgnoreCase(op)) {
+                return like(column, next());
+            }
+            if ("NOT".equalsIgnoreCase(op) && isKeyword("LIKE")) {
+                m_pos++;
+                return new Not(like(column, next()));
+            }
+            if ("IS".equalsIgnoreCase(op)) {
+                boolean negate = false;
+                if (isKeyword("NOT")) {
+                    m_pos++;
+                    negate = true;
+                }
+                if (!"NULL".equalsIgnoreCase(next())) {
+                    throw new UnsupportedRuleException("only IS [NOT] NULL is supported");
+                }
+                final Expr expr = new IsNull(column);
+                return negate ? new Not(expr) : expr;
+            }
+            throw new UnsupportedRuleException("unsupported operator " + op);
+        }
+
+        private Expr compare(final Column column, final String op, final String literal) throws UnsupportedRuleException {
+            if (column == Column.NODEID) {
+                final long value;
+                try {
+                    value = Long.parseLong(isQuoted(literal) ? string(literal).trim() : literal);
+                } catch (final NumberFormatException e) {
+                    throw new UnsupportedRuleException("nodeID compared with " + literal);
+                }
+                return new NodeIdCompare(op, value);
+            }
+            if (!isQuoted(literal)) {
+                throw new UnsupportedRuleException(column.m_name + " compared with unquoted " + literal);
+            }
+            final String value = string(literal);
+            if ("=".equals(op)) {
+                return new Equals(column, value);
+            } else if ("!=".equals(op)) {
+                return new Not(new Equals(column, value));
+            }
+            // ordering of text depends on the database collation
+            throw new UnsupportedRuleException("ordering comparison on " + column.m_name);
+        }
+
+        private Expr like(final Column column, final String literal) throws UnsupportedRuleException {
+            if (column == Column.NODEID) {
+                throw new UnsupportedRuleException("LIKE on nodeID");
+            }
+            return new Like(column, string(literal));
+        }
+
+        private Expr ipLike(final Column column, final String pattern) throws UnsupportedRuleException {
+            if (column != Column.IPADDR) {
+                throw new UnsupportedRuleException("IPLIKE on " + column.m_name);
+            }
+            return new IpLike(pattern);
+        }
+
+        private Column column(final String token) throws UnsupportedRuleException {
+            final Column column = Column.find(token);
+            if (column == null) {
+                throw new UnsupportedRuleException("unsupported column " + token);
+            }
+            useColumn(column);
+            return column;
+        }
+
+        private void useColumn(final Column column) throws UnsupportedRuleException {
+            // a customized database-schema.xml could put the column somewhere else
+            final Table table = m_schema.findTableByVisibleColumn(column.m_name);
+            if (table == null || !column.m_table.equalsIgnoreCase(table.getName())) {
+                throw new UnsupportedRuleException("column " + column.m_name + " is not in table " + column.m_table);
+            }
+            m_columns.add(column);
+        }
+
+        private String string(final String token) throws UnsupportedRuleException {
+            if (!isQuoted(token)) {
+                throw new UnsupportedRuleException("expected a quoted string, got " + token);
+            }
+            return token.substring(1, token.length() - 1);
+        }
+
+        private static boolean isQuoted(final String token) {
+            return token.length() >= 2 && token.charAt(0) == '\'';
+        }
+
+        private static boolean isNumber(final String token) {
+            if (token.length() == 0) {
+                return false;
+            }
+            for (int i = 0; i < token.length(); i++) {
+                final char c = token.charAt(i);
+                if (!(Character.isDigit(c) || (i == 0 && c == '-' && token.length() > 1))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isComparison(final String op) {
+            return "=".equals(op) || "!=".equals(op) || "<".equals(op) || "<=".equals(op) || ">".equals(op) || ">=".equals(op);
+        }
+
+        private static String flip(final String op) {
+            if ("<".equals(op)) return ">";
+            if ("<=".equals(op)) return ">=";
+            if (">".equals(op)) return "<";
+            if (">=".equals(op)) return "<=";
+            return op;
+        }
+
+        private boolean isKeyword(final String keyword) {
+            return m_pos < m_tokens.size() && keyword.equalsIgnoreCase(m_tokens.get(m_pos));
+        }
+
+        private String peek() {
+            return m_pos < m_tokens.size() ? m_tokens.get(m_pos) : null;
+        }
+
+        private String next() throws UnsupportedRuleException {
+            if (m_pos >= m_tokens.size()) {
+                throw new UnsupportedRuleException("unexpected end of rule");
+            }
+            return m_tokens.get(m_pos++);
+        }
+
+        private void expect(final String token) throws UnsupportedRuleException {
+            if (!token.equals(next())) {
+                throw new UnsupportedRuleException("expected " + token);
+            }
+        }
+    }
+}
@@ -44,6 +44,9 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,6 +56,7 @@ import org.opennms.core.utils.DBUtils;
 import org.opennms.core.utils.InetAddressComparator;
 import org.opennms.netmgt.config.api.DatabaseSchemaConfig;
 import org.opennms.netmgt.config.filter.Table;
+import org.opennms.netmgt.filter.InMemoryFilterRule.UnsupportedRuleException;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.filter.api.FilterParseException;
 import org.slf4j.Logger;
@@ -79,9 +83,19 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 	private static final Pattern SQL_IPLIKE_PATTERN = Pattern.compile("(\\w+)\\s+IPLIKE\\s+([0-9a-f.:*,-]+|###@\\d+@###)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
 	private static final String SQL_IPLIKE6_RHS_REGEX = "^[0-9A-Fa-f:*,-]+$";
 
+	private static final int MAX_COMPILED_RULES = Integer.getInteger("org.opennms.netmgt.filter.maxCompiledRules", 1000);
+	private static final Object UNSUPPORTED_RULE = new Object();
+
 	private DataSource m_dataSource;
     private DatabaseSchemaConfig m_databaseSchemaConfigFactory;
 
+    private boolean m_inMemory = Boolean.getBoolean("org.opennms.netmgt.filter.inMemory");
+    private long m_snapshotMaxAge = Long.getLong("org.opennms.netmgt.filter.snapshotMaxAge", 300000L);
+    private volatile FilterSnapshot m_snapshot;
+    private final ConcurrentMap<String, Object> m_compiledRules = new ConcurrentHashMap<String, Object>();
+    private final AtomicLong m_inMemoryEvaluations = new AtomicLong();
+    private final AtomicLong m_sqlQueries = new AtomicLong();
+
     /**
      * <p>setDataSource</p>
      *
@@ -118,6 +132,70 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return m_databaseSchemaConfigFactory;
     }
 
+    /**
+     * Evaluate the rules that {@link InMemoryFilterRule} supports against a
+     * {@link FilterSnapshot} instead of the database.  Defaults to the
+     * <code>org.opennms.netmgt.filter.inMemory</code> system property.
+     *
+     * @param inMemory a boolean.
+     */
+    public void setInMemory(final boolean inMemory) {
+        m_inMemory = inMemory;
+    }
+
+    /**
+     * <p>isInMemory</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isInMemory() {
+        return m_inMemory;
+    }
+
+    /**
+     * Milliseconds after which the snapshot is reloaded completely.  Defaults
+     * to the <code>org.opennms.netmgt.filter.snapshotMaxAge</code> system
+     * property, or 5 minutes.
+     *
+     * @param snapshotMaxAge a long.
+     */
+    public void setSnapshotMaxAge(final long snapshotMaxAge) {
+        m_snapshotMaxAge = snapshotMaxAge;
+    }
+
+    /**
+     * The snapshot used for in-memory evaluation; created on first use.
+     *
+     * @return a {@link org.opennms.netmgt.filter.FilterSnapshot} object.
+     */
+    public FilterSnapshot getSnapshot() {
+        FilterSnapshot snapshot = m_snapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = m_snapshot;
+                if (snapshot == null) {
+                    snapshot = new FilterSnapshot(getDataSource(), m_snapshotMaxAge);
+                    m_snapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the number of rules evaluated against the snapshot
+     */
+    public long getInMemoryEvaluations() {
+        return m_inMemoryEvaluations.get();
+    }
+
+    /**
+     * @return the number of rules run as SQL
+     */
+    public long getSqlQueries() {
+        return m_sqlQueries.get();
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      */
@@ -143,6 +221,12 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
         LOG.debug("Filter.getNodeMap({})", rule);
 
+        final InMemoryFilterRule inMemoryRule = getInMemoryRule(rule, false);
+        if (inMemoryRule != null) {
+            return Collections.unmodifiableSortedMap(inMemoryRule.getNodeMap(getSnapshot()));
+        }
+        m_sqlQueries.incrementAndGet();
+
         // get the database connection
         Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
@@ -190,6 +274,21 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
         LOG.debug("Filter.getIPAddressServiceMap({})", rule);
 
+        final InMemoryFilterRule inMemoryRule = getInMemoryRule(rule, false);
+        if (inMemoryRule != null) {
+            for (final Map.Entry<String, Set<String>> entry : inMemoryRule.getIpServiceMap(getSnapshot()).entrySet()) {
+                final InetAddress ipaddr = addr(entry.getKey());
+                if (ipaddr != null) {
+                    if (!ipServices.containsKey(ipaddr)) {
+                        ipServices.put(ipaddr, new TreeSet<String>());
+                    }
+                    ipServices.get(ipaddr).addAll(entry.getValue());
+                }
+            }
+            return ipServices;
+        }
+        m_sqlQueries.incrementAndGet();
+
         // get the database connection
         Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
@@ -269,6 +368,16 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
         LOG.debug("Filter.getIPAddressList({})", rule);
 
+        final InMemoryFilterRule inMemoryRule = getInMemoryRule(rule, filterDeleted);
+        if (inMemoryRule != null) {
+            for (final String ipAddr : inMemoryRule.getIpAddresses(getSnapshot())) {
+                resultList.add(addr(ipAddr));
+            }
+            LOG.debug("Filter.getIPAddressList({}): resultList = {}", rule, resultList);
+            return resultList;
+        }
+        m_sqlQueries.incrementAndGet();
+
         // get the database connection
         Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
@@ -342,11 +451,23 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     /** {@inheritDoc} */
     @Override
     public boolean isRuleMatching(final String rule) throws FilterParseException {
+        return isRuleMatching(rule, true);
+    }
+
+    private boolean isRuleMatching(final String rule, final boolean allowInMemory) throws FilterParseException {
         boolean matches = false;
         String sqlString;
 
         LOG.debug("Filter.isRuleMatching({})", rule);
 
+        final InMemoryFilterRule inMemoryRule = allowInMemory ? getInMemoryRule(rule, false) : null;
+        if (inMemoryRule != null) {
+            matches = inMemoryRule.matchesAny(getSnapshot());
+            LOG.debug("isRuleMatching: rule \"{}\" {} an entry in the snapshot", rule, matches? "matches" : "does not match");
+            return matches;
+        }
+        m_sqlQueries.incrementAndGet();
+
         final DBUtils d = new DBUtils(getClass());
 
         // get the database connection
@@ -390,7 +511,39 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     public void validateRule(final String rule) throws FilterParseException {
         // Since parseRule does not do complete syntax checking,
         // we need to call a function that will actually execute the generated SQL
-        isRuleMatching(rule);
+        isRuleMatching(rule, false);
+    }
+
+    /**
+     * Compile a rule for in-memory evaluation, remembering the result.
+     *
+     * @return the compiled rule, or null if in-memory evaluation is disabled
+     *         or the rule has to be run as SQL
+     */
+    private InMemoryFilterRule getInMemoryRule(final String rule, final boolean filterDeleted) {
+        if (!m_inMemory || rule == null) {
+            return null;
+        }
+        final String key = (filterDeleted ? "active:" : "all:") + rule;
+        Object compiled = m_compiledRules.get(key);
+        if (compiled == null) {
+            try {
+                compiled = InMemoryFilterRule.compile(rule, filterDeleted, m_databaseSchemaConfigFactory);
+            } catch (final UnsupportedRuleException e) {
+                LOG.debug("Filter rule \"{}\" will be run as SQL: {}", rule, e.getMessage());
+                compiled = UNSUPPORTED_RULE;
+            }
+            if (m_compiledRules.size() >= MAX_COMPILED_RULES) {
+                // rules built with node and interface constraints are mostly used once
+                m_compiledRules.clear();
+            }
+            m_compiledRules.put(key, compiled);
+        }
+        if (compiled == UNSUPPORTED_RULE) {
+            return null;
+        }
+        m_inMemoryEvaluations.incrementAndGet();
+        return (InMemoryFilterRule) compiled;
     }
 
     /**
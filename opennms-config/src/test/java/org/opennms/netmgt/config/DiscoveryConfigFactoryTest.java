@@ -172,4 +172,62 @@ public class DiscoveryConfigFactoryTest {
         assertFalse(factory.isExcluded(InetAddressUtils.addr("192.168.0.101")));
         assertFalse(factory.isExcluded(InetAddressUtils.addr("192.168.0.151")));
     }
+
+    @Test
+    public void testOverlappingExcludes() throws Exception {
+        final DiscoveryConfiguration conf = new DiscoveryConfiguration();
+
+        IncludeRange ir = new IncludeRange();
+        ir.setBegin("10.0.0.1");
+        ir.setEnd("10.0.255.254");
+        conf.addIncludeRange(ir);
+
+        ExcludeRange er = new ExcludeRange();
+        er.setBegin("10.0.1.0");
+        er.setEnd("10.0.1.255");
+        conf.addExcludeRange(er);
+
+        // overlaps the previous range
+        er = new ExcludeRange();
+        er.setBegin("10.0.1.128");
+        er.setEnd("10.0.2.10");
+        conf.addExcludeRange(er);
+
+        // contained in the previous ranges
+        er = new ExcludeRange();
+        er.setBegin("10.0.1.20");
+        er.setEnd("10.0.1.30");
+        conf.addExcludeRange(er);
+
+        // ends before it begins, so it never matches
+        er = new ExcludeRange();
+        er.setBegin("10.0.9.10");
+        er.setEnd("10.0.9.1");
+        conf.addExcludeRange(er);
+
+        er = new ExcludeRange();
+        er.setBegin("fe80::1");
+        er.setEnd("fe80::ff");
+        conf.addExcludeRange(er);
+
+        final DiscoveryConfigFactory factory = new DiscoveryConfigFactory() {
+            @Override
+            public void saveConfiguration(final DiscoveryConfiguration configuration) throws MarshalException, ValidationException, IOException {}
+            @Override
+            public synchronized DiscoveryConfiguration getConfiguration() {
+                return conf;
+            }
+        };
+
+        assertFalse(factory.isExcluded(InetAddressUtils.addr("10.0.0.255")));
+        assertTrue(factory.isExcluded(InetAddressUtils.addr("10.0.1.0")));
+        assertTrue(factory.isExcluded(InetAddressUtils.addr("10.0.1.25")));
+        assertTrue(factory.isExcluded(InetAddressUtils.addr("10.0.1.255")));
+        assertTrue(factory.isExcluded(InetAddressUtils.addr("10.0.2.10")));
+        assertFalse(factory.isExcluded(InetAddressUtils.addr("10.0.2.11")));
+        assertFalse(factory.isExcluded(InetAddressUtils.addr("10.0.9.5")));
+        assertFalse(factory.isExcluded(InetAddressUtils.addr("fe80::")));
+        assertTrue(factory.isExcluded(InetAddressUtils.addr("fe80::80")));
+        assertFalse(factory.isExcluded(InetAddressUtils.addr("fe80::100")));
+    }
 }
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+
+public class NotificationIndexTest {
+
+    private Notifications m_notifications;
+
+    @Before
+    public void setUp() {
+        m_notifications = new Notifications();
+        addNotification("nodeDown", "uei.opennms.org/nodes/nodeDown", null);
+        addNotification("anyNodes", "~^uei\\.opennms\\.org/nodes/.*", null);
+        addNotification("everything", "MATCH-ANY-UEI", null);
+        addNotification("nodeDownAgain", "uei.opennms.org/nodes/nodeDown", "Major|Critical");
+        addNotification("broken", "~uei.opennms.org/(", null);
+    }
+
+    private void addNotification(final String name, final String uei, final String severity) {
+        final Notification notification = new Notification();
+        notification.setName(name);
+        notification.setUei(uei);
+        notification.setEventSeverity(severity);
+        notification.setStatus("on");
+        m_notifications.addNotification(notification);
+    }
+
+    private static List<String> names(final List<NotificationIndex.Entry> entries) {
+        final List<String> names = new ArrayList<String>();
+        for (final NotificationIndex.Entry entry : entries) {
+            names.add(entry.getNotification().getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testCandidatesAreInConfigurationOrder() {
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+        assertSame(m_notifications, index.getSource());
+
+        assertEquals("[nodeDown, anyNodes, everything, nodeDownAgain]", names(index.getCandidates("uei.opennms.org/nodes/nodeDown")).toString());
+        assertEquals("[anyNodes, everything]", names(index.getCandidates("uei.opennms.org/nodes/nodeUp")).toString());
+        assertEquals("[everything]", names(index.getCandidates("uei.opennms.org/internal/reloadDaemonConfig")).toString());
+    }
+
+    @Test
+    public void testCandidatesAreCached() {
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+        assertSame(index.getCandidates("uei.opennms.org/nodes/nodeUp"), index.getCandidates("uei.opennms.org/nodes/nodeUp"));
+    }
+
+    @Test
+    public void testHasUei() {
+        m_notifications.removeNotification(m_notifications.getNotificationCollection().get(2));
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+        assertTrue(index.hasUei("uei.opennms.org/nodes/nodeDown"));
+        assertTrue(index.hasUei("uei.opennms.org/nodes/nodeUp"));
+        assertFalse(index.hasUei("uei.opennms.org/internal/reloadDaemonConfig"));
+        assertFalse(index.hasUei(null));
+    }
+
+    @Test
+    public void testSeverity() {
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+        final List<NotificationIndex.Entry> candidates = index.getCandidates("uei.opennms.org/nodes/nodeDown");
+        assertTrue(candidates.get(0).matchesSeverity("Normal"));
+        assertTrue(candidates.get(3).matchesSeverity("Major"));
+        assertTrue(candidates.get(3).matchesSeverity("CRITICAL"));
+        assertFalse(candidates.get(3).matchesSeverity("Minor"));
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.PackageMembershipIndex.AddressRules;
+
+public class PackageMembershipIndexTest {
+
+    private final Map<String, AddressRules.Builder> m_packages = new HashMap<String, AddressRules.Builder>();
+
+    private int m_compiles = 0;
+
+    private PackageMembershipIndex<String> m_index;
+
+    @Before
+    public void setUp() {
+        m_index = new PackageMembershipIndex<String>() {
+            @Override
+            protected AddressRules compileRules(final String pkg) {
+                m_compiles++;
+                return m_packages.get(pkg).build();
+            }
+
+            @Override
+            protected int getRuleSignature(final String pkg) {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testFilterAddresses() {
+        final Map<String, List<InetAddress>> addresses = new HashMap<String, List<InetAddress>>();
+        addresses.put("a", Arrays.asList(addr("192.168.1.1"), addr("fe80::1")));
+        m_index.rebuild(addresses);
+
+        assertTrue(m_index.isInFilter("a", addr("192.168.1.1")));
+        assertTrue(m_index.isInFilter("a", addr("fe80:0:0:0:0:0:0:1")));
+        assertFalse(m_index.isInFilter("a", addr("192.168.1.2")));
+        assertFalse(m_index.isInFilter("b", addr("192.168.1.1")));
+
+        // an unchanged filter result keeps its set
+        final Object before = m_index.getAddresses("a");
+        m_index.rebuild(addresses);
+        assertSame(before, m_index.getAddresses("a"));
+
+        addresses.put("a", Collections.singletonList(addr("192.168.1.2")));
+        m_index.rebuild(addresses);
+        assertNotSame(before, m_index.getAddresses("a"));
+        assertTrue(m_index.isInFilter("a", addr("192.168.1.2")));
+        assertFalse(m_index.isInFilter("a", addr("192.168.1.1")));
+    }
+
+    @Test
+    public void testCallerFilterResult() {
+        final List<InetAddress> result = new ArrayList<InetAddress>(Arrays.asList(addr("10.0.0.1")));
+        assertTrue(m_index.isInFilter("a", result, addr("10.0.0.1")));
+        assertFalse(m_index.isInFilter("a", result, addr("10.0.0.2")));
+        assertFalse(m_index.isInFilter("a", Collections.<InetAddress>emptyList(), addr("10.0.0.1")));
+
+        // a new result list replaces the memoized set
+        assertTrue(m_index.isInFilter("a", Arrays.asList(addr("10.0.0.2")), addr("10.0.0.2")));
+        assertFalse(m_index.isInFilter("a", Arrays.asList(addr("10.0.0.2")), addr("10.0.0.1")));
+    }
+
+    @Test
+    public void testRules() {
+        m_packages.put("ranges", new AddressRules.Builder()
+            .addIncludeRange("10.0.0.0", "10.0.0.255")
+            .addIncludeRange("10.0.0.128", "10.0.1.127")
+            .addIncludeRange("192.168.0.0", "192.168.255.255")
+            .addExcludeRange("10.0.0.100", "10.0.0.199")
+            .addSpecific("10.0.0.150"));
+        final AddressRules rules = m_index.getRules("ranges");
+
+        assertTrue(rules.matches(toIpAddrBytes("10.0.0.0"), false));
+        assertTrue(rules.matches(toIpAddrBytes("10.0.1.127"), false));
+        assertFalse(rules.matches(toIpAddrBytes("10.0.1.128"), false));
+        assertFalse(rules.matches(toIpAddrBytes("10.0.0.100"), false));
+        assertTrue(rules.matches(toIpAddrBytes("10.0.0.150"), false));
+        assertTrue(rules.matches(toIpAddrBytes("10.0.0.199"), true));
+        assertTrue(rules.matches(toIpAddrBytes("192.168.10.10"), false));
+        assertFalse(rules.matches(toIpAddrBytes("172.16.0.1"), false));
+        assertFalse(rules.matches(toIpAddrBytes("::1"), false));
+
+        // compiled once per package instance until the next rebuild
+        assertSame(rules, m_index.getRules("ranges"));
+        assertEquals(1, m_compiles);
+        m_index.clear();
+        m_index.getRules("ranges");
+        assertEquals(2, m_compiles);
+    }
+
+    @Test
+    public void testRulesRecompiledWhenEdited() {
+        final List<String[]> ranges = new ArrayList<String[]>();
+        ranges.add(new String[] { "10.0.0.0", "10.0.0.255" });
+        final int[] signatures = new int[1];
+        final PackageMembershipIndex<String> index = new PackageMembershipIndex<String>() {
+            @Override
+            protected AddressRules compileRules(final String pkg) {
+                m_compiles++;
+                final AddressRules.Builder builder = new AddressRules.Builder();
+                for (final String[] range : ranges) {
+                    builder.addIncludeRange(range[0], range[1]);
+                }
+                return builder.build();
+            }
+
+            @Override
+            protected int getRuleSignature(final String pkg) {
+                signatures[0]++;
+                final RuleSignature signature = new RuleSignature();
+                for (final String[] range : ranges) {
+                    signature.addIncludeRange(range[0], range[1]);
+                }
+                return signature.getSignature();
+            }
+        };
+        final Map<String, List<InetAddress>> addresses = new HashMap<String, List<InetAddress>>();
+        addresses.put("a", Collections.<InetAddress>emptyList());
+        index.rebuild(addresses);
+
+        assertTrue(index.getRules("a").matches(toIpAddrBytes("10.0.0.10"), false));
+        index.getRules("a");
+        assertEquals(1, m_compiles);
+        // lookups do not compute the signature
+        assertEquals(1, signatures[0]);
+
+        // unchanged rules survive a rebuild
+        index.rebuild(addresses);
+        index.getRules("a");
+        assertEquals(1, m_compiles);
+
+        // same number of ranges, different bounds
+        ranges.set(0, new String[] { "10.0.1.0", "10.0.1.255" });
+        index.refreshRules();
+        assertFalse(index.getRules("a").matches(toIpAddrBytes("10.0.0.10"), false));
+        assertTrue(index.getRules("a").matches(toIpAddrBytes("10.0.1.10"), false));
+        assertEquals(2, m_compiles);
+
+        // packages that are no longer configured are dropped
+        index.rebuild(Collections.<String, List<InetAddress>>emptyMap());
+        index.getRules("a");
+        assertEquals(3, m_compiles);
+    }
+
+    @Test
+    public void testRuleSignature() {
+        final int signature = new PackageMembershipIndex.RuleSignature().addSpecific("10.0.0.1").addIncludeRange("10.0.0.0", "10.0.0.255").getSignature();
+        assertEquals(signature, new PackageMembershipIndex.RuleSignature().addSpecific("10.0.0.1").addIncludeRange("10.0.0.0", "10.0.0.255").getSignature());
+        assertFalse(signature == new PackageMembershipIndex.RuleSignature().addSpecific("10.0.0.2").addIncludeRange("10.0.0.0", "10.0.0.255").getSignature());
+        assertFalse(signature == new PackageMembershipIndex.RuleSignature().addSpecific("10.0.0.1").addIncludeRange("10.0.0.0", "10.0.0.254").getSignature());
+        assertFalse(signature == new PackageMembershipIndex.RuleSignature().addSpecific("10.0.0.1").addExcludeRange("10.0.0.0", "10.0.0.255").getSignature());
+    }
+
+    @Test
+    public void testEmptyRulesIncludeEverything() {
+        final AddressRules rules = new AddressRules.Builder().addExcludeRange("10.0.0.0", "10.255.255.255").build();
+        assertTrue(rules.matches(toIpAddrBytes("192.168.1.1"), false));
+        assertTrue(rules.matches(toIpAddrBytes("2001:db8::1"), false));
+        assertFalse(rules.matches(toIpAddrBytes("10.1.2.3"), false));
+
+        assertFalse(new AddressRules.Builder().addSpecific("10.1.1.1").build().matches(toIpAddrBytes("10.1.1.2"), false));
+    }
+
+    @Test
+    public void testReversedRange() {
+        final AddressRules beginOnly = new AddressRules.Builder().addIncludeRange("10.0.0.9", "10.0.0.1").build();
+        assertTrue(beginOnly.matches(toIpAddrBytes("10.0.0.9"), false));
+        assertFalse(beginOnly.matches(toIpAddrBytes("10.0.0.5"), false));
+
+        final AddressRules nothing = new AddressRules.Builder().setReversedRangeMatchesBegin(false).addIncludeRange("10.0.0.9", "10.0.0.1").build();
+        assertFalse(nothing.matches(toIpAddrBytes("10.0.0.9"), false));
+        assertFalse(nothing.matches(toIpAddrBytes("192.168.0.1"), false));
+    }
+}
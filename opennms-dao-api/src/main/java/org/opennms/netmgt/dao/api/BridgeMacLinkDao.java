@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.dao.api;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -48,6 +49,15 @@ public interface BridgeMacLinkDao extends OnmsDao<BridgeMacLink, Integer> {
 
     void deleteByNodeIdOlderThen(Integer nodeiId, Date now);
 
+    /**
+     * Updates the links from a bridge port to the given MAC addresses as if
+     * each had been merged with a newly discovered link on that port, in a
+     * single statement and without loading them.
+     *
+     * @return the number of links updated
+     */
+    int updateLastPollTime(Integer nodeId, Integer bridgePort, Integer bridgePortIfIndex, Collection<String> macs, Date now);
+
     public List<BridgeMacTopologyLink> getAllBridgeLinksToIpAddrToNodes();
 
 }
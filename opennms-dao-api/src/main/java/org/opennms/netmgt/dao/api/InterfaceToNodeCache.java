@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2002-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.api;
+
+import java.net.InetAddress;
+
+/**
+ * Resolves interface addresses to the ID of the node that owns them.
+ *
+ * <p>A single instance is shared by the daemons that need to map a source
+ * address to a node on every message (trapd, syslogd and eventd). Lookups
+ * are answered from memory without locking; the cache is loaded with
+ * {@link #dataSourceSync()} and kept current with {@link #setNodeId(InetAddress, int)}
+ * and {@link #removeNodeId(InetAddress)} as interfaces are added, reparented
+ * and deleted.</p>
+ */
+public interface InterfaceToNodeCache {
+
+    /**
+     * Replaces the contents of the cache with the interfaces currently in
+     * the database. Primary SNMP interfaces win when an address is shared
+     * by several nodes.
+     */
+    void dataSourceSync();
+
+    /**
+     * Returns the ID of the node that owns the given address.
+     *
+     * @param ipAddr the interface address
+     * @return the node ID, or -1 if the address is not known
+     */
+    int getNodeId(InetAddress ipAddr);
+
+    /**
+     * Maps the given address to a node. If the address is already mapped, it
+     * is only moved when the address is the primary interface of the new node.
+     *
+     * @param ipAddr the interface address
+     * @param nodeId the node ID
+     * @return the node ID that was previously mapped, or -1
+     */
+    int setNodeId(InetAddress ipAddr, int nodeId);
+
+    /**
+     * Removes an address from the cache.
+     *
+     * @param ipAddr the interface address
+     * @return the node ID that was mapped, or -1
+     */
+    int removeNodeId(InetAddress ipAddr);
+
+    /**
+     * Returns the host name stored for the interface of the given node.
+     * Host names are looked up once per cached address and kept until the
+     * address is updated, {@link #clearHostNames(int)} is called for the node
+     * or the cache is synchronized again.
+     *
+     * @param nodeId the node ID
+     * @param ipAddr the interface address
+     * @return the host name, or null if the interface has none
+     */
+    String getHostName(int nodeId, InetAddress ipAddr);
+
+    /**
+     * Forgets the host names cached for the interfaces of a node, so that
+     * they are read from the database again on the next lookup.
+     *
+     * @param nodeId the node ID
+     */
+    void clearHostNames(int nodeId);
+
+    /**
+     * @return the number of cached addresses
+     */
+    int size();
+
+    /**
+     * @return the number of node ID lookups answered from the cache
+     */
+    long getHits();
+
+    /**
+     * @return the number of node ID lookups the cache could not answer
+     */
+    long getMisses();
+
+    /**
+     * @return the number of host name lookups answered from the cache
+     */
+    long getHostNameHits();
+
+    /**
+     * @return the number of host name lookups that went to the database
+     */
+    long getHostNameMisses();
+
+    /**
+     * @return the number of times the cache was reloaded from the database
+     */
+    long getRefreshes();
+}
@@ -30,11 +30,13 @@ package org.opennms.netmgt.dao.hibernate;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.type.IntegerType;
 import org.opennms.netmgt.dao.api.BridgeMacLinkDao;
 import org.opennms.netmgt.model.BridgeMacLink;
 import org.opennms.netmgt.model.topology.BridgeMacTopologyLink;
@@ -78,6 +80,28 @@ public class BridgeMacLinkDaoHibernate extends AbstractDaoHibernate<BridgeMacLin
 		}
 	}
 
+	@Override
+	public int updateLastPollTime(final Integer nodeId, final Integer bridgePort, final Integer bridgePortIfIndex, final Collection<String> macs, final Date now) {
+		if (macs.isEmpty()) {
+			return 0;
+		}
+		// mirrors BridgeMacLink.merge() of a link that only carries the port ifIndex
+		final String hql = "update BridgeMacLink rec set rec.bridgePortIfIndex = :ifIndex, rec.bridgePortIfName = null, rec.vlan = null, rec.bridgeMacLinkLastPollTime = :now "
+				+ "where rec.node.id = :nodeId and rec.bridgePort = :bridgePort and rec.macAddress in (:macs)";
+		return getHibernateTemplate().execute(new HibernateCallback<Integer>() {
+			@Override
+			public Integer doInHibernate(Session session) throws HibernateException, SQLException {
+				return session.createQuery(hql)
+						.setParameter("ifIndex", bridgePortIfIndex, new IntegerType())
+						.setParameter("now", now)
+						.setParameter("nodeId", nodeId)
+						.setParameter("bridgePort", bridgePort)
+						.setParameterList("macs", macs)
+						.executeUpdate();
+			}
+		});
+	}
+
     @Override
     public List<BridgeMacTopologyLink> getAllBridgeLinksToIpAddrToNodes(){
         List<Object[]> links =  getHibernateTemplate().execute(new HibernateCallback<List<Object[]>>() {
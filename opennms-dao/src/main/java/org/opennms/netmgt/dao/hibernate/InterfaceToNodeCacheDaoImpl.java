@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2008-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.hibernate;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.api.AbstractInterfaceToNodeCache;
+import org.opennms.netmgt.dao.api.IpInterfaceDao;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.Assert;
+
+/**
+ * {@link org.opennms.netmgt.dao.api.InterfaceToNodeCache} backed by the
+ * ipInterface table.
+ *
+ * <p>Readers go straight to a {@link ConcurrentHashMap} keyed by the binary
+ * address. Writers are serialized among themselves so that an incremental
+ * update cannot be lost to a concurrent {@link #dataSourceSync()}, which
+ * builds a new map and swaps it in. Database work runs in its own
+ * transaction (or joins the caller's) so that cache hits never touch the
+ * transaction manager.</p>
+ */
+public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache implements InitializingBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InterfaceToNodeCacheDaoImpl.class);
+
+    /**
+     * Marks an entry whose interface was looked up and has no host name.
+     */
+    private static final String NO_HOST_NAME = new String();
+
+    private IpInterfaceDao m_ipInterfaceDao;
+
+    private TransactionOperations m_transactionOperations;
+
+    private volatile ConcurrentMap<InetAddress, Entry> m_knownips = new ConcurrentHashMap<InetAddress, Entry>();
+
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private final AtomicLong m_hostNameHits = new AtomicLong();
+
+    private final AtomicLong m_hostNameMisses = new AtomicLong();
+
+    private final AtomicLong m_refreshes = new AtomicLong();
+
+    private static final class Entry {
+        private final int m_nodeId;
+        private volatile String m_hostName;
+
+        private Entry(final int nodeId) {
+            m_nodeId = nodeId;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void dataSourceSync() {
+        final Map<InetAddress, Integer> interfaces = m_transactionOperations.execute(new TransactionCallback<Map<InetAddress, Integer>>() {
+            @Override
+            public Map<InetAddress, Integer> doInTransaction(final TransactionStatus status) {
+                return m_ipInterfaceDao.getInterfacesForNodes();
+            }
+        });
+
+        final ConcurrentMap<InetAddress, Entry> knownips = new ConcurrentHashMap<InetAddress, Entry>(Math.max(16, interfaces.size() * 4 / 3 + 1));
+        for (final Map.Entry<InetAddress, Integer> entry : interfaces.entrySet()) {
+            knownips.put(entry.getKey(), new Entry(entry.getValue().intValue()));
+        }
+        m_knownips = knownips;
+
+        final long refreshes = m_refreshes.incrementAndGet();
+        LOG.info("dataSourceSync: loaded {} interfaces (refresh {}, {} hits, {} misses so far)", knownips.size(), refreshes, m_hits.get(), m_misses.get());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getNodeId(final InetAddress ipAddr) {
+        if (ipAddr == null) {
+            return -1;
+        }
+        final Entry entry = m_knownips.get(ipAddr);
+        if (entry == null) {
+            m_misses.incrementAndGet();
+            return -1;
+        }
+        m_hits.incrementAndGet();
+        return entry.m_nodeId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int setNodeId(final InetAddress ipAddr, final int nodeId) {
+        if (ipAddr == null || nodeId == -1) {
+            return -1;
+        }
+        OnmsIpInterface intf = null;
+        boolean lookedUp = false;
+        while (true) {
+            // Query the database before taking the lock so that other writers are not held up
+            if (!lookedUp && m_knownips.containsKey(ipAddr)) {
+                intf = findInterface(nodeId, ipAddr);
+                lookedUp = true;
+            }
+            synchronized (this) {
+                // Only replace an existing mapping if the address is the primary interface of the new node
+                if (m_knownips.containsKey(ipAddr)) {
+                    if (!lookedUp) {
+                        // mapped by another writer in the meantime
+                        continue;
+                    }
+                    final boolean add = intf != null && intf.isPrimary();
+                    LOG.info("setNodeId: address found {}. Should be added? {}", intf, add);
+                    if (!add) {
+                        return -1;
+                    }
+                }
+                return nodeIdOf(m_knownips.put(ipAddr, new Entry(nodeId)));
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int removeNodeId(final InetAddress ipAddr) {
+        if (ipAddr == null) {
+            return -1;
+        }
+        return nodeIdOf(m_knownips.remove(ipAddr));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getHostName(final int nodeId, final InetAddress ipAddr) {
+        if (ipAddr == null) {
+            return null;
+        }
+        final Entry entry = m_knownips.get(ipAddr);
+        if (entry != null && entry.m_nodeId == nodeId && entry.m_hostName != null) {
+            m_hostNameHits.incrementAndGet();
+            return entry.m_hostName == NO_HOST_NAME ? null : entry.m_hostName;
+        }
+        m_hostNameMisses.incrementAndGet();
+
+        final OnmsIpInterface intf = findInterface(nodeId, ipAddr);
+        final String hostName = intf == null ? null : intf.getIpHostName();
+        if (intf != null && entry != null && entry.m_nodeId == nodeId) {
+            entry.m_hostName = hostName == null ? NO_HOST_NAME : hostName;
+        }
+        return hostName;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clearHostNames(final int nodeId) {
+        // Swap in fresh entries rather than clearing the field so that a
+        // lookup that raced with the update stores its result in the old one
+        final ConcurrentMap<InetAddress, Entry> knownips = m_knownips;
+        int cleared = 0;
+        for (final Map.Entry<InetAddress, Entry> entry : knownips.entrySet()) {
+            final Entry value = entry.getValue();
+            if (value.m_nodeId == nodeId && value.m_hostName != null && knownips.replace(entry.getKey(), value, new Entry(nodeId))) {
+                cleared++;
+            }
+        }
+        LOG.debug("clearHostNames: cleared {} host names of node {}", cleared, nodeId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return m_knownips.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHostNameHits() {
+        return m_hostNameHits.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHostNameMisses() {
+        return m_hostNameMisses.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRefreshes() {
+        return m_refreshes.get();
+    }
+
+    private OnmsIpInterface findInterface(final int nodeId, final InetAddress ipAddr) {
+        return m_transactionOperations.execute(new TransactionCallback<OnmsIpInterface>() {
+            @Override
+            public OnmsIpInterface doInTransaction(final TransactionStatus status) {
+                return m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, InetAddressUtils.str(ipAddr));
+            }
+        });
+    }
+
+    private static int nodeIdOf(final Entry entry) {
+        return entry == null ? -1 : entry.m_nodeId;
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.state(m_ipInterfaceDao != null, "property ipInterfaceDao must be set");
+        Assert.state(m_transactionOperations != null, "property transactionOperations must be set");
+    }
+
+    /**
+     * <p>getIpInterfaceDao</p>
+     *
+     * @return a {@link org.opennms.netmgt.dao.api.IpInterfaceDao} object.
+     */
+    public IpInterfaceDao getIpInterfaceDao() {
+        return m_ipInterfaceDao;
+    }
+
+    /**
+     * <p>setIpInterfaceDao</p>
+     *
+     * @param ipInterfaceDao a {@link org.opennms.netmgt.dao.api.IpInterfaceDao} object.
+     */
+    public void setIpInterfaceDao(final IpInterfaceDao ipInterfaceDao) {
+        m_ipInterfaceDao = ipInterfaceDao;
+    }
+
+    /**
+     * <p>setTransactionOperations</p>
+     *
+     * @param transactionOperations a {@link org.springframework.transaction.support.TransactionOperations} object.
+     */
+    public void setTransactionOperations(final TransactionOperations transactionOperations) {
+        m_transactionOperations = transactionOperations;
+    }
+}
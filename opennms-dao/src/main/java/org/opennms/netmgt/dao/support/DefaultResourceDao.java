@@ -126,7 +126,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     /** {@inheritDoc} */
     @Override
     public File getRrdDirectory(boolean verify) {
-        if (verify && !getRrdDirectory().isDirectory()) {
+        if (verify && !ResourceTypeUtils.isDirectory(getRrdDirectory())) {
             throw new ObjectRetrievalFailureException("RRD directory does not exist: " + getRrdDirectory().getAbsolutePath(), getRrdDirectory());
         }
         
@@ -566,7 +566,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
 
         // Get all of the non-numeric directory names in the RRD directory; these
         // are the names of the domains that have performance data
-        File[] domainDirs = snmp.listFiles(RrdFileConstants.DOMAIN_DIRECTORY_FILTER);
+        File[] domainDirs = ResourceTypeUtils.listFiles(snmp, RrdFileConstants.DOMAIN_DIRECTORY_FILTER);
 
         if (domainDirs != null && domainDirs.length > 0) {
             for (File domainDir : domainDirs) {
@@ -610,7 +610,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     protected OnmsResource getForeignSourceNodeEntityResource(String resource) {
         
         File idDir = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY + File.separator + ResourceTypeUtils.getRelativeNodeSourceDirectory(resource).toString());
-        if (idDir.isDirectory() && RrdFileConstants.NODESOURCE_DIRECTORY_FILTER.accept(idDir)) {
+        if (ResourceTypeUtils.isDirectory(idDir) && ResourceTypeUtils.accept(idDir, RrdFileConstants.NODESOURCE_DIRECTORY_FILTER)) {
             return m_nodeSourceResourceType.createChildResource(resource);
         } else {
            LOG.debug("resource {} not found by foreign source/foreignId. Trying as a node resource instead...", resource);
@@ -636,11 +636,11 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         
         File directory = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
         File domainDir = new File(directory, domain);
-        if (!domainDir.isDirectory()) {
+        if (!ResourceTypeUtils.isDirectory(domainDir)) {
             throw new ObjectRetrievalFailureException(OnmsResource.class, domain, "Domain not found due to domain RRD directory not existing or not a directory: " + domainDir.getAbsolutePath(), null);
         }
         
-        if (!RrdFileConstants.DOMAIN_DIRECTORY_FILTER.accept(domainDir)) {
+        if (!ResourceTypeUtils.accept(domainDir, RrdFileConstants.DOMAIN_DIRECTORY_FILTER)) {
             throw new ObjectRetrievalFailureException(OnmsResource.class, domain, "Domain not found due to domain RRD directory not matching the domain directory filter: " + domainDir.getAbsolutePath(), null);
         }
 
@@ -651,7 +651,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         Set<Integer> nodes = new TreeSet<Integer>();
         
         File directory = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
-        File[] nodeDirs = directory.listFiles(RrdFileConstants.NODE_DIRECTORY_FILTER);
+        File[] nodeDirs = ResourceTypeUtils.listFiles(directory, RrdFileConstants.NODE_DIRECTORY_FILTER);
 
         if (nodeDirs == null || nodeDirs.length == 0) {
             return nodes;
@@ -678,10 +678,10 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
        Set<String> nodeSourceDirectories = new HashSet<String>();
        File snmpDir = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
        File forSrcDir = new File(snmpDir, ResourceTypeUtils.FOREIGN_SOURCE_DIRECTORY);
-       File[] sourceDirs = forSrcDir.listFiles(); // TODO There is no need to filter by RrdFileConstants.SOURCE_DIRECTORY_FILTER
+       File[] sourceDirs = ResourceTypeUtils.listFiles(forSrcDir); // TODO There is no need to filter by RrdFileConstants.SOURCE_DIRECTORY_FILTER
        if (sourceDirs != null && sourceDirs.length > 0) {
            for (File sourceDir : sourceDirs) {
-               File [] ids = sourceDir.listFiles(RrdFileConstants.NODESOURCE_DIRECTORY_FILTER);
+               File [] ids = ResourceTypeUtils.listFiles(sourceDir, RrdFileConstants.NODESOURCE_DIRECTORY_FILTER);
                for (File id : ids) {
                    nodeSourceDirectories.add(sourceDir.getName() + ":" + id.getName());
                }
@@ -695,7 +695,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private static Set<String> findChildrenMatchingFilter(File directory, FileFilter filter) {
         Set<String> children = new HashSet<String>();
         
-        File[] nodeDirs = directory.listFiles(filter);
+        File[] nodeDirs = ResourceTypeUtils.listFiles(directory, filter);
 
         if (nodeDirs == null || nodeDirs.length == 0) {
             return children;
@@ -719,13 +719,13 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private static Set<String> findChildrenChildrenMatchingFilter(File directory, FileFilter filter) {
         Set<String> children = new HashSet<String>();
         
-        File[] locationMonitorDirs = directory.listFiles();
+        File[] locationMonitorDirs = ResourceTypeUtils.listFiles(directory);
         if (locationMonitorDirs == null) {
             return children;
         }
         
         for (File locationMonitorDir : locationMonitorDirs) {
-            File[] intfDirs = locationMonitorDir.listFiles(filter);
+            File[] intfDirs = ResourceTypeUtils.listFiles(locationMonitorDir, filter);
 
             if (intfDirs == null || intfDirs.length == 0) {
                 continue;
@@ -116,7 +116,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
             
             File iface = getInterfaceDirectory(id, ipAddr);
             
-            if (iface.isDirectory()) {
+            if (ResourceTypeUtils.isDirectory(iface)) {
                 resources.add(createResource(definitionName, id, ipAddr));
             }
         }
@@ -165,7 +165,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
         }
         
         File[] intfDirs =
-            locationMonitorDirectory.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+            ResourceTypeUtils.listFiles(locationMonitorDirectory, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         // XXX is this test even needed?
         if (intfDirs == null) {
@@ -300,7 +300,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
     private File getLocationMonitorDirectory(String locationMonitorId, boolean verify) throws ObjectRetrievalFailureException {
         File locationMonitorDirectory = new File(m_resourceDao.getRrdDirectory(verify), locationMonitorId);
 
-        if (verify && !locationMonitorDirectory.isDirectory()) {
+        if (verify && !ResourceTypeUtils.isDirectory(locationMonitorDirectory)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + locationMonitorId + ": " + locationMonitorDirectory);
         }
         
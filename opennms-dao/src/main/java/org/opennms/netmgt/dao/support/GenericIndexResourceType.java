@@ -117,19 +117,19 @@ public class GenericIndexResourceType implements OnmsResourceType {
     /** {@inheritDoc} */
     @Override
     public boolean isResourceTypeOnNode(int nodeId) {
-      return getResourceTypeDirectory(nodeId, false).isDirectory();
+      return ResourceTypeUtils.isDirectory(getResourceTypeDirectory(nodeId, false));
     }
     
     private File getResourceTypeDirectory(int nodeId, boolean verify) {
         File snmp = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.SNMP_DIRECTORY);
         
         File node = new File(snmp, Integer.toString(nodeId));
-        if (verify && !node.isDirectory()) {
+        if (verify && !ResourceTypeUtils.isDirectory(node)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + nodeId + ": " + node);
         }
 
         File generic = new File(node, getName());
-        if (verify && !generic.isDirectory()) {
+        if (verify && !ResourceTypeUtils.isDirectory(generic)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for generic index " + getName() + ": " + generic);
         }
 
@@ -140,12 +140,12 @@ public class GenericIndexResourceType implements OnmsResourceType {
         File snmp = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.SNMP_DIRECTORY);
 
         File dir = new File(snmp, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
-        if (verify && !dir.isDirectory()) {
+        if (verify && !ResourceTypeUtils.isDirectory(dir)) {
             throw new ObjectRetrievalFailureException(File.class, "No directory exists for nodeSource " + nodeSource);
         }
 
         File generic = new File(dir, getName());
-        if (verify && !generic.isDirectory()) {
+        if (verify && !ResourceTypeUtils.isDirectory(generic)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for generic index " + getName() + ": " + generic);
         }
 
@@ -193,7 +193,7 @@ public class GenericIndexResourceType implements OnmsResourceType {
         List<String> indexes = new LinkedList<String>();
         
         File[] indexDirs =
-            nodeDir.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+            ResourceTypeUtils.listFiles(nodeDir, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         if (indexDirs == null) {
             return indexes;
@@ -218,7 +218,7 @@ public class GenericIndexResourceType implements OnmsResourceType {
         List<String> indexes = new LinkedList<String>();
 
         File[] indexDirs =
-            dir.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+            ResourceTypeUtils.listFiles(dir, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         if (indexDirs == null) {
             return indexes;
@@ -500,7 +500,7 @@ public class GenericIndexResourceType implements OnmsResourceType {
 
         File node = new File(forSrc, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
         File generic = new File(node, getName());
-        return generic.isDirectory();
+        return ResourceTypeUtils.isDirectory(generic);
     }
 
     /** {@inheritDoc} */
@@ -113,7 +113,7 @@ public class ResponseTimeResourceType implements OnmsResourceType {
 
             final File iface = getInterfaceDirectory(ipAddr, false);
             
-            if (iface.isDirectory()) {
+            if (ResourceTypeUtils.isDirectory(iface)) {
                 resources.add(createResource(i));
             }
         }
@@ -143,7 +143,7 @@ public class ResponseTimeResourceType implements OnmsResourceType {
     	final File response = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.RESPONSE_DIRECTORY);
         
     	final File intfDir = new File(response, ipAddr);
-        if (verify && !intfDir.isDirectory()) {
+        if (verify && !ResourceTypeUtils.isDirectory(intfDir)) {
             throw new ObjectRetrievalFailureException(File.class, "No interface directory exists for " + ipAddr + ": " + intfDir);
         }
 
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2011-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.PrimaryType;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-databasePopulator.xml",
+        "classpath:/META-INF/opennms/applicationContext-setupIpLike-enabled.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class InterfaceToNodeCacheDaoImplTest implements InitializingBean {
+
+    @Autowired
+    private InterfaceToNodeCache m_cache;
+
+    @Autowired
+    private DatabasePopulator m_databasePopulator;
+
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
+    private InetAddress m_sharedAddress;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() {
+        m_databasePopulator.populateDatabase();
+
+        // The primary address of node2 is also an unmanaged secondary address of node1
+        m_sharedAddress = m_databasePopulator.getNode2().getPrimaryInterface().getIpAddress();
+        m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                final OnmsNode n1 = m_databasePopulator.getNodeDao().get(m_databasePopulator.getNode1().getId());
+                final OnmsIpInterface iface = new OnmsIpInterface(InetAddressUtils.str(m_sharedAddress), n1);
+                iface.setIsManaged("U");
+                iface.setIsSnmpPrimary(PrimaryType.SECONDARY);
+                n1.addIpInterface(iface);
+                m_databasePopulator.getNodeDao().save(n1);
+            }
+        });
+
+        m_cache.dataSourceSync();
+    }
+
+    @Test
+    public void testDataSourceSync() {
+        final int node1 = m_databasePopulator.getNode1().getId();
+        final InetAddress addr = InetAddressUtils.addr("192.168.1.1");
+        final InetAddress unknown = InetAddressUtils.addr("10.255.255.1");
+        assertEquals(node1, m_cache.getNodeId(addr));
+        assertEquals(-1, m_cache.getNodeId(unknown));
+
+        // entries that are not in the database are dropped by the next reload
+        m_cache.setNodeId(unknown, node1);
+        assertEquals(node1, m_cache.getNodeId(unknown));
+        final int size = m_cache.size();
+        final long refreshes = m_cache.getRefreshes();
+        m_cache.dataSourceSync();
+        assertEquals(-1, m_cache.getNodeId(unknown));
+        assertEquals(node1, m_cache.getNodeId(addr));
+        assertEquals(size - 1, m_cache.size());
+        assertEquals(refreshes + 1, m_cache.getRefreshes());
+    }
+
+    @Test
+    public void testReadersDuringReload() throws Exception {
+        final int node1 = m_databasePopulator.getNode1().getId();
+        final InetAddress addr = InetAddressUtils.addr("192.168.1.1");
+        final AtomicInteger wrongAnswers = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        // a reload swaps in a complete map, so a known address never goes missing
+        final Thread reader = new Thread("interface-to-node-reader") {
+            @Override
+            public void run() {
+                while (done.getCount() > 0) {
+                    if (m_cache.getNodeId(addr) != node1) {
+                        wrongAnswers.incrementAndGet();
+                    }
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                m_cache.dataSourceSync();
+            }
+        } finally {
+            done.countDown();
+            reader.join();
+        }
+        assertEquals(0, wrongAnswers.get());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final int node1 = m_databasePopulator.getNode1().getId();
+        final int size = m_cache.size();
+        final int threads = 4;
+        final int addressesPerThread = 250;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            final Thread writer = new Thread("interface-to-node-writer-" + t) {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < addressesPerThread; i++) {
+                        m_cache.setNodeId(InetAddressUtils.addr("10.200." + thread + "." + i), node1);
+                    }
+                }
+            };
+            writers.add(writer);
+            writer.start();
+        }
+        start.countDown();
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(size + threads * addressesPerThread, m_cache.size());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < addressesPerThread; i++) {
+                assertEquals(node1, m_cache.removeNodeId(InetAddressUtils.addr("10.200." + t + "." + i)));
+            }
+        }
+        assertEquals(size, m_cache.size());
+    }
+
+    @Test
+    public void testPrimaryWinsOnSetNodeId() {
+        final int node1 = m_databasePopulator.getNode1().getId();
+        final int node2 = m_databasePopulator.getNode2().getId();
+
+        // the reload maps the shared address to the node it is primary on
+        assertEquals(node2, m_cache.getNodeId(m_sharedAddress));
+
+        // a secondary interface does not take the address over
+        assertEquals(-1, m_cache.setNodeId(m_sharedAddress, node1));
+        assertEquals(node2, m_cache.getNodeId(m_sharedAddress));
+
+        // an unknown address is mapped to whatever node claims it
+        assertEquals(node2, m_cache.removeNodeId(m_sharedAddress));
+        assertEquals(-1, m_cache.setNodeId(m_sharedAddress, node1));
+        assertEquals(node1, m_cache.getNodeId(m_sharedAddress));
+
+        // the primary interface takes the address back
+        assertEquals(node1, m_cache.setNodeId(m_sharedAddress, node2));
+        assertEquals(node2, m_cache.getNodeId(m_sharedAddress));
+    }
+
+    @Test
+    public void testHostNameCounters() {
+        final int node1 = m_databasePopulator.getNode1().getId();
+        final InetAddress addr = InetAddressUtils.addr("192.168.1.1");
+        final long hits = m_cache.getHits();
+        final long misses = m_cache.getMisses();
+        final long hostNameHits = m_cache.getHostNameHits();
+        final long hostNameMisses = m_cache.getHostNameMisses();
+
+        assertNull(m_cache.getHostName(node1, addr));
+        assertEquals(hostNameMisses + 1, m_cache.getHostNameMisses());
+        assertEquals(hostNameHits, m_cache.getHostNameHits());
+
+        // the missing host name is remembered as well
+        assertNull(m_cache.getHostName(node1, addr));
+        assertEquals(hostNameMisses + 1, m_cache.getHostNameMisses());
+        assertEquals(hostNameHits + 1, m_cache.getHostNameHits());
+
+        // host name lookups do not skew the node ID counters
+        assertEquals(hits, m_cache.getHits());
+        assertEquals(misses, m_cache.getMisses());
+
+        assertEquals(node1, m_cache.getNodeId(addr));
+        assertTrue(m_cache.getHits() > hits);
+    }
+
+    @Test
+    public void testClearHostNames() {
+        final int node1 = m_databasePopulator.getNode1().getId();
+        final InetAddress addr = InetAddressUtils.addr("192.168.1.1");
+        assertNull(m_cache.getHostName(node1, addr));
+
+        m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                final OnmsIpInterface iface = m_databasePopulator.getIpInterfaceDao().findByNodeIdAndIpAddress(node1, "192.168.1.1");
+                iface.setIpHostName("router.example.org");
+                m_databasePopulator.getIpInterfaceDao().update(iface);
+            }
+        });
+
+        // the cached answer is kept until the node is updated
+        assertNull(m_cache.getHostName(node1, addr));
+        m_cache.clearHostNames(node1);
+        assertEquals("router.example.org", m_cache.getHostName(node1, addr));
+        assertEquals(node1, m_cache.getNodeId(addr));
+    }
+}
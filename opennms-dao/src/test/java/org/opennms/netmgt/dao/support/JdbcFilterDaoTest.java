@@ -36,6 +36,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -199,6 +200,45 @@ public class JdbcFilterDaoTest implements InitializingBean {
         assertFalse("Rule match succeeded unexpectedly: " + rule, m_dao.isRuleMatching(rule2));
     }
 
+    @Test
+    @JUnitTemporaryDatabase // Uses its own connections, like testWithManyCatIncAndServiceIdentifiersInRules
+    public void testInMemoryMatchesSql() throws Exception {
+        final String node1 = m_populator.getNode1().getId().toString();
+        final String[] rules = {
+                "ipaddr IPLIKE *.*.*.*",
+                "ipaddr == '192.168.1.1'",
+                "nodeId == " + node1,
+                "nodeId != '" + node1 + "' & nodeID >= 1",
+                "isICMP",
+                "isSNMP | isICMP & !(ipAddr IPLIKE 192.168.2.*)",
+                "notisSNMP",
+                "catincIMP_mid",
+                "categoryName == 'DEV_AC' | categoryName IS NULL",
+                "nodeLabel LIKE 'node%' & nodeSysOID IS NOT NULL",
+                String.format("(catincIMP_mid) & (catincDEV_AC) & (catincOPS_Online) & (nodeId == '%s') & (ipAddr == '192.168.1.1') & (serviceName == 'ICMP')", node1)
+        };
+
+        final JdbcFilterDao inMemory = new JdbcFilterDao();
+        inMemory.setDataSource(m_dataSource);
+        inMemory.setDatabaseSchemaConfigFactory(DatabaseSchemaConfigFactory.getInstance());
+        inMemory.setInMemory(true);
+        inMemory.afterPropertiesSet();
+
+        for (final String rule : rules) {
+            assertEquals(rule, m_dao.isRuleMatching(rule), inMemory.isRuleMatching(rule));
+            assertEquals(rule, new HashSet<InetAddress>(m_dao.getIPAddressList(rule)), new HashSet<InetAddress>(inMemory.getIPAddressList(rule)));
+            assertEquals(rule, new HashSet<InetAddress>(m_dao.getActiveIPAddressList(rule)), new HashSet<InetAddress>(inMemory.getActiveIPAddressList(rule)));
+            assertEquals(rule, m_dao.getNodeMap(rule), inMemory.getNodeMap(rule));
+            assertEquals(rule, m_dao.getIPAddressServiceMap(rule), inMemory.getIPAddressServiceMap(rule));
+        }
+        assertEquals("every rule should have been evaluated in memory", 0, inMemory.getSqlQueries());
+        assertEquals("the snapshot should have been loaded once", 1, inMemory.getSnapshot().getLoads());
+
+        // columns outside the snapshot are run as SQL
+        assertEquals(new HashSet<InetAddress>(m_dao.getIPAddressList("snmpIfType == 6")), new HashSet<InetAddress>(inMemory.getIPAddressList("snmpIfType == 6")));
+        assertEquals(1, inMemory.getSqlQueries());
+    }
+
     @Test
     @Transactional
     public void testAfterPropertiesSetNoSchemaFactory() {
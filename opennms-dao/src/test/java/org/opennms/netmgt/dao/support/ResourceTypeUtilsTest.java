@@ -32,6 +32,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -50,6 +51,7 @@ import org.opennms.netmgt.model.OnmsAttribute;
 import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.netmgt.rrd.RrdFileConstants;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.test.FileAnticipator;
 import org.opennms.test.ThrowableAnticipator;
@@ -171,6 +173,54 @@ public class ResourceTypeUtilsTest {
     }
 
 
+    @Test
+    public void testGetAttributesAtRelativePathIsIndexed() throws Exception {
+        createPropertiesFile(createResource(), "", true);
+        m_fileAnticipator.tempFile(m_intf, "foo" + RrdUtils.getExtension());
+
+        assertEquals(1, ResourceTypeUtils.getAttributesAtRelativePath(m_fileAnticipator.getTempDir(), "snmp/1/eth0").size());
+
+        // written behind the index's back, so the cached listing still applies
+        m_fileAnticipator.tempFile(m_intf, "bar" + RrdUtils.getExtension());
+        assertEquals(1, ResourceTypeUtils.getAttributesAtRelativePath(m_fileAnticipator.getTempDir(), "snmp/1/eth0").size());
+
+        ResourceTypeUtils.fileWritten(m_intf, "bar" + RrdUtils.getExtension());
+        assertEquals(2, ResourceTypeUtils.getAttributesAtRelativePath(m_fileAnticipator.getTempDir(), "snmp/1/eth0").size());
+    }
+
+    @Test
+    public void testFileWrittenInNewResourceDirectory() throws Exception {
+        createPropertiesFile(createResource(), "", true);
+        m_fileAnticipator.tempFile(m_intf, "foo" + RrdUtils.getExtension());
+
+        assertEquals(1, ResourceTypeUtils.listFiles(m_node, RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length);
+
+        File eth1 = m_fileAnticipator.tempDir(m_node, "eth1");
+        m_fileAnticipator.tempFile(eth1, "foo" + RrdUtils.getExtension());
+        ResourceTypeUtils.fileWritten(eth1, "foo" + RrdUtils.getExtension());
+
+        assertTrue(ResourceTypeUtils.isDirectory(eth1));
+        assertEquals(2, ResourceTypeUtils.listFiles(m_node, RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length);
+    }
+
+    @Test
+    public void testInvalidateDeletedResourceDirectory() throws Exception {
+        createPropertiesFile(createResource(), "", true);
+        File rrd = m_fileAnticipator.tempFile(m_intf, "foo" + RrdUtils.getExtension());
+
+        assertTrue(ResourceTypeUtils.isDirectory(m_intf));
+        assertEquals(1, ResourceTypeUtils.listFiles(m_node, RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length);
+        assertEquals(1, ResourceTypeUtils.getAttributesAtRelativePath(m_fileAnticipator.getTempDir(), "snmp/1/eth0").size());
+
+        assertTrue(rrd.delete());
+        assertTrue(m_intf.delete());
+        ResourceTypeUtils.invalidateDirectory(m_intf);
+
+        assertFalse(ResourceTypeUtils.isDirectory(m_intf));
+        assertEquals(0, ResourceTypeUtils.listFiles(m_node, RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length);
+        assertEquals(0, ResourceTypeUtils.getAttributesAtRelativePath(m_fileAnticipator.getTempDir(), "snmp/1/eth0").size());
+    }
+
     private OnmsResource createResource() {
         OnmsResource topResource = new OnmsResource("1", "Node One", new MockResourceType(), new HashSet<OnmsAttribute>(0));
         Set<OnmsAttribute> attributes = new HashSet<OnmsAttribute>(1);
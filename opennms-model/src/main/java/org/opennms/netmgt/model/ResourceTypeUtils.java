@@ -29,7 +29,9 @@
 package org.opennms.netmgt.model;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Map;
@@ -81,6 +83,14 @@ public abstract class ResourceTypeUtils {
 
     private static final PropertiesCache s_cache = new PropertiesCache();
 
+    /**
+     * Index of the directory listings under the RRD repository; a max age
+     * of 0 disables it and every lookup goes to the file system.
+     */
+    private static final RrdDirectoryIndex s_index = new RrdDirectoryIndex(
+            Long.getLong("org.opennms.rrd.directoryIndex.maxAge", 300000L),
+            Integer.getInteger("org.opennms.rrd.directoryIndex.maxDirectories", 50000));
+
     private static final String[] s_numericTypes = new String[] { "counter", "gauge", "timeticks", "integer", "octetstring" };
 
     /**
@@ -128,31 +138,88 @@ public abstract class ResourceTypeUtils {
     }
 
     private static void loadRrdAttributes(File rrdDirectory, String relativePath, Set<OnmsAttribute> attributes) {
-        int suffixLength = RrdFileConstants.getRrdSuffix().length();
-        File resourceDir = new File(rrdDirectory, relativePath);
-        File[] files = resourceDir.listFiles(RrdFileConstants.RRD_FILENAME_FILTER);
-        
-        if (files == null) {
-            return;
-        }
-        
-        for (final File file : files) {
-            String fileName = file.getName();
-            if (isStoreByGroup() && !isResponseTime(relativePath)) {
-                String groupName = fileName.substring(0, fileName.length() - suffixLength);
-                Properties props = getDsProperties(resourceDir);
-                for (Object o : props.keySet()) {
-                    String dsName = (String)o;
-                    if (props.getProperty(dsName).equals(groupName)) {
-                        attributes.add(new RrdGraphAttribute(dsName, relativePath, fileName));
-                    }
-                }
-            } else {
-                String dsName = fileName.substring(0, fileName.length() - suffixLength);
-                attributes.add(new RrdGraphAttribute(dsName, relativePath, fileName));
-            }
+        for (final String[] attribute : s_index.getRrdAttributes(rrdDirectory, relativePath)) {
+            attributes.add(new RrdGraphAttribute(attribute[0], relativePath, attribute[1]));
         }
     }
+
+    /**
+     * Indexed equivalent of {@link java.io.File#isDirectory()} for directories
+     * in the RRD repository.
+     *
+     * @param file a {@link java.io.File} object.
+     * @return a boolean.
+     */
+    public static boolean isDirectory(File file) {
+        return s_index.isDirectory(file);
+    }
+
+    /**
+     * Indexed equivalent of {@link java.io.File#listFiles()} for directories
+     * in the RRD repository.
+     *
+     * @param directory a {@link java.io.File} object.
+     * @return an array of {@link java.io.File} objects, or null if the directory does not exist.
+     */
+    public static File[] listFiles(File directory) {
+        return s_index.listFiles(directory);
+    }
+
+    /**
+     * Indexed equivalent of {@link java.io.File#listFiles(FileFilter)} for
+     * directories in the RRD repository.
+     *
+     * @param directory a {@link java.io.File} object.
+     * @param filter a {@link java.io.FileFilter} object.
+     * @return an array of {@link java.io.File} objects, or null if the directory does not exist.
+     */
+    public static File[] listFiles(File directory, FileFilter filter) {
+        return s_index.listFiles(directory, filter);
+    }
+
+    /**
+     * Indexed equivalent of {@link java.io.File#listFiles(FilenameFilter)} for
+     * directories in the RRD repository.
+     *
+     * @param directory a {@link java.io.File} object.
+     * @param filter a {@link java.io.FilenameFilter} object.
+     * @return an array of {@link java.io.File} objects, or null if the directory does not exist.
+     */
+    public static File[] listFiles(File directory, FilenameFilter filter) {
+        return s_index.listFiles(directory, filter);
+    }
+
+    /**
+     * Indexed equivalent of {@link java.io.FileFilter#accept(File)} for the
+     * directory filters in {@link RrdFileConstants}.
+     *
+     * @param file a {@link java.io.File} object.
+     * @param filter a {@link java.io.FileFilter} object.
+     * @return a boolean.
+     */
+    public static boolean accept(File file, FileFilter filter) {
+        return s_index.accept(filter, file);
+    }
+
+    /**
+     * Drops the indexed listing of a resource directory after its contents
+     * were changed outside of the persisters.
+     *
+     * @param directory a {@link java.io.File} object.
+     */
+    public static void invalidateDirectory(File directory) {
+        s_index.invalidate(directory);
+    }
+
+    /**
+     * Tells the directory index that an RRD or properties file was written.
+     *
+     * @param directory a {@link java.io.File} object.
+     * @param fileName a {@link java.lang.String} object.
+     */
+    public static void fileWritten(File directory, String fileName) {
+        s_index.fileWritten(directory, fileName);
+    }
     
     /**
      * <p>getDsProperties</p>
@@ -265,6 +332,7 @@ public abstract class ResourceTypeUtils {
      */
     public static void saveUpdatedProperties(File propertiesFile, Properties props) throws FileNotFoundException, IOException {
         s_cache.saveProperties(propertiesFile, props);
+        s_index.invalidate(propertiesFile.getAbsoluteFile().getParentFile());
     }
 
     /**
@@ -274,8 +342,22 @@ public abstract class ResourceTypeUtils {
      * @param dsNamesToRrdNames a {@link java.util.Map} object.
      */
     public static void updateDsProperties(File resourceDir, Map<String, String> dsNamesToRrdNames) {
+        final File propertiesFile = new File(resourceDir, DS_PROPERTIES_FILE);
         try {
-            s_cache.updateProperties(new File(resourceDir, DS_PROPERTIES_FILE), dsNamesToRrdNames);
+            boolean changed = false;
+            if (dsNamesToRrdNames != null) {
+                for (Entry<String, String> entry : dsNamesToRrdNames.entrySet()) {
+                    if (!entry.getValue().equals(s_cache.getProperty(propertiesFile, entry.getKey()))) {
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            s_cache.updateProperties(propertiesFile, dsNamesToRrdNames);
+            if (changed) {
+                // the data source to file mapping of this directory moved
+                s_index.invalidate(resourceDir);
+            }
         } catch (IOException e) {
             LOG.error("Unable to save DataSource Properties file", e);
         }
@@ -293,6 +375,7 @@ public abstract class ResourceTypeUtils {
     public static void updateStringProperty(File resourceDir, String attrVal, String attrName) throws FileNotFoundException, IOException {
         File propertiesFile = new File(resourceDir, STRINGS_PROPERTIES_FILE_NAME);
         s_cache.setProperty(propertiesFile, attrName, attrVal);
+        s_index.fileWritten(resourceDir, STRINGS_PROPERTIES_FILE_NAME);
     }
 
     /**
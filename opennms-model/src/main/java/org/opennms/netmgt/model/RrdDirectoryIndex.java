@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2007-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.model;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the directory listings under the RRD repository.
+ *
+ * <p>Every directory is listed at most once per {@link #getMaxAge() max age}
+ * and the listing is kept together with the RRD attribute descriptors found
+ * in it, so that resource lookups and the {@link RrdFileConstants} directory
+ * filters can be answered without touching the disk. Writers keep the index
+ * current through {@link #invalidate(File)} and {@link #fileWritten(File, String)};
+ * the max age bounds how stale a listing can get when files are created by
+ * something that does not call back.</p>
+ *
+ * <p>A max age of zero disables the index and every call goes straight to
+ * the file system.</p>
+ */
+final class RrdDirectoryIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDirectoryIndex.class);
+
+    private static final String[] NO_NAMES = new String[0];
+
+    private final long m_maxAge;
+
+    private final Map<String, Listing> m_listings;
+
+    /**
+     * A single directory listing. Names are kept sorted so that membership
+     * can be checked with a binary search.
+     */
+    private static final class Listing {
+        private final long m_loaded;
+        private final boolean m_exists;
+        private final String[] m_names;
+        private final boolean[] m_directories;
+        private String[][] m_rrdAttributes;
+
+        private Listing(final long loaded, final boolean exists, final String[] names, final boolean[] directories) {
+            m_loaded = loaded;
+            m_exists = exists;
+            m_names = names;
+            m_directories = directories;
+        }
+
+        private int indexOf(final String name) {
+            return Arrays.binarySearch(m_names, name);
+        }
+
+        private boolean hasRrdFiles() {
+            final String suffix = RrdFileConstants.getRrdSuffix();
+            for (int i = 0; i < m_names.length; i++) {
+                if (!m_directories[i] && m_names[i].endsWith(suffix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    RrdDirectoryIndex(final long maxAge, final int maxDirectories) {
+        m_maxAge = maxAge;
+        m_listings = new LinkedHashMap<String, Listing>(1024, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Listing> eldest) {
+                return size() > maxDirectories;
+            }
+        };
+    }
+
+    long getMaxAge() {
+        return m_maxAge;
+    }
+
+    boolean isEnabled() {
+        return m_maxAge > 0;
+    }
+
+    int size() {
+        synchronized (m_listings) {
+            return m_listings.size();
+        }
+    }
+
+    /**
+     * Equivalent of {@link File#isDirectory()}. Answered from the parent or
+     * the directory's own listing when either is indexed; a miss falls back
+     * to the file system and does not populate the index.
+     */
+    boolean isDirectory(final File file) {
+        if (!isEnabled()) {
+            return file.isDirectory();
+        }
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            final Listing parentListing = getCached(parent);
+            if (parentListing != null) {
+                final int i = parentListing.indexOf(file.getName());
+                return i >= 0 && parentListing.m_directories[i];
+            }
+        }
+        final Listing listing = getCached(file);
+        if (listing != null) {
+            return listing.m_exists;
+        }
+        return file.isDirectory();
+    }
+
+    /**
+     * Equivalent of {@link File#listFiles()}.
+     */
+    File[] listFiles(final File dir) {
+        if (!isEnabled()) {
+            return dir.listFiles();
+        }
+        final Listing listing = getListing(dir);
+        if (!listing.m_exists) {
+            return null;
+        }
+        final File[] files = new File[listing.m_names.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dir, listing.m_names[i]);
+        }
+        return files;
+    }
+
+    /**
+     * Equivalent of {@link File#listFiles(FileFilter)}. The directory filters
+     * from {@link RrdFileConstants} are evaluated against the index, any other
+     * filter is handed the real file.
+     */
+    File[] listFiles(final File dir, final FileFilter filter) {
+        if (!isEnabled()) {
+            return dir.listFiles(filter);
+        }
+        final Listing listing = getListing(dir);
+        if (!listing.m_exists) {
+            return null;
+        }
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < listing.m_names.length; i++) {
+            final File file = new File(dir, listing.m_names[i]);
+            if (accept(filter, file, listing.m_directories[i])) {
+                files.add(file);
+            }
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * Equivalent of {@link File#listFiles(FilenameFilter)}.
+     */
+    File[] listFiles(final File dir, final FilenameFilter filter) {
+        if (!isEnabled()) {
+            return dir.listFiles(filter);
+        }
+        final Listing listing = getListing(dir);
+        if (!listing.m_exists) {
+            return null;
+        }
+        final String suffix = RrdFileConstants.getRrdSuffix();
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < listing.m_names.length; i++) {
+            final String name = listing.m_names[i];
+            final boolean accepted;
+            if (filter == RrdFileConstants.RRD_FILENAME_FILTER) {
+                accepted = !listing.m_directories[i] && name.endsWith(suffix);
+            } else {
+                accepted = filter.accept(dir, name);
+            }
+            if (accepted) {
+                files.add(new File(dir, name));
+            }
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * Equivalent of {@link FileFilter#accept(File)} for a single directory.
+     */
+    boolean accept(final FileFilter filter, final File file) {
+        if (!isEnabled()) {
+            return filter.accept(file);
+        }
+        return accept(filter, file, isDirectory(file));
+    }
+
+    /**
+     * Returns the data source name and RRD file name pairs for the RRD files
+     * in the given resource directory. The pairs are computed once per
+     * listing; callers build their own attribute objects from them.
+     */
+    String[][] getRrdAttributes(final File rrdDirectory, final String relativePath) {
+        final File resourceDir = new File(rrdDirectory, relativePath);
+        if (!isEnabled()) {
+            return loadRrdAttributes(resourceDir, relativePath, resourceDir.listFiles(RrdFileConstants.RRD_FILENAME_FILTER));
+        }
+        final Listing listing = getListing(resourceDir);
+        synchronized (listing) {
+            if (listing.m_rrdAttributes == null) {
+                listing.m_rrdAttributes = loadRrdAttributes(resourceDir, relativePath, listFiles(resourceDir, RrdFileConstants.RRD_FILENAME_FILTER));
+            }
+            return listing.m_rrdAttributes;
+        }
+    }
+
+    /**
+     * Drops the listing of the given directory and of everything below it.
+     * Ancestors are dropped as well until one is found whose listing
+     * already contains the child, which covers directories that were just
+     * created; the parent of a directory that no longer exists is always
+     * dropped, which covers directories that were just deleted.
+     */
+    void invalidate(final File dir) {
+        if (!isEnabled()) {
+            return;
+        }
+        File child = dir.getAbsoluteFile();
+        final boolean deleted = !child.isDirectory();
+        synchronized (m_listings) {
+            m_listings.remove(child.getPath());
+            final String prefix = child.getPath() + File.separator;
+            for (final Iterator<String> it = m_listings.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+            final File parent = child.getParentFile();
+            if (deleted && parent != null) {
+                m_listings.remove(parent.getPath());
+                child = parent;
+            }
+            invalidateAncestors(child);
+        }
+    }
+
+    /**
+     * Records that a file was written to the given directory. Only a file
+     * the index has not seen before causes the listing to be dropped. This
+     * runs on every RRD write, so unlike {@link #invalidate(File)} it never
+     * touches the disk or scans the index for subdirectories: writing a
+     * file can only change the directory's own listing and, if the
+     * directory is new, the listings of its ancestors.
+     */
+    void fileWritten(final File dir, final String fileName) {
+        if (!isEnabled()) {
+            return;
+        }
+        final File child = dir.getAbsoluteFile();
+        synchronized (m_listings) {
+            final Listing listing = m_listings.get(child.getPath());
+            if (listing != null) {
+                if (listing.m_exists && listing.indexOf(fileName) >= 0) {
+                    return;
+                }
+                m_listings.remove(child.getPath());
+            }
+            invalidateAncestors(child);
+        }
+    }
+
+    /**
+     * Drops the listings of the ancestors of the given directory until one
+     * is found whose listing already contains it.  Must be called with the
+     * m_listings lock held.
+     */
+    private void invalidateAncestors(File child) {
+        File parent = child.getParentFile();
+        while (parent != null) {
+            final Listing listing = m_listings.remove(parent.getPath());
+            if (listing != null && listing.m_exists) {
+                final int i = listing.indexOf(child.getName());
+                if (i >= 0 && listing.m_directories[i]) {
+                    // still accurate, put it back and stop here
+                    m_listings.put(parent.getPath(), listing);
+                    break;
+                }
+            }
+            child = parent;
+            parent = child.getParentFile();
+        }
+    }
+
+    void clear() {
+        synchronized (m_listings) {
+            m_listings.clear();
+        }
+    }
+
+    private boolean accept(final FileFilter filter, final File file, final boolean directory) {
+        if (filter == RrdFileConstants.INTERFACE_DIRECTORY_FILTER) {
+            return directory && isInterfaceDir(file);
+        } else if (filter == RrdFileConstants.DOMAIN_INTERFACE_DIRECTORY_FILTER) {
+            return directory && !isLong(file.getName()) && isInterfaceDir(file);
+        } else if (filter == RrdFileConstants.NODE_DIRECTORY_FILTER) {
+            return directory && isLong(file.getName()) && isNodeSourceDir(file);
+        } else if (filter == RrdFileConstants.NODESOURCE_DIRECTORY_FILTER) {
+            return directory && isNodeSourceDir(file);
+        } else if (filter == RrdFileConstants.DOMAIN_DIRECTORY_FILTER) {
+            return directory && !isInteger(file.getName()) && isDomainDir(file);
+        }
+        return filter.accept(file);
+    }
+
+    private boolean isInterfaceDir(final File dir) {
+        final Listing listing = getListing(dir);
+        return listing.m_exists && listing.hasRrdFiles();
+    }
+
+    private boolean isNodeSourceDir(final File dir) {
+        final Listing listing = getListing(dir);
+        if (!listing.m_exists) {
+            return false;
+        }
+        if (listing.hasRrdFiles()) {
+            return true;
+        }
+        for (int i = 0; i < listing.m_names.length; i++) {
+            if (listing.m_directories[i] && isInterfaceDir(new File(dir, listing.m_names[i]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isDomainDir(final File dir) {
+        final Listing listing = getListing(dir);
+        if (!listing.m_exists) {
+            return false;
+        }
+        for (int i = 0; i < listing.m_names.length; i++) {
+            final String name = listing.m_names[i];
+            if (listing.m_directories[i] && !isLong(name) && isInterfaceDir(new File(dir, name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Listing getCached(final File dir) {
+        final String key = dir.getAbsolutePath();
+        synchronized (m_listings) {
+            final Listing listing = m_listings.get(key);
+            if (listing != null && System.currentTimeMillis() - listing.m_loaded < m_maxAge) {
+                return listing;
+            }
+            return null;
+        }
+    }
+
+    private Listing getListing(final File dir) {
+        Listing listing = getCached(dir);
+        if (listing == null) {
+            // list outside of the lock, a concurrent load of the same directory is harmless
+            listing = load(dir);
+            synchronized (m_listings) {
+                m_listings.put(dir.getAbsolutePath(), listing);
+            }
+        }
+        return listing;
+    }
+
+    private static Listing load(final File dir) {
+        final long now = System.currentTimeMillis();
+        final String[] names = dir.list();
+        if (names == null) {
+            return new Listing(now, false, NO_NAMES, new boolean[0]);
+        }
+        Arrays.sort(names);
+        final String suffix = RrdFileConstants.getRrdSuffix();
+        final boolean[] directories = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            // the repository only ever holds data and properties files next to
+            // resource directories, so skip the stat for the well-known ones
+            if (name.endsWith(suffix) || name.endsWith(".meta") || name.endsWith(".properties")) {
+                directories[i] = false;
+            } else {
+                directories[i] = new File(dir, name).isDirectory();
+            }
+        }
+        LOG.trace("indexed {} entries in {}", names.length, dir);
+        return new Listing(now, true, names, directories);
+    }
+
+    private static String[][] loadRrdAttributes(final File resourceDir, final String relativePath, final File[] files) {
+        if (files == null) {
+            return new String[0][];
+        }
+        final int suffixLength = RrdFileConstants.getRrdSuffix().length();
+        final boolean byGroup = ResourceTypeUtils.isStoreByGroup() && !ResourceTypeUtils.isResponseTime(relativePath);
+        final List<String[]> attributes = new ArrayList<String[]>();
+        for (final File file : files) {
+            final String fileName = file.getName();
+            final String baseName = fileName.substring(0, fileName.length() - suffixLength);
+            if (byGroup) {
+                final Properties props = ResourceTypeUtils.getDsProperties(resourceDir);
+                for (Object o : props.keySet()) {
+                    final String dsName = (String)o;
+                    if (props.getProperty(dsName).equals(baseName)) {
+                        attributes.add(new String[] { dsName, fileName });
+                    }
+                }
+            } else {
+                attributes.add(new String[] { baseName, fileName });
+            }
+        }
+        return attributes.toArray(new String[attributes.size()][]);
+    }
+
+    private static boolean isLong(final String name) {
+        try {
+            Long.valueOf(name);
+            return true;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isInteger(final String name) {
+        try {
+            Integer.parseInt(name);
+            return true;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.provision.persist.AbstractRequisitionVisitor;
 import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
 import org.opennms.netmgt.provision.persist.RequisitionVisitor;
@@ -44,8 +45,11 @@ import org.opennms.netmgt.provision.service.lifecycle.LifeCycleInstance;
 import org.opennms.netmgt.provision.service.lifecycle.Phase;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
+import org.opennms.netmgt.provision.service.operations.ImportEventBatch;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.NoOpProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
 import org.springframework.core.io.Resource;
 
@@ -58,31 +62,58 @@ import org.springframework.core.io.Resource;
 @ActivityProvider
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
+    private static final ProvisionMonitor NO_OP_MONITOR = new NoOpProvisionMonitor();
     
+    /**
+     * Requisitions with at least this many nodes are imported in bulk: nodes
+     * that are already up to date in the database are skipped and events are
+     * sent in batches. Skipped nodes are not scanned and get no nodeUpdated
+     * event unless rescanExisting is set, so bulk imports are disabled (zero
+     * or less) unless this is set.
+     */
+    private static final String BULK_IMPORT_THRESHOLD = "org.opennms.provisiond.bulkImportThreshold";
+    private static final String BULK_IMPORT_CHUNK_SIZE = "org.opennms.provisiond.bulkImportChunkSize";
+    private static final String BULK_IMPORT_EVENT_BATCH_SIZE = "org.opennms.provisiond.bulkImportEventBatchSize";
+
     ProvisionService m_provisionService;
+
+    private EventForwarder m_eventForwarder;
     
     public CoreImportActivities(final ProvisionService provisionService) {
         m_provisionService = provisionService;
     }
 
+    /**
+     * Sets the forwarder used to send the events of bulk imports, bulk
+     * imports are disabled without one.
+     *
+     * @param eventForwarder a {@link org.opennms.netmgt.events.api.EventForwarder} object.
+     */
+    public void setEventForwarder(final EventForwarder eventForwarder) {
+        m_eventForwarder = eventForwarder;
+    }
+
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
-    public RequisitionImport loadSpecFile(final Resource resource) {
+    public RequisitionImport loadSpecFile(final Resource resource, final ProvisionMonitor monitor) {
         final RequisitionImport ri = new RequisitionImport();
 
         info("Loading requisition from resource {}", resource);
+        monitor(monitor).beginLoadingResource(resource);
         try {
             final Requisition specFile = m_provisionService.loadRequisition(resource);
             ri.setRequisition(specFile);
             debug("Finished loading requisition.");
         } catch (final Throwable t) {
             ri.abort(t);
+        } finally {
+            monitor(monitor).finishLoadingResource(resource);
         }
 
         return ri;
     }
     
     @Activity( lifecycle = "import", phase = "audit", schedulingHint="import" )
-    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting) {
+    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping audit phase import.");
             return null;
@@ -101,7 +132,25 @@ public class CoreImportActivities {
         final ImportOperationsManager opsMgr = new ImportOperationsManager(foreignIdsToNodes, m_provisionService, rescanExisting);
         
         opsMgr.setForeignSource(foreignSource);
-        opsMgr.auditNodes(specFile);
+
+        final int bulkImportThreshold = Integer.getInteger(BULK_IMPORT_THRESHOLD, 0);
+        final boolean bulkImport = m_eventForwarder != null && bulkImportThreshold > 0 && specFile.getNodeCount() >= bulkImportThreshold;
+        if (bulkImport) {
+            opsMgr.setEventBatch(new ImportEventBatch(m_eventForwarder, Integer.getInteger(BULK_IMPORT_EVENT_BATCH_SIZE, 500), monitor(monitor)));
+        }
+
+        monitor(monitor).beginAuditNodes();
+        try {
+            opsMgr.auditNodes(specFile);
+
+            if (bulkImport) {
+                final long start = System.currentTimeMillis();
+                final int upToDate = opsMgr.diffWithDatabase(Integer.getInteger(BULK_IMPORT_CHUNK_SIZE, 500));
+                info("Bulk import of {} nodes: {} of {} existing nodes are up to date, compared in {} ms.", specFile.getNodeCount(), upToDate, opsMgr.getUpdateCount(), System.currentTimeMillis() - start);
+            }
+        } finally {
+            monitor(monitor).finishAuditNodes();
+        }
 
         debug("Finished auditing nodes.");
         
@@ -109,13 +158,14 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri) {
+    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
         }
 
         info("Scheduling nodes for phase {}", currentPhase);
+        monitor(monitor).beginProcessingOps(opsMgr.getDeleteCount(), opsMgr.getUpdateCount(), opsMgr.getInsertCount());
         
         final Collection<ImportOperation> operations = opsMgr.getOperations();
         
@@ -126,6 +176,9 @@ public class CoreImportActivities {
             
             nodeScan.setAttribute("operation", op);
             nodeScan.setAttribute("requisitionImport", ri);
+            if (monitor != null) {
+                nodeScan.setAttribute("monitor", monitor);
+            }
             nodeScan.trigger();
         }
 
@@ -134,7 +187,7 @@ public class CoreImportActivities {
     
     
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
-    public void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting) {
+    public void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase nodeImport.");
             return;
@@ -142,7 +195,12 @@ public class CoreImportActivities {
 
         if (rescanExisting == null || Boolean.valueOf(rescanExisting)) {
             info("Running scan phase of {}, the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
-            operation.scan();
+            monitor(monitor).beginPreprocessing(operation);
+            try {
+                operation.scan();
+            } finally {
+                monitor(monitor).finishPreprocessing(operation);
+            }
     
             info("Finished Running scan phase of {}", operation);
         } else {
@@ -151,26 +209,38 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "nodeImport", phase = "persist" , schedulingHint = "import" )
-    public void persistNode(final ImportOperation operation, final RequisitionImport ri) {
+    public void persistNode(final ImportOperation operation, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping persist phase.");
             return;
         }
 
         info("Running persist phase of {}", operation);
-        operation.persist();
+        monitor(monitor).beginPersisting(operation);
+        try {
+            operation.persist();
+        } finally {
+            monitor(monitor).finishPersisting(operation);
+        }
         info("Finished Running persist phase of {}", operation);
 
     }
     
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
-    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri) {
+    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri, final ImportOperationsManager opsMgr, final ProvisionMonitor monitor) {
+        // all nodes have been persisted by now
+        monitor(monitor).finishProcessingOps();
+        if (opsMgr != null && opsMgr.getEventBatch() != null) {
+            opsMgr.getEventBatch().flush();
+        }
+
         if (ri.isAborted()) {
             info("The import has been aborted, skipping relate phase.");
             return;
         }
 
         info("Running relate phase");
+        monitor(monitor).beginRelateNodes();
         
         final Requisition requisition = ri.getRequisition();
         RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
@@ -216,6 +286,10 @@ public class CoreImportActivities {
         }; 
     }
 
+    private static ProvisionMonitor monitor(final ProvisionMonitor monitor) {
+        return monitor == null ? NO_OP_MONITOR : monitor;
+    }
+
     protected void info(String format, Object... args) {
     	LOG.info(format, args);
     }
@@ -39,6 +39,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +47,9 @@ import java.util.TreeSet;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.core.criteria.Fetch.FetchType;
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.api.DiscoveryConfigurationFactory;
@@ -209,12 +213,19 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     @Transactional
     @Override
     public void insertNode(final OnmsNode node) {
+        insertNode(node, m_eventForwarder);
+    }
+
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void insertNode(final OnmsNode node, final EventForwarder eventForwarder) {
 
         node.setDistPoller(createDistPollerIfNecessary("localhost", "127.0.0.1"));
         m_nodeDao.save(node);
         m_nodeDao.flush();
 
-        final EntityVisitor visitor = new AddEventVisitor(m_eventForwarder);
+        final EntityVisitor visitor = new AddEventVisitor(eventForwarder);
         node.visit(visitor);
     }
 
@@ -222,13 +233,20 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     @Transactional
     @Override
     public void updateNode(final OnmsNode node, String rescanExisting) {
+        updateNode(node, rescanExisting, m_eventForwarder);
+    }
+
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void updateNode(final OnmsNode node, final String rescanExisting, final EventForwarder eventForwarder) {
 
         final OnmsNode dbNode = m_nodeDao.getHierarchy(node.getId());
 
         // on an update, leave categories alone, let the NodeScan handle applying requisitioned categories
         node.setCategories(dbNode.getCategories());
 
-        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        final EventAccumulator accumulator = new EventAccumulator(eventForwarder);
         dbNode.mergeNode(node, accumulator, false);
 
         updateNodeHostname(dbNode);
@@ -236,7 +254,7 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         m_nodeDao.flush();
 
         accumulator.flush();
-        final EntityVisitor eventAccumlator = new UpdateEventVisitor(m_eventForwarder, rescanExisting);
+        final EntityVisitor eventAccumlator = new UpdateEventVisitor(eventForwarder, rescanExisting);
         dbNode.visit(eventAccumlator);
     }
 
@@ -791,6 +809,24 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         return m_nodeDao.getForeignIdToNodeIdMap(foreignSource);
     }
 
+    /** {@inheritDoc} */
+    @Transactional(readOnly=true)
+    @Override
+    public List<OnmsNode> getNodeSnapshot(final Collection<Integer> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // the fetch joins return one row per service and category, keep each node once
+        final Criteria criteria = new CriteriaBuilder(OnmsNode.class)
+            .fetch("assetRecord", FetchType.EAGER)
+            .fetch("categories", FetchType.EAGER)
+            .fetch("ipInterfaces", FetchType.EAGER)
+            .fetch("ipInterfaces.monitoredServices", FetchType.EAGER)
+            .in("id", nodeIds)
+            .toCriteria();
+        return new ArrayList<OnmsNode>(new LinkedHashSet<OnmsNode>(m_nodeDao.findMatching(criteria)));
+    }
+
     /** {@inheritDoc} */
     @Override
     @Transactional
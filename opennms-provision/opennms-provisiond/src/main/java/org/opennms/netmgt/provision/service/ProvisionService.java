@@ -29,10 +29,12 @@
 package org.opennms.netmgt.provision.service;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.model.OnmsCategory;
 import org.opennms.netmgt.model.OnmsDistPoller;
 import org.opennms.netmgt.model.OnmsIpInterface;
@@ -102,6 +104,13 @@ public interface ProvisionService {
      */
     @Transactional
     void updateNode(OnmsNode node, String rescanExisting);
+
+    /**
+     * Same as {@link #updateNode(OnmsNode, String)} but sends the resulting
+     * events to the given forwarder.
+     */
+    @Transactional
+    void updateNode(OnmsNode node, String rescanExisting, EventForwarder eventForwarder);
     
     @Transactional
     OnmsNode updateNodeAttributes(OnmsNode node);
@@ -146,6 +155,13 @@ public interface ProvisionService {
     @Transactional
     void insertNode(OnmsNode node);
 
+    /**
+     * Same as {@link #insertNode(OnmsNode)} but sends the resulting events
+     * to the given forwarder.
+     */
+    @Transactional
+    void insertNode(OnmsNode node, EventForwarder eventForwarder);
+
     /**
      * Look up the OnmsServiceType with the given name, creating one if it
      * doesn't exist.
@@ -177,6 +193,14 @@ public interface ProvisionService {
     @Transactional(readOnly = true)
     Map<String, Integer> getForeignIdToNodeIdMap(String foreignSource);
 
+    /**
+     * Loads the given nodes with the asset record, categories, ip interfaces
+     * and monitored services that an import may change, using a single query.
+     * Nothing else of the returned nodes is initialized.
+     */
+    @Transactional(readOnly = true)
+    List<OnmsNode> getNodeSnapshot(Collection<Integer> nodeIds);
+
     /**
      * Sets the parent of the node and adds the relationship to the path
      * element for the node. The foreignId is used to reference the node and
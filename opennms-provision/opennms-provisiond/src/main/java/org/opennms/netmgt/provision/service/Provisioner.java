@@ -41,7 +41,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.joda.time.Duration;
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.tasks.DefaultTaskCoordinator;
 import org.opennms.core.tasks.Task;
@@ -78,6 +80,11 @@ import org.springframework.core.io.UrlResource;
 public class Provisioner implements SpringServiceDaemon {
     private static final String SCHEDULE_RESCAN_FOR_UPDATED_NODES = "org.opennms.provisiond.scheduleRescanForUpdatedNodes";
     private static final String SCHEDULE_RESCAN_FOR_EXISTING_NODES = "org.opennms.provisiond.scheduleRescanForExistingNodes";
+    /**
+     * Minimum spacing in milliseconds between the first scans of added or
+     * updated nodes, so a large import doesn't start all of its scans at once.
+     */
+    private static final String SCAN_SPACING = "org.opennms.provisiond.scanSpacing";
 
     private static final Logger LOG = LoggerFactory.getLogger(Provisioner.class);
     
@@ -91,6 +98,7 @@ public class Provisioner implements SpringServiceDaemon {
     private ProvisionService m_provisionService;
     private ScheduledExecutorService m_scheduledExecutor;
     private final Map<Integer, ScheduledFuture<?>> m_scheduledNodes = new ConcurrentHashMap<Integer, ScheduledFuture<?>>();
+    private final AtomicLong m_nextScanSlot = new AtomicLong();
     private volatile EventForwarder m_eventForwarder;
     private SnmpAgentConfigFactory m_agentConfigFactory;
     
@@ -417,8 +425,15 @@ public class Provisioner implements SpringServiceDaemon {
         final LifeCycleInstance doImport = m_lifeCycleRepository.createLifeCycleInstance("import", m_importActivities);
         doImport.setAttribute("resource", resource);
         doImport.setAttribute("rescanExisting", rescanExisting);
-        doImport.trigger();
-        doImport.waitFor();
+        doImport.setAttribute("monitor", monitor);
+        monitor.beginImporting();
+        try {
+            doImport.trigger();
+            doImport.waitFor();
+        } finally {
+            monitor.finishRelateNodes();
+            monitor.finishImporting();
+        }
         final RequisitionImport ri = doImport.findAttributeByType(RequisitionImport.class);
         if (ri.isAborted()) {
             throw new ModelImportException("Import failed for resource " + resource.toString(), ri.getError());
@@ -525,7 +540,7 @@ public class Provisioner implements SpringServiceDaemon {
         }
         LOG.warn("scheduleForNode is {}", scheduleForNode);
         if (scheduleForNode != null) {
-            addToScheduleQueue(scheduleForNode);
+            addToScheduleQueue(spreadInitialScan(scheduleForNode));
         }
 
     }
@@ -645,11 +660,36 @@ public class Provisioner implements SpringServiceDaemon {
         removeNodeFromScheduleQueue(new Long(e.getNodeid()).intValue());
         NodeScanSchedule scheduleForNode = getProvisionService().getScheduleForNode(e.getNodeid().intValue(), true);
         if (scheduleForNode != null) {
-            addToScheduleQueue(scheduleForNode);
+            addToScheduleQueue(spreadInitialScan(scheduleForNode));
         }
         
     }
 
+    /**
+     * Delays the first scan of the given schedule so that scans triggered
+     * by a burst of events (e.g. an import of thousands of nodes) are spread
+     * out instead of all starting at once.
+     */
+    private NodeScanSchedule spreadInitialScan(final NodeScanSchedule schedule) {
+        final long spacing = Long.getLong(SCAN_SPACING, 10L);
+        if (spacing <= 0) {
+            return schedule;
+        }
+
+        final long now = System.currentTimeMillis();
+        long slot;
+        long next;
+        do {
+            next = m_nextScanSlot.get();
+            slot = Math.max(now + schedule.getInitialDelay().getMillis(), next);
+        } while (!m_nextScanSlot.compareAndSet(next, slot + spacing));
+
+        if (slot - now <= schedule.getInitialDelay().getMillis()) {
+            return schedule;
+        }
+        return new NodeScanSchedule(schedule.getNodeId(), schedule.getForeignSource(), schedule.getForeignId(), new Duration(slot - now), schedule.getScanInterval());
+    }
+
     /**
      * <p>handleNodeDeletedEvent</p>
      *
@@ -123,7 +123,12 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 	/** {@inheritDoc} */
         @Override
 	public void beginSendingEvents(ImportOperation oper, List<Event> events) {
-		if (events != null) m_eventCount += events.size();
+		if (events != null) {
+			// events of the nodes of one import are sent concurrently
+			synchronized (this) {
+				m_eventCount += events.size();
+			}
+		}
 		m_eventEffort.begin();
 	}
 
@@ -214,8 +219,12 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 		stats.append(m_preprocessingEffort).append(", ");
 		stats.append(m_processingEffort).append(", ");
 		stats.append(m_eventEffort);
-		if (m_eventCount > 0) {
-			stats.append(", Avg ").append((double)m_eventEffort.getTotalTime()/(double)m_eventCount).append(" ms per event");
+		final int eventCount;
+		synchronized (this) {
+			eventCount = m_eventCount;
+		}
+		if (eventCount > 0) {
+			stats.append(", Avg ").append((double)m_eventEffort.getTotalTime()/(double)eventCount).append(" ms per event");
 		}
 		
 		return stats.toString();
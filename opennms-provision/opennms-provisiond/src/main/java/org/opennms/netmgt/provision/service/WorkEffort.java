@@ -65,8 +65,15 @@ public class WorkEffort {
 	 */
 	public void end() {
 		WorkDuration pending = m_pendingSection.get();
-		m_sectionCount++;
-		m_totalTime += pending.getLength();
+		if (pending == null) {
+			return;
+		}
+		m_pendingSection.remove();
+		// sections of the nodes of one import end concurrently
+		synchronized (this) {
+			m_sectionCount++;
+			m_totalTime += pending.getLength();
+		}
 	}
 	
 	/**
@@ -74,7 +81,7 @@ public class WorkEffort {
 	 *
 	 * @return a long.
 	 */
-	public long getTotalTime() {
+	public synchronized long getTotalTime() {
 		return m_totalTime;
 	}
 	
@@ -84,7 +91,7 @@ public class WorkEffort {
 	 * @return a {@link java.lang.String} object.
 	 */
         @Override
-	public String toString() {
+	public synchronized String toString() {
 		StringBuffer buf = new StringBuffer();
 		buf.append("Total ").append(m_name).append(": ");
 		buf.append((double)m_totalTime/(double)1000L).append(" thread-seconds");
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service.operations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
+
+/**
+ * Gathers the events of a bulk import and forwards them as logs of up to
+ * batchSize events instead of one at a time.
+ *
+ * Each operation collects its events with a {@link Collector} and hands them
+ * over once its transaction is done, so that no event of a node is sent
+ * before the node is committed.
+ */
+public class ImportEventBatch {
+
+    /**
+     * Keeps the events of a single operation until they are committed to the batch.
+     */
+    public static class Collector implements EventForwarder {
+        private final List<Event> m_events = new ArrayList<Event>();
+
+        @Override
+        public void sendNow(final Event event) {
+            m_events.add(event);
+        }
+
+        @Override
+        public void sendNow(final Log log) {
+            if (log != null && log.getEvents() != null) {
+                for (final Event event : log.getEvents().getEventCollection()) {
+                    m_events.add(event);
+                }
+            }
+        }
+    }
+
+    private final EventForwarder m_eventForwarder;
+    private final int m_batchSize;
+    private final ProvisionMonitor m_monitor;
+    private List<Event> m_events;
+
+    /**
+     * <p>Constructor for ImportEventBatch.</p>
+     *
+     * @param eventForwarder the forwarder the batches are sent to
+     * @param batchSize the number of events sent at once
+     * @param monitor a {@link org.opennms.netmgt.provision.service.operations.ProvisionMonitor} object.
+     */
+    public ImportEventBatch(final EventForwarder eventForwarder, final int batchSize, final ProvisionMonitor monitor) {
+        m_eventForwarder = eventForwarder;
+        m_batchSize = Math.max(1, batchSize);
+        m_monitor = monitor == null ? new NoOpProvisionMonitor() : monitor;
+        m_events = new ArrayList<Event>(m_batchSize);
+    }
+
+    /**
+     * Adds the events of the collector to the batch, sending it if it is full.
+     *
+     * @param collector a {@link org.opennms.netmgt.provision.service.operations.ImportEventBatch.Collector} object.
+     */
+    public void commit(final Collector collector) {
+        List<Event> full = null;
+        synchronized (this) {
+            m_events.addAll(collector.m_events);
+            if (m_events.size() >= m_batchSize) {
+                full = m_events;
+                m_events = new ArrayList<Event>(m_batchSize);
+            }
+        }
+        collector.m_events.clear();
+        send(full);
+    }
+
+    /**
+     * Sends the events that are still pending.
+     */
+    public void flush() {
+        final List<Event> pending;
+        synchronized (this) {
+            pending = m_events;
+            m_events = new ArrayList<Event>(m_batchSize);
+        }
+        send(pending);
+    }
+
+    private void send(final List<Event> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        m_monitor.beginSendingEvents(null, events);
+        try {
+            final Events batch = new Events();
+            for (final Event event : events) {
+                batch.addEvent(event);
+            }
+            final Log log = new Log();
+            log.setEvents(batch);
+            m_eventForwarder.sendNow(log);
+        } finally {
+            m_monitor.finishSendingEvents(null, events);
+        }
+    }
+}
@@ -72,6 +72,8 @@ public class ImportOperationsManager {
     private String m_rescanExisting;
     
     private String m_foreignSource;
+
+    private ImportEventBatch m_eventBatch;
     
     /**
      * <p>Constructor for ImportOperationsManager.</p>
@@ -112,6 +114,7 @@ public class ImportOperationsManager {
     
     private SaveOrUpdateOperation insertNode(final String foreignId, final String nodeLabel, final String building, final String city) {
         SaveOrUpdateOperation insertOperation = new InsertOperation(getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService);
+        insertOperation.setEventBatch(m_eventBatch);
         m_inserts.add(insertOperation);
         return insertOperation;
     }
@@ -124,6 +127,7 @@ public class ImportOperationsManager {
         } else {
             updateOperation = new NullUpdateOperation(nodeId, getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService, m_rescanExisting);
         }
+        updateOperation.setEventBatch(m_eventBatch);
         m_updates.add(updateOperation);
         return updateOperation;
     }
@@ -138,6 +142,59 @@ public class ImportOperationsManager {
         return m_foreignIdToNodeMap.remove(foreignId);
     }
     
+    /**
+     * Compares the nodes to update with their state in the database, loaded
+     * chunkSize nodes at a time, and marks the ones that are up to date so
+     * that they are neither scanned nor written.
+     *
+     * @param chunkSize the number of nodes loaded per query
+     * @return the number of nodes that are up to date
+     */
+    public int diffWithDatabase(final int chunkSize) {
+        int upToDate = 0;
+        final Map<Integer, UpdateOperation> chunk = new HashMap<Integer, UpdateOperation>();
+        for (final Iterator<ImportOperation> it = m_updates.iterator(); it.hasNext(); ) {
+            final ImportOperation oper = it.next();
+            // a NullUpdateOperation writes nothing anyway
+            if (oper instanceof UpdateOperation && !(oper instanceof NullUpdateOperation)) {
+                final UpdateOperation update = (UpdateOperation)oper;
+                chunk.put(update.getNode().getId(), update);
+            }
+            if (chunk.size() >= chunkSize || (!it.hasNext() && !chunk.isEmpty())) {
+                final Map<Integer, OnmsNode> dbNodes = new HashMap<Integer, OnmsNode>();
+                for (final OnmsNode dbNode : m_provisionService.getNodeSnapshot(chunk.keySet())) {
+                    dbNodes.put(dbNode.getId(), dbNode);
+                }
+                for (final Entry<Integer, UpdateOperation> entry : chunk.entrySet()) {
+                    if (entry.getValue().checkUpToDate(dbNodes.get(entry.getKey()))) {
+                        upToDate++;
+                    }
+                }
+                chunk.clear();
+            }
+        }
+        return upToDate;
+    }
+
+    /**
+     * Sends the events of inserted and updated nodes in batches. Must be set
+     * before the nodes are audited.
+     *
+     * @param eventBatch a {@link org.opennms.netmgt.provision.service.operations.ImportEventBatch} object.
+     */
+    public void setEventBatch(final ImportEventBatch eventBatch) {
+        m_eventBatch = eventBatch;
+    }
+
+    /**
+     * <p>getEventBatch</p>
+     *
+     * @return the event batch, null if events are sent one by one
+     */
+    public ImportEventBatch getEventBatch() {
+        return m_eventBatch;
+    }
+
     /**
      * <p>getOperationCount</p>
      *
@@ -59,7 +59,14 @@ public class InsertOperation extends SaveOrUpdateOperation {
     /** {@inheritDoc} */
     @Override
     protected void doPersist() {
-        getProvisionService().insertNode(getNode());
+        final ImportEventBatch eventBatch = getEventBatch();
+        if (eventBatch == null) {
+            getProvisionService().insertNode(getNode());
+        } else {
+            final ImportEventBatch.Collector events = new ImportEventBatch.Collector();
+            getProvisionService().insertNode(getNode(), events);
+            eventBatch.commit(events);
+        }
     }
 
 }
@@ -54,6 +54,7 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
     
     private ScanManager m_scanManager;
     private String m_rescanExisting = Boolean.TRUE.toString();
+    private ImportEventBatch m_eventBatch;
     
     /**
      * <p>Constructor for SaveOrUpdateOperation.</p>
@@ -195,6 +196,25 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
         return m_rescanExisting;
     }
 
+    /**
+     * Sends the events of this operation with the given batch instead of
+     * one by one.
+     *
+     * @param eventBatch a {@link org.opennms.netmgt.provision.service.operations.ImportEventBatch} object.
+     */
+    public void setEventBatch(final ImportEventBatch eventBatch) {
+        m_eventBatch = eventBatch;
+    }
+
+    /**
+     * <p>getEventBatch</p>
+     *
+     * @return the event batch, null if events are sent one by one
+     */
+    protected ImportEventBatch getEventBatch() {
+        return m_eventBatch;
+    }
+
     /**
      * <p>foundAsset</p>
      *
@@ -29,9 +29,28 @@
 package org.opennms.netmgt.provision.service.operations;
 
 
+import java.beans.PropertyDescriptor;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.opennms.netmgt.model.OnmsAssetRecord;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsMonitoredService;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.PrimaryType;
+import org.opennms.netmgt.model.events.EventUtils;
 import org.opennms.netmgt.provision.service.ProvisionService;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
 
 public class UpdateOperation extends SaveOrUpdateOperation {
+
+    // asset properties that are not taken from the requisition
+    private static final Set<String> IGNORED_ASSET_PROPERTIES = new HashSet<String>(Arrays.asList("class", "id", "node", "geolocation", "lastModifiedDate"));
+
+    private boolean m_upToDate = false;
     
     /**
      * <p>Constructor for UpdateOperation.</p>
@@ -56,12 +75,142 @@ public class UpdateOperation extends SaveOrUpdateOperation {
 	 */
 	@Override
 	public String toString() {
-       return "UPDATE: Node: "+getNode().getId()+": "+getNode().getLabel();
+       return (m_upToDate ? "UNCHANGED: Node: " : "UPDATE: Node: ")+getNode().getId()+": "+getNode().getLabel();
+    }
+
+    /**
+     * Compares the requisitioned node with the node in the database and
+     * remembers whether updating it would change anything. Nodes that are
+     * up to date are neither scanned nor written by the import.
+     *
+     * @param dbNode the node as loaded by {@link ProvisionService#getNodeSnapshot(java.util.Collection)}, may be null
+     * @return true if the node is up to date
+     */
+    public boolean checkUpToDate(final OnmsNode dbNode) {
+        m_upToDate = dbNode != null && matches(getNode(), dbNode);
+        return m_upToDate;
+    }
+
+    /**
+     * <p>isUpToDate</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isUpToDate() {
+        return m_upToDate;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void scan() {
+        if (!m_upToDate) {
+            super.scan();
+        }
     }
 
 	/** {@inheritDoc} */
 	@Override
     protected void doPersist() {
-        getProvisionService().updateNode(getNode(), getRescanExisting());
+        final ImportEventBatch eventBatch = getEventBatch();
+        if (eventBatch == null) {
+            getProvisionService().updateNode(getNode(), getRescanExisting());
+            return;
+        }
+
+        final ImportEventBatch.Collector events = new ImportEventBatch.Collector();
+        if (!m_upToDate) {
+            getProvisionService().updateNode(getNode(), getRescanExisting(), events);
+        } else if (Boolean.valueOf(getRescanExisting())) {
+            // nothing to write, but the node is still due the rescan an update triggers
+            events.sendNow(EventUtils.createNodeUpdatedEvent("Provisiond", getNode().getId(), getNode().getLabel(), getNode().getLabelSource(), getRescanExisting()));
+        }
+        eventBatch.commit(events);
+    }
+
+    /*
+     * Mirrors what OnmsNode.mergeNode() would change on the database node.
+     * Categories are not merged on update but applied by the rescan the
+     * update triggers, so they have to match as well.
+     */
+    private static boolean matches(final OnmsNode node, final OnmsNode dbNode) {
+        if (changes(node.getLabel(), dbNode.getLabel()) || changes(node.getLabelSource(), dbNode.getLabelSource())) {
+            return false;
+        }
+        if (!getCategoryNames(node).equals(getCategoryNames(dbNode))) {
+            return false;
+        }
+        return assetsMatch(node.getAssetRecord(), dbNode.getAssetRecord()) && interfacesMatch(node, dbNode);
+    }
+
+    private static boolean changes(final Object value, final Object dbValue) {
+        return value != null && !value.equals(dbValue);
+    }
+
+    private static Set<String> getCategoryNames(final OnmsNode node) {
+        final Set<String> names = new HashSet<String>();
+        for (final OnmsCategory category : node.getCategories()) {
+            names.add(category.getName());
+        }
+        return names;
+    }
+
+    private static boolean assetsMatch(final OnmsAssetRecord assets, final OnmsAssetRecord dbAssets) {
+        if (dbAssets == null) {
+            return false;
+        }
+        final BeanWrapper bean = PropertyAccessorFactory.forBeanPropertyAccess(assets);
+        final BeanWrapper dbBean = PropertyAccessorFactory.forBeanPropertyAccess(dbAssets);
+        for (final PropertyDescriptor pd : bean.getPropertyDescriptors()) {
+            final String name = pd.getName();
+            if (pd.getReadMethod() == null || IGNORED_ASSET_PROPERTIES.contains(name)) {
+                continue;
+            }
+            if (changes(bean.getPropertyValue(name), dbBean.getPropertyValue(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean interfacesMatch(final OnmsNode node, final OnmsNode dbNode) {
+        boolean hasPrimary = false;
+        for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+            final OnmsIpInterface dbIface = dbNode.getIpInterfaceByIpAddress(iface.getIpAddress());
+            if (dbIface == null || changes(iface.getIsManaged(), dbIface.getIsManaged())) {
+                return false;
+            }
+            final PrimaryType primary = iface.getIsSnmpPrimary();
+            if (primary != null && primary != PrimaryType.NOT_ELIGIBLE && !primary.equals(dbIface.getIsSnmpPrimary())) {
+                return false;
+            }
+            if (PrimaryType.PRIMARY.equals(primary)) {
+                if (hasPrimary) {
+                    return false;
+                }
+                hasPrimary = true;
+            }
+            for (final OnmsMonitoredService svc : iface.getMonitoredServices()) {
+                final OnmsMonitoredService dbSvc = dbIface.getMonitoredServiceByServiceType(svc.getServiceName());
+                if (dbSvc == null) {
+                    return false;
+                }
+                // a service that is not monitored keeps its status, see OnmsMonitoredService.mergeServiceAttributes()
+                if (!"N".equals(dbSvc.getStatus()) && changes(svc.getStatus(), dbSvc.getStatus())) {
+                    return false;
+                }
+            }
+        }
+        if (hasPrimary) {
+            // an other primary interface in the database would be demoted
+            for (final OnmsIpInterface dbIface : dbNode.getIpInterfaces()) {
+                if (dbIface.isPrimary()) {
+                    final OnmsIpInterface iface = node.getIpInterfaceByIpAddress(dbIface.getIpAddress());
+                    if (iface == null || !iface.isPrimary()) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
     }
 }
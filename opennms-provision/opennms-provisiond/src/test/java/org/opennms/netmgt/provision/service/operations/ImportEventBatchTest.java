@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service.operations;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+public class ImportEventBatchTest {
+
+    private static class LogCollector implements EventForwarder {
+        private final List<Log> m_logs = new ArrayList<Log>();
+
+        @Override
+        public void sendNow(final Event event) {
+            throw new UnsupportedOperationException("events must be sent in batches");
+        }
+
+        @Override
+        public void sendNow(final Log log) {
+            m_logs.add(log);
+        }
+    }
+
+    private static ImportEventBatch.Collector collect(final int count) {
+        final ImportEventBatch.Collector collector = new ImportEventBatch.Collector();
+        for (int i = 0; i < count; i++) {
+            final Event e = new Event();
+            e.setUei("uei.opennms.org/test/" + i);
+            collector.sendNow(e);
+        }
+        return collector;
+    }
+
+    @Test
+    public void testSendsFullBatches() {
+        final LogCollector forwarder = new LogCollector();
+        final ImportEventBatch batch = new ImportEventBatch(forwarder, 3, null);
+
+        batch.commit(collect(2));
+        assertEquals(0, forwarder.m_logs.size());
+
+        batch.commit(collect(2));
+        assertEquals(1, forwarder.m_logs.size());
+        assertEquals(4, forwarder.m_logs.get(0).getEvents().getEventCount());
+
+        batch.commit(collect(1));
+        assertEquals(1, forwarder.m_logs.size());
+    }
+
+    @Test
+    public void testFlushSendsPendingEvents() {
+        final LogCollector forwarder = new LogCollector();
+        final ImportEventBatch batch = new ImportEventBatch(forwarder, 10, null);
+
+        batch.flush();
+        assertEquals(0, forwarder.m_logs.size());
+
+        batch.commit(collect(0));
+        batch.commit(collect(4));
+        batch.flush();
+        assertEquals(1, forwarder.m_logs.size());
+        assertEquals(4, forwarder.m_logs.get(0).getEvents().getEventCount());
+
+        batch.flush();
+        assertEquals(1, forwarder.m_logs.size());
+    }
+}
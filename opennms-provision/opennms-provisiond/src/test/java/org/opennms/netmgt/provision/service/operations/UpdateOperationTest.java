@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service.operations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.PrimaryType;
+import org.opennms.netmgt.provision.service.ProvisionService;
+
+public class UpdateOperationTest {
+
+    private ProvisionService m_provisionService;
+
+    @Before
+    public void setUp() {
+        // the operations only need the service to look up service types and categories
+        m_provisionService = (ProvisionService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ProvisionService.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("createServiceTypeIfNecessary".equals(method.getName())) {
+                    return new OnmsServiceType((String) args[0]);
+                } else if ("createCategoryIfNecessary".equals(method.getName())) {
+                    return new OnmsCategory((String) args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private UpdateOperation createOperation(final String label) {
+        final UpdateOperation op = new UpdateOperation(1, "imported:", "1", label, "HQ", "Raleigh", m_provisionService, Boolean.FALSE.toString());
+        op.foundCategory("Servers");
+        op.foundAsset("description", "core router");
+        return op;
+    }
+
+    private UpdateOperation createRequisitionedNode() {
+        final UpdateOperation op = createOperation("node1");
+        op.foundInterface("192.168.1.1", null, PrimaryType.PRIMARY, true, 1);
+        op.foundMonitoredService("ICMP");
+        op.foundMonitoredService("SNMP");
+        op.foundInterface("192.168.1.2", null, PrimaryType.SECONDARY, true, 1);
+        op.foundMonitoredService("ICMP");
+        return op;
+    }
+
+    /*
+     * The database node is built from the same requisition, just like the
+     * node a previous import would have stored.
+     */
+    private OnmsNode createDatabaseNode() {
+        return createRequisitionedNode().getNode();
+    }
+
+    @Test
+    public void testUnchangedNodeIsUpToDate() {
+        final UpdateOperation op = createRequisitionedNode();
+        assertTrue(op.checkUpToDate(createDatabaseNode()));
+        assertTrue(op.isUpToDate());
+    }
+
+    @Test
+    public void testMissingNodeIsNotUpToDate() {
+        final UpdateOperation op = createRequisitionedNode();
+        assertFalse(op.checkUpToDate(null));
+        assertFalse(op.isUpToDate());
+    }
+
+    @Test
+    public void testLabelChange() {
+        final UpdateOperation op = createOperation("node1-renamed");
+        op.foundInterface("192.168.1.1", null, PrimaryType.PRIMARY, true, 1);
+        op.foundMonitoredService("ICMP");
+        op.foundMonitoredService("SNMP");
+        op.foundInterface("192.168.1.2", null, PrimaryType.SECONDARY, true, 1);
+        op.foundMonitoredService("ICMP");
+        assertFalse(op.checkUpToDate(createDatabaseNode()));
+    }
+
+    @Test
+    public void testCategoryChange() {
+        final UpdateOperation op = createRequisitionedNode();
+        op.foundCategory("Routers");
+        assertFalse(op.checkUpToDate(createDatabaseNode()));
+
+        final OnmsNode dbNode = createDatabaseNode();
+        dbNode.getCategories().add(new OnmsCategory("Routers"));
+        assertFalse(createRequisitionedNode().checkUpToDate(dbNode));
+    }
+
+    @Test
+    public void testAssetChange() {
+        final UpdateOperation op = createRequisitionedNode();
+        op.foundAsset("description", "edge router");
+        assertFalse(op.checkUpToDate(createDatabaseNode()));
+
+        final OnmsNode dbNode = createDatabaseNode();
+        dbNode.getAssetRecord().setBuilding("Annex");
+        assertFalse(createRequisitionedNode().checkUpToDate(dbNode));
+    }
+
+    @Test
+    public void testNewService() {
+        final UpdateOperation op = createRequisitionedNode();
+        op.foundMonitoredService("HTTP");
+        assertFalse(op.checkUpToDate(createDatabaseNode()));
+    }
+
+    @Test
+    public void testSnmpPrimaryMove() {
+        final UpdateOperation op = createOperation("node1");
+        op.foundInterface("192.168.1.1", null, PrimaryType.SECONDARY, true, 1);
+        op.foundMonitoredService("ICMP");
+        op.foundMonitoredService("SNMP");
+        op.foundInterface("192.168.1.2", null, PrimaryType.PRIMARY, true, 1);
+        op.foundMonitoredService("ICMP");
+        assertFalse(op.checkUpToDate(createDatabaseNode()));
+    }
+
+    @Test
+    public void testManagedFlagChange() {
+        final UpdateOperation op = createOperation("node1");
+        op.foundInterface("192.168.1.1", null, PrimaryType.PRIMARY, true, 1);
+        op.foundMonitoredService("ICMP");
+        op.foundMonitoredService("SNMP");
+        op.foundInterface("192.168.1.2", null, PrimaryType.SECONDARY, true, 3);
+        op.foundMonitoredService("ICMP");
+        assertFalse(op.checkUpToDate(createDatabaseNode()));
+    }
+}
@@ -40,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.logging.Logging;
 import org.slf4j.Logger;
@@ -157,6 +159,10 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     private long m_writeThreadExitDelay;
 
+    private int m_shardCount = 0;
+
+    static final int DEFAULT_SHARDS_PER_WRITE_THREAD = 4;
+
     /**
      * <p>getWriteThreads</p>
      *
@@ -357,41 +363,62 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
+    /**
+     * <p>getShardCount</p>
+     *
+     * @return a int.
+     */
+    public int getShardCount() {
+        return m_shardCount;
+    }
+
+    /**
+     * <p>setShardCount</p>
+     *
+     * @param shardCount the number of queue shards, or 0 to use
+     *        {@value #DEFAULT_SHARDS_PER_WRITE_THREAD} per write thread
+     */
+    public void setShardCount(int shardCount) {
+        m_shardCount = shardCount;
+    }
+
+    private volatile Shard[] m_shards;
 
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
+    private final AtomicInteger m_nextShard = new AtomicInteger();
 
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+    private final ThreadLocal<String> m_currentAssignment = new ThreadLocal<String>();
 
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    private final Object m_workAvailable = new Object();
 
-    Set<String> reservedFiles = new HashSet<String>();
+    private volatile int m_idleWriteThreads = 0;
 
-    private long m_totalOperationsPending = 0;
+    private final AtomicLong m_totalOperationsPending = new AtomicLong();
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_enqueuedOperations = new AtomicLong();
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_dequeuedOperations = new AtomicLong();
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_discardedOperations = new AtomicLong();
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong();
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong();
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong();
 
-    private long m_createsCompleted = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong();
 
-    private long m_updatesCompleted = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong();
 
-    private long m_errors = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
 
-    int threadsRunning = 0;
+    private final AtomicLong m_errors = new AtomicLong();
 
-    private long m_startTime = 0;
+    volatile int threadsRunning = 0;
 
-    private long m_promotionCount = 0;
+    private volatile long m_startTime = 0;
+
+    private final AtomicLong m_promotionCount = new AtomicLong();
 
     long lastLap = System.currentTimeMillis();
 
@@ -483,7 +510,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData(), attributeMappings);
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -522,7 +549,48 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
+            m_updatesCompleted.incrementAndGet();
+            if (getUpdatesCompleted() % m_modulus == 0) {
+                logStats();
+            }
+            // return the open rrd for further processing
+            return rrd;
+
+        }
+
+    }
+
+    /**
+     * Represents an update that carries its values as numbers rather than as
+     * a "timestamp:value" string.
+     */
+    public class TypedUpdateOperation extends Operation {
+
+        final long timeStamp;
+
+        TypedUpdateOperation(String fileName, long timeStamp, double[] values) {
+            super(fileName, UPDATE, values, true);
+            this.timeStamp = timeStamp;
+        }
+
+        @Override
+        Object process(Object rrd) throws Exception {
+            // open the file if we need to
+            if (rrd == null) rrd = m_delegate.openFile(getFileName());
+
+            final double[] values = (double[]) getData();
+
+            try {
+                // process the update
+                m_delegate.updateFile(rrd, "", timeStamp, values);
+            } catch (final Throwable e) {
+                final String error = String.format("Error processing update for file %s: %s", getFileName(), RrdUtils.formatUpdate(timeStamp, values));
+                m_log.debug(error, e);
+                throw new Exception(error, e);
+            }
+
+            // keep stats
+            m_updatesCompleted.incrementAndGet();
             if (getUpdatesCompleted() % m_modulus == 0) {
                 logStats();
             }
@@ -559,17 +627,16 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 if (rrd == null)
                     rrd = m_delegate.openFile(getFileName());
 
-                String update = ts + ":0";
                 try {
                     // process the update
-                    m_delegate.updateFile(rrd, "", update);
+                    m_delegate.updateFile(rrd, "", ts, new double[] { 0.0 });
                 } catch (Throwable e) {
-                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + update, e);
+                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + ts + ":0", e);
                 }
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
+                m_updatesCompleted.incrementAndGet();
                 if (getUpdatesCompleted() % m_modulus == 0) {
                     logStats();
                 }
@@ -676,198 +743,399 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return new UpdateOperation(fileName, update);
     }
 
+    /**
+     * <p>makeUpdateOperation</p>
+     *
+     * @param fileName a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timeStamp the time of the update in seconds
+     * @param values the value for each data source
+     * @return a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    Operation makeUpdateOperation(String fileName, String owner, long timeStamp, double[] values) {
+        if (values.length == 1 && values[0] == 0.0) {
+            if (timeStamp == 0)
+                m_log.debug("ZERO ERROR: created a zero update with ts=0 for file: {}", fileName);
+
+            return new ZeroUpdateOperation(fileName, timeStamp);
+        }
+        return new TypedUpdateOperation(fileName, timeStamp, values);
+    }
+
     //
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
+    // The queue is split into shards keyed by the hash of the RRD file name.
+    // Each shard owns the pending operations, work lists and reservations for
+    // its files and is guarded by its own monitor, so enqueuing threads and
+    // write threads only contend when they touch files in the same shard.
     //
 
     /**
-     * Add an operation to the queue.
-     *
-     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     * One slice of the write queue.  All operations for a given file always
+     * land in the same shard so per-file ordering is preserved.
      */
-    private void addOperation(final Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+    final class Shard {
+        private final int m_index;
+
+        private final LinkedList<String> m_filesWithSignificantWork = new LinkedList<String>();
+
+        private final LinkedList<String> m_filesWithInsignificantWork = new LinkedList<String>();
+
+        private final Map<String, LinkedList<Operation>> m_pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+
+        private final Set<String> m_reservedFiles = new HashSet<String>();
+
+        private long m_operationsPending = 0;
+
+        private long m_enqueued = 0;
+
+        private long m_dequeued = 0;
+
+        private long m_promotions = 0;
+
+        private long m_shardStartTime = 0;
+
+        Shard(final int index) {
+            m_index = index;
+        }
+
+        /**
+         * Queue an operation.  The caller has already reserved room for it
+         * against the high water marks.
+         */
+        synchronized void add(final Operation op) {
+            if (m_shardStartTime == 0) {
+                m_shardStartTime = System.currentTimeMillis();
             }
 
-            if (op.isSignificant() && sigQueueIsFull()) {
-                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+            storeAssignment(op);
+
+            m_operationsPending++;
+            m_enqueued++;
+        }
+
+        /**
+         * We need to track which files are being processed by which threads so that
+         * we don't try to process updates for the same file on more than one
+         * thread.
+         */
+        private void storeAssignment(final Operation op) {
+            // look and see if there a pending ops list for this file
+            LinkedList<Operation> pendingOperations = m_pendingFileOperations.get(op.getFileName());
+
+            // if not then we create an ops list for the file and add the file to
+            // the work items list
+            if (pendingOperations == null) {
+                pendingOperations = new LinkedList<Operation>();
+                m_pendingFileOperations.put(op.getFileName(), pendingOperations);
+
+                // add the file to the correct list based on what type of work we
+                // are adding.  (if we aren't prioritizing then every file is counted as
+                // signficant
+                if (!m_prioritizeSignificantUpdates || op.isSignificant())
+                    m_filesWithSignificantWork.addLast(op.getFileName());
+                else
+                    m_filesWithInsignificantWork.addLast(op.getFileName());
+            } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
+                // only do this when we are prioritizing as this bumps files from inSig
+                // up to insig
+                // promote the file to the significant list if this is the first
+                // significant
+                m_filesWithSignificantWork.addLast(op.getFileName());
             }
 
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            promoteAgedFiles();
+
+            op.addToPendingList(pendingOperations);
+        }
+
+        /**
+         * Ensure that files with insignificant changes are getting promoted if
+         * necessary
+         */
+        private void promoteAgedFiles() {
+
+            // no need to do this is we aren't prioritizing
+            if (!m_prioritizeSignificantUpdates) return;
+
+            // the num seconds to update files is 0 then use unfair prioritization
+            if (m_maxInsigUpdateSeconds == 0 || m_filesWithInsignificantWork.isEmpty())
                 return;
+
+            // calculate the elapsed time we first queued updates
+            long now = System.currentTimeMillis();
+            long elapsedMillis = Math.max(now - m_shardStartTime, 1);
+
+            // calculate the milliseconds between promotions necessary to age
+            // insignificant files into the significant queue
+            double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / m_filesWithInsignificantWork.size());
+
+            // calculate the number of millis since start until the next file needs
+            // to be promotoed
+            long nextPromotionMillis = (long) (millisPerPromotion * m_promotions);
+
+            // if more time has elapsed than the next promotion time then promote a
+            // file
+            if (elapsedMillis > nextPromotionMillis) {
+                String file = m_filesWithInsignificantWork.removeFirst();
+                m_filesWithSignificantWork.addFirst(file);
+                m_promotions++;
+                m_promotionCount.incrementAndGet();
             }
+        }
 
-            storeAssignment(op);
+        synchronized void promote(final Collection<String> rrdFiles) {
+            m_filesWithSignificantWork.addAll(0, rrdFiles);
+        }
 
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
-            ensureThreadsStarted();
+        /**
+         * Reserve the next file with available work for the current thread and
+         * take its operations.
+         *
+         * @return the operations for the file, or null if this shard has no
+         *         unreserved work
+         */
+        synchronized LinkedList<Operation> takeAssignment() {
+            final String newAssignment = selectNewAssignment();
+            if (newAssignment == null) {
+                return null;
+            }
+
+            // make the file as reserved by the current thread
+            m_currentAssignment.set(newAssignment);
+            m_reservedFiles.add(newAssignment);
+
+            // get the assignments work list and return it
+            final LinkedList<Operation> ops = m_pendingFileOperations.remove(newAssignment);
+            for (final Operation op : ops) {
+                m_operationsPending -= op.getCount();
+                m_dequeued += op.getCount();
+            }
+            return ops;
         }
-    }
 
+        /**
+         * Return the name of the next file with available work
+         */
+        private String selectNewAssignment() {
+            final String fn = selectFrom(m_filesWithSignificantWork);
+            return fn == null ? selectFrom(m_filesWithInsignificantWork) : fn;
+        }
 
-    private boolean queueIsFull() {
-        if (m_queueHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_queueHighWaterMark;
-    }
+        /**
+         * Files can be listed more than once (promotions, promoteEnqueuedFiles)
+         * so entries whose work has already been taken are dropped here.
+         */
+        private String selectFrom(final LinkedList<String> files) {
+            for (Iterator<String> it = files.iterator(); it.hasNext();) {
+                String fn = it.next();
+                if (!m_reservedFiles.contains(fn)) {
+                    it.remove();
+                    if (m_pendingFileOperations.containsKey(fn)) {
+                        return fn;
+                    }
+                }
+            }
+            return null;
+        }
 
-    private boolean sigQueueIsFull() {
-        if (m_sigHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_sigHighWaterMark;
-    }
+        synchronized void completeAssignment(final String fileName) {
+            m_reservedFiles.remove(fileName);
+        }
+
+        synchronized int getFilesWithSignificantWork() {
+            return m_filesWithSignificantWork.size();
+        }
 
-    private boolean inSigQueueIsFull() {
-        if (m_inSigHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_inSigHighWaterMark;
+        synchronized int getFilesWithInsignificantWork() {
+            return m_filesWithInsignificantWork.size();
+        }
+
+        synchronized String getStats() {
+            return "\nQS:\t" + "shard[" + m_index + "]" +
+                    ", operationsPending=" + m_operationsPending +
+                    ", filesWithSignificantWork=" + m_filesWithSignificantWork.size() +
+                    ", filesWithInsignificantWork=" + m_filesWithInsignificantWork.size() +
+                    ", reservedFiles=" + m_reservedFiles.size() +
+                    ", enqueued=" + m_enqueued +
+                    ", dequeued=" + m_dequeued +
+                    ", promotions=" + m_promotions;
+        }
     }
 
     /**
-     * Ensure that we have threads started to process the queue.
+     * Returns the shards of the queue, creating them on first use so that the
+     * shard and write thread counts set by Spring are honoured.
      */
-    private synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
+    Shard[] getShards() {
+        Shard[] shards = m_shards;
+        if (shards == null) {
+            synchronized (this) {
+                shards = m_shards;
+                if (shards == null) {
+                    final int count = m_shardCount > 0 ? m_shardCount : Math.max(m_writeThreads * DEFAULT_SHARDS_PER_WRITE_THREAD, 1);
+                    shards = new Shard[count];
+                    for (int i = 0; i < count; i++) {
+                        shards[i] = new Shard(i);
+                    }
+                    m_shards = shards;
+                }
+            }
         }
+        return shards;
+    }
+
+    Shard shardFor(final String fileName) {
+        final Shard[] shards = getShards();
+        return shards[(fileName.hashCode() & 0x7fffffff) % shards.length];
     }
 
     /**
-     * Get the operations for the next file that should be worked on.
+     * Add an operation to the queue.
      *
-     * @return a linkedList of operations to be processed all for the same file.
+     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
      */
-    private LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
-
-            // turn in our previous assignment
-            completeAssignment();
+    private void addOperation(final Operation op) {
+        if (!reservePending(op)) {
+            return;
+        }
 
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                }
-            }
+        shardFor(op.getFileName()).add(op);
 
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
+        m_enqueuedOperations.incrementAndGet();
+        if (op.isSignificant())
+            m_significantOpsEnqueued.incrementAndGet();
 
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
+        if (m_idleWriteThreads > 0) {
+            synchronized (m_workAvailable) {
+                m_workAvailable.notifyAll();
+            }
+        }
+        ensureThreadsStarted();
+    }
 
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                        setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
-                    }
+    /**
+     * Count the operation as pending unless the queue has reached one of its
+     * high water marks.  The marks apply to the queue as a whole, so the check
+     * and the increment are done together on the shared counter rather than
+     * under any one shard's lock.
+     *
+     * @return true if the operation may be queued
+     */
+    private boolean reservePending(final Operation op) {
+        final long limit = op.isSignificant() ? lowestMark(m_queueHighWaterMark, m_sigHighWaterMark) : lowestMark(m_queueHighWaterMark, m_inSigHighWaterMark);
+        for (;;) {
+            final long pending = m_totalOperationsPending.get();
+            if (limit > 0 && pending >= limit) {
+                m_discardedOperations.incrementAndGet();
+                if (m_queueHighWaterMark > 0 && pending >= m_queueHighWaterMark) {
+                    m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+                } else if (op.isSignificant()) {
+                    m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
+                } else {
+                    m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
                 }
-                setDequeuedItems(getDequeuedItems() + 1);
+                return false;
+            }
+            if (m_totalOperationsPending.compareAndSet(pending, pending + 1)) {
+                return true;
             }
         }
-
-        return ops;
-
     }
 
     /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
-     * thread.
+     * Returns the lower of two high water marks, where a mark of 0 or less
+     * means no limit.
      */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
+    private static long lowestMark(final long a, final long b) {
+        if (a <= 0) return b;
+        if (b <= 0) return a;
+        return Math.min(a, b);
+    }
 
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+    /**
+     * Ensure that we have threads started to process the queue.
+     */
+    private void ensureThreadsStarted() {
+        if (threadsRunning >= m_writeThreads) {
+            return;
+        }
+        synchronized (this) {
+            if (threadsRunning < m_writeThreads) {
+                threadsRunning++;
+                new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
+            }
         }
-
-        promoteAgedFiles();
-
-        op.addToPendingList(pendingOperations);
     }
 
     /**
-     * Ensure that files with insignificant changes are getting promoted if
-     * necessary
+     * Get the operations for the next file that should be worked on.  The
+     * shards are visited round robin starting from a different shard on
+     * each call so that write threads spread out over the queue.
      *
+     * @return a linkedList of operations to be processed all for the same
+     *         file, or null if no work could be assigned
      */
-    private synchronized void promoteAgedFiles() {
+    private LinkedList<Operation> getNext() {
 
-        // no need to do this is we aren't prioritizing
-        if (!m_prioritizeSignificantUpdates) return;
+        // turn in our previous assignment
+        completeAssignment();
 
-        // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
-            return;
+        final Shard[] shards = getShards();
+        final int start = (m_nextShard.getAndIncrement() & 0x7fffffff) % shards.length;
+        for (int i = 0; i < shards.length; i++) {
+            final LinkedList<Operation> ops = shards[(start + i) % shards.length].takeAssignment();
+            if (ops == null) {
+                continue;
+            }
 
-        // calculate the elapsed time we first queued updates
-        long now = System.currentTimeMillis();
-        long elapsedMillis = Math.max(now - getStartTime(), 1);
-
-        // calculate the milliseconds between promotions necessary to age
-        // insignificant files into
-        // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
-
-        // calculate the number of millis since start until the next file needs
-        // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
-
-        // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
+            // initialize start time for stats
+            if (getStartTime() == 0)
+                setStartTime(System.currentTimeMillis());
+
+            // keep stats
+            for(Operation op : ops) {
+                m_totalOperationsPending.addAndGet(-op.getCount());
+                m_dequeuedOperations.addAndGet(op.getCount());
+                if (op.isSignificant()) {
+                    m_significantOpsDequeued.addAndGet(op.getCount());
+                }
+            }
+            m_dequeuedItems.incrementAndGet();
+            return ops;
         }
 
+        // everything pending is reserved by other threads, wait a bit for
+        // new work or for a file to be released
+        synchronized (m_workAvailable) {
+            m_idleWriteThreads++;
+            try {
+                m_workAvailable.wait(Math.max(m_writeThreadSleepTime, 1));
+            } catch (InterruptedException e) {
+            } finally {
+                m_idleWriteThreads--;
+            }
+        }
+        return null;
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        final Map<Shard, List<String>> filesByShard = new HashMap<Shard, List<String>>();
+        for (final String rrdFile : rrdFiles) {
+            final Shard shard = shardFor(rrdFile);
+            List<String> files = filesByShard.get(shard);
+            if (files == null) {
+                files = new LinkedList<String>();
+                filesByShard.put(shard, files);
+            }
+            files.add(rrdFile);
+        }
+        for (final Map.Entry<Shard, List<String>> entry : filesByShard.entrySet()) {
+            entry.getKey().promote(entry.getValue());
+        }
         m_delegate.promoteEnqueuedFiles(rrdFiles);
     }
 
@@ -884,52 +1152,17 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return true;
     }
 
-    /**
-     * register the file that the currentThread is be working on. This enables
-     * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
-     */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
-
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
-
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
-    }
-
-    /**
-     * Return the name of the next file with available work
-     */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        return null;
-    }
-
     /**
      * Record that fact that the current thread has finished process operations
      * for its current assignment
      */
-    private synchronized void completeAssignment() {
+    private void completeAssignment() {
         // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+        final String previousAssignment = m_currentAssignment.get();
+        if (previousAssignment != null) {
+            m_currentAssignment.remove();
+            shardFor(previousAssignment).completeAssignment(previousAssignment);
+        }
     }
 
     /**
@@ -1023,6 +1256,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         addOperation(makeUpdateOperation((String) rrdFile, owner, data));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(String rrdFile, String owner, long timestamp, double[] values) throws Exception {
+        addOperation(makeUpdateOperation(rrdFile, owner, timestamp, values));
+    }
+
     /** {@inheritDoc} */
     @Override
     public Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
@@ -1088,9 +1327,9 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
             }
         } finally {
+            completeAssignment();
             synchronized (this) {
                 threadsRunning--;
-                completeAssignment();
             }
         }
     }
@@ -1114,7 +1353,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                     // while we are processing
                     for (final Operation op : ops) {
                         if (op.isSignificant()) {
-                            setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                            m_significantOpsCompleted.incrementAndGet();
                         }
 
                     }
@@ -1124,7 +1363,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                         rrd = op.process(rrd);
                     }
                 } catch (final Throwable e) {
-                    setErrors(getErrors() + 1);
+                    m_errors.incrementAndGet();
                     logLapTime("Error updating file " + fileName + ": " + e.getMessage());
                     m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
                 } finally {
@@ -1142,7 +1381,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             try {
                 m_delegate.closeFile(rrd);
             } catch (final Throwable e) {
-                setErrors(getErrors() + 1);
+                m_errors.incrementAndGet();
                 logLapTime("Error closing rrd " + rrd + ": " + e.getMessage());
                 m_log.debug("Error closing rrd {}: {}", rrd, e.getMessage(), e);
             }
@@ -1186,14 +1425,26 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         long currentItemDequeueRate = (long) (currentDequeuedItems * 1000.0 / currentElapsedMillis);
         long overallItemDequeueRate = (long) (getDequeuedItems() * 1000.0 / totalElapsedMillis);
 
+        final Shard[] shards = getShards();
+        int filesWithSignificantWork = 0;
+        int filesWithInsignificantWork = 0;
+        final StringBuilder shardStats = new StringBuilder();
+        for (final Shard shard : shards) {
+            filesWithSignificantWork += shard.getFilesWithSignificantWork();
+            filesWithInsignificantWork += shard.getFilesWithInsignificantWork();
+            shardStats.append(shard.getStats());
+        }
+
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() +
                 ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) +
-                ", filesWithSignificantWork=" + filesWithSignificantWork.size() +
-                ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+                ", filesWithSignificantWork=" + filesWithSignificantWork +
+                ", filesWithInsignificantWork=" + filesWithInsignificantWork +
+                ", shards=" + shards.length
 
                 + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() +
                 ", updatesCompleted=" + getUpdatesCompleted() +
                 ", errors=" + getErrors() +
+                ", discarded=" + getDiscardedOperations() +
                 ", promotionRate=" + ((double) (getPromotionCount() * 1000.0 / totalElapsedMillis)) +
                 ", promotionCount=" + getPromotionCount()
 
@@ -1208,7 +1459,9 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 ", overallItemDequeRate=" + overallItemDequeueRate +
                 ", overallOpsPerUpdate=" + (getDequeuedOperations() / Math.max(getDequeuedItems(), 1.0)) +
                 ", overallPrcntSignificant=" + (getSignificantOpsEnqueued() * 100.0 / Math.max(getEnqueuedOperations(), 1.0)) + "%" +
-                ", totalElapsedTime=" + ((totalElapsedMillis + 500) / 1000);
+                ", totalElapsedTime=" + ((totalElapsedMillis + 500) / 1000)
+
+                + shardStats;
 
         lastStatsTime = now;
         lastEnqueued = getEnqueuedOperations();
@@ -1304,7 +1557,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getTotalOperationsPending() {
-        return m_totalOperationsPending;
+        return m_totalOperationsPending.get();
     }
 
     /**
@@ -1313,7 +1566,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param totalOperationsPending a long.
      */
     public void setTotalOperationsPending(long totalOperationsPending) {
-        m_totalOperationsPending = totalOperationsPending;
+        m_totalOperationsPending.set(totalOperationsPending);
     }
 
     /**
@@ -1322,7 +1575,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getCreatesCompleted() {
-        return m_createsCompleted;
+        return m_createsCompleted.get();
     }
 
     /**
@@ -1331,7 +1584,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param createsCompleted a long.
      */
     public void setCreatesCompleted(long createsCompleted) {
-        m_createsCompleted = createsCompleted;
+        m_createsCompleted.set(createsCompleted);
     }
 
     /**
@@ -1340,7 +1593,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getUpdatesCompleted() {
-        return m_updatesCompleted;
+        return m_updatesCompleted.get();
     }
 
     /**
@@ -1349,7 +1602,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param updatesCompleted a long.
      */
     public void setUpdatesCompleted(long updatesCompleted) {
-        m_updatesCompleted = updatesCompleted;
+        m_updatesCompleted.set(updatesCompleted);
     }
 
     /**
@@ -1358,7 +1611,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getErrors() {
-        return m_errors;
+        return m_errors.get();
     }
 
     /**
@@ -1367,7 +1620,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param errors a long.
      */
     public void setErrors(long errors) {
-        m_errors = errors;
+        m_errors.set(errors);
     }
 
     /**
@@ -1376,7 +1629,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getPromotionCount() {
-        return m_promotionCount;
+        return m_promotionCount.get();
     }
 
     /**
@@ -1385,7 +1638,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param promotionCount a long.
      */
     public void setPromotionCount(long promotionCount) {
-        m_promotionCount = promotionCount;
+        m_promotionCount.set(promotionCount);
     }
 
     /**
@@ -1394,7 +1647,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsEnqueued() {
-        return m_significantOpsEnqueued;
+        return m_significantOpsEnqueued.get();
     }
 
     /**
@@ -1403,7 +1656,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsEnqueued a long.
      */
     public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-        m_significantOpsEnqueued = significantOpsEnqueued;
+        m_significantOpsEnqueued.set(significantOpsEnqueued);
     }
 
     /**
@@ -1412,7 +1665,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsDequeued() {
-        return m_significantOpsDequeued;
+        return m_significantOpsDequeued.get();
     }
 
     /**
@@ -1421,7 +1674,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsDequeued a long.
      */
     public void setSignificantOpsDequeued(long significantOpsDequeued) {
-        m_significantOpsDequeued = significantOpsDequeued;
+        m_significantOpsDequeued.set(significantOpsDequeued);
     }
 
     /**
@@ -1430,7 +1683,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getEnqueuedOperations() {
-        return m_enqueuedOperations;
+        return m_enqueuedOperations.get();
     }
 
     /**
@@ -1439,7 +1692,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param enqueuedOperations a long.
      */
     public void setEnqueuedOperations(long enqueuedOperations) {
-        m_enqueuedOperations = enqueuedOperations;
+        m_enqueuedOperations.set(enqueuedOperations);
     }
 
     /**
@@ -1448,7 +1701,16 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedOperations() {
-        return m_dequeuedOperations;
+        return m_dequeuedOperations.get();
+    }
+
+    /**
+     * <p>getDiscardedOperations</p>
+     *
+     * @return the number of operations dropped because a high water mark was reached
+     */
+    public long getDiscardedOperations() {
+        return m_discardedOperations.get();
     }
 
     /**
@@ -1457,7 +1719,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedOperations a long.
      */
     public void setDequeuedOperations(long dequeuedOperations) {
-        m_dequeuedOperations = dequeuedOperations;
+        m_dequeuedOperations.set(dequeuedOperations);
     }
 
     /**
@@ -1466,7 +1728,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedItems() {
-        return m_dequeuedItems;
+        return m_dequeuedItems.get();
     }
 
     /**
@@ -1475,7 +1737,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedItems a long.
      */
     public void setDequeuedItems(long dequeuedItems) {
-        m_dequeuedItems = dequeuedItems;
+        m_dequeuedItems.set(dequeuedItems);
     }
 
     /**
@@ -1484,7 +1746,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsCompleted() {
-        return m_significantOpsCompleted;
+        return m_significantOpsCompleted.get();
     }
 
     /**
@@ -1493,7 +1755,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsCompleted a long.
      */
     public void setSignificantOpsCompleted(long significantOpsCompleted) {
-        m_significantOpsCompleted = significantOpsCompleted;
+        m_significantOpsCompleted.set(significantOpsCompleted);
     }
 
     /**
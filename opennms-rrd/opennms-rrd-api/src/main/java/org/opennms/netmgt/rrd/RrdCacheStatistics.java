@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+/**
+ * Statistics of an {@link RrdStrategy} that keeps RRD files open and buffers
+ * their updates, so they can be reported without depending on the strategy
+ * implementation.
+ */
+public interface RrdCacheStatistics {
+
+    /**
+     * <p>getOpenFiles</p>
+     *
+     * @return the number of RRD files currently held open
+     */
+    int getOpenFiles();
+
+    /**
+     * <p>getCacheHits</p>
+     *
+     * @return a long.
+     */
+    long getCacheHits();
+
+    /**
+     * <p>getCacheMisses</p>
+     *
+     * @return a long.
+     */
+    long getCacheMisses();
+
+    /**
+     * <p>getHitRatio</p>
+     *
+     * @return the fraction of file opens served from the cache
+     */
+    double getHitRatio();
+
+    /**
+     * <p>getEvictions</p>
+     *
+     * @return a long.
+     */
+    long getEvictions();
+
+    /**
+     * <p>getFlushes</p>
+     *
+     * @return a long.
+     */
+    long getFlushes();
+
+    /**
+     * <p>getFlushedUpdates</p>
+     *
+     * @return a long.
+     */
+    long getFlushedUpdates();
+
+    /**
+     * <p>getFlushErrors</p>
+     *
+     * @return a long.
+     */
+    long getFlushErrors();
+
+    /**
+     * <p>getAverageFlushMillis</p>
+     *
+     * @return a double.
+     */
+    double getAverageFlushMillis();
+
+    /**
+     * <p>getMaxFlushMillis</p>
+     *
+     * @return a double.
+     */
+    double getMaxFlushMillis();
+}
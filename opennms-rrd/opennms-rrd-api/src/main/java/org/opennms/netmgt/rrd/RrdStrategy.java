@@ -130,6 +130,27 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      */
     public void updateFile(F rrd, String owner, String data) throws Exception;
 
+    /**
+     * Updates the supplied round robin database with one value per data
+     * source. This is equivalent to calling
+     * {@link #updateFile(Object, String, String)} with
+     * <code>&lt;timestamp&gt;:&lt;value1&gt;:&lt;value2&gt;...</code> (see
+     * {@link RrdUtils#formatUpdate(long, double[])}), but lets strategies
+     * that work with numbers avoid formatting and reparsing the data.
+     *
+     * @param rrd
+     *            an rrd object created using openFile
+     * @param owner
+     *            the owner of the rrd
+     * @param timestamp
+     *            the time of the update in seconds since the epoch
+     * @param values
+     *            the value for each data source, in order; NaN for unknown
+     * @throws java.lang.Exception
+     *             if an error occurs updating the file
+     */
+    public void updateFile(F rrd, String owner, long timestamp, double[] values) throws Exception;
+
     /**
      * This closes the supplied round robin database
      *
@@ -353,6 +353,84 @@ public abstract class RrdUtils {
         LOG.debug("updateRRD: RRD update command completed.");
     }
 
+    /**
+     * Add datapoints to a round robin database without formatting them into
+     * an update string first.
+     *
+     * @param owner the owner of the file. This is used in log messages
+     * @param repositoryDir the directory the file resides in
+     * @param rrdName the name for the rrd file.
+     * @param timestamp the timestamp in millis to use for the rrd update (this
+     * gets rounded to the nearest second)
+     * @param values the value for each datasource of this rrd, NaN for unknown
+     * @throws org.opennms.netmgt.rrd.RrdException if any.
+     */
+    public static void updateRRD(String owner, String repositoryDir, String rrdName, long timestamp, double[] values) throws RrdException {
+        // Issue the RRD update
+        String rrdFile = repositoryDir + File.separator + rrdName + getExtension();
+        long time = (timestamp + 500L) / 1000L;
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("updateRRD: updating RRD file {} with values '{}'", rrdFile, formatUpdate(time, values));
+        }
+
+        Object rrd = null;
+        try {
+            rrd = getStrategy().openFile(rrdFile);
+            getStrategy().updateFile(rrd, owner, time, values);
+        } catch (Throwable e) {
+            final String updateVal = formatUpdate(time, values);
+            LOG.error("updateRRD: Error updating RRD file {} with values '{}'", rrdFile, updateVal, e);
+            throw new org.opennms.netmgt.rrd.RrdException("Error updating RRD file " + rrdFile + " with values '" + updateVal + "': " + e, e);
+        } finally {
+            try {
+                if (rrd != null) {
+                    getStrategy().closeFile(rrd);
+                }
+            } catch (Throwable e) {
+                LOG.error("updateRRD: Exception closing RRD file {}", rrdFile, e);
+                throw new org.opennms.netmgt.rrd.RrdException("Exception closing RRD file " + rrdFile + ": " + e, e);
+            }
+        }
+
+        LOG.debug("updateRRD: RRD update command completed.");
+    }
+
+    /**
+     * Formats a typed update as the <code>&lt;timestamp&gt;:&lt;value1&gt;:...</code>
+     * string understood by {@link RrdStrategy#updateFile(Object, String, String)}.
+     * Unknown (NaN) values are written as <code>U</code> and integral values
+     * without a fraction, so counters stay acceptable to rrdtool.
+     *
+     * @param timestamp the time of the update in seconds since the epoch
+     * @param values the value for each datasource
+     * @return the update string
+     */
+    public static String formatUpdate(long timestamp, double[] values) {
+        final StringBuilder sb = new StringBuilder(16 + values.length * 12);
+        sb.append(timestamp);
+        for (final double value : values) {
+            sb.append(':').append(formatValue(value));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats a single datasource value the way {@link #formatUpdate(long, double[])} does.
+     *
+     * @param value the value, NaN for unknown
+     * @return the value as it appears in an update string
+     */
+    public static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "U";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        } else {
+            return Double.toString(value);
+        }
+    }
+
     /**
      * This method issues an round robin fetch command to retrieve the last
      * value of the datasource stored in the specified RRD file. The retrieved
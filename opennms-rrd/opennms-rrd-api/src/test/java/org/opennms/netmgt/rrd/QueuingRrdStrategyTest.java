@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueuingRrdStrategyTest {
+
+    private QueuingRrdStrategy m_strategy;
+
+    @Before
+    public void setUp() {
+        // no write threads are configured, so everything stays queued
+        m_strategy = new QueuingRrdStrategy(null);
+        m_strategy.setShardCount(4);
+    }
+
+    @Test
+    public void testUpdatesForAFileStayInOneShard() throws Exception {
+        final QueuingRrdStrategy.Shard shard = m_strategy.shardFor("a.jrb");
+        assertSame(shard, m_strategy.shardFor("a.jrb"));
+
+        m_strategy.updateFile("a.jrb", "test", 1000L, new double[] { 1.0 });
+        m_strategy.updateFile("a.jrb", "test", 1300L, new double[] { 2.0 });
+
+        assertEquals(2, m_strategy.getTotalOperationsPending());
+        for (final QueuingRrdStrategy.Shard other : m_strategy.getShards()) {
+            assertEquals(other == shard ? 1 : 0, other.getFilesWithSignificantWork());
+        }
+    }
+
+    @Test
+    public void testFilesAreSpreadOverShards() throws Exception {
+        final Set<QueuingRrdStrategy.Shard> used = new HashSet<QueuingRrdStrategy.Shard>();
+        for (int i = 0; i < 100; i++) {
+            used.add(m_strategy.shardFor("file" + i + ".jrb"));
+        }
+        assertEquals(4, used.size());
+    }
+
+    @Test
+    public void testQueueHighWaterMarkIsGlobal() throws Exception {
+        m_strategy.setQueueHighWaterMark(10);
+
+        for (int i = 0; i < 20; i++) {
+            m_strategy.updateFile("file" + i + ".jrb", "test", 1000L, new double[] { 1.0 });
+        }
+
+        assertEquals(10, m_strategy.getTotalOperationsPending());
+        assertEquals(10, m_strategy.getEnqueuedOperations());
+        assertEquals(10, m_strategy.getDiscardedOperations());
+    }
+
+    @Test
+    public void testOneShardMayFillTheWholeQueue() throws Exception {
+        m_strategy.setQueueHighWaterMark(10);
+
+        final QueuingRrdStrategy.Shard shard = m_strategy.shardFor("file0.jrb");
+        final List<String> files = new ArrayList<String>();
+        for (int i = 0; files.size() < 11; i++) {
+            if (m_strategy.shardFor("file" + i + ".jrb") == shard) {
+                files.add("file" + i + ".jrb");
+            }
+        }
+
+        for (final String file : files) {
+            m_strategy.updateFile(file, "test", 1000L, new double[] { 1.0 });
+        }
+
+        assertEquals(10, m_strategy.getTotalOperationsPending());
+        assertEquals(10, shard.getFilesWithSignificantWork());
+        assertEquals(1, m_strategy.getDiscardedOperations());
+    }
+
+    @Test
+    public void testSignificantHighWaterMark() throws Exception {
+        m_strategy.setSigHighWaterMark(5);
+
+        for (int i = 0; i < 6; i++) {
+            m_strategy.updateFile("sig" + i + ".jrb", "test", 1000L, new double[] { 1.0 });
+        }
+        assertEquals(5, m_strategy.getSignificantOpsEnqueued());
+        assertEquals(1, m_strategy.getDiscardedOperations());
+
+        // insignificant updates are not held back by the significant mark
+        m_strategy.updateFile("zero.jrb", "test", 1000L, new double[] { 0.0 });
+        assertEquals(6, m_strategy.getTotalOperationsPending());
+        assertEquals(1, m_strategy.getDiscardedOperations());
+    }
+
+    @Test
+    public void testInsignificantHighWaterMark() throws Exception {
+        m_strategy.setInSigHighWaterMark(3);
+
+        for (int i = 0; i < 4; i++) {
+            m_strategy.updateFile("zero" + i + ".jrb", "test", 1000L, new double[] { 0.0 });
+        }
+        assertEquals(3, m_strategy.getTotalOperationsPending());
+        assertEquals(1, m_strategy.getDiscardedOperations());
+
+        m_strategy.updateFile("sig.jrb", "test", 1000L, new double[] { 1.0 });
+        assertEquals(4, m_strategy.getTotalOperationsPending());
+        assertEquals(1, m_strategy.getSignificantOpsEnqueued());
+    }
+}
@@ -0,0 +1,630 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jrobin.core.RrdBackendFactory;
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.jrobin.core.Sample;
+import org.opennms.netmgt.rrd.RrdCacheStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-back variant of {@link JRobinRrdStrategy}.
+ *
+ * Recently used RRD files are kept open in a bounded LRU pool on the
+ * memory-mapped (NIO) JRobin backend instead of being opened and closed for
+ * every update batch.  Updates are buffered per file and written when the
+ * file has enough pending updates, when its oldest pending update is older
+ * than the flush interval, when the file is evicted from the pool, when its
+ * data is read through this strategy, and on shutdown.
+ *
+ * Select it by setting <code>org.opennms.rrd.strategyClass</code> to this
+ * class in <code>rrd-configuration.properties</code>.
+ */
+public class CachingJRobinRrdStrategy extends JRobinRrdStrategy implements RrdCacheStatistics {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingJRobinRrdStrategy.class);
+
+    static final String MAX_OPEN_FILES_PROPERTY = "org.opennms.rrd.jrobin.cache.maxOpenFiles";
+    static final String FLUSH_INTERVAL_PROPERTY = "org.opennms.rrd.jrobin.cache.flushInterval";
+    static final String MAX_PENDING_UPDATES_PROPERTY = "org.opennms.rrd.jrobin.cache.maxPendingUpdates";
+    static final String BACKEND_FACTORY_PROPERTY = "org.opennms.rrd.jrobin.cache.backendFactory";
+
+    static final int DEFAULT_MAX_OPEN_FILES = 512;
+    static final long DEFAULT_FLUSH_INTERVAL = 60000;
+    static final int DEFAULT_MAX_PENDING_UPDATES = 32;
+    static final String DEFAULT_BACKEND_FACTORY = "NIO";
+
+    private int m_maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private long m_flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int m_maxPendingUpdates = DEFAULT_MAX_PENDING_UPDATES;
+    private RrdBackendFactory m_backendFactory;
+
+    /**
+     * Open files in least recently used order.  Guarded by its own monitor,
+     * which also guards {@link CachedRrd#m_users}.
+     */
+    private final LinkedHashMap<String, CachedRrd> m_files = new LinkedHashMap<String, CachedRrd>(16, 0.75f, true);
+
+    /**
+     * Files that have been evicted but are still being flushed and closed.
+     * Guarded by the m_files monitor.  A file must not be reopened until its
+     * previous RrdDb has been closed, or the two would write to it at once.
+     */
+    private final Map<String, CachedRrd> m_closing = new HashMap<String, CachedRrd>();
+
+    private Timer m_flushTimer;
+
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_evictions = new AtomicLong();
+    private final AtomicLong m_flushes = new AtomicLong();
+    private final AtomicLong m_flushedUpdates = new AtomicLong();
+    private final AtomicLong m_flushErrors = new AtomicLong();
+    private final AtomicLong m_flushNanos = new AtomicLong();
+    private final AtomicLong m_maxFlushNanos = new AtomicLong();
+
+    /**
+     * A buffered update, either in "timestamp:value:..." form or as a typed
+     * timestamp and values.
+     */
+    private static final class PendingUpdate {
+        private final String m_data;
+        private final long m_timestamp;
+        private final double[] m_values;
+
+        PendingUpdate(final String data) {
+            m_data = data;
+            m_timestamp = 0;
+            m_values = null;
+        }
+
+        PendingUpdate(final long timestamp, final double[] values) {
+            m_data = null;
+            m_timestamp = timestamp;
+            m_values = values.clone();
+        }
+
+        void apply(final RrdDb rrd) throws Exception {
+            if (m_data != null) {
+                final Sample sample = rrd.createSample();
+                sample.setAndUpdate(m_data);
+            } else {
+                final Sample sample = rrd.createSample(m_timestamp);
+                sample.setValues(m_values);
+                sample.update();
+            }
+        }
+    }
+
+    /**
+     * An RRD file in the pool together with its buffered updates.
+     */
+    private final class CachedRrd {
+        private final String m_path;
+        private RrdDb m_rrd;
+        private final LinkedList<PendingUpdate> m_pending = new LinkedList<PendingUpdate>();
+        private long m_oldestPending = 0;
+        private volatile boolean m_closed = false;
+        private final CountDownLatch m_closeLatch = new CountDownLatch(1);
+        /** number of callers between openFile and closeFile, guarded by m_files */
+        private int m_users = 0;
+
+        CachedRrd(final String path) {
+            m_path = path;
+        }
+
+        synchronized RrdDb open() throws Exception {
+            if (m_rrd == null) {
+                m_rrd = new RrdDb(m_path, m_backendFactory);
+            }
+            return m_rrd;
+        }
+
+        void add(final PendingUpdate update) {
+            final boolean full;
+            synchronized (this) {
+                if (m_pending.isEmpty()) {
+                    m_oldestPending = System.currentTimeMillis();
+                }
+                m_pending.add(update);
+                full = m_pending.size() >= m_maxPendingUpdates;
+            }
+            if (full) {
+                flush();
+            }
+        }
+
+        synchronized void flushIfOlderThan(final long cutoff) {
+            if (!m_pending.isEmpty() && m_oldestPending <= cutoff) {
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            if (m_pending.isEmpty()) {
+                return;
+            }
+            final long start = System.nanoTime();
+            final int count = m_pending.size();
+            try {
+                final RrdDb rrd = open();
+                for (final PendingUpdate update : m_pending) {
+                    try {
+                        update.apply(rrd);
+                    } catch (final Exception e) {
+                        m_flushErrors.incrementAndGet();
+                        LOG.warn("Failed to write buffered update to {}: {}", m_path, e.getMessage());
+                        LOG.debug("Failed to write buffered update to {}", m_path, e);
+                    }
+                }
+            } catch (final Exception e) {
+                m_flushErrors.incrementAndGet();
+                LOG.warn("Failed to open {} to write {} buffered updates, discarding them", m_path, count, e);
+            } finally {
+                m_pending.clear();
+                recordFlush(count, System.nanoTime() - start);
+            }
+        }
+
+        synchronized void flushAndClose() {
+            flush();
+            m_closed = true;
+            if (m_rrd != null) {
+                try {
+                    m_rrd.close();
+                } catch (final Exception e) {
+                    LOG.warn("Failed to close {}", m_path, e);
+                }
+                m_rrd = null;
+            }
+        }
+
+        boolean isClosed() {
+            return m_closed;
+        }
+    }
+
+    /**
+     * <p>Constructor for CachingJRobinRrdStrategy.</p>
+     *
+     * @throws java.lang.Exception if any.
+     */
+    public CachingJRobinRrdStrategy() throws Exception {
+        super();
+        m_backendFactory = RrdBackendFactory.getFactory(DEFAULT_BACKEND_FACTORY);
+        Runtime.getRuntime().addShutdownHook(new Thread("CachingJRobinRrdStrategy-Shutdown") {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setConfigurationProperties(final Properties configurationParameters) {
+        super.setConfigurationProperties(configurationParameters);
+        if (configurationParameters != null) {
+            m_maxOpenFiles = Integer.parseInt(configurationParameters.getProperty(MAX_OPEN_FILES_PROPERTY, String.valueOf(DEFAULT_MAX_OPEN_FILES)));
+            m_flushInterval = Long.parseLong(configurationParameters.getProperty(FLUSH_INTERVAL_PROPERTY, String.valueOf(DEFAULT_FLUSH_INTERVAL)));
+            m_maxPendingUpdates = Integer.parseInt(configurationParameters.getProperty(MAX_PENDING_UPDATES_PROPERTY, String.valueOf(DEFAULT_MAX_PENDING_UPDATES)));
+            final String factory = configurationParameters.getProperty(BACKEND_FACTORY_PROPERTY, DEFAULT_BACKEND_FACTORY);
+            try {
+                m_backendFactory = RrdBackendFactory.getFactory(factory);
+            } catch (final RrdException e) {
+                LOG.error("Could not find JRobin backend factory {}, using {}", factory, m_backendFactory.getFactoryName(), e);
+            }
+        }
+        LOG.info("Caching up to {} open RRD files on the {} backend, flushing every {}ms or {} updates", m_maxOpenFiles, m_backendFactory.getFactoryName(), m_flushInterval, m_maxPendingUpdates);
+        startFlushTimer();
+    }
+
+    private synchronized void startFlushTimer() {
+        if (m_flushTimer != null) {
+            m_flushTimer.cancel();
+        }
+        if (m_flushInterval <= 0) {
+            m_flushTimer = null;
+            return;
+        }
+        m_flushTimer = new Timer("CachingJRobinRrdStrategy-Flush", true);
+        final long period = Math.max(m_flushInterval / 2, 1000);
+        m_flushTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flushOlderThan(System.currentTimeMillis() - m_flushInterval);
+            }
+        }, period, period);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns the pooled RrdDb for the file, opening it on the NIO backend
+     * and evicting the least recently used idle files if necessary.
+     */
+    @Override
+    public RrdDb openFile(final String fileName) throws Exception {
+        final CachedRrd cached;
+        final List<CachedRrd> evicted;
+        CachedRrd closing;
+        synchronized (m_files) {
+            closing = m_closing.get(fileName);
+            CachedRrd existing = m_files.get(fileName);
+            if (existing == null) {
+                m_misses.incrementAndGet();
+                existing = new CachedRrd(fileName);
+                m_files.put(fileName, existing);
+            } else {
+                m_hits.incrementAndGet();
+            }
+            existing.m_users++;
+            cached = existing;
+            evicted = evictIdleFiles();
+        }
+        closeEvicted(evicted);
+
+        try {
+            if (closing != null && closing != cached) {
+                closing.m_closeLatch.await();
+            }
+            return cached.open();
+        } catch (final Exception e) {
+            synchronized (m_files) {
+                cached.m_users--;
+                if (m_files.get(fileName) == cached) {
+                    m_files.remove(fileName);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Leaves the file open in the pool; it is closed when it is evicted or
+     * the strategy is shut down.
+     */
+    @Override
+    public void closeFile(final RrdDb rrdFile) throws Exception {
+        final List<CachedRrd> evicted;
+        synchronized (m_files) {
+            final CachedRrd cached = m_files.get(rrdFile.getPath());
+            if (cached != null && cached.m_users > 0) {
+                cached.m_users--;
+            }
+            evicted = evictIdleFiles();
+        }
+        closeEvicted(evicted);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Buffers the update until the file is flushed.
+     */
+    @Override
+    public void updateFile(final RrdDb rrdFile, final String owner, final String data) throws Exception {
+        getCached(rrdFile).add(new PendingUpdate(data));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Buffers the update until the file is flushed.
+     */
+    @Override
+    public void updateFile(final RrdDb rrdFile, final String owner, final long timestamp, final double[] values) throws Exception {
+        getCached(rrdFile).add(new PendingUpdate(timestamp, values));
+    }
+
+    private CachedRrd getCached(final RrdDb rrdFile) {
+        synchronized (m_files) {
+            final CachedRrd cached = m_files.get(rrdFile.getPath());
+            if (cached == null || cached.isClosed()) {
+                throw new IllegalStateException("RRD file " + rrdFile.getPath() + " was not opened through this strategy");
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Remove the least recently used files that nobody is currently working
+     * on until the pool is back within its bounds.  Must be called with the
+     * m_files monitor held; the returned files must be closed afterwards,
+     * outside of the lock.
+     */
+    private List<CachedRrd> evictIdleFiles() {
+        List<CachedRrd> evicted = null;
+        int excess = m_files.size() - m_maxOpenFiles;
+        for (final Iterator<CachedRrd> it = m_files.values().iterator(); excess > 0 && it.hasNext();) {
+            final CachedRrd cached = it.next();
+            if (cached.m_users == 0) {
+                it.remove();
+                excess--;
+                if (evicted == null) {
+                    evicted = new ArrayList<CachedRrd>();
+                }
+                evicted.add(cached);
+                m_closing.put(cached.m_path, cached);
+            }
+        }
+        return evicted;
+    }
+
+    private void closeEvicted(final List<CachedRrd> evicted) {
+        if (evicted == null) {
+            return;
+        }
+        for (final CachedRrd cached : evicted) {
+            m_evictions.incrementAndGet();
+            try {
+                cached.flushAndClose();
+            } finally {
+                synchronized (m_files) {
+                    if (m_closing.get(cached.m_path) == cached) {
+                        m_closing.remove(cached.m_path);
+                    }
+                }
+                cached.m_closeLatch.countDown();
+            }
+        }
+    }
+
+    private List<CachedRrd> getCachedFiles() {
+        synchronized (m_files) {
+            return new ArrayList<CachedRrd>(m_files.values());
+        }
+    }
+
+    private void flushOlderThan(final long cutoff) {
+        for (final CachedRrd cached : getCachedFiles()) {
+            cached.flushIfOlderThan(cutoff);
+        }
+    }
+
+    /**
+     * Write the buffered updates for a single file, if it is in the pool.
+     *
+     * @param fileName the path of the RRD file
+     */
+    public void flush(final String fileName) {
+        final CachedRrd cached;
+        synchronized (m_files) {
+            cached = m_files.get(fileName);
+        }
+        if (cached != null) {
+            cached.flush();
+        }
+    }
+
+    /**
+     * Write the buffered updates for every file in the pool.
+     */
+    public void flushAll() {
+        for (final CachedRrd cached : getCachedFiles()) {
+            cached.flush();
+        }
+    }
+
+    /**
+     * Stop the flush timer, write all buffered updates and close every
+     * pooled file.  Called automatically when the JVM shuts down.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (m_flushTimer != null) {
+                m_flushTimer.cancel();
+                m_flushTimer = null;
+            }
+        }
+        final List<CachedRrd> files;
+        synchronized (m_files) {
+            files = new ArrayList<CachedRrd>(m_files.values());
+            m_files.clear();
+        }
+        for (final CachedRrd cached : files) {
+            cached.flushAndClose();
+            cached.m_closeLatch.countDown();
+        }
+    }
+
+    private void recordFlush(final int updates, final long nanos) {
+        m_flushes.incrementAndGet();
+        m_flushedUpdates.addAndGet(updates);
+        m_flushNanos.addAndGet(nanos);
+        long max = m_maxFlushNanos.get();
+        while (nanos > max && !m_maxFlushNanos.compareAndSet(max, nanos)) {
+            max = m_maxFlushNanos.get();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValue(final String fileName, final String ds, final String consolidationFunction, final int interval) throws org.opennms.netmgt.rrd.RrdException {
+        flush(fileName);
+        return super.fetchLastValue(fileName, ds, consolidationFunction, interval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
+        flush(fileName);
+        return super.fetchLastValueInRange(fileName, ds, interval, range);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Writes the buffered updates for the files so they can be graphed.
+     */
+    @Override
+    public void promoteEnqueuedFiles(final Collection<String> rrdFiles) {
+        for (final String rrdFile : rrdFiles) {
+            flush(rrdFile);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getStats() {
+        return "openFiles=" + getOpenFiles() +
+                ", hits=" + getCacheHits() +
+                ", misses=" + getCacheMisses() +
+                ", evictions=" + getEvictions() +
+                ", flushes=" + getFlushes() +
+                ", flushedUpdates=" + getFlushedUpdates() +
+                ", flushErrors=" + getFlushErrors() +
+                ", averageFlushMillis=" + getAverageFlushMillis() +
+                ", maxFlushMillis=" + getMaxFlushMillis();
+    }
+
+    /**
+     * <p>getOpenFiles</p>
+     *
+     * @return the number of RRD files currently in the pool
+     */
+    @Override
+    public int getOpenFiles() {
+        synchronized (m_files) {
+            return m_files.size();
+        }
+    }
+
+    /**
+     * <p>getCacheHits</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCacheHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * <p>getCacheMisses</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCacheMisses() {
+        return m_misses.get();
+    }
+
+    /**
+     * <p>getHitRatio</p>
+     *
+     * @return the fraction of openFile calls served from the pool
+     */
+    @Override
+    public double getHitRatio() {
+        final long hits = getCacheHits();
+        final long total = hits + getCacheMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * <p>getEvictions</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getEvictions() {
+        return m_evictions.get();
+    }
+
+    /**
+     * <p>getFlushes</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getFlushes() {
+        return m_flushes.get();
+    }
+
+    /**
+     * <p>getFlushedUpdates</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getFlushedUpdates() {
+        return m_flushedUpdates.get();
+    }
+
+    /**
+     * <p>getFlushErrors</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getFlushErrors() {
+        return m_flushErrors.get();
+    }
+
+    /**
+     * <p>getAverageFlushMillis</p>
+     *
+     * @return a double.
+     */
+    @Override
+    public double getAverageFlushMillis() {
+        final long flushes = getFlushes();
+        return flushes == 0 ? 0.0 : (double) m_flushNanos.get() / flushes / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * <p>getMaxFlushMillis</p>
+     *
+     * @return a double.
+     */
+    @Override
+    public double getMaxFlushMillis() {
+        return (double) m_maxFlushNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdUtils;
+import org.opennms.test.FileAnticipator;
+
+/**
+ * Unit tests for the CachingJRobinRrdStrategy.
+ */
+public class CachingJRobinRrdStrategyTest {
+
+    private CachingJRobinRrdStrategy m_strategy;
+    private FileAnticipator m_fileAnticipator;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        MockLogAppender.setupLogging(true, "DEBUG");
+
+        m_strategy = new CachingJRobinRrdStrategy();
+        final Properties props = new Properties();
+        props.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        props.setProperty(CachingJRobinRrdStrategy.MAX_OPEN_FILES_PROPERTY, "1");
+        props.setProperty(CachingJRobinRrdStrategy.FLUSH_INTERVAL_PROPERTY, "0");
+        props.setProperty(CachingJRobinRrdStrategy.MAX_PENDING_UPDATES_PROPERTY, "3");
+        m_strategy.setConfigurationProperties(props);
+
+        m_fileAnticipator = new FileAnticipator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_strategy.shutdown();
+        if (m_fileAnticipator.isInitialized()) {
+            m_fileAnticipator.deleteExpected();
+        }
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testUpdatesAreBufferedUntilFlushed() throws Exception {
+        final File rrdFile = createRrdFile("foo");
+        final long now = System.currentTimeMillis() / 1000;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", now, new double[] { 1.0 });
+        m_strategy.closeFile(openedFile);
+
+        assertEquals("flushes", 0, m_strategy.getFlushes());
+        assertEquals("last update time before flush", 1000, getLastUpdateTime(rrdFile));
+
+        m_strategy.promoteEnqueuedFiles(Collections.singletonList(rrdFile.getAbsolutePath()));
+
+        assertEquals("flushes", 1, m_strategy.getFlushes());
+        assertEquals("flushed updates", 1, m_strategy.getFlushedUpdates());
+        assertEquals("last update time after flush", now, getLastUpdateTime(rrdFile));
+    }
+
+    @Test
+    public void testFlushWhenPendingLimitReached() throws Exception {
+        final File rrdFile = createRrdFile("foo");
+        final long now = System.currentTimeMillis() / 1000;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", now - 600, new double[] { 1.0 });
+        m_strategy.updateFile(openedFile, "huh?", (now - 300) + ":2");
+        assertEquals("flushes", 0, m_strategy.getFlushes());
+        m_strategy.updateFile(openedFile, "huh?", now, new double[] { 3.0 });
+        m_strategy.closeFile(openedFile);
+
+        assertEquals("flushes", 1, m_strategy.getFlushes());
+        assertEquals("flushed updates", 3, m_strategy.getFlushedUpdates());
+        assertEquals("flush errors", 0, m_strategy.getFlushErrors());
+        assertEquals("last update time", now, getLastUpdateTime(rrdFile));
+    }
+
+    @Test
+    public void testReopenIsServedFromPool() throws Exception {
+        final File rrdFile = createRrdFile("foo");
+
+        RrdDb first = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.closeFile(first);
+        RrdDb second = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.closeFile(second);
+
+        assertSame("pooled RrdDb", first, second);
+        assertEquals("open files", 1, m_strategy.getOpenFiles());
+        assertEquals("hits", 1, m_strategy.getCacheHits());
+        assertEquals("misses", 1, m_strategy.getCacheMisses());
+        assertEquals("hit ratio", 0.5, m_strategy.getHitRatio(), 0.0);
+    }
+
+    @Test
+    public void testEvictionFlushesPendingUpdates() throws Exception {
+        final File fooFile = createRrdFile("foo");
+        final File barFile = createRrdFile("bar");
+        final long now = System.currentTimeMillis() / 1000;
+
+        RrdDb foo = m_strategy.openFile(fooFile.getAbsolutePath());
+        m_strategy.updateFile(foo, "huh?", now, new double[] { 1.0 });
+        m_strategy.closeFile(foo);
+
+        RrdDb bar = m_strategy.openFile(barFile.getAbsolutePath());
+        m_strategy.closeFile(bar);
+
+        assertEquals("evictions", 1, m_strategy.getEvictions());
+        assertEquals("open files", 1, m_strategy.getOpenFiles());
+        assertEquals("last update time of evicted file", now, getLastUpdateTime(fooFile));
+    }
+
+    @Test
+    public void testShutdownFlushesPendingUpdates() throws Exception {
+        final File rrdFile = createRrdFile("foo");
+        final long now = System.currentTimeMillis() / 1000;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", now, new double[] { 1.0 });
+        m_strategy.closeFile(openedFile);
+
+        m_strategy.shutdown();
+
+        assertEquals("open files", 0, m_strategy.getOpenFiles());
+        assertEquals("last update time", now, getLastUpdateTime(rrdFile));
+    }
+
+    private long getLastUpdateTime(final File rrdFile) throws Exception {
+        final RrdDb rrd = new RrdDb(rrdFile.getAbsolutePath(), true);
+        try {
+            return rrd.getLastUpdateTime();
+        } finally {
+            rrd.close();
+        }
+    }
+
+    private File createRrdFile(final String rrdFileBase) throws Exception {
+        String rrdExtension = RrdUtils.getExtension();
+
+        List<RrdDataSource> dataSources = new ArrayList<RrdDataSource>();
+        dataSources.add(new RrdDataSource("bar", "GAUGE", 3000, "U", "U"));
+        List<String> rraList = new ArrayList<String>();
+        rraList.add("RRA:AVERAGE:0.5:1:2016");
+        RrdDef def = m_strategy.createDefinition("hello!", m_fileAnticipator.getTempDir().getAbsolutePath(), rrdFileBase, 300, dataSources, rraList);
+        m_strategy.createFile(def, null);
+
+        return m_fileAnticipator.expecting(rrdFileBase + rrdExtension);
+    }
+}
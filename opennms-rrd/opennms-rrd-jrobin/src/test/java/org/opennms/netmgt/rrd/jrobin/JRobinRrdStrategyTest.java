@@ -173,6 +173,17 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testTypedUpdate() throws Exception {
+        File rrdFile = createRrdFile();
+        long now = System.currentTimeMillis() / 1000;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", now, new double[] { 1.234234 });
+        assertEquals("last update time", now, openedFile.getLastUpdateTime());
+        m_strategy.closeFile(openedFile);
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -219,6 +219,18 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         rrd.append(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * rrdtool takes its updates as text, so the values are formatted straight
+     * into the pending update command.
+     */
+    @Override
+    public void updateFile(StringBuffer rrd, String owner, long timestamp, double[] values) throws Exception {
+        rrd.append(' ');
+        rrd.append(RrdUtils.formatUpdate(timestamp, values));
+    }
+
     /**
      * Initialized the JNI Interface
      *
@@ -86,6 +86,27 @@ public class RrdOutputSocket {
         m_messageCount++;
     }
 
+    /**
+     * Adds a reading whose values are already numeric.
+     *
+     * @param filename a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timestamp the time of the reading in seconds since the epoch
+     * @param values the values of the reading
+     */
+    public void addData(String filename, String owner, long timestamp, double[] values) {
+        final PerformanceDataReading.Builder reading = PerformanceDataReading.newBuilder()
+                .setPath(filename)
+                .setOwner(owner)
+                // RRD timestamps are in seconds, we want to send milliseconds
+                .setTimestamp(timestamp * 1000);
+        for (final double value : values) {
+            reading.addValue(value);
+        }
+        m_messages.addMessage(reading);
+        m_messageCount++;
+    }
+
     /**
      * <p>writeData</p>
      */
@@ -29,7 +29,8 @@
 package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.Schedulers;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
@@ -125,12 +126,38 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
     public long getCollectableServiceCount() {
         return getDaemon().getCollectableServiceCount();
     }
-    
+
+    /** {@inheritDoc} */
+    @Override
+    public long getScheduledTasks() {
+        return Schedulers.getScheduled(getDaemon().getScheduler());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getAverageScheduleLateness() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getAverageLateness();
+        } else {
+            return 0.0;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxScheduleLateness() {
+        if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getMaxLateness();
+        } else {
+            return 0L;
+        }
+    }
+
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        return (ThreadPoolExecutor) Schedulers.getRunner(getDaemon().getScheduler());
     }
 
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        return (Schedulers.getRunner(getDaemon().getScheduler()) instanceof ThreadPoolExecutor);
     }
 }
@@ -76,4 +76,19 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of collectable services currently seen by Collectd
      */
     public long getCollectableServiceCount();
+
+    /**
+     * @return The number of collection tasks waiting in the scheduler
+     */
+    public long getScheduledTasks();
+
+    /**
+     * @return The average time in milliseconds between a collection task becoming due and being started
+     */
+    public double getAverageScheduleLateness();
+
+    /**
+     * @return The largest time in milliseconds between a collection task becoming due and being started
+     */
+    public long getMaxScheduleLateness();
 }
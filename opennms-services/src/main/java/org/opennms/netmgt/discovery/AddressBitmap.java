@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of IP addresses kept as a bitmap: IPv4 addresses are stored as one
+ * bit each in pages of 65536 addresses, which are only allocated for the
+ * /16 networks that contain known addresses. IPv6 addresses are kept in a
+ * plain concurrent set.
+ *
+ * All operations are thread-safe and do not lock.
+ */
+final class AddressBitmap {
+    private static final int PAGE_BITS = 16;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / 64;
+
+    private final ConcurrentMap<Integer, AtomicLongArray> m_pages = new ConcurrentHashMap<Integer, AtomicLongArray>();
+    private final Set<InetAddress> m_others = Collections.newSetFromMap(new ConcurrentHashMap<InetAddress, Boolean>());
+    private final AtomicInteger m_size = new AtomicInteger();
+
+    /**
+     * @return true if the address was not in the set before
+     */
+    boolean add(final InetAddress address) {
+        if (address == null) {
+            return false;
+        } else if (!(address instanceof Inet4Address)) {
+            return m_others.add(address);
+        }
+        final int ip = toInt(address);
+        AtomicLongArray page = m_pages.get(ip >>> PAGE_BITS);
+        if (page == null) {
+            final AtomicLongArray created = new AtomicLongArray(WORDS_PER_PAGE);
+            page = m_pages.putIfAbsent(ip >>> PAGE_BITS, created);
+            if (page == null) {
+                page = created;
+            }
+        }
+        final int word = (ip & 0xffff) >>> 6;
+        final long bit = 1L << (ip & 63);
+        while (true) {
+            final long current = page.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (page.compareAndSet(word, current, current | bit)) {
+                m_size.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if the address was in the set
+     */
+    boolean remove(final InetAddress address) {
+        if (address == null) {
+            return false;
+        } else if (!(address instanceof Inet4Address)) {
+            return m_others.remove(address);
+        }
+        final int ip = toInt(address);
+        final AtomicLongArray page = m_pages.get(ip >>> PAGE_BITS);
+        if (page == null) {
+            return false;
+        }
+        final int word = (ip & 0xffff) >>> 6;
+        final long bit = 1L << (ip & 63);
+        while (true) {
+            final long current = page.get(word);
+            if ((current & bit) == 0) {
+                return false;
+            }
+            if (page.compareAndSet(word, current, current & ~bit)) {
+                m_size.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    boolean contains(final InetAddress address) {
+        if (address == null) {
+            return false;
+        } else if (!(address instanceof Inet4Address)) {
+            return m_others.contains(address);
+        }
+        final int ip = toInt(address);
+        final AtomicLongArray page = m_pages.get(ip >>> PAGE_BITS);
+        return page != null && (page.get((ip & 0xffff) >>> 6) & (1L << (ip & 63))) != 0;
+    }
+
+    int size() {
+        return m_size.get() + m_others.size();
+    }
+
+    private static int toInt(final InetAddress address) {
+        final byte[] bytes = address.getAddress();
+        return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+    }
+}
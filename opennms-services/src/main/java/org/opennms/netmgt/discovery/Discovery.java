@@ -34,12 +34,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import org.exolab.castor.xml.MarshalException;
@@ -48,6 +48,11 @@ import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.DBUtils;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.DiscoveryConfigFactory;
+import org.opennms.netmgt.config.discovery.DiscoveryConfiguration;
+import org.opennms.netmgt.config.discovery.ExcludeRange;
+import org.opennms.netmgt.config.discovery.IncludeRange;
+import org.opennms.netmgt.config.discovery.IncludeUrl;
+import org.opennms.netmgt.config.discovery.Specific;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.events.api.EventForwarder;
@@ -69,6 +74,13 @@ import org.springframework.util.Assert;
  * instance in any given virtual machine. The service delays the reading of
  * configuration information until the service is started.
  *
+ * Sweeps are paced by a token bucket at the configured packets per second
+ * and may be spread over several threads with the
+ * <code>org.opennms.netmgt.discovery.sweepThreads</code> system property.
+ * Addresses that are already managed are skipped without using up the rate.
+ * A sweep that is stopped or paused remembers how far it got and the next
+ * sweep of the same configuration continues from there.
+ *
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="http://www.opennms.org/">OpenNMS.org </a>
  */
@@ -94,10 +106,26 @@ public class Discovery extends AbstractServiceDaemon {
      */
     private static final String ALL_IP_ADDRS_SQL = "SELECT DISTINCT ipAddr FROM ipInterface WHERE isManaged <> 'D'";
     
+    private static final int SWEEP_THREADS = Math.max(1, Integer.getInteger("org.opennms.netmgt.discovery.sweepThreads", 1));
+
     /**
      * a set of devices to skip discovery on
      */
-    private Set<String> m_alreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    private volatile AddressBitmap m_alreadyDiscovered = new AddressBitmap();
+
+    /**
+     * The configuration of the interrupted sweep and how many of its
+     * addresses have been handled
+     */
+    private volatile String m_checkpointConfiguration;
+    private volatile long m_checkpoint = 0;
+
+    private final AtomicLong m_sweepPosition = new AtomicLong();
+    private final AtomicLong m_sweepPacketsSent = new AtomicLong();
+    private final AtomicLong m_packetsSent = new AtomicLong();
+    private final AtomicLong m_sweepsCompleted = new AtomicLong();
+    private volatile long m_sweepStarted = 0;
+    private volatile long m_lastSweepDuration = 0;
 
     private DiscoveryConfigFactory m_discoveryFactory;
 
@@ -204,50 +232,141 @@ public class Discovery extends AbstractServiceDaemon {
 
         m_xstatus = PING_RUNNING;
 
-        getDiscoveryFactory().getReadLock().lock();
+        final DiscoveryConfigFactory factory = getDiscoveryFactory();
+        final String configuration = getConfigurationFingerprint(factory);
+        final Iterator<IPPollAddress> addresses = factory.getConfiguredAddresses().iterator();
+        final TokenBucket bucket = new TokenBucket(Math.max(1, factory.getPacketsPerSecond()));
+
+        // continue an interrupted sweep of the same configuration
+        long position = 0;
+        if (configuration.equals(m_checkpointConfiguration)) {
+            while (position < m_checkpoint && addresses.hasNext()) {
+                addresses.next();
+                position++;
+            }
+            LOG.info("resuming discovery sweep at address {}", position);
+        }
+        m_sweepPosition.set(position);
+        m_sweepPacketsSent.set(0);
+        m_sweepStarted = System.currentTimeMillis();
+
+        final Runnable sweeper = new Runnable() {
+            @Override
+            public void run() {
+                sweep(addresses, bucket);
+            }
+        };
+        final List<Thread> threads = new ArrayList<Thread>(SWEEP_THREADS - 1);
+        for (int i = 1; i < SWEEP_THREADS; i++) {
+            final Thread thread = new Thread(sweeper, "Discovery.Sweeper-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        sweeper.run();
+
+        boolean finished;
         try {
-            for (IPPollAddress pollAddress : getDiscoveryFactory().getConfiguredAddresses()) {
-                if (m_xstatus == PING_FINISHING || m_timer == null) {
-                    m_xstatus = PING_IDLE;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            synchronized (addresses) {
+                finished = !addresses.hasNext() && !isSweepStopped();
+            }
+        } catch (InterruptedException e) {
+            LOG.info("interrupting discovery sweep");
+            finished = false;
+        }
+
+        if (finished) {
+            m_checkpointConfiguration = null;
+            m_checkpoint = 0;
+            m_sweepsCompleted.incrementAndGet();
+            m_lastSweepDuration = System.currentTimeMillis() - m_sweepStarted;
+            LOG.info("finished discovery sweep of {} addresses in {}ms", m_sweepPosition.get(), m_lastSweepDuration);
+        } else {
+            // addresses that were taken but possibly not pinged yet are swept again
+            m_checkpoint = Math.max(0, m_sweepPosition.get() - SWEEP_THREADS);
+            m_checkpointConfiguration = configuration;
+            LOG.info("stopped discovery sweep after {} addresses", m_checkpoint);
+        }
+        m_sweepStarted = 0;
+        m_xstatus = PING_IDLE;
+    }
+
+    private boolean isSweepStopped() {
+        return m_xstatus == PING_FINISHING || m_timer == null;
+    }
+
+    private void sweep(final Iterator<IPPollAddress> addresses, final TokenBucket bucket) {
+        while (true) {
+            final IPPollAddress pollAddress;
+            synchronized (addresses) {
+                if (isSweepStopped() || !addresses.hasNext()) {
                     return;
                 }
-                LOG.debug("Pinging: {} of foreign source {}", pollAddress.getAddress().toString(), m_discoveryFactory.getForeignSource(pollAddress.getAddress()));
-                ping(pollAddress);
+                pollAddress = addresses.next();
+            }
+
+            final InetAddress address = pollAddress.getAddress();
+            if (address != null && !isAlreadyDiscovered(address)) {
                 try {
-                    Thread.sleep(getDiscoveryFactory().getIntraPacketDelay());
+                    bucket.acquire();
                 } catch (InterruptedException e) {
                     LOG.info("interrupting discovery sweep");
-                    break;
+                    return;
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Pinging: {} of foreign source {}", address.toString(), getDiscoveryFactory().getForeignSource(address));
                 }
+                ping(pollAddress);
+            } else if (address != null) {
+                LOG.debug("{} already discovered.", address.toString());
             }
-        } finally {
-            getDiscoveryFactory().getReadLock().unlock();
+            m_sweepPosition.incrementAndGet();
         }
+    }
 
-        LOG.info("finished discovery sweep");
-        m_xstatus = PING_IDLE;
+    /**
+     * Describes the addresses a sweep will ping, so that an interrupted sweep
+     * is only continued if they did not change.
+     */
+    private static String getConfigurationFingerprint(final DiscoveryConfigFactory factory) {
+        final StringBuilder sb = new StringBuilder();
+        factory.getReadLock().lock();
+        try {
+            final DiscoveryConfiguration config = factory.getConfiguration();
+            for (final Specific specific : config.getSpecificCollection()) {
+                sb.append("s:").append(specific.getContent()).append(',');
+            }
+            for (final IncludeRange range : config.getIncludeRangeCollection()) {
+                sb.append("i:").append(range.getBegin()).append('-').append(range.getEnd()).append(',');
+            }
+            for (final IncludeUrl url : config.getIncludeUrlCollection()) {
+                sb.append("u:").append(url.getContent()).append(',');
+            }
+            for (final ExcludeRange range : config.getExcludeRangeCollection()) {
+                sb.append("e:").append(range.getBegin()).append('-').append(range.getEnd()).append(',');
+            }
+        } finally {
+            factory.getReadLock().unlock();
+        }
+        return sb.toString();
     }
 
     private void ping(IPPollAddress pollAddress) {
         InetAddress address = pollAddress.getAddress();
-        if (address != null) {
-            if (!isAlreadyDiscovered(address)) {
-                try {
-                    m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, cb);
-                } catch (Throwable e) {
-                    LOG.debug("error pinging {}", address.getAddress(), e);
-                }
-            } else {
-            	LOG.debug("{} already discovered.", address.toString());
-            }
+        try {
+            m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, cb);
+            m_sweepPacketsSent.incrementAndGet();
+            m_packetsSent.incrementAndGet();
+        } catch (Throwable e) {
+            LOG.debug("error pinging {}", address.getAddress(), e);
         }
     }
 
     private boolean isAlreadyDiscovered(InetAddress address) {
-        if (m_alreadyDiscovered.contains(InetAddressUtils.str(address))) {
-            return true;
-        }
-        return false;
+        return m_alreadyDiscovered.contains(address);
     }
 
     private void startTimer() {
@@ -330,7 +449,7 @@ public class Discovery extends AbstractServiceDaemon {
     	 * if something goes wrong with the DB we won't lose whatever was already
     	 * in there
     	 */
-    	Set<String> newAlreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    	AddressBitmap newAlreadyDiscovered = new AddressBitmap();
     	Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
 
@@ -343,7 +462,10 @@ public class Discovery extends AbstractServiceDaemon {
     		d.watch(rs);
     		if (rs != null) {
     			while (rs.next()) {
-    				newAlreadyDiscovered.add(rs.getString(1));
+    				final InetAddress address = InetAddressUtils.getInetAddress(rs.getString(1));
+    				if (address != null) {
+    					newAlreadyDiscovered.add(address);
+    				}
     			}
     		} else {
     			LOG.warn("Got null ResultSet from query for all IP addresses");
@@ -435,7 +557,7 @@ public class Discovery extends AbstractServiceDaemon {
         if(event.getInterface() != null) {
             // remove from known nodes
             final String iface = event.getInterface();
-			m_alreadyDiscovered.remove(iface);
+			m_alreadyDiscovered.remove(event.getInterfaceAddress());
 
             LOG.debug("Removed {} from known node list", iface);
         }
@@ -476,11 +598,72 @@ public class Discovery extends AbstractServiceDaemon {
     public void handleNodeGainedInterface(Event event) {
         // add to known nodes
         final String iface = event.getInterface();
-		m_alreadyDiscovered.add(iface);
+        if (event.getInterfaceAddress() != null) {
+            m_alreadyDiscovered.add(event.getInterfaceAddress());
+        }
 
         LOG.debug("Added {} as discovered", iface);
     }
 
+    /**
+     * <p>getSweepPosition</p>
+     *
+     * @return the number of addresses handled by the current or last sweep
+     */
+    public long getSweepPosition() {
+        return m_sweepPosition.get();
+    }
+
+    /**
+     * <p>getSweepRate</p>
+     *
+     * @return the packets per second sent by the running sweep, or 0 if no sweep is running
+     */
+    public double getSweepRate() {
+        final long started = m_sweepStarted;
+        if (started == 0) {
+            return 0.0;
+        }
+        final long elapsed = Math.max(1, System.currentTimeMillis() - started);
+        return m_sweepPacketsSent.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * <p>getPacketsSent</p>
+     *
+     * @return the total number of discovery pings sent
+     */
+    public long getPacketsSent() {
+        return m_packetsSent.get();
+    }
+
+    /**
+     * <p>getSweepsCompleted</p>
+     *
+     * @return the number of sweeps that went through all addresses
+     */
+    public long getSweepsCompleted() {
+        return m_sweepsCompleted.get();
+    }
+
+    /**
+     * <p>getLastSweepDuration</p>
+     *
+     * @return the duration of the last completed sweep in milliseconds
+     */
+    public long getLastSweepDuration() {
+        return m_lastSweepDuration;
+    }
+
+    /**
+     * <p>getKnownAddressCount</p>
+     *
+     * @return the number of addresses that are skipped because they are already managed
+     */
+    public int getKnownAddressCount() {
+        return m_alreadyDiscovered.size();
+    }
+
     public static String getLoggingCategory() {
         return LOG4J_CATEGORY;
     }
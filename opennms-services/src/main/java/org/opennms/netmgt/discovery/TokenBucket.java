@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+/**
+ * Paces discovery pings to a target rate. Permits accumulate at the
+ * configured rate up to a small burst, and {@link #acquire()} sleeps only
+ * for as long as it takes for the next permit to become available, so rates
+ * above 1000 packets per second and rates that do not divide a second evenly
+ * are kept accurately.
+ *
+ * The bucket is shared by all sweep threads.
+ */
+final class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final double m_permitsPerSecond;
+    private final double m_capacity;
+
+    private double m_permits;
+    private long m_lastRefill;
+
+    TokenBucket(final double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive: " + permitsPerSecond);
+        }
+        m_permitsPerSecond = permitsPerSecond;
+        // allow bursts of up to a tenth of a second worth of packets
+        m_capacity = Math.max(1.0, permitsPerSecond / 10.0);
+        m_permits = 1.0;
+        m_lastRefill = System.nanoTime();
+    }
+
+    double getRate() {
+        return m_permitsPerSecond;
+    }
+
+    /**
+     * Take one permit, waiting until one is available.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        final long waitNanos;
+        synchronized (this) {
+            refill();
+            m_permits -= 1.0;
+            if (m_permits >= 0) {
+                return;
+            }
+            // the permit is reserved; wait until it has been earned
+            waitNanos = (long)(-m_permits * NANOS_PER_SECOND / m_permitsPerSecond);
+        }
+        Thread.sleep(waitNanos / 1000000L, (int)(waitNanos % 1000000L));
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        m_permits = Math.min(m_capacity, m_permits + (now - m_lastRefill) * m_permitsPerSecond / NANOS_PER_SECOND);
+        m_lastRefill = now;
+    }
+}
@@ -49,5 +49,65 @@ public class Discovery extends AbstractSpringContextJmxServiceDaemon<org.opennms
     protected String getSpringContext() {
         return "discoveryContext";
     }
-    
+
+    /**
+     * <p>getSweepPosition</p>
+     *
+     * @return the number of addresses handled by the current or last sweep
+     */
+    @Override
+    public long getSweepPosition() {
+        return getDaemon().getSweepPosition();
+    }
+
+    /**
+     * <p>getSweepRate</p>
+     *
+     * @return the packets per second sent by the running sweep
+     */
+    @Override
+    public double getSweepRate() {
+        return getDaemon().getSweepRate();
+    }
+
+    /**
+     * <p>getPacketsSent</p>
+     *
+     * @return the total number of discovery pings sent
+     */
+    @Override
+    public long getPacketsSent() {
+        return getDaemon().getPacketsSent();
+    }
+
+    /**
+     * <p>getSweepsCompleted</p>
+     *
+     * @return the number of completed sweeps
+     */
+    @Override
+    public long getSweepsCompleted() {
+        return getDaemon().getSweepsCompleted();
+    }
+
+    /**
+     * <p>getLastSweepDuration</p>
+     *
+     * @return the duration of the last completed sweep in milliseconds
+     */
+    @Override
+    public long getLastSweepDuration() {
+        return getDaemon().getLastSweepDuration();
+    }
+
+    /**
+     * <p>getKnownAddressCount</p>
+     *
+     * @return the number of already managed addresses that are skipped
+     */
+    @Override
+    public int getKnownAddressCount() {
+        return getDaemon().getKnownAddressCount();
+    }
+
 }
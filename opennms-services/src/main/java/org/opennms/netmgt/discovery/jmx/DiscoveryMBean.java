@@ -38,4 +38,46 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  */
 public interface DiscoveryMBean extends BaseOnmsMBean {
 
+    /**
+     * <p>getSweepPosition</p>
+     *
+     * @return the number of addresses handled by the current or last sweep
+     */
+    public long getSweepPosition();
+
+    /**
+     * <p>getSweepRate</p>
+     *
+     * @return the packets per second sent by the running sweep
+     */
+    public double getSweepRate();
+
+    /**
+     * <p>getPacketsSent</p>
+     *
+     * @return the total number of discovery pings sent
+     */
+    public long getPacketsSent();
+
+    /**
+     * <p>getSweepsCompleted</p>
+     *
+     * @return the number of completed sweeps
+     */
+    public long getSweepsCompleted();
+
+    /**
+     * <p>getLastSweepDuration</p>
+     *
+     * @return the duration of the last completed sweep in milliseconds
+     */
+    public long getLastSweepDuration();
+
+    /**
+     * <p>getKnownAddressCount</p>
+     *
+     * @return the number of already managed addresses that are skipped
+     */
+    public int getKnownAddressCount();
+
 }
@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.opennms.netmgt.model.BridgeMacLink;
+
+/**
+ * In memory copy of the bridge forwarding tables saved in the bridgemaclink
+ * table, kept in step with the database by replaying the saves and deletes
+ * done by the bridge reconciliation so that it never has to load every link
+ * again. MAC addresses are held as primitive longs along with the time the
+ * link was last saved.
+ *
+ * Not thread safe, callers synchronize on the instance.
+ */
+final class BridgeForwardingTables {
+
+    private static final long NO_MAC = -1L;
+
+    /**
+     * The MAC addresses learned on one bridge port, an open addressing hash
+     * table of longs. Addresses that are not in the 12 lowercase hex digits
+     * form cannot be converted back unchanged, so they are kept as strings.
+     */
+    static final class PortTable {
+        private long[] m_macs = newMacs(8);
+        private long[] m_times = new long[8];
+        private int m_size;
+        private Map<String, Long> m_others;
+
+        private static long[] newMacs(final int capacity) {
+            final long[] macs = new long[capacity];
+            Arrays.fill(macs, NO_MAC);
+            return macs;
+        }
+
+        private static int slot(final long mac, final int mask) {
+            long h = mac * 0x9E3779B97F4A7C15L;
+            return (int)(h ^ (h >>> 32)) & mask;
+        }
+
+        /**
+         * @return true if the MAC address was not in the table yet
+         */
+        boolean put(final String mac, final long time) {
+            final long value = fromMac(mac);
+            if (value == NO_MAC) {
+                if (m_others == null) {
+                    m_others = new HashMap<String, Long>();
+                }
+                return m_others.put(mac, time) == null;
+            }
+            if ((m_size + 1) * 2 > m_macs.length) {
+                resize(m_macs.length * 2);
+            }
+            final int mask = m_macs.length - 1;
+            int i = slot(value, mask);
+            while (m_macs[i] != NO_MAC) {
+                if (m_macs[i] == value) {
+                    m_times[i] = time;
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            m_macs[i] = value;
+            m_times[i] = time;
+            m_size++;
+            return true;
+        }
+
+        boolean contains(final String mac) {
+            final long value = fromMac(mac);
+            if (value == NO_MAC) {
+                return m_others != null && m_others.containsKey(mac);
+            }
+            return contains(value);
+        }
+
+        boolean contains(final long value) {
+            final int mask = m_macs.length - 1;
+            int i = slot(value, mask);
+            while (m_macs[i] != NO_MAC) {
+                if (m_macs[i] == value) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        /**
+         * @return true if this table shares at least one MAC address with the other one
+         */
+        boolean intersects(final PortTable other) {
+            for (final long mac : m_macs) {
+                if (mac != NO_MAC && other.contains(mac)) {
+                    return true;
+                }
+            }
+            if (m_others != null && other.m_others != null) {
+                for (final String mac : m_others.keySet()) {
+                    if (other.m_others.containsKey(mac)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void putAll(final PortTable other) {
+            for (int i = 0; i < other.m_macs.length; i++) {
+                if (other.m_macs[i] != NO_MAC) {
+                    putLong(other.m_macs[i], other.m_times[i]);
+                }
+            }
+            if (other.m_others != null) {
+                for (final Entry<String, Long> entry : other.m_others.entrySet()) {
+                    put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        boolean hasOlderThan(final long time) {
+            for (int i = 0; i < m_macs.length; i++) {
+                if (m_macs[i] != NO_MAC && m_times[i] < time) {
+                    return true;
+                }
+            }
+            if (m_others != null) {
+                for (final Long other : m_others.values()) {
+                    if (other < time) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the number of MAC addresses removed
+         */
+        int removeOlderThan(final long time) {
+            final long[] macs = m_macs;
+            final long[] times = m_times;
+            final int before = size();
+            m_macs = newMacs(macs.length);
+            m_times = new long[macs.length];
+            m_size = 0;
+            for (int i = 0; i < macs.length; i++) {
+                if (macs[i] != NO_MAC && times[i] >= time) {
+                    putLong(macs[i], times[i]);
+                }
+            }
+            if (m_others != null) {
+                final Iterator<Long> it = m_others.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next() < time) {
+                        it.remove();
+                    }
+                }
+            }
+            return before - size();
+        }
+
+        int size() {
+            return m_size + (m_others == null ? 0 : m_others.size());
+        }
+
+        Set<String> getMacs() {
+            final Set<String> macs = new HashSet<String>();
+            for (final long mac : m_macs) {
+                if (mac != NO_MAC) {
+                    macs.add(toMac(mac));
+                }
+            }
+            if (m_others != null) {
+                macs.addAll(m_others.keySet());
+            }
+            return macs;
+        }
+
+        private void putLong(final long value, final long time) {
+            if ((m_size + 1) * 2 > m_macs.length) {
+                resize(m_macs.length * 2);
+            }
+            final int mask = m_macs.length - 1;
+            int i = slot(value, mask);
+            while (m_macs[i] != NO_MAC && m_macs[i] != value) {
+                i = (i + 1) & mask;
+            }
+            if (m_macs[i] == NO_MAC) {
+                m_size++;
+            }
+            m_macs[i] = value;
+            m_times[i] = time;
+        }
+
+        private void resize(final int capacity) {
+            final long[] macs = m_macs;
+            final long[] times = m_times;
+            m_macs = newMacs(capacity);
+            m_times = new long[capacity];
+            m_size = 0;
+            for (int i = 0; i < macs.length; i++) {
+                if (macs[i] != NO_MAC) {
+                    putLong(macs[i], times[i]);
+                }
+            }
+        }
+    }
+
+    private final Map<Integer, Map<Integer, PortTable>> m_tables = new HashMap<Integer, Map<Integer, PortTable>>();
+    private int m_size;
+
+    /**
+     * Converts a MAC address in the 12 lowercase hex digits form used by the
+     * forwarding table trackers to a long.
+     *
+     * @return the address or -1 if it is not in that form
+     */
+    static long fromMac(final String mac) {
+        if (mac == null || mac.length() != 12) {
+            return NO_MAC;
+        }
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            final char c = mac.charAt(i);
+            final int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return NO_MAC;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    static String toMac(final long mac) {
+        final String hex = Long.toHexString(mac);
+        return "000000000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * Replaces the content with the given links.
+     */
+    void load(final Iterable<BridgeMacLink> links) {
+        m_tables.clear();
+        m_size = 0;
+        for (final BridgeMacLink link : links) {
+            put(link.getNode().getId(), link.getBridgePort(), link.getMacAddress(), link.getBridgeMacLinkLastPollTime().getTime());
+        }
+    }
+
+    /**
+     * Records a link saved with the given last poll time.
+     */
+    void put(final Integer nodeId, final Integer bridgePort, final String mac, final long time) {
+        Map<Integer, PortTable> ports = m_tables.get(nodeId);
+        if (ports == null) {
+            ports = new HashMap<Integer, PortTable>();
+            m_tables.put(nodeId, ports);
+        }
+        PortTable macs = ports.get(bridgePort);
+        if (macs == null) {
+            macs = new PortTable();
+            ports.put(bridgePort, macs);
+        }
+        if (macs.put(mac, time)) {
+            m_size++;
+        }
+    }
+
+    /**
+     * @return true if the node has links last saved before the given time
+     */
+    boolean hasOlderThan(final Integer nodeId, final long time) {
+        final Map<Integer, PortTable> ports = m_tables.get(nodeId);
+        if (ports == null) {
+            return false;
+        }
+        for (final PortTable macs : ports.values()) {
+            if (macs.hasOlderThan(time)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mirrors {@link org.opennms.netmgt.dao.api.BridgeMacLinkDao#deleteByNodeIdOlderThen(Integer, java.util.Date)}.
+     */
+    void removeOlderThan(final Integer nodeId, final long time) {
+        final Map<Integer, PortTable> ports = m_tables.get(nodeId);
+        if (ports == null) {
+            return;
+        }
+        final Iterator<PortTable> it = ports.values().iterator();
+        while (it.hasNext()) {
+            final PortTable macs = it.next();
+            m_size -= macs.removeOlderThan(time);
+            if (macs.size() == 0) {
+                it.remove();
+            }
+        }
+        if (ports.isEmpty()) {
+            m_tables.remove(nodeId);
+        }
+    }
+
+    /**
+     * Forgets every link of a node, as deleting the node deletes its rows.
+     */
+    void remove(final Integer nodeId) {
+        final Map<Integer, PortTable> ports = m_tables.remove(nodeId);
+        if (ports == null) {
+            return;
+        }
+        for (final PortTable macs : ports.values()) {
+            m_size -= macs.size();
+        }
+    }
+
+    /**
+     * @return the MAC addresses among the given ones that have a saved link on the bridge port
+     */
+    Set<String> getSaved(final Integer nodeId, final Integer bridgePort, final Set<String> macs) {
+        final Set<String> saved = new HashSet<String>();
+        final Map<Integer, PortTable> ports = m_tables.get(nodeId);
+        final PortTable port = ports == null ? null : ports.get(bridgePort);
+        if (port == null) {
+            return saved;
+        }
+        for (final String mac : macs) {
+            if (port.contains(mac)) {
+                saved.add(mac);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * @return the number of links held, comparable with the row count of the table
+     */
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * @return a copy of the saved forwarding table of the node, empty if it has none
+     */
+    Map<Integer, Set<String>> getForwardingTable(final Integer nodeId) {
+        final Map<Integer, Set<String>> bft = new HashMap<Integer, Set<String>>();
+        final Map<Integer, PortTable> ports = m_tables.get(nodeId);
+        if (ports != null) {
+            for (final Entry<Integer, PortTable> entry : ports.entrySet()) {
+                bft.put(entry.getKey(), entry.getValue().getMacs());
+            }
+        }
+        return bft;
+    }
+
+    /**
+     * Returns the bridge domain of a node: the node itself, the nodes it has
+     * bridge to bridge links with, and every node that transitively shares a
+     * MAC address with them, either in the saved tables or in the newly
+     * collected forwarding table of the node. The topology of a node can
+     * only be affected by the nodes of its domain.
+     *
+     * @param nodeId the node being reconciled
+     * @param bft its newly collected forwarding table
+     * @param linkedNodes the nodes it has bridge to bridge links with
+     */
+    Set<Integer> getDomain(final Integer nodeId, final Map<Integer, Set<String>> bft, final Set<Integer> linkedNodes) {
+        final Set<Integer> domain = new HashSet<Integer>();
+        final PortTable domainMacs = new PortTable();
+        for (final Set<String> macs : bft.values()) {
+            for (final String mac : macs) {
+                domainMacs.put(mac, 0L);
+            }
+        }
+        addToDomain(nodeId, domain, domainMacs);
+        for (final Integer linkedNode : linkedNodes) {
+            addToDomain(linkedNode, domain, domainMacs);
+        }
+
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (final Entry<Integer, Map<Integer, PortTable>> entry : m_tables.entrySet()) {
+                if (domain.contains(entry.getKey())) {
+                    continue;
+                }
+                for (final PortTable macs : entry.getValue().values()) {
+                    if (macs.intersects(domainMacs)) {
+                        addToDomain(entry.getKey(), domain, domainMacs);
+                        grown = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return domain;
+    }
+
+    private void addToDomain(final Integer nodeId, final Set<Integer> domain, final PortTable domainMacs) {
+        domain.add(nodeId);
+        final Map<Integer, PortTable> ports = m_tables.get(nodeId);
+        if (ports != null) {
+            for (final PortTable macs : ports.values()) {
+                domainMacs.putAll(macs);
+            }
+        }
+    }
+}
@@ -30,12 +30,14 @@ package org.opennms.netmgt.enlinkd;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.core.criteria.Alias;
 import org.opennms.core.criteria.Criteria;
@@ -77,7 +79,10 @@ import org.opennms.netmgt.model.topology.BridgeTopology.BridgeTopologyLink;
 import org.opennms.netmgt.model.topology.LinkableSnmpNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		
 //	private final static Logger LOG = LoggerFactory.getLogger(EnhancedLinkdServiceImpl.class);
@@ -113,9 +118,17 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 	
 	private BridgeStpLinkDao m_bridgeStpLinkDao; 
 	
-	volatile Map<Integer,Map<Integer,Set<String>>> m_bftMap = new HashMap<Integer, Map<Integer,Set<String>>>();
+	volatile Map<Integer,Map<Integer,Set<String>>> m_bftMap = new ConcurrentHashMap<Integer, Map<Integer,Set<String>>>();
 
-	volatile Map<Integer,Map<Integer,Integer>> m_nodebridgeportifindex = new HashMap<Integer, Map<Integer,Integer>>();
+	volatile Map<Integer,Map<Integer,Integer>> m_nodebridgeportifindex = new ConcurrentHashMap<Integer, Map<Integer,Integer>>();
+
+	private final BridgeForwardingTables m_savedBft = new BridgeForwardingTables();
+
+	// nodes whose bridge domain is being reconciled, guarded by m_savedBft
+	private final Set<Integer> m_reconciling = new HashSet<Integer>();
+
+	// bumped whenever the saved tables may have changed, guarded by m_savedBft
+	private long m_savedBftGeneration;
 
 	private void addBridgePortIfIndexEntry(Integer nodeid,Integer bridgeport, Integer ifindex) {
 		Map<Integer,Integer>bridgeportifindex = new HashMap<Integer, Integer>();
@@ -176,6 +189,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 
 	@Override
 	public void delete(int nodeId) {
+		forgetBridge(nodeId);
 		Date now = new Date();
 		reconcileLldp(nodeId, now);
 		reconcileCdp(nodeId, now);
@@ -574,7 +588,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 	}
 
 	@Override
-	public synchronized void reconcileBridge(int nodeId, Date now) {
+	public void reconcileBridge(int nodeId, Date now) {
 		m_bridgeElementDao.deleteByNodeIdOlderThen(nodeId, now);
 		m_bridgeElementDao.flush();
 
@@ -585,54 +599,67 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		Map<Integer,Set<String>> bft = m_bftMap.remove(nodeId);
 		if (bft == null || bft.isEmpty())
 			return;
-		Set<String> macs = new HashSet<String>();
-		for (Set<String> portmacs: bft.values()) 
-			macs.addAll(portmacs);
-		
-		Map<Integer,Map<Integer,Set<String>>> savedtopology = new HashMap<Integer, Map<Integer,Set<String>>>();
-		for (BridgeMacLink maclink: m_bridgeMacLinkDao.findAll()) {
-			if (maclink.getNode().getId().intValue() == nodeId)
-				continue;
-			Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
-			if (savedtopology.containsKey(maclink.getNode().getId())) 
-				nodesavedtopology = savedtopology.get(maclink.getNode().getId());
-			Set<String> macsonport = new HashSet<String>();
-			if (nodesavedtopology.containsKey(maclink.getBridgePort()))
-				macsonport = nodesavedtopology.get(maclink.getBridgePort());
-			macsonport.add(maclink.getMacAddress());
-			nodesavedtopology.put(maclink.getBridgePort(), macsonport);
-			savedtopology.put(maclink.getNode().getId(), nodesavedtopology);
-		}
-		
-		BridgeTopology topology = new BridgeTopology();
-		Set<Integer> targets = new HashSet<Integer>();
-		targets.add(nodeId);
-		for (BridgeBridgeLink bblink: m_bridgeBridgeLinkDao.findByNodeId(nodeId)) {
-			Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
-			nodesavedtopology.put(bblink.getDesignatedPort(), new HashSet<String>());
-			topology.addTopology(bblink.getDesignatedNode().getId(), nodesavedtopology, targets);
-		}
-		for (BridgeBridgeLink bblink: m_bridgeBridgeLinkDao.findByDesignatedNodeId(nodeId)) {
-			Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
-			nodesavedtopology.put(bblink.getBridgePort(), new HashSet<String>());
-			topology.addTopology(bblink.getNode().getId(), nodesavedtopology, targets);
-		}
-		for (Integer savednode: savedtopology.keySet()) {
-			topology.parseBFT(savednode, savedtopology.get(savednode));
-		}
-		topology.parseBFT(nodeId, bft);
 
-		// now check the topology with the old one
-		// delete the not found links
-		for (BridgeTopologyLink btl: topology.getTopology()) {
-			saveLink(btl, nodeId, bridgeportifindex);
-		}
-		
-		for (Integer curNodeId: savedtopology.keySet()) {
-			m_bridgeMacLinkDao.deleteByNodeIdOlderThen(curNodeId, now);
+		List<BridgeBridgeLink> bblinks = m_bridgeBridgeLinkDao.findByNodeId(nodeId);
+		List<BridgeBridgeLink> designatedbblinks = m_bridgeBridgeLinkDao.findByDesignatedNodeId(nodeId);
+		Set<Integer> linkednodes = new HashSet<Integer>();
+		for (BridgeBridgeLink bblink: bblinks)
+			linkednodes.add(bblink.getDesignatedNode().getId());
+		for (BridgeBridgeLink bblink: designatedbblinks)
+			linkednodes.add(bblink.getNode().getId());
+
+		// only the bridges sharing macs with this one can change,
+		// the others are left to be reconciled concurrently
+		Set<Integer> domain = claimBridgeDomain(nodeId, bft, linkednodes);
+		try {
+			Map<Integer,Map<Integer,Set<String>>> savedtopology = new HashMap<Integer, Map<Integer,Set<String>>>();
+			synchronized (m_savedBft) {
+				for (Integer domainnode: domain) {
+					if (domainnode.intValue() == nodeId)
+						continue;
+					Map<Integer,Set<String>> nodesavedtopology = m_savedBft.getForwardingTable(domainnode);
+					if (!nodesavedtopology.isEmpty())
+						savedtopology.put(domainnode, nodesavedtopology);
+				}
+			}
+
+			BridgeTopology topology = new BridgeTopology();
+			Set<Integer> targets = new HashSet<Integer>();
+			targets.add(nodeId);
+			for (BridgeBridgeLink bblink: bblinks) {
+				Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
+				nodesavedtopology.put(bblink.getDesignatedPort(), new HashSet<String>());
+				topology.addTopology(bblink.getDesignatedNode().getId(), nodesavedtopology, targets);
+			}
+			for (BridgeBridgeLink bblink: designatedbblinks) {
+				Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
+				nodesavedtopology.put(bblink.getBridgePort(), new HashSet<String>());
+				topology.addTopology(bblink.getNode().getId(), nodesavedtopology, targets);
+			}
+			for (Integer savednode: savedtopology.keySet()) {
+				topology.parseBFT(savednode, savedtopology.get(savednode));
+			}
+			topology.parseBFT(nodeId, bft);
+
+			// now check the topology with the old one
+			// delete the not found links
+			for (BridgeTopologyLink btl: topology.getTopology()) {
+				saveLink(btl, nodeId, bridgeportifindex);
+			}
+
+			Set<Integer> reconciled = new HashSet<Integer>(savedtopology.keySet());
+			reconciled.add(nodeId);
+			for (Integer curNodeId: reconciled) {
+				// the saved tables may miss rows written behind their back, so always delete
+				m_bridgeMacLinkDao.deleteByNodeIdOlderThen(curNodeId, now);
+				synchronized (m_savedBft) {
+					m_savedBft.removeOlderThan(curNodeId, now.getTime());
+				}
+			}
+			m_bridgeMacLinkDao.flush();
+		} finally {
+			releaseBridgeDomain(domain);
 		}
-		m_bridgeMacLinkDao.deleteByNodeIdOlderThen(nodeId, now);
-		m_bridgeMacLinkDao.flush();
 
 		// What about bridge bridge topology
 		// The changes could only be regarding the nodeId
@@ -641,6 +668,90 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		m_bridgeBridgeLinkDao.flush();
 
 	}
+
+	/**
+	 * Waits until no other reconciliation works on a bridge of the domain of
+	 * the node and marks the domain as being reconciled. The saved forwarding
+	 * tables are checked against the bridgemaclink row count, and reloaded
+	 * when they went out of step, whenever no reconciliation is running. The
+	 * database is queried without holding the monitor; a reload is dropped
+	 * and checked again if the saved tables changed in the meantime.
+	 */
+	private Set<Integer> claimBridgeDomain(int nodeId, Map<Integer,Set<String>> bft, Set<Integer> linkednodes) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				long generation = -1;
+				int saved = 0;
+				synchronized (m_savedBft) {
+					if (m_reconciling.isEmpty()) {
+						generation = m_savedBftGeneration;
+						saved = m_savedBft.size();
+					}
+				}
+				List<BridgeMacLink> links = null;
+				if (generation >= 0 && m_bridgeMacLinkDao.countAll() != saved)
+					links = m_bridgeMacLinkDao.findAll();
+
+				synchronized (m_savedBft) {
+					if (links != null) {
+						if (!m_reconciling.isEmpty() || generation != m_savedBftGeneration)
+							continue;
+						m_savedBft.load(links);
+						m_savedBftGeneration++;
+					}
+					Set<Integer> domain = m_savedBft.getDomain(nodeId, bft, linkednodes);
+					if (Collections.disjoint(domain, m_reconciling)) {
+						m_reconciling.addAll(domain);
+						return domain;
+					}
+					try {
+						m_savedBft.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private void releaseBridgeDomain(Set<Integer> domain) {
+		synchronized (m_savedBft) {
+			m_reconciling.removeAll(domain);
+			m_savedBftGeneration++;
+			m_savedBft.notifyAll();
+		}
+	}
+
+	/**
+	 * Drops the collected and saved forwarding tables of a deleted node, whose
+	 * bridgemaclink rows are deleted along with it, once no reconciliation
+	 * works on its domain any more.
+	 */
+	private void forgetBridge(int nodeId) {
+		m_bftMap.remove(nodeId);
+		m_nodebridgeportifindex.remove(nodeId);
+		boolean interrupted = false;
+		try {
+			synchronized (m_savedBft) {
+				while (m_reconciling.contains(nodeId)) {
+					try {
+						m_savedBft.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				m_savedBft.remove(nodeId);
+				m_savedBftGeneration++;
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
 	
 	protected void saveLink(final BridgeTopologyLink bridgelink, Integer nodeId, Map<Integer,Integer> bridgeportIfIndex) {
 		if (bridgelink == null)
@@ -670,25 +781,67 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			saveBridgeBridgeLink(link);
 			return;
 		} 
-		for (String mac: bridgelink.getMacs()) {
-			BridgeMacLink maclink1 = new BridgeMacLink();
-			maclink1.setNode(node);
-			maclink1.setBridgePort(bridgelink.getBridgeTopologyPort().getBridgePort());
-			if (node.getId().intValue() == nodeId.intValue() && bridgelink.getBridgeTopologyPort() != null && bridgeportIfIndex.containsKey(bridgelink.getBridgeTopologyPort().getBridgePort())) {
-				maclink1.setBridgePortIfIndex(bridgeportIfIndex.get(bridgelink.getBridgeTopologyPort().getBridgePort()));
-			}
-			maclink1.setMacAddress(mac);
-			saveBridgeMacLink(maclink1);
-			if (designatenode == null)
+		Integer bridgePort = bridgelink.getBridgeTopologyPort().getBridgePort();
+		Integer bridgePortIfIndex = null;
+		if (node.getId().intValue() == nodeId.intValue() && bridgeportIfIndex.containsKey(bridgePort)) {
+			bridgePortIfIndex = bridgeportIfIndex.get(bridgePort);
+		}
+		saveBridgeMacLinks(node, bridgePort, bridgePortIfIndex, bridgelink.getMacs());
+		if (designatenode == null)
+			return;
+		Integer designatedPort = bridgelink.getDesignateBridgePort().getBridgePort();
+		Integer designatedPortIfIndex = null;
+		if (designatenode.getId().intValue() == nodeId.intValue() && bridgeportIfIndex.containsKey(designatedPort)) {
+			designatedPortIfIndex = bridgeportIfIndex.get(designatedPort);
+		}
+		saveBridgeMacLinks(designatenode, designatedPort, designatedPortIfIndex, bridgelink.getMacs());
+	}
+
+	/**
+	 * Saves the links from a bridge port to the given MAC addresses. The links
+	 * the saved forwarding tables already hold only need to be marked as
+	 * polled, which takes a single statement for the whole port; only the new
+	 * links are upserted one by one.
+	 */
+	private void saveBridgeMacLinks(final OnmsNode node, final Integer bridgePort, final Integer bridgePortIfIndex, final Set<String> macs) {
+		final Set<String> saved;
+		synchronized (m_savedBft) {
+			saved = m_savedBft.getSaved(node.getId(), bridgePort, macs);
+		}
+		if (!saved.isEmpty()) {
+			final Date now = new Date();
+			Integer updated = new TransactionTemplate(m_transactionManager).execute(new TransactionCallback<Integer>() {
+				@Override
+				public Integer doInTransaction(TransactionStatus status) {
+					return m_bridgeMacLinkDao.updateLastPollTime(node.getId(), bridgePort, bridgePortIfIndex, saved, now);
+				}
+			});
+			if (updated != null && updated.intValue() == saved.size()) {
+				synchronized (m_savedBft) {
+					for (String mac: saved)
+						m_savedBft.put(node.getId(), bridgePort, mac, now.getTime());
+				}
+			} else {
+				// the saved tables are out of step with the table, upsert every link
+				saved.clear();
+			}
+		}
+		for (String mac: macs) {
+			if (saved.contains(mac))
 				continue;
-			BridgeMacLink maclink2 = new BridgeMacLink();
-			maclink2.setNode(designatenode);
-			maclink2.setBridgePort(bridgelink.getDesignateBridgePort().getBridgePort());
-			if (designatenode.getId().intValue() == nodeId.intValue() && bridgelink.getDesignateBridgePort() != null && bridgeportIfIndex.containsKey(bridgelink.getDesignateBridgePort().getBridgePort())) {
-				maclink2.setBridgePortIfIndex(bridgeportIfIndex.get(bridgelink.getDesignateBridgePort().getBridgePort()));
-			}
-			maclink2.setMacAddress(mac);
-			saveBridgeMacLink(maclink2);
+			BridgeMacLink maclink = new BridgeMacLink();
+			maclink.setNode(node);
+			maclink.setBridgePort(bridgePort);
+			maclink.setBridgePortIfIndex(bridgePortIfIndex);
+			maclink.setMacAddress(mac);
+			saveBridgeMacLink(maclink);
+			savedBridgeMacLink(maclink);
+		}
+	}
+
+	private void savedBridgeMacLink(BridgeMacLink maclink) {
+		synchronized (m_savedBft) {
+			m_savedBft.put(maclink.getNode().getId(), maclink.getBridgePort(), maclink.getMacAddress(), maclink.getBridgeMacLinkCreateTime().getTime());
 		}
 	}
 
@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.opennms.netmgt.config.notificationCommands.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A queue handler that fires each notification task when it is due instead
+ * of scanning the queue every interval.
+ *
+ * Tasks are taken from the {@link NoticeQueue} as they are queued and held
+ * in a {@link DelayQueue}.  A scheduler thread takes each task when its send
+ * time has come and hands it to a worker pool for the command it runs, so a
+ * slow mail server or script only holds up the tasks using that command.
+ * Binary (external) commands get at most
+ * <code>org.opennms.netmgt.notifd.maxCommandThreads</code> workers each
+ * (default 4), all other commands
+ * <code>org.opennms.netmgt.notifd.maxStrategyThreads</code> (default 10).
+ *
+ * The configured interval is not used.  Statistics are registered with JMX as
+ * <code>OpenNMS:Name=Notifd,Queue=&lt;queue-id&gt;</code>.
+ *
+ * To use it, set the handler class of a queue in notifd-configuration.xml to
+ * <code>org.opennms.netmgt.notifd.DelayQueueHandler</code>.
+ */
+public class DelayQueueHandler implements NotifdQueueHandler, NoticeQueue.Listener, DelayQueueHandlerMBean {
+    private static final Logger LOG = LoggerFactory.getLogger(DelayQueueHandler.class);
+
+    private static final int MAX_COMMAND_THREADS = Integer.getInteger("org.opennms.netmgt.notifd.maxCommandThreads", 4);
+    private static final int MAX_STRATEGY_THREADS = Integer.getInteger("org.opennms.netmgt.notifd.maxStrategyThreads", 10);
+
+    /**
+     * How long the scheduler waits for a due task before it checks its status again
+     */
+    private static final long POLL_MILLIS = 500;
+
+    private static final AtomicLong s_sequence = new AtomicLong();
+
+    /**
+     * A task in the delay queue; tasks with the same send time run in the
+     * order they were queued.
+     */
+    private static final class ScheduledTask implements Delayed {
+        private final long m_sendTime;
+        private final long m_sequence = s_sequence.getAndIncrement();
+        private final NotificationTask m_task;
+
+        ScheduledTask(final long sendTime, final NotificationTask task) {
+            m_sendTime = sendTime;
+            m_task = task;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(m_sendTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed o) {
+            final ScheduledTask other = (ScheduledTask) o;
+            if (m_sendTime != other.m_sendTime) {
+                return m_sendTime < other.m_sendTime ? -1 : 1;
+            }
+            return m_sequence < other.m_sequence ? -1 : (m_sequence == other.m_sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * The workers and statistics of one command.
+     */
+    private static final class Strategy {
+        private final ThreadPoolExecutor m_executor;
+        private final AtomicInteger m_inFlight = new AtomicInteger();
+        private final AtomicLong m_completed = new AtomicLong();
+        private final AtomicLong m_executionTime = new AtomicLong();
+
+        Strategy(final String queueID, final String name, final int threads) {
+            final String prefix = DelayQueueHandler.class.getSimpleName() + "-" + queueID + "-" + name + "-";
+            m_executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger m_threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, prefix + m_threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            m_executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private String m_queueID;
+    private NoticeQueue m_noticeQueue;
+    private int m_status = START_PENDING;
+    private Thread m_thread;
+
+    private final DelayQueue<ScheduledTask> m_delayQueue = new DelayQueue<ScheduledTask>();
+    private final ConcurrentMap<String, Strategy> m_strategies = new ConcurrentHashMap<String, Strategy>();
+
+    private final AtomicInteger m_inFlight = new AtomicInteger();
+    private final AtomicLong m_scheduled = new AtomicLong();
+    private final AtomicLong m_started = new AtomicLong();
+    private final AtomicLong m_completed = new AtomicLong();
+    private final AtomicLong m_fireLatency = new AtomicLong();
+    private final AtomicLong m_maxFireLatency = new AtomicLong();
+    private final AtomicLong m_executionTime = new AtomicLong();
+
+    /** {@inheritDoc} */
+    @Override
+    public void setQueueID(final String queueID) {
+        m_queueID = queueID;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void setNoticeQueue(final NoticeQueue noticeQueue) {
+        if (m_noticeQueue != null) {
+            m_noticeQueue.setListener(null);
+        }
+        m_noticeQueue = noticeQueue;
+        if (noticeQueue != null) {
+            synchronized (noticeQueue) {
+                noticeQueue.setListener(this);
+            }
+            processQueue();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Not used, tasks fire when they are due.
+     */
+    @Override
+    public void setInterval(final String interval) {
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void taskQueued(final long sendTime, final NotificationTask task) {
+        m_scheduled.incrementAndGet();
+        m_delayQueue.add(new ScheduledTask(sendTime, task));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Moves any tasks that were put directly into the notice queue to the
+     * delay queue.
+     */
+    @Override
+    public void processQueue() {
+        final NoticeQueue noticeQueue = m_noticeQueue;
+        if (noticeQueue == null) {
+            return;
+        }
+        synchronized (noticeQueue) {
+            for (final Map.Entry<Long, List<NotificationTask>> entry : noticeQueue.entrySet()) {
+                for (final NotificationTask task : entry.getValue()) {
+                    taskQueued(entry.getKey(), task);
+                }
+            }
+            noticeQueue.clear();
+        }
+    }
+
+    /**
+     * Takes due tasks from the delay queue and dispatches them until the
+     * handler is stopped.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        for (;;) {
+            synchronized (this) {
+                // if stopped or stop pending then break out
+                if (m_status == STOP_PENDING || m_status == STOPPED) {
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (final InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                // if resume pending then change to running
+                if (m_status == RESUME_PENDING) {
+                    m_status = RUNNING;
+                }
+            }
+
+            final ScheduledTask scheduled;
+            try {
+                scheduled = m_delayQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                // exit
+                break;
+            }
+            if (scheduled != null) {
+                dispatch(scheduled);
+            }
+        }
+
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    private void dispatch(final ScheduledTask scheduled) {
+        final NotificationTask task = scheduled.m_task;
+        final Strategy strategy = getStrategy(task);
+
+        m_inFlight.incrementAndGet();
+        strategy.m_inFlight.incrementAndGet();
+        try {
+            strategy.m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final long start = System.currentTimeMillis();
+                    final long latency = Math.max(0, start - scheduled.m_sendTime);
+                    m_started.incrementAndGet();
+                    m_fireLatency.addAndGet(latency);
+                    updateMax(m_maxFireLatency, latency);
+                    try {
+                        task.run();
+                    } catch (final Throwable t) {
+                        LOG.error("Notification task {} failed", task, t);
+                    } finally {
+                        final long elapsed = System.currentTimeMillis() - start;
+                        m_executionTime.addAndGet(elapsed);
+                        strategy.m_executionTime.addAndGet(elapsed);
+                        strategy.m_completed.incrementAndGet();
+                        strategy.m_inFlight.decrementAndGet();
+                        m_completed.incrementAndGet();
+                        m_inFlight.decrementAndGet();
+                    }
+                }
+            });
+        } catch (final RuntimeException e) {
+            // only happens when the executor is shut down
+            LOG.warn("Unable to run notification task {}", task, e);
+            strategy.m_inFlight.decrementAndGet();
+            m_inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Tasks are assigned to a worker pool by the name of their first
+     * command; the pool is bounded more tightly if any of the task's
+     * commands runs an external program.
+     */
+    private Strategy getStrategy(final NotificationTask task) {
+        final Command[] commands = task.getCommands();
+        String name = "unknown";
+        boolean binary = false;
+        if (commands != null) {
+            for (final Command command : commands) {
+                if (command == null) {
+                    continue;
+                }
+                if ("unknown".equals(name) && command.getName() != null) {
+                    name = command.getName();
+                }
+                if ("true".equals(command.getBinary())) {
+                    binary = true;
+                }
+            }
+        }
+        final String key = binary ? name + "-binary" : name;
+
+        Strategy strategy = m_strategies.get(key);
+        if (strategy == null) {
+            final Strategy created = new Strategy(m_queueID, key, binary ? MAX_COMMAND_THREADS : MAX_STRATEGY_THREADS);
+            strategy = m_strategies.putIfAbsent(key, created);
+            if (strategy == null) {
+                strategy = created;
+            } else {
+                created.m_executor.shutdown();
+            }
+        }
+        return strategy;
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Starts the scheduler thread and registers the statistics with JMX.
+     */
+    @Override
+    public synchronized void start() {
+        m_status = STARTING;
+
+        // the workers of a previous run were shut down by stop()
+        m_strategies.clear();
+
+        m_thread = new Thread(this, this.getClass().getSimpleName() + "-" + m_queueID);
+        m_thread.start();
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to register JMX statistics for notifd queue {}", m_queueID, e);
+        }
+    }
+
+    /**
+     * Stops the scheduler.  Tasks that are already running are allowed to
+     * finish, tasks that are not due yet are dropped.
+     */
+    @Override
+    public synchronized void stop() {
+        if (m_status != STOPPED) {
+            m_status = STOP_PENDING;
+        }
+        notifyAll();
+        if (m_thread != null) {
+            m_thread.interrupt();
+        }
+        for (final Strategy strategy : m_strategies.values()) {
+            strategy.m_executor.shutdown();
+        }
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to unregister JMX statistics for notifd queue {}", m_queueID, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pause() {
+        if (m_status == RUNNING || m_status == RESUME_PENDING) {
+            m_status = PAUSE_PENDING;
+            notifyAll();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void resume() {
+        if (m_status == PAUSED || m_status == PAUSE_PENDING) {
+            m_status = RESUME_PENDING;
+            notifyAll();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return m_queueID;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getStatus() {
+        return m_status;
+    }
+
+    private ObjectName getObjectName() throws Exception {
+        return new ObjectName("OpenNMS:Name=Notifd,Queue=" + ObjectName.quote(m_queueID));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getQueueID() {
+        return m_queueID;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPending() {
+        return m_delayQueue.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getInFlight() {
+        return m_inFlight.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCompleted() {
+        return m_completed.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAverageFireLatency() {
+        final long started = m_started.get();
+        return started == 0 ? 0 : m_fireLatency.get() / started;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxFireLatency() {
+        return m_maxFireLatency.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAverageExecutionTime() {
+        final long completed = m_completed.get();
+        return completed == 0 ? 0 : m_executionTime.get() / completed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getStrategyStatistics() {
+        final Map<String, Strategy> strategies = new TreeMap<String, Strategy>(m_strategies);
+        final List<String> statistics = new ArrayList<String>(strategies.size());
+        for (final Map.Entry<String, Strategy> entry : strategies.entrySet()) {
+            final Strategy strategy = entry.getValue();
+            final long completed = strategy.m_completed.get();
+            statistics.add(entry.getKey() + ": completed=" + completed
+                           + ", inFlight=" + strategy.m_inFlight.get()
+                           + ", averageExecutionTime=" + (completed == 0 ? 0 : strategy.m_executionTime.get() / completed) + "ms");
+        }
+        return statistics.toArray(new String[statistics.size()]);
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+/**
+ * Statistics of a notifd queue handled by a {@link DelayQueueHandler}.
+ */
+public interface DelayQueueHandlerMBean {
+    /**
+     * @return the ID of the queue
+     */
+    public String getQueueID();
+
+    /**
+     * @return the number of tasks waiting for their send time
+     */
+    public int getPending();
+
+    /**
+     * @return the number of tasks due but not finished yet, including the
+     *         ones waiting for a free worker
+     */
+    public int getInFlight();
+
+    /**
+     * @return the total number of tasks scheduled since the queue was started
+     */
+    public long getScheduled();
+
+    /**
+     * @return the total number of tasks finished since the queue was started
+     */
+    public long getCompleted();
+
+    /**
+     * @return the average time between the send time of a task and the
+     *         start of its execution, in milliseconds
+     */
+    public long getAverageFireLatency();
+
+    /**
+     * @return the longest time between the send time of a task and the
+     *         start of its execution, in milliseconds
+     */
+    public long getMaxFireLatency();
+
+    /**
+     * @return the average time a task took to run its notification
+     *         commands, in milliseconds
+     */
+    public long getAverageExecutionTime();
+
+    /**
+     * @return for each command, the tasks run, the tasks in flight and the
+     *         average execution time in milliseconds
+     */
+    public String[] getStrategyStatistics();
+}
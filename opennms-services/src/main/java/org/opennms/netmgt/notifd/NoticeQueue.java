@@ -49,10 +49,40 @@ public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
      */
     private static final long serialVersionUID = 7463770974135218140L;
 
+    /**
+     * Receives tasks instead of the map, for queue handlers that do their
+     * own scheduling.
+     */
+    public interface Listener {
+        /**
+         * @param sendTime when the task is due, in milliseconds since the epoch
+         * @param task the task
+         */
+        public void taskQueued(long sendTime, NotificationTask task);
+    }
+
+    private transient volatile Listener m_listener;
+
+    /**
+     * Hand all tasks queued from now on to the listener instead of keeping
+     * them in this map.  Tasks already in the map stay there.
+     *
+     * @param listener a {@link org.opennms.netmgt.notifd.NoticeQueue.Listener} object, or null to go back to the map.
+     */
+    public void setListener(final Listener listener) {
+        m_listener = listener;
+    }
+
     /** {@inheritDoc} */
     @Override
     public NotificationTask putItem(Long key, NotificationTask value) {
-        NotificationTask ret = super.putItem(key, value);
+        final Listener listener = m_listener;
+        NotificationTask ret = null;
+        if (listener == null) {
+            ret = super.putItem(key, value);
+        } else {
+            listener.taskQueued(key, value);
+        }
 
         
         if (LOG.isDebugEnabled()) {
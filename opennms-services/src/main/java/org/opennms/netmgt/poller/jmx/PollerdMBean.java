@@ -74,4 +74,19 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return The maximum number of threads allowed in the poller's thread pool
      */
     public long getMaxPoolThreads();
+
+    /**
+     * @return The number of polling tasks waiting in the scheduler
+     */
+    public long getScheduledTasks();
+
+    /**
+     * @return The average time in milliseconds between a polling task becoming due and being started
+     */
+    public double getAverageScheduleLateness();
+
+    /**
+     * @return The largest time in milliseconds between a polling task becoming due and being started
+     */
+    public long getMaxScheduleLateness();
 }
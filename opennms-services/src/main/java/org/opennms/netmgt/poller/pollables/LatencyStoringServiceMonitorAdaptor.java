@@ -43,6 +43,7 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
@@ -290,7 +291,9 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
         final String hostAddress = InetAddressUtils.str(addr);
 		String path = repository + File.separator + hostAddress;
 
-        return RrdUtils.createRRD(hostAddress, path, rrdBaseName, m_pollerConfig.getStep(m_pkg), dsList, rraList);
+        final boolean created = RrdUtils.createRRD(hostAddress, path, rrdBaseName, m_pollerConfig.getStep(m_pkg), dsList, rraList);
+        ResourceTypeUtils.fileWritten(new File(path), rrdBaseName + RrdUtils.getExtension());
+        return created;
 
     }
 
@@ -30,6 +30,8 @@ package org.opennms.netmgt.queued.jmx;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 import org.opennms.netmgt.rrd.QueuingRrdStrategy;
+import org.opennms.netmgt.rrd.RrdCacheStatistics;
+import org.opennms.netmgt.rrd.RrdStrategy;
 
 /**
  * <p>Queued class.</p>
@@ -55,6 +57,21 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         return (QueuingRrdStrategy) getDaemon().getRrdStrategy();
     }
 
+    /**
+     * Returns the statistics of the RRD file cache if one is in use, either
+     * directly or as the delegate of the queuing strategy.
+     */
+    private RrdCacheStatistics getCachingStrategy() {
+        RrdStrategy<?,?> strategy = getDaemon().getRrdStrategy();
+        if (strategy instanceof QueuingRrdStrategy) {
+            strategy = ((QueuingRrdStrategy) strategy).getDelegate();
+        }
+        if (strategy instanceof RrdCacheStatistics) {
+            return (RrdCacheStatistics) strategy;
+        }
+        return null;
+    }
+
 
     /**
      * <p>getStatsStatus</p>
@@ -247,5 +264,60 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public int getRrdCacheOpenFiles() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0 : strategy.getOpenFiles();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRrdCacheHits() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0 : strategy.getCacheHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRrdCacheMisses() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0 : strategy.getCacheMisses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getRrdCacheHitRatio() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0.0 : strategy.getHitRatio();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRrdCacheFlushes() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0 : strategy.getFlushes();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRrdCacheFlushErrors() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0 : strategy.getFlushErrors();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getRrdCacheAverageFlushMillis() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0.0 : strategy.getAverageFlushMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getRrdCacheMaxFlushMillis() {
+        final RrdCacheStatistics strategy = getCachingStrategy();
+        return strategy == null ? 0.0 : strategy.getMaxFlushMillis();
+    }
 
 }
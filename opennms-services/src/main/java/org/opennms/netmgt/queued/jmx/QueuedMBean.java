@@ -115,5 +115,53 @@ public interface QueuedMBean extends BaseOnmsMBean {
 	 * @return a long.
 	 */
 	public long getStartTime();
+	/**
+	 * <p>getRrdCacheOpenFiles</p>
+	 *
+	 * @return the number of RRD files held open by the JRobin write-back cache
+	 */
+	public int getRrdCacheOpenFiles();
+	/**
+	 * <p>getRrdCacheHits</p>
+	 *
+	 * @return a long.
+	 */
+	public long getRrdCacheHits();
+	/**
+	 * <p>getRrdCacheMisses</p>
+	 *
+	 * @return a long.
+	 */
+	public long getRrdCacheMisses();
+	/**
+	 * <p>getRrdCacheHitRatio</p>
+	 *
+	 * @return a double.
+	 */
+	public double getRrdCacheHitRatio();
+	/**
+	 * <p>getRrdCacheFlushes</p>
+	 *
+	 * @return a long.
+	 */
+	public long getRrdCacheFlushes();
+	/**
+	 * <p>getRrdCacheFlushErrors</p>
+	 *
+	 * @return a long.
+	 */
+	public long getRrdCacheFlushErrors();
+	/**
+	 * <p>getRrdCacheAverageFlushMillis</p>
+	 *
+	 * @return a double.
+	 */
+	public double getRrdCacheAverageFlushMillis();
+	/**
+	 * <p>getRrdCacheMaxFlushMillis</p>
+	 *
+	 * @return a double.
+	 */
+	public double getRrdCacheMaxFlushMillis();
 
 }
@@ -38,8 +38,6 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -78,6 +76,11 @@ import org.springframework.transaction.support.TransactionTemplate;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * Updates are serialized per node ID using a fixed set of lock stripes, so
+ * events for different nodes are processed concurrently. Reads do not lock:
+ * category values come from the down time aggregates kept by the map and
+ * node values from the node's own services.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -100,6 +103,13 @@ public class DataManager implements AvailabilityService, InitializingBean {
 	@Autowired
 	private MonitoredServiceDao m_monitoredServiceDao;
 
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * Locks guarding the modifications of the nodes whose ID maps to the stripe
+	 */
+	private final Object[] m_nodeLocks = new Object[LOCK_STRIPES];
+
 	private class RTCNodeProcessor implements RowCallbackHandler {
 		RTCNodeKey m_currentKey = null;
 
@@ -201,10 +211,10 @@ public class DataManager implements AvailabilityService, InitializingBean {
 		m_map.add(rtcN);
 	}
 
-	private static void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
+	private void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
 
 		// add the category info to the node
-        rtcN.addCategory(cat.getLabel());
+        rtcN.addCategory(cat.getLabel(), m_map.getDownTimeAggregate(cat.getLabel()));
 
 		// Add node to category
 		cat.addNode(rtcN);
@@ -280,7 +290,19 @@ public class DataManager implements AvailabilityService, InitializingBean {
 		return args.toArray();
 	}
 
-    public DataManager() {};
+    public DataManager() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            m_nodeLocks[i] = new Object();
+        }
+    }
+
+    private static int getNodeStripe(int nodeid) {
+        return (nodeid & Integer.MAX_VALUE) % LOCK_STRIPES;
+    }
+
+    private Object getNodeLock(int nodeid) {
+        return m_nodeLocks[getNodeStripe(nodeid)];
+    }
 
     /**
      * Constructor. Parses categories from the categories.xml and populates them
@@ -312,7 +334,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
     	LOG.debug("Number of categories read: {}", m_categories.size());
 
     	// create data holder
-    	m_map = new RTCHashMap(30000);
+    	m_map = new RTCHashMap(30000, m_configFactory.getRollingWindow());
 
     	m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
 
@@ -343,7 +365,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service name
      */
-    public synchronized void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
+    public void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
         //
         // check the 'status' flag for the service
         //
@@ -404,18 +426,19 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void nodeLostService(int nodeid, InetAddress ip, String svcName, long t) {
+    public void nodeLostService(int nodeid, InetAddress ip, String svcName, long t) {
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a nodeLostService event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
-
-        // inform node
-        rtcN.nodeLostService(t);
+        synchronized (getNodeLock(nodeid)) {
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a nodeLostService event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
+            // inform node
+            rtcN.nodeLostService(t);
+        }
     }
 
     /**
@@ -428,9 +451,11 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void interfaceDown(int nodeid, InetAddress ip, long t) {
-        for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeLostService(t);
+    public void interfaceDown(int nodeid, InetAddress ip, long t) {
+        synchronized (getNodeLock(nodeid)) {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid, ip)) {
+                rtcN.nodeLostService(t);
+            }
         }
     }
 
@@ -442,9 +467,11 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void nodeDown(int nodeid, long t) {
-    	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeLostService(t);
+    public void nodeDown(int nodeid, long t) {
+        synchronized (getNodeLock(nodeid)) {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+                rtcN.nodeLostService(t);
+            }
         }
     }
 
@@ -456,9 +483,11 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void nodeUp(int nodeid, long t) {
-    	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeRegainedService(t);
+    public void nodeUp(int nodeid, long t) {
+        synchronized (getNodeLock(nodeid)) {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+                rtcN.nodeRegainedService(t);
+            }
         }
     }
 
@@ -472,9 +501,11 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void interfaceUp(int nodeid, InetAddress ip, long t) {
-        for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeRegainedService(t);
+    public void interfaceUp(int nodeid, InetAddress ip, long t) {
+        synchronized (getNodeLock(nodeid)) {
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid, ip)) {
+                rtcN.nodeRegainedService(t);
+            }
         }
     }
 
@@ -490,17 +521,19 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void nodeRegainedService(int nodeid, InetAddress ip, String svcName, long t) {
+    public void nodeRegainedService(int nodeid, InetAddress ip, String svcName, long t) {
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a nodeRegainedService event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
+        synchronized (getNodeLock(nodeid)) {
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a nodeRegainedService event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
-        // inform node
-        rtcN.nodeRegainedService(t);
+            // inform node
+            rtcN.nodeRegainedService(t);
+        }
     }
 
     /**
@@ -513,50 +546,40 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service that was deleted
      */
-    public synchronized void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
+    public void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
         // create lookup key
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
 
-        // lookup the node
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
+        synchronized (getNodeLock(nodeid)) {
+            // lookup the node
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
 
-            return;
-        }
-
-        //
-        // Go through from all the categories this node belongs to
-        // and delete the service
-        //
-        List<String> categories = rtcN.getCategories();
-        ListIterator<String> catIter = categories.listIterator();
-        while (catIter.hasNext()) {
-            String catlabel = (String) catIter.next();
-
-            RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
+                return;
+            }
 
-            // get nodes in this category
-            List<Integer> catNodes = cat.getNodes();
+            //
+            // Go through from all the categories this node belongs to
+            // and delete the service
+            //
+            for (String catlabel : rtcN.getCategories()) {
+                RTCCategory cat = m_categories.get(catlabel);
 
-            // check if the category contains this node
-            int nIndex = catNodes.indexOf(rtcN.getNodeID());
-            if (nIndex != -1) {
                 // remove from the category if it is the only service left.
-                if (m_map.getServiceCount(nodeid, catlabel) == 1) {
-                    catNodes.remove(nIndex);
+                if (cat.getNodes().contains(rtcN.getNodeID()) && m_map.getServiceCount(nodeid, catlabel) == 1) {
+                    cat.deleteNode(nodeid);
                     LOG.info("Removing node from category: {}", catlabel);
                 }
 
                 // let the node know that this category is out
-                catIter.remove();
+                rtcN.removeCategory(catlabel);
             }
-        }
 
-        // finally remove from map
-        
-        m_map.delete(rtcN);
+            // finally remove from map
 
+            m_map.delete(rtcN);
+        }
     }
     
     /**
@@ -564,7 +587,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void assetInfoChanged(int nodeid) {
+    public void assetInfoChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -586,7 +609,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void nodeCategoryMembershipChanged(int nodeid) {
+    public void nodeCategoryMembershipChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -616,16 +639,16 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *             if the database read or filtering the data against the
      *             category rule fails for some reason
      */
-    public synchronized void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
-    	
-    	for (RTCCategory cat : m_categories.values()) {
-			cat.deleteNode(nodeid);
-		}
-    	
-    	m_map.deleteNode(nodeid);
-    	
-    	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
-    	
+    public void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
+    	synchronized (getNodeLock(nodeid)) {
+    		for (RTCCategory cat : m_categories.values()) {
+    			cat.deleteNode(nodeid);
+    		}
+
+    		m_map.deleteNode(nodeid);
+
+    		populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
+    	}
     }
 
     /**
@@ -648,7 +671,25 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param newNodeId
      *            the node that the IP now belongs to
      */
-    public synchronized void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
+    public void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
+        final int oldStripe = getNodeStripe(oldNodeId);
+        final int newStripe = getNodeStripe(newNodeId);
+        if (oldStripe == newStripe) {
+            synchronized (m_nodeLocks[oldStripe]) {
+                reparentInterface(ip, oldNodeId, newNodeId);
+            }
+            return;
+        }
+
+        // always take the stripes in index order, whatever the node IDs
+        synchronized (m_nodeLocks[Math.min(oldStripe, newStripe)]) {
+            synchronized (m_nodeLocks[Math.max(oldStripe, newStripe)]) {
+                reparentInterface(ip, oldNodeId, newNodeId);
+            }
+        }
+    }
+
+    private void reparentInterface(InetAddress ip, int oldNodeId, int newNodeId) {
         // get all RTCNodes with the IP/old node ID
         for (RTCNode rtcN : m_map.getRTCNodes(oldNodeId, ip)) {
 
@@ -686,7 +727,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *         starting at current time
      */
     @Override
-    public synchronized double getValue(RTCCategory category, long curTime, long rollingWindow) {
+    public double getValue(RTCCategory category, long curTime, long rollingWindow) {
         return m_map.getValue(category.getLabel(), curTime, rollingWindow);
     }
 
@@ -706,7 +747,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *         starting at current time in the context of the passed category
      */
     @Override
-    public synchronized double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
+    public double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
         return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
     }
 
@@ -722,7 +763,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *         category
      */
     @Override
-    public synchronized int getServiceCount(int nodeid, RTCCategory category) {
+    public int getServiceCount(int nodeid, RTCCategory category) {
         return m_map.getServiceCount(nodeid, category.getLabel());
     }
 
@@ -738,7 +779,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *         passed category
      */
     @Override
-    public synchronized int getServiceDownCount(int nodeid, RTCCategory category) {
+    public int getServiceDownCount(int nodeid, RTCCategory category) {
         return m_map.getServiceDownCount(nodeid, category.getLabel());
     }
 
@@ -748,7 +789,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the categories
      */
     @Override
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
@@ -28,11 +28,10 @@
 
 package org.opennms.netmgt.rtc.datablock;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.opennms.netmgt.config.categories.Category;
 
@@ -54,7 +53,7 @@ public class RTCCategory extends Category {
     /**
      * The nodes list - list of node IDs
      */
-    private final List<Integer> m_nodes = Collections.synchronizedList(new ArrayList<Integer>());
+    private final CopyOnWriteArrayList<Integer> m_nodes = new CopyOnWriteArrayList<Integer>();
 
     /**
      * The default constructor - initializes the values
@@ -80,10 +79,7 @@ public class RTCCategory extends Category {
      *            the node to add
      */
     public void addNode(RTCNode node) {
-        Integer longnodeid = node.getNodeID();
-
-        if (!m_nodes.contains(longnodeid))
-            m_nodes.add(longnodeid);
+        m_nodes.addIfAbsent(node.getNodeID());
     }
 
     /**
@@ -93,9 +89,7 @@ public class RTCCategory extends Category {
      *            the node ID to add
      */
     public void addNode(int nodeid) {
-        if (!m_nodes.contains(nodeid)) {
-            m_nodes.add(nodeid);
-        }
+        m_nodes.addIfAbsent(nodeid);
     }
 
     /**
@@ -105,7 +99,7 @@ public class RTCCategory extends Category {
      *            the node ID to delete
      */
     public void deleteNode(int nodeid) {
-        m_nodes.remove(nodeid);
+        m_nodes.remove(Integer.valueOf(nodeid));
     }
 
     /**
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.opennms.netmgt.rtc.RTCUtils;
+
+/**
+ * The total down time of all services in a category over the rolling window,
+ * maintained incrementally as outages are added and closed.
+ *
+ * <p>
+ * The down time of a single outage within the window ending at T is
+ * piecewise linear in T, so the sum over all outages can be kept as a value at
+ * the time of the last read, the current slope and the future points in time
+ * at which the slope changes. Reading the value for a later time only
+ * has to apply the slope changes that have passed since the previous read.
+ * </p>
+ *
+ * <p>
+ * Reads for a different rolling window or for a time before the last read
+ * cannot be answered and return {@link Double#NaN}; callers fall back to
+ * summing the outages of the individual services.
+ * </p>
+ */
+public class RTCDownTimeAggregate {
+
+    private final long m_rollingWindow;
+
+    /**
+     * The time up to which m_downTime has been calculated
+     */
+    private long m_time;
+
+    /**
+     * The down time of all outages in the window ending at m_time
+     */
+    private long m_downTime = 0;
+
+    /**
+     * The change of m_downTime per millisecond right after m_time
+     */
+    private long m_slope = 0;
+
+    /**
+     * Future changes of m_slope, keyed by the time at which they happen
+     */
+    private final TreeMap<Long, Long> m_slopeChanges = new TreeMap<Long, Long>();
+
+    private int m_serviceCount = 0;
+
+    /**
+     * <p>Constructor for RTCDownTimeAggregate.</p>
+     *
+     * @param rollingWindow the rolling window in milliseconds
+     */
+    public RTCDownTimeAggregate(long rollingWindow) {
+        m_rollingWindow = rollingWindow;
+        m_time = System.currentTimeMillis();
+    }
+
+    /**
+     * Add the outages of a service that was added to the category.
+     *
+     * @param svcTimes the service times of the service
+     */
+    public synchronized void addService(RTCNodeSvcTimesList svcTimes) {
+        m_serviceCount++;
+        for (int i = 0; i < svcTimes.size(); i++) {
+            add(svcTimes.getLostTime(i), svcTimes.getRegainedTime(i), 1);
+        }
+    }
+
+    /**
+     * Remove the outages of a service that was removed from the category.
+     *
+     * @param svcTimes the service times of the service
+     */
+    public synchronized void removeService(RTCNodeSvcTimesList svcTimes) {
+        // the service times list drops outages that expired before now, so
+        // their contribution has to be zero here as well
+        advance(System.currentTimeMillis());
+
+        m_serviceCount--;
+        for (int i = 0; i < svcTimes.size(); i++) {
+            add(svcTimes.getLostTime(i), svcTimes.getRegainedTime(i), -1);
+        }
+    }
+
+    /**
+     * Add an outage of a service in the category.
+     *
+     * @param lostTime the time at which service was lost
+     * @param regainedTime the time at which service was regained, or -1
+     */
+    public synchronized void addOutage(long lostTime, long regainedTime) {
+        add(lostTime, regainedTime, 1);
+    }
+
+    /**
+     * Close a previously added open outage.
+     *
+     * @param lostTime the time at which service was lost
+     * @param regainedTime the time at which service was regained
+     */
+    public synchronized void closeOutage(long lostTime, long regainedTime) {
+        add(lostTime, -1, -1);
+        add(lostTime, regainedTime, 1);
+    }
+
+    /**
+     * Get the value (uptime) of the category in the last 'rollingWindow'
+     * starting at current time
+     *
+     * @param curTime the current time
+     * @param rollingWindow the window for which value is to be calculated
+     * @return the value (uptime), or {@link Double#NaN} if it cannot be
+     *         calculated from the aggregate
+     */
+    public synchronized double getValue(long curTime, long rollingWindow) {
+        if (rollingWindow != m_rollingWindow || curTime < m_time) {
+            return Double.NaN;
+        }
+        advance(curTime);
+        return RTCUtils.getOutagePercentage(m_downTime, rollingWindow, m_serviceCount);
+    }
+
+    /**
+     * <p>getServiceCount</p>
+     *
+     * @return the number of services in the category
+     */
+    public synchronized int getServiceCount() {
+        return m_serviceCount;
+    }
+
+    private void advance(long time) {
+        if (time <= m_time) {
+            return;
+        }
+        for (Iterator<Map.Entry<Long, Long>> it = m_slopeChanges.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, Long> change = it.next();
+            if (change.getKey() > time) {
+                break;
+            }
+            m_downTime += m_slope * (change.getKey() - m_time);
+            m_time = change.getKey();
+            m_slope += change.getValue();
+            it.remove();
+        }
+        m_downTime += m_slope * (time - m_time);
+        m_time = time;
+    }
+
+    /**
+     * Add (sign 1) or subtract (sign -1) the down time of one outage.
+     *
+     * Within the window ending at T, an outage from l to r grows from l until
+     * it is regained or fills the window at l + window, and shrinks from the
+     * later of both until it leaves the window at r + window. An open outage
+     * only grows until it fills the window.
+     */
+    private void add(long lostTime, long regainedTime, int sign) {
+        if (regainedTime < 0) {
+            m_downTime += sign * RTCNodeSvcTimesList.getDownTime(lostTime, -1, m_time, m_rollingWindow);
+            m_slope += sign * (m_time >= lostTime && m_time < lostTime + m_rollingWindow ? 1 : 0);
+            addSlopeChange(lostTime, sign);
+            addSlopeChange(lostTime + m_rollingWindow, -sign);
+            return;
+        }
+
+        final long filled = Math.min(regainedTime, lostTime + m_rollingWindow);
+        final long shrinking = Math.max(regainedTime, lostTime + m_rollingWindow);
+        final long left = regainedTime + m_rollingWindow;
+
+        long slope = 0;
+        if (m_time >= lostTime && m_time < filled) {
+            slope = 1;
+        } else if (m_time >= shrinking && m_time < left) {
+            slope = -1;
+        }
+
+        m_downTime += sign * RTCNodeSvcTimesList.getDownTime(lostTime, regainedTime, m_time, m_rollingWindow);
+        m_slope += sign * slope;
+        addSlopeChange(lostTime, sign);
+        addSlopeChange(filled, -sign);
+        addSlopeChange(shrinking, -sign);
+        addSlopeChange(left, sign);
+    }
+
+    private void addSlopeChange(long time, long change) {
+        // changes up to m_time are already part of m_slope
+        if (time <= m_time) {
+            return;
+        }
+        final Long current = m_slopeChanges.get(time);
+        final long updated = current == null ? change : current + change;
+        if (updated == 0) {
+            m_slopeChanges.remove(time);
+        } else {
+            m_slopeChanges.put(time, updated);
+        }
+    }
+}
@@ -31,11 +31,10 @@ package org.opennms.netmgt.rtc.datablock;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.opennms.netmgt.rtc.NodeNotInCategoryException;
 import org.opennms.netmgt.rtc.RTCUtils;
@@ -45,6 +44,10 @@ import org.opennms.netmgt.rtc.RTCUtils;
  * convenience methods to add and remove 'RTCNodes' with these values - each key
  * points to a list of 'RTCNode's
  *
+ * It also holds the down time aggregate of each category so that the value
+ * of a category can be read without visiting its nodes. Lookups and reads
+ * do not lock; callers serialize modifications of the same node ID.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -52,25 +55,51 @@ import org.opennms.netmgt.rtc.RTCUtils;
 // FIXME: 2011-05-18 Seth: OK it is less insane now... but still insane
 public class RTCHashMap {
 	
-    private final Map<RTCNodeKey,List<RTCNode>> m_map;
+    private final ConcurrentMap<RTCNodeKey,List<RTCNode>> m_map;
+
+    private final ConcurrentMap<String,RTCDownTimeAggregate> m_downTimes = new ConcurrentHashMap<String,RTCDownTimeAggregate>();
+
+    private final long m_rollingWindow;
 	
     /**
      * constructor
      *
      * @param initialCapacity a int.
+     * @param rollingWindow the rolling window of the category down time aggregates
      */
-    public RTCHashMap(int initialCapacity) {
-        m_map = new HashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
+    public RTCHashMap(int initialCapacity, long rollingWindow) {
+        m_map = new ConcurrentHashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
+        m_rollingWindow = rollingWindow;
     }
 
     private List<Integer> getNodeIDs() {
-    	List<Integer> nodes = new LinkedList<Integer>();
-    	for (Iterator<RTCNodeKey> it = m_map.keySet().iterator(); it.hasNext();) {
-			RTCNodeKey key = it.next();
-			nodes.add(key.getNodeID());
+    	List<Integer> nodes = new ArrayList<Integer>();
+    	for (RTCNodeKey key : m_map.keySet()) {
+    		// only the node ID keys, the others point to the same RTCNodes
+    		if (key.getIP() == null && key.getSvcName() == null) {
+    			nodes.add(key.getNodeID());
+    		}
 		}
     	return nodes;
     }
+
+    /**
+     * Get the down time aggregate for a category, creating it if necessary.
+     *
+     * @param catLabel the category label
+     * @return the down time aggregate of the category
+     */
+    public RTCDownTimeAggregate getDownTimeAggregate(String catLabel) {
+        RTCDownTimeAggregate downTime = m_downTimes.get(catLabel);
+        if (downTime == null) {
+            final RTCDownTimeAggregate created = new RTCDownTimeAggregate(m_rollingWindow);
+            downTime = m_downTimes.putIfAbsent(catLabel, created);
+            if (downTime == null) {
+                downTime = created;
+            }
+        }
+        return downTime;
+    }
     
     /**
      * Add the node with nodeid as key
@@ -88,7 +117,7 @@ public class RTCHashMap {
             nodesList.add(rtcN);
         } else {
             // add current node to list
-            nodesList = new ArrayList<RTCNode>();
+            nodesList = new CopyOnWriteArrayList<RTCNode>();
             nodesList.add(rtcN);
 
             // add list to map
@@ -114,7 +143,7 @@ public class RTCHashMap {
             nodesList.add(rtcN);
         } else {
             // add current node to list
-            nodesList = new ArrayList<RTCNode>();
+            nodesList = new CopyOnWriteArrayList<RTCNode>();
             nodesList.add(rtcN);
 
             // add list to map
@@ -203,6 +232,11 @@ public class RTCHashMap {
      * @return the value(uptime) for the node
      */
     public double getValue(String catLabel, long curTime, long rollingWindow) {
+        final double value = getDownTimeAggregate(catLabel).getValue(curTime, rollingWindow);
+        if (!Double.isNaN(value)) {
+            return value;
+        }
+
         // total outage time
         double outageTime = 0.0;
 
@@ -364,10 +398,8 @@ public class RTCHashMap {
 	 * @param nodeid a long.
 	 */
 	public void deleteNode(int nodeid) {
-	    // Construct a new ArrayList to contain the members of this collection
-	    // to avoid running into a java.util.ConcurrentModificationException
-	    // on the Collections.unmodifiableList() view.
-		for (RTCNode node : new ArrayList<RTCNode>(getRTCNodes(nodeid))) {
+		for (RTCNode node : getRTCNodes(nodeid)) {
+			node.clearCategories();
 			delete(node);
 		}
 	}
@@ -31,6 +31,8 @@ package org.opennms.netmgt.rtc.datablock;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.opennms.netmgt.rtc.NodeNotInCategoryException;
@@ -41,25 +43,26 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  * RTCNode is the main data unit for the RTCManager - these datablocks are
  * created initially as data is read from the database and later if a
  * 'nodeGainedService' is received - each node maintains its node id, ip
- * address, service name and a list of 'RTCNodeSvcTime's
+ * address, service name and a list of service lost/regained times
  * </p>
  *
  * <p>
  * Also, each node knows and maintains a list of categories that this tuple
- * belongs to
+ * belongs to, and keeps the down time aggregates of those categories up to
+ * date as service is lost and regained
  * </p>
  *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  * 
- * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTime
+ * @see org.opennms.netmgt.rtc.datablock.RTCDownTimeAggregate
  * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimesList
  */
 public class RTCNode {
     /**
      * The node ID.
      */
-    private int m_nodeID;
+    private volatile int m_nodeID;
 
     /**
      * The ip address of the interface of the node.
@@ -74,12 +77,12 @@ public class RTCNode {
     /**
      * List of the lost/regained service times for this node.
      */
-    private RTCNodeSvcTimesList m_svcTimesList;
+    private final RTCNodeSvcTimesList m_svcTimesList;
 
     /**
-     * List of the categories this node belongs to
+     * The categories this node belongs to and their down time aggregates
      */
-    private final List<String> m_categories = new ArrayList<String>();
+    private final Map<String, RTCDownTimeAggregate> m_categories = new ConcurrentHashMap<String, RTCDownTimeAggregate>();
 
     /**
      * <p>Constructor for RTCNode.</p>
@@ -121,15 +124,19 @@ public class RTCNode {
     }
 
     /**
-     * Add a new 'RTCNodeSvcTime' entry for this node.
+     * Add a new service time entry for this node.
      *
      * @param losttime
      *            time at which service was lost
      * @param regainedtime
      *            time at which service was regained
      */
-    public void addSvcTime(long losttime, long regainedtime) {
-        m_svcTimesList.addSvcTime(losttime, regainedtime);
+    public synchronized void addSvcTime(long losttime, long regainedtime) {
+        if (m_svcTimesList.addSvcTime(losttime, regainedtime)) {
+            for (RTCDownTimeAggregate downTime : m_categories.values()) {
+                downTime.addOutage(losttime, regainedtime);
+            }
+        }
     }
 
     /**
@@ -137,11 +144,13 @@ public class RTCNode {
      *
      * @param catLabel
      *            category label of the category this node has been added to
+     * @param downTime
+     *            the down time aggregate of the category
      */
-    public void addCategory(String catLabel) {
-        int index = m_categories.indexOf(catLabel);
-        if (index == -1) {
-            m_categories.add(catLabel);
+    public synchronized void addCategory(String catLabel, RTCDownTimeAggregate downTime) {
+        if (!m_categories.containsKey(catLabel)) {
+            m_categories.put(catLabel, downTime);
+            downTime.addService(m_svcTimesList);
         }
     }
 
@@ -151,11 +160,19 @@ public class RTCNode {
      * @param catLabel
      *            category label of the category this node has been added to
      */
-    public void removeCategory(String catLabel) {
-        int index = m_categories.indexOf(catLabel);
-        if (index != -1) {
-            m_categories.remove(catLabel);
+    public synchronized void removeCategory(String catLabel) {
+        RTCDownTimeAggregate downTime = m_categories.remove(catLabel);
+        if (downTime != null) {
+            downTime.removeService(m_svcTimesList);
+        }
+    }
 
+    /**
+     * Remove all categories from the node's context.
+     */
+    public synchronized void clearCategories() {
+        for (String catLabel : getCategories()) {
+            removeCategory(catLabel);
         }
     }
 
@@ -171,20 +188,17 @@ public class RTCNode {
         // i.e. is waiting for a regained service - if yes,
         // don't add anything
 
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() == -1) {
-                // last event was a 'lostService'
-                // ignore this event
-                return;
-            }
+        if (m_svcTimesList.isServiceDown()) {
+            // last event was a 'lostService'
+            // ignore this event
+            return;
         }
 
         // create a new entry
-        RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
-        m_svcTimesList.add(newStime);
+        m_svcTimesList.addSvcTime(t);
+        for (RTCDownTimeAggregate downTime : m_categories.values()) {
+            downTime.addOutage(t, -1);
+        }
     }
 
     /**
@@ -198,15 +212,21 @@ public class RTCNode {
     public synchronized void nodeRegainedService(long t) {
         int listsize = m_svcTimesList.size();
         if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() != -1) {
+            if (!m_svcTimesList.isServiceDown()) {
                 // last event was a 'regainedService'
                 // ignore this event
                 return;
             }
 
-            stime.setRegainedTime(t);
+            m_svcTimesList.setLastRegainedTime(t);
+
+            long regainedTime = m_svcTimesList.getRegainedTime(listsize - 1);
+            if (regainedTime != -1) {
+                long lostTime = m_svcTimesList.getLostTime(listsize - 1);
+                for (RTCDownTimeAggregate downTime : m_categories.values()) {
+                    downTime.closeOutage(lostTime, regainedTime);
+                }
+            }
         }
     }
 
@@ -245,20 +265,16 @@ public class RTCNode {
      * @return true if the node belongs to this category, false otherwise
      */
     public boolean belongsTo(String catLabel) {
-        if (m_categories.contains(catLabel)) {
-            return true;
-        } else {
-            return false;
-        }
+        return m_categories.containsKey(catLabel);
     }
 
     /**
      * Return the list of categories this node belongs to.
      *
-     * @return list of categories for the node.
+     * @return a copy of the list of categories for the node.
      */
     public List<String> getCategories() {
-        return m_categories;
+        return new ArrayList<String>(m_categories.keySet());
     }
 
     /**
@@ -275,11 +291,11 @@ public class RTCNode {
      * @return the total outage time for this node
      * @throws NodeNotInCategoryException 
      */
-    public long getDownTime(String cat, long curTime, long rollingWindow) throws NodeNotInCategoryException {
+    public synchronized long getDownTime(String cat, long curTime, long rollingWindow) throws NodeNotInCategoryException {
         // get the down time for this node in the context of the
         // category.
         // if the service is not in 'context', throw an exception
-        if (!m_categories.contains(cat)) {
+        if (!m_categories.containsKey(cat)) {
             throw new NodeNotInCategoryException();
         }
 
@@ -291,21 +307,14 @@ public class RTCNode {
      *
      * @return true if the service is currently down
      */
-    public boolean isServiceCurrentlyDown() {
-        int size = m_svcTimesList.size();
-        if (size == 0) {
-            return false;
-        }
-
-        // else get last entry
-        RTCNodeSvcTime svctime = (RTCNodeSvcTime) m_svcTimesList.get(size - 1);
-        if (svctime.getRegainedTime() != -1) {
+    public synchronized boolean isServiceCurrentlyDown() {
+        if (!m_svcTimesList.isServiceDown()) {
             // node has regained service - so service not currently down
             return false;
         }
 
         // getting here means the service losttime is the one to be returned
-        long svclosttime = svctime.getLostTime();
+        long svclosttime = m_svcTimesList.getLostTime(m_svcTimesList.size() - 1);
         if (svclosttime == -1) {
             // huh? how is it possible?
             return false;
@@ -321,8 +330,6 @@ public class RTCNode {
             .append(m_nodeID)
             .append(m_ip)
             .append(m_svcName)
-            .append(m_categories)
-            .append(m_svcTimesList)
             .toHashCode();
     }
 
@@ -28,8 +28,7 @@
 
 package org.opennms.netmgt.rtc.datablock;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,25 +37,39 @@ import org.slf4j.LoggerFactory;
  * List of service times. This contains a list of service lost/regained set/pair
  * for the RTCNode.
  *
- * Also maintains the outage/down time each time it is calculated and the time
- * from which this was calculated - this is done so when the outage time for a
- * window is calculated, the same calculations are not done on the node multiple
- * times.
+ * The lost and regained times are kept in two parallel primitive arrays in the
+ * order in which they were added; a regained time of -1 marks an outage that
+ * is still open.
  *
  * 'Expired' outages are removed during 'add' and 'getDownTime' operations.
  *
+ * This class is not thread-safe, access is guarded by the owning RTCNode.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
+public class RTCNodeSvcTimesList {
     private static final Logger LOG = LoggerFactory.getLogger(RTCNodeSvcTimesList.class);
-    private static final long serialVersionUID = 2606739258065019820L;
+
+    private static final int INITIAL_CAPACITY = 4;
 
     /**
-     * The time from which the current outtime 'm_outTime' is calculated
+     * The rolling window used to expire outages on 'add'
      */
     private final long m_rollingWindow;
 
+    /**
+     * Times at which service was lost
+     */
+    private long[] m_lostTimes = new long[INITIAL_CAPACITY];
+
+    /**
+     * Times at which service was regained, -1 if not yet regained
+     */
+    private long[] m_regainedTimes = new long[INITIAL_CAPACITY];
+
+    private int m_size = 0;
+
     /**
      * Remove expired outages. Remove all closed outages that are not in the the
      * last 'rollingWindow'
@@ -80,27 +93,46 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
         // the start of the rolling window
         long startTime = curTime - rollingWindow;
 
-        for (ListIterator<RTCNodeSvcTime> iter = listIterator(); iter.hasNext();) {
-            RTCNodeSvcTime svcTime = (RTCNodeSvcTime) iter.next();
-
-            // since new outages are added at the end, if this outage
-            // has not expired we can safely break from the loop
-            if (svcTime.getLostTime() >= startTime) {
-                break;
+        // since new outages are added at the end, only the outages
+        // that were lost before the window started can have expired
+        int kept = 0;
+        int i = 0;
+        for (; i < m_size && m_lostTimes[i] < startTime; i++) {
+            if (!hasExpired(m_regainedTimes[i], startTime)) {
+                m_lostTimes[kept] = m_lostTimes[i];
+                m_regainedTimes[kept] = m_regainedTimes[i];
+                kept++;
             }
+        }
 
-            if (svcTime.hasExpired(startTime)) {
-                iter.remove();
-            }
+        if (kept == i) {
+            return;
         }
+
+        System.arraycopy(m_lostTimes, i, m_lostTimes, kept, m_size - i);
+        System.arraycopy(m_regainedTimes, i, m_regainedTimes, kept, m_size - i);
+        m_size -= i - kept;
+    }
+
+    private static boolean hasExpired(long regainedTime, long startOfRollingWindow) {
+        // still down, or regained after the start of the rolling outage window
+        return regainedTime >= 0 && regainedTime < startOfRollingWindow;
+    }
+
+    private void append(long losttime, long regainedtime) {
+        if (m_size == m_lostTimes.length) {
+            m_lostTimes = Arrays.copyOf(m_lostTimes, m_size * 2);
+            m_regainedTimes = Arrays.copyOf(m_regainedTimes, m_size * 2);
+        }
+        m_lostTimes[m_size] = losttime;
+        m_regainedTimes[m_size] = regainedtime <= 0 ? -1 : regainedtime;
+        m_size++;
     }
 
     /**
      * Default constructor.
      */
     public RTCNodeSvcTimesList(long rollingWindow) {
-        super();
-
         m_rollingWindow = rollingWindow;
     }
 
@@ -111,18 +143,20 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
      *            time at which service was lost
      * @param regainedtime
      *            time at which service was regained
+     * @return false if the pair was rejected
      */
-    public void addSvcTime(long losttime, long regainedtime) {
+    public boolean addSvcTime(long losttime, long regainedtime) {
         // remove expired outages
         removeExpiredOutages();
 
         if (regainedtime > 0 && regainedtime < losttime) {
-            LOG.warn("RTCNodeSvcTimesList: Rejecting service time pair since regained time {}\tregainedtime in milliseconds: {}", regainedtime, "less than lost time -> losttime in milliseconds: {}", losttime);
+            LOG.warn("RTCNodeSvcTimesList: Rejecting service time pair since regained time {} is less than lost time {}", regainedtime, losttime);
 
-            return;
+            return false;
         }
 
-        addLast(new RTCNodeSvcTime(losttime, regainedtime));
+        append(losttime, regainedtime);
+        return true;
     }
 
     /**
@@ -135,7 +169,62 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
         // remove expired outages
         removeExpiredOutages();
 
-        addLast(new RTCNodeSvcTime(losttime));
+        append(losttime, -1);
+    }
+
+    /**
+     * Set the regained time of the last entry.
+     *
+     * @param t
+     *            the time at which service was regained
+     */
+    public void setLastRegainedTime(long t) {
+        final int last = m_size - 1;
+        if (t <= 0) {
+            m_regainedTimes[last] = -1;
+        } else if (t < m_lostTimes[last]) {
+            throw new IllegalArgumentException("Cannot set outage end time to value less than outage start time: " + t + " < " + m_lostTimes[last]);
+        } else {
+            m_regainedTimes[last] = t;
+        }
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of service times in the list
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * <p>getLostTime</p>
+     *
+     * @param index the index of the service time
+     * @return the time at which service was lost
+     */
+    public long getLostTime(int index) {
+        return m_lostTimes[index];
+    }
+
+    /**
+     * <p>getRegainedTime</p>
+     *
+     * @param index the index of the service time
+     * @return the time at which service was regained, or -1 if it is still down
+     */
+    public long getRegainedTime(int index) {
+        return m_regainedTimes[index];
+    }
+
+    /**
+     * Return true if the last entry in the list has not been regained yet.
+     *
+     * @return true if the service is currently down
+     */
+    public boolean isServiceDown() {
+        return m_size > 0 && m_regainedTimes[m_size - 1] == -1;
     }
 
     /**
@@ -155,10 +244,34 @@ public class RTCNodeSvcTimesList extends LinkedList<RTCNodeSvcTime> {
 
         long outTime = 0;
 
-        for (RTCNodeSvcTime svcTime : this) {
-            outTime += svcTime.getDownTime(curTime, rollingWindow);
+        for (int i = 0; i < m_size; i++) {
+            outTime += getDownTime(m_lostTimes[i], m_regainedTimes[i], curTime, rollingWindow);
         }
 
         return outTime;
     }
+
+    /**
+     * Return the downtime (difference between the regained and lost times) of
+     * a single outage in the last rolling window
+     *
+     * @param lostTime the time at which service was lost
+     * @param regainedTime the time at which service was regained, or -1
+     * @param curTime the end of the rolling window
+     * @param rollingWindow the length of the rolling window
+     * @return the downtime of the outage within the rolling window
+     */
+    static long getDownTime(long lostTime, long regainedTime, long curTime, long rollingWindow) {
+        // make sure the lost time is not later than current time!
+        if (curTime < lostTime) {
+            return 0;
+        }
+
+        // the start of the rolling window
+        long startTime = curTime - rollingWindow;
+
+        long end = (regainedTime < 0 || regainedTime >= curTime) ? curTime : regainedTime;
+        long start = lostTime < startTime ? startTime : lostTime;
+        return end > start ? end - start : 0;
+    }
 }
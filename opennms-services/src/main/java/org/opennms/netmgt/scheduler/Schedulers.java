@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the {@link Scheduler} used by a daemon.
+ *
+ * The implementation is chosen with the
+ * <code>org.opennms.netmgt.scheduler.&lt;daemon&gt;.type</code> system
+ * property, falling back to <code>org.opennms.netmgt.scheduler.type</code>.
+ * Valid values are <code>legacy</code> (the default) and
+ * <code>timingwheel</code>.  The timing wheel scheduler spreads initial
+ * schedules over <code>org.opennms.netmgt.scheduler.initialJitter</code>
+ * milliseconds.
+ */
+public abstract class Schedulers {
+
+    public static final String TYPE_LEGACY = "legacy";
+
+    public static final String TYPE_TIMING_WHEEL = "timingwheel";
+
+    private static final String PROPERTY_PREFIX = "org.opennms.netmgt.scheduler.";
+
+    /**
+     * <p>createScheduler</p>
+     *
+     * @param parent the daemon name, also used for the thread names
+     * @param maxSize the maximum number of threads running scheduled runnables
+     * @return a {@link org.opennms.netmgt.scheduler.Scheduler} object.
+     */
+    public static Scheduler createScheduler(final String parent, final int maxSize) {
+        final String type = System.getProperty(PROPERTY_PREFIX + parent.toLowerCase() + ".type", System.getProperty(PROPERTY_PREFIX + "type", TYPE_LEGACY));
+
+        if (TYPE_TIMING_WHEEL.equalsIgnoreCase(type)) {
+            final TimingWheelScheduler scheduler = new TimingWheelScheduler(parent, maxSize);
+            scheduler.setInitialJitter(Long.getLong(PROPERTY_PREFIX + "initialJitter", 0L));
+            return scheduler;
+        }
+        return new LegacyScheduler(parent, maxSize);
+    }
+
+    /**
+     * Returns the thread pool of the schedulers created by this class, or
+     * null for other implementations.
+     *
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
+     * @return the thread pool used to run the scheduled runnables
+     */
+    public static ExecutorService getRunner(final Scheduler scheduler) {
+        if (scheduler instanceof LegacyScheduler) {
+            return ((LegacyScheduler) scheduler).getRunner();
+        } else if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getRunner();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of runnables waiting to be run, or -1 if the
+     * scheduler does not keep track of it.
+     *
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
+     * @return the number of scheduled runnables
+     */
+    public static long getScheduled(final Scheduler scheduler) {
+        if (scheduler instanceof LegacyScheduler) {
+            return ((LegacyScheduler) scheduler).getScheduled();
+        } else if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getScheduled();
+        }
+        return -1;
+    }
+}
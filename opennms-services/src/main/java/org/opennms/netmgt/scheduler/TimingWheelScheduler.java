@@ -0,0 +1,461 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} built on a hashed timing wheel.
+ *
+ * Scheduled runnables are placed in the wheel bucket for the tick in which
+ * they become due, so scheduling is O(1) and the worker thread only looks at
+ * the runnables of the current tick instead of peeking at every queue.
+ * Runnables that are due but not yet ready are checked again after
+ * {@link #NOT_READY_DELAY} milliseconds, like the one second retry loop of
+ * {@link LegacyScheduler}.
+ *
+ * Runnables scheduled with an interval of 0 (the initial schedule of a
+ * service) can be spread randomly over an initial jitter window so that the
+ * first round of work does not all start at the same moment.
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /** Default duration of one wheel tick in milliseconds. */
+    public static final long DEFAULT_TICK_DURATION = 100L;
+
+    /** Default number of buckets in the wheel; must be a power of two. */
+    public static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    /** Delay before a due runnable that was not ready is checked again. */
+    public static final long NOT_READY_DELAY = 1000L;
+
+    private static final Random s_random = new Random();
+
+    private final ExecutorService m_runner;
+
+    private final long m_tickDuration;
+
+    private final List<Entry>[] m_wheel;
+
+    private final int m_mask;
+
+    /**
+     * Newly scheduled entries; only the worker thread moves them into the
+     * wheel so schedule() never blocks on the worker.
+     */
+    private final Queue<Entry> m_pending = new ConcurrentLinkedQueue<Entry>();
+
+    private final AtomicInteger m_scheduled = new AtomicInteger(0);
+
+    private final AtomicLong m_numTasksExecuted = new AtomicLong(0);
+
+    private final AtomicLong m_totalLateness = new AtomicLong(0);
+
+    private volatile long m_maxLateness = 0;
+
+    private volatile long m_initialJitter = 0;
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    private long m_startTime;
+
+    private long m_tick;
+
+    private static final class Entry {
+        private final ReadyRunnable m_runnable;
+        private long m_deadline;
+        private long m_remainingRounds;
+
+        Entry(final ReadyRunnable runnable, final long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+    }
+
+    /**
+     * <p>Constructor for TimingWheelScheduler.</p>
+     *
+     * @param parent the name used for the worker threads
+     * @param maxSize the maximum number of threads running scheduled runnables
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * <p>Constructor for TimingWheelScheduler.</p>
+     *
+     * @param parent the name used for the worker threads
+     * @param maxSize the maximum number of threads running scheduled runnables
+     * @param tickDuration the duration of one tick in milliseconds
+     * @param wheelSize the number of buckets in the wheel, a power of two
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickDuration, final int wheelSize) {
+        this(Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize)), tickDuration, wheelSize);
+    }
+
+    /**
+     * Creates a scheduler that dispatches to the given runner.
+     *
+     * @param runner the pool running the scheduled runnables
+     * @param tickDuration the duration of one tick in milliseconds
+     * @param wheelSize the number of buckets in the wheel, a power of two
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheelScheduler(final ExecutorService runner, final long tickDuration, final int wheelSize) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be greater than zero");
+        Assert.isTrue(wheelSize > 0 && (wheelSize & (wheelSize - 1)) == 0, "wheelSize must be a power of two");
+
+        m_status = START_PENDING;
+        m_runner = runner;
+        m_tickDuration = tickDuration;
+        m_wheel = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            m_wheel[i] = new ArrayList<Entry>();
+        }
+        m_mask = wheelSize - 1;
+        m_worker = null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(long interval, final ReadyRunnable runnable) {
+        if (interval == 0 && m_initialJitter > 0) {
+            interval = (long)(s_random.nextDouble() * m_initialJitter);
+        }
+
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        m_pending.add(new Entry(runnable, getCurrentTime() + interval));
+        m_scheduled.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /**
+     * Returns total number of runnables currently scheduled.
+     *
+     * @return the number of runnables waiting in the wheel
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /**
+     * Returns the average number of milliseconds between the time a runnable
+     * became due and the time it was handed to the thread pool.
+     *
+     * @return the average lateness in milliseconds
+     */
+    public double getAverageLateness() {
+        final long executed = m_numTasksExecuted.get();
+        return executed == 0 ? 0.0 : m_totalLateness.get() / (double) executed;
+    }
+
+    /**
+     * Returns the largest lateness seen so far.
+     *
+     * @return the maximum lateness in milliseconds
+     */
+    public long getMaxLateness() {
+        return m_maxLateness;
+    }
+
+    /**
+     * <p>getInitialJitter</p>
+     *
+     * @return the window in milliseconds over which initial schedules are spread
+     */
+    public long getInitialJitter() {
+        return m_initialJitter;
+    }
+
+    /**
+     * Spread runnables that are scheduled with an interval of 0 randomly over
+     * the given number of milliseconds.
+     *
+     * @param initialJitter the window in milliseconds, 0 to disable
+     */
+    public void setInitialJitter(final long initialJitter) {
+        m_initialJitter = initialJitter;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+
+    /**
+     * The main method of the scheduler. Each tick this moves newly scheduled
+     * runnables into the wheel and dispatches the due runnables of the
+     * current bucket to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        m_startTime = getCurrentTime();
+        m_tick = 0;
+
+        for (;;) {
+            synchronized (this) {
+
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                // if resume pending then change to running
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+
+                    m_status = RUNNING;
+                }
+            }
+
+            // wait for the end of the current tick
+            final long tickDeadline = m_startTime + (m_tick + 1) * m_tickDuration;
+            final long sleepTime = tickDeadline - getCurrentTime();
+            if (sleepTime > 0) {
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+
+            try {
+                transferPending();
+                expireBucket((int) (m_tick & m_mask));
+            } catch (RejectedExecutionException e) {
+                if (m_runner.isShutdown()) {
+                    break;
+                }
+                LOG.error("run: unable to dispatch scheduled runnable", e);
+            }
+            m_tick++;
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    private void transferPending() {
+        Entry entry;
+        while ((entry = m_pending.poll()) != null) {
+            final long dueTick = Math.max((entry.m_deadline - m_startTime) / m_tickDuration, m_tick);
+            entry.m_remainingRounds = (dueTick - m_tick) / m_wheel.length;
+            m_wheel[(int) (dueTick & m_mask)].add(entry);
+        }
+    }
+
+    /**
+     * Dispatches the due entries of a bucket.  If the runner rejects one, it
+     * and the entries that were not looked at yet are queued again with their
+     * current deadlines before the exception is passed on, so no runnable is
+     * lost and due ones are retried on the next tick instead of a full
+     * rotation later.
+     */
+    private void expireBucket(final int index) {
+        final List<Entry> bucket = m_wheel[index];
+        if (bucket.isEmpty()) {
+            return;
+        }
+        m_wheel[index] = new ArrayList<Entry>();
+
+        final long now = getCurrentTime();
+        for (int i = 0; i < bucket.size(); i++) {
+            final Entry entry = bucket.get(i);
+            if (entry.m_remainingRounds > 0) {
+                entry.m_remainingRounds--;
+                m_wheel[index].add(entry);
+            } else if (entry.m_runnable.isReady()) {
+                LOG.debug("run: found ready runnable {}", entry.m_runnable);
+
+                // count before handing off so the runnable never sees stale counters
+                m_scheduled.decrementAndGet();
+                m_numTasksExecuted.incrementAndGet();
+                try {
+                    m_runner.execute(entry.m_runnable);
+                } catch (final RejectedExecutionException e) {
+                    m_numTasksExecuted.decrementAndGet();
+                    m_scheduled.incrementAndGet();
+                    m_pending.addAll(bucket.subList(i, bucket.size()));
+                    throw e;
+                }
+
+                final long lateness = Math.max(0, now - entry.m_deadline);
+                m_totalLateness.addAndGet(lateness);
+                if (lateness > m_maxLateness) {
+                    m_maxLateness = lateness;
+                }
+            } else {
+                entry.m_deadline = now + NOT_READY_DELAY;
+                m_pending.add(entry);
+            }
+        }
+    }
+}
@@ -30,10 +30,7 @@ package org.opennms.netmgt.syslogd;
 
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
-import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
 
@@ -120,39 +117,29 @@ public class SyslogConnection implements Callable<Callable<?>> {
     }
 
     private static DatagramPacket copyPacket(final DatagramPacket packet) {
-        byte[] message = new byte[packet.getLength()];
-        System.arraycopy(packet.getData(), 0, message, 0, packet.getLength());
-        InetAddress addr = null;
-        try {
-            addr = InetAddress.getByAddress(packet.getAddress().getHostName(), packet.getAddress().getAddress());
-            DatagramPacket retPacket = new DatagramPacket(
-                                                          message,
-                                                          packet.getOffset(),
-                                                          packet.getLength(),
-                                                          addr,
-                                                          packet.getPort()
-                                                      );
-                                                      return retPacket;
-        } catch (UnknownHostException e) {
-            LOG.warn("unable to clone InetAddress object for {}", packet.getAddress());
-        }
-        return null;
+        // InetAddress is immutable, so it can be shared with the receiver; copying it
+        // through getHostName() used to cost a reverse lookup on the receiver thread
+        final byte[] message = new byte[packet.getLength()];
+        System.arraycopy(packet.getData(), packet.getOffset(), message, 0, packet.getLength());
+        return new DatagramPacket(
+            message,
+            0,
+            message.length,
+            packet.getAddress(),
+            packet.getPort()
+        );
     }
 
     private static DatagramPacket copyPacket(final InetSocketAddress source, final ByteBuffer buffer) {
-        byte[] message = new byte[0xffff];
-        int i = 0;
-        // Copy the buffer into the byte array
-        while (buffer.hasRemaining()) {
-            message[i++] = buffer.get();
-        }
-        DatagramPacket retPacket = new DatagramPacket(
+        // Copy only the bytes that were received, in one bulk operation
+        final byte[] message = new byte[buffer.remaining()];
+        buffer.get(message);
+        return new DatagramPacket(
             message,
             0,
-            i,
+            message.length,
             source.getAddress(),
             source.getPort()
         );
-        return retPacket;
     }
 }
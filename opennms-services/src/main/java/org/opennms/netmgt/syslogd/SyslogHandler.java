@@ -56,8 +56,14 @@ import org.slf4j.LoggerFactory;
 public final class SyslogHandler implements Fiber {
     private static final Logger LOG = LoggerFactory.getLogger(SyslogHandler.class);
 
-    private final boolean USE_NIO = false;
-    private final boolean USE_NETTY = false;
+    /**
+     * Selects the {@link SyslogReceiver} implementation: <code>javanet</code>
+     * (the default), <code>nio</code> or <code>netty</code>.
+     */
+    private static final String RECEIVER = System.getProperty("org.opennms.netmgt.syslogd.receiver", "javanet");
+
+    private final boolean USE_NIO = "nio".equalsIgnoreCase(RECEIVER);
+    private final boolean USE_NETTY = "netty".equalsIgnoreCase(RECEIVER);
 
     /**
      * The UDP receiver thread.
@@ -134,6 +140,9 @@ public final class SyslogHandler implements Fiber {
 
         m_HideMessages = m_syslogdConfig.getHideMessages();
 
+        // compile the match rules up front rather than on the first message
+        SyslogUeiMatcher.getInstance(m_UeiList, m_HideMessages);
+
         m_status = START_PENDING;
 
         m_dgSock = null;
@@ -57,14 +57,11 @@ final class SyslogProcessor implements EndOfTheWaterfall {
 
     private final boolean m_NewSuspectOnMessage;
 
-    private final String m_localAddr;
-
     private final ConvertToEvent m_event;
 
     public SyslogProcessor(ConvertToEvent event) {
         m_event = event;
         m_NewSuspectOnMessage = SyslogdConfigFactory.getInstance().getNewSuspectOnMessage();
-        m_localAddr = InetAddressUtils.getLocalHostName();
     }
 
     /**
@@ -103,7 +100,7 @@ final class SyslogProcessor implements EndOfTheWaterfall {
 
             if (m_NewSuspectOnMessage && !m_event.getEvent().hasNodeid()) {
                 LOG.trace("Syslogd: Found a new suspect {}", m_event.getEvent().getInterface());
-                sendNewSuspectEvent(m_localAddr, m_event.getEvent().getInterface());
+                sendNewSuspectEvent(InetAddressUtils.getLocalHostName(), m_event.getEvent().getInterface());
             }
 
         } catch (Throwable t) {
@@ -30,19 +30,21 @@ package org.opennms.netmgt.syslogd;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
-import org.opennms.core.concurrent.WaterfallExecutor;
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.config.syslogd.HideMessage;
 import org.opennms.netmgt.config.syslogd.UeiList;
@@ -60,6 +62,20 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
 
     private static final int SOCKET_TIMEOUT = 500;
 
+    /**
+     * Maximum number of received datagrams waiting to be parsed, which is
+     * also the number of receive buffers in the pool. When the parser
+     * threads fall this far behind, the receiver threads wait for a buffer
+     * to come back, which pushes back on the socket instead of growing the
+     * heap without bound.
+     */
+    private static final int QUEUE_SIZE = Integer.getInteger("org.opennms.netmgt.syslogd.queueSize", 1024);
+
+    /**
+     * Big enough to handle any sane syslog message.
+     */
+    private static final int BUFFER_SIZE = 0xffff;
+
     /**
      * The Fiber's status.
      */
@@ -88,6 +104,24 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
 
     private final ExecutorService m_socketReceivers;
 
+    private final int m_queueSize;
+
+    /**
+     * Received datagrams in arrival order, waiting for a parser thread.
+     */
+    private final BlockingQueue<Datagram> m_received;
+
+    /**
+     * Datagrams whose buffer was parsed and can be received into again.
+     */
+    private final BlockingQueue<Datagram> m_free;
+
+    /**
+     * Number of buffers allocated so far; buffers are allocated as the
+     * backlog grows, up to {@link #m_queueSize}.
+     */
+    private final AtomicInteger m_allocated = new AtomicInteger();
+
     /**
      * Construct a new receiver
      *
@@ -107,6 +141,13 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
         m_UeiList = ueiList;
         m_HideMessages = hideMessages;
 
+        m_queueSize = Math.max(1, QUEUE_SIZE);
+        m_received = new ArrayBlockingQueue<Datagram>(m_queueSize);
+        m_free = new ArrayBlockingQueue<Datagram>(m_queueSize);
+
+        // This thread pool parses the received datagrams and sends the events.
+        // Each thread takes datagrams off the ring and hands the buffer back
+        // as soon as the message is decoded.
         m_executor = new ThreadPoolExecutor(
             Runtime.getRuntime().availableProcessors() * 2,
             Runtime.getRuntime().availableProcessors() * 2,
@@ -187,67 +228,151 @@ class SyslogReceiverNioThreadPoolImpl implements SyslogReceiver {
             LOG.info("Failed to set the receive buffer to {}", Integer.MAX_VALUE, e);
         }
 
+        for (int i = 0; i < Runtime.getRuntime().availableProcessors() * 2; i++) {
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    parseDatagrams();
+                }
+            });
+        }
+
         for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
             m_socketReceivers.execute(new Runnable() {
+                @Override
                 public void run() {
-
-                    // set to avoid numerous tracing message
-                    boolean ioInterrupted = false;
-
-                    // Allocate a buffer that's big enough to handle any sane syslog message
-                    ByteBuffer buffer = ByteBuffer.allocate(0xffff);
-                    buffer.clear();
-
-                    // now start processing incoming requests
-                    while (!m_stop) {
-                        if (m_context.isInterrupted()) {
-                            LOG.debug("Thread context interrupted");
-                            break;
-                        }
-
-                        try {
-                            if (!ioInterrupted) {
-                                LOG.debug("Waiting on a datagram to arrive");
-                            }
-
-                            // Write the datagram into the ByteBuffer
-                            InetSocketAddress source = (InetSocketAddress)m_channel.receive(buffer);
-
-                            // Flip the buffer from write to read mode
-                            buffer.flip();
-
-                            WaterfallExecutor.waterfall(m_executor, new SyslogConnection(source, buffer, m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei));
-
-                            // Clear the buffer so that it's ready for writing again
-                            buffer.clear();
-
-                            // reset the flag
-                            ioInterrupted = false; 
-                        } catch (SocketTimeoutException e) {
-                            ioInterrupted = true;
-                            continue;
-                        } catch (InterruptedIOException e) {
-                            ioInterrupted = true;
-                            continue;
-                        } catch (ExecutionException e) {
-                            LOG.error("Task execution failed in {}", this.getClass().getSimpleName(), e);
-                            break;
-                        } catch (InterruptedException e) {
-                            LOG.error("Task interrupted in {}", this.getClass().getSimpleName(), e);
-                            break;
-                        } catch (IOException e) {
-                            LOG.error("An I/O exception occured on the datagram receipt port, exiting", e);
-                            break;
-                        }
-
-                    } // end while status OK
-
-                    LOG.debug("Thread context exiting");
+                    receiveDatagrams();
                 }
             });
         }
     }
 
+    private void receiveDatagrams() {
+        // set to avoid numerous tracing message
+        boolean ioInterrupted = false;
+
+        Datagram datagram = null;
+
+        // now start processing incoming requests
+        while (!m_stop) {
+            if (m_context.isInterrupted()) {
+                LOG.debug("Thread context interrupted");
+                break;
+            }
+
+            try {
+                if (datagram == null) {
+                    datagram = takeFreeDatagram();
+                    if (datagram == null) {
+                        continue;
+                    }
+                }
+
+                if (!ioInterrupted) {
+                    LOG.debug("Waiting on a datagram to arrive");
+                }
+
+                // Write the datagram into the pooled buffer
+                datagram.m_buffer.clear();
+                datagram.m_source = (InetSocketAddress)m_channel.receive(datagram.m_buffer);
+                if (datagram.m_source == null) {
+                    // nothing was available on a non-blocking channel
+                    continue;
+                }
+
+                // Flip the buffer from write to read mode
+                datagram.m_buffer.flip();
+
+                // Hand the buffer to the parser threads; there is always room
+                // since every datagram came out of the pool
+                m_received.put(datagram);
+                datagram = null;
+
+                // reset the flag
+                ioInterrupted = false; 
+            } catch (SocketTimeoutException e) {
+                ioInterrupted = true;
+                continue;
+            } catch (InterruptedIOException e) {
+                ioInterrupted = true;
+                continue;
+            } catch (InterruptedException e) {
+                LOG.error("Task interrupted in {}", this.getClass().getSimpleName(), e);
+                break;
+            } catch (IOException e) {
+                LOG.error("An I/O exception occured on the datagram receipt port, exiting", e);
+                break;
+            }
+
+        } // end while status OK
+
+        LOG.debug("Thread context exiting");
+    }
+
+    /**
+     * Takes a datagram out of the pool, allocating a new one while the pool
+     * is not full grown. Waits for a parser thread to hand one back
+     * otherwise.
+     *
+     * @return the datagram, or null if none came back in time
+     */
+    private Datagram takeFreeDatagram() throws InterruptedException {
+        final Datagram datagram = m_free.poll();
+        if (datagram != null) {
+            return datagram;
+        }
+        if (m_allocated.incrementAndGet() <= m_queueSize) {
+            return new Datagram();
+        }
+        m_allocated.decrementAndGet();
+        return m_free.poll(SOCKET_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void parseDatagrams() {
+        // keep going after a stop until the datagrams already received are parsed
+        while (true) {
+            final Datagram datagram;
+            try {
+                datagram = m_received.poll(SOCKET_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (datagram == null) {
+                if (m_stop) {
+                    break;
+                }
+                continue;
+            }
+
+            ConvertToEvent event = null;
+            try {
+                // The message is decoded straight out of the pooled buffer
+                event = ConvertToEvent.make(datagram.m_source.getAddress(), datagram.m_source.getPort(), datagram.m_buffer.array(), datagram.m_buffer.limit(), m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei);
+            } catch (final UnsupportedEncodingException e) {
+                LOG.debug("Failure to convert package", e);
+            } catch (final MessageDiscardedException e) {
+                LOG.debug("Message discarded, returning without enqueueing event.", e);
+            } catch (final Throwable t) {
+                LOG.error("Unexpected error converting a syslog message", t);
+            } finally {
+                datagram.m_source = null;
+                m_free.offer(datagram);
+            }
+
+            if (event != null) {
+                new SyslogProcessor(event).call();
+            }
+        }
+    }
+
+    /**
+     * A pooled receive buffer and the address the datagram in it came from.
+     */
+    private static final class Datagram {
+        private final ByteBuffer m_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private InetSocketAddress m_source;
+    }
+
     /**
      * <p>setLogPrefix</p>
      *
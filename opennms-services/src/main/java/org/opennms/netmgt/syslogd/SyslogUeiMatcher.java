@@ -0,0 +1,738 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled form of the syslogd <code>ueiList</code> and
+ * <code>hideMessage</code> configuration.
+ *
+ * <p>All regular expressions are compiled once, when the matcher is built.
+ * Every substring rule, together with the most selective literal that each
+ * regex rule requires, is loaded into a single Aho-Corasick automaton, so
+ * one pass over the message text tells us which substring rules match and
+ * which regex rules can possibly match. Only the surviving regex rules are
+ * evaluated, still in configuration order, so the first matching
+ * <code>ueiMatch</code> wins exactly as before.</p>
+ *
+ * <p>Instances are immutable apart from the hit counters and are safe to
+ * share between the syslog connection threads.</p>
+ */
+public final class SyslogUeiMatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogUeiMatcher.class);
+
+    /**
+     * Literals shorter than this are not worth a prefilter: they match
+     * nearly every message anyway.
+     */
+    private static final int MIN_PREFILTER_LENGTH = 3;
+
+    private static volatile SyslogUeiMatcher s_instance = null;
+
+    private final UeiList m_ueiList;
+    private final HideMessage m_hideMessage;
+
+    private final UeiRule[] m_ueiRules;
+    private final HideRule[] m_hideRules;
+
+    private final LiteralAutomaton m_ueiLiterals;
+    private final LiteralAutomaton m_hideLiterals;
+
+    private final AtomicLongArray m_ueiHits;
+    private final AtomicLong m_ueiMisses = new AtomicLong();
+    private final AtomicLong m_hideHits = new AtomicLong();
+    private final AtomicLong m_regexEvaluations = new AtomicLong();
+
+    /**
+     * Returns the matcher for the given configuration, building (and
+     * caching) a new one if the configuration objects have changed since
+     * the last call.  Configuration reloads always hand out new
+     * <code>UeiList</code>/<code>HideMessage</code> instances, so an
+     * identity check is all that is needed.
+     *
+     * @param ueiList the configured UEI matches, may be null
+     * @param hideMessage the configured hide matches, may be null
+     * @return a {@link org.opennms.netmgt.syslogd.SyslogUeiMatcher} object.
+     */
+    public static SyslogUeiMatcher getInstance(final UeiList ueiList, final HideMessage hideMessage) {
+        SyslogUeiMatcher matcher = s_instance;
+        if (matcher == null || matcher.m_ueiList != ueiList || matcher.m_hideMessage != hideMessage) {
+            matcher = new SyslogUeiMatcher(ueiList, hideMessage);
+            s_instance = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * Returns the most recently built matcher, or null if syslogd has not
+     * processed its configuration yet.
+     *
+     * @return a {@link org.opennms.netmgt.syslogd.SyslogUeiMatcher} object.
+     */
+    public static SyslogUeiMatcher getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Drops the cached matcher so the next call to
+     * {@link #getInstance(UeiList, HideMessage)} rebuilds it.
+     */
+    public static void invalidate() {
+        s_instance = null;
+    }
+
+    SyslogUeiMatcher(final UeiList ueiList, final HideMessage hideMessage) {
+        m_ueiList = ueiList;
+        m_hideMessage = hideMessage;
+
+        final List<UeiMatch> ueiMatches = ueiList == null ? Collections.<UeiMatch>emptyList() : ueiList.getUeiMatchCollection();
+        final List<HideMatch> hideMatches = hideMessage == null ? Collections.<HideMatch>emptyList() : hideMessage.getHideMatchCollection();
+
+        final Map<String,Integer> ueiFrequency = new HashMap<String,Integer>();
+        for (final UeiMatch uei : ueiMatches) {
+            if (uei.getMatch().getType().startsWith("regex")) {
+                countLiterals(uei.getMatch().getExpression(), ueiFrequency);
+            }
+        }
+        final LiteralAutomaton.Builder ueiLiterals = new LiteralAutomaton.Builder();
+        final List<UeiRule> ueiRules = new ArrayList<UeiRule>(ueiMatches.size());
+        for (final UeiMatch uei : ueiMatches) {
+            final UeiRule rule = UeiRule.compile(ueiRules.size(), uei, ueiFrequency, ueiLiterals);
+            if (rule != null) {
+                ueiRules.add(rule);
+            }
+        }
+
+        final Map<String,Integer> hideFrequency = new HashMap<String,Integer>();
+        for (final HideMatch hide : hideMatches) {
+            if ("regex".equals(hide.getMatch().getType())) {
+                countLiterals(hide.getMatch().getExpression(), hideFrequency);
+            }
+        }
+        final LiteralAutomaton.Builder hideLiterals = new LiteralAutomaton.Builder();
+        final List<HideRule> hideRules = new ArrayList<HideRule>(hideMatches.size());
+        for (final HideMatch hide : hideMatches) {
+            final HideRule rule = HideRule.compile(hide, hideFrequency, hideLiterals);
+            if (rule != null) {
+                hideRules.add(rule);
+            }
+        }
+
+        m_ueiRules = ueiRules.toArray(new UeiRule[ueiRules.size()]);
+        m_hideRules = hideRules.toArray(new HideRule[hideRules.size()]);
+        m_ueiLiterals = ueiLiterals.build();
+        m_hideLiterals = hideLiterals.build();
+        m_ueiHits = new AtomicLongArray(m_ueiRules.length);
+
+        LOG.debug("Compiled {} ueiMatch rules ({} literals) and {} hideMatch rules ({} literals)", m_ueiRules.length, m_ueiLiterals.size(), m_hideRules.length, m_hideLiterals.size());
+    }
+
+    /**
+     * Finds the first <code>ueiMatch</code> that applies to the message and
+     * applies its UEI and parameters to the event builder.
+     *
+     * @return true if a rule matched
+     * @throws MessageDiscardedException if the matching rule maps to the discard UEI
+     */
+    boolean applyUeiMatch(final SyslogMessage message, final String facilityTxt, final String priorityTxt, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+        if (m_ueiRules.length == 0) {
+            return false;
+        }
+
+        final String matchedText = message.getMatchedMessage();
+        final String text = matchedText != null ? matchedText : message.getFullText();
+        final BitSet literalHits = m_ueiLiterals.scan(text);
+
+        for (final UeiRule rule : m_ueiRules) {
+            if (rule.m_literal >= 0 && !literalHits.get(rule.m_literal)) {
+                continue;
+            }
+            if (rule.m_pattern == null && matchedText == null) {
+                continue;
+            }
+            if (!rule.matchesHeader(message, facilityTxt, priorityTxt)) {
+                continue;
+            }
+
+            final Matcher msgMat;
+            if (rule.m_pattern != null) {
+                m_regexEvaluations.incrementAndGet();
+                msgMat = rule.m_pattern.matcher(text);
+                if (!msgMat.find()) {
+                    LOG.trace("Message '{}' did not regex-match pattern '{}'", message.getMessage(), rule.m_pattern.pattern());
+                    continue;
+                }
+            } else {
+                msgMat = null;
+            }
+
+            m_ueiHits.incrementAndGet(rule.m_index);
+            rule.apply(msgMat, bldr, discardUei);
+            return true;
+        }
+
+        m_ueiMisses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns true if any <code>hideMatch</code> applies to the full text
+     * of the message.
+     */
+    boolean shouldHide(final String fullText) {
+        if (m_hideRules.length == 0) {
+            return false;
+        }
+
+        final BitSet literalHits = m_hideLiterals.scan(fullText);
+        for (final HideRule rule : m_hideRules) {
+            if (rule.m_literal >= 0 && !literalHits.get(rule.m_literal)) {
+                continue;
+            }
+            if (rule.m_pattern == null || rule.m_pattern.matcher(fullText).find()) {
+                m_hideHits.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>getUeiMatchCount</p>
+     *
+     * @return the number of compiled <code>ueiMatch</code> rules
+     */
+    public int getUeiMatchCount() {
+        return m_ueiRules.length;
+    }
+
+    /**
+     * <p>getUeiMatchHits</p>
+     *
+     * @param index the position of the rule in the compiled rule list
+     * @return the number of messages that were matched by the rule
+     */
+    public long getUeiMatchHits(final int index) {
+        return m_ueiHits.get(index);
+    }
+
+    /**
+     * <p>getUeiMatchHitCounts</p>
+     *
+     * @return the hit count of every rule, keyed by its UEI and expression,
+     *         in configuration order
+     */
+    public Map<String,Long> getUeiMatchHitCounts() {
+        final Map<String,Long> counts = new LinkedHashMap<String,Long>();
+        for (final UeiRule rule : m_ueiRules) {
+            counts.put(rule.m_index + ": " + rule.m_uei.getUei() + " " + rule.m_uei.getMatch().getExpression(), m_ueiHits.get(rule.m_index));
+        }
+        return counts;
+    }
+
+    /**
+     * <p>getTotalUeiMatchHits</p>
+     *
+     * @return the number of messages that were matched by any rule
+     */
+    public long getTotalUeiMatchHits() {
+        long total = 0;
+        for (int i = 0; i < m_ueiHits.length(); i++) {
+            total += m_ueiHits.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * <p>getUeiMatchMisses</p>
+     *
+     * @return the number of messages that matched no rule
+     */
+    public long getUeiMatchMisses() {
+        return m_ueiMisses.get();
+    }
+
+    /**
+     * <p>getRegexEvaluations</p>
+     *
+     * @return the number of regular expressions run after prefiltering
+     */
+    public long getRegexEvaluations() {
+        return m_regexEvaluations.get();
+    }
+
+    /**
+     * <p>getHideMatchHits</p>
+     *
+     * @return the number of messages that were hidden
+     */
+    public long getHideMatchHits() {
+        return m_hideHits.get();
+    }
+
+    /**
+     * Escapes that take no operand; any other escaped letter or digit makes
+     * {@link #requiredLiterals(String)} give up.
+     */
+    private static final String SINGLE_CHARACTER_ESCAPES = "dDsSwWhHvVbBAGZzRXntrfae";
+
+    private static Pattern compile(final String expression) {
+        try {
+            return Pattern.compile(expression, Pattern.MULTILINE);
+        } catch (final PatternSyntaxException pse) {
+            LOG.warn("Failed to compile regex pattern '{}'", expression, pse);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the literals that every match of the given regular expression
+     * must contain, or an empty list if none can be determined.  This is
+     * deliberately conservative: anything inside groups or character
+     * classes, anything followed by an optional quantifier, and any
+     * expression with top-level alternation or inline flags is ignored.
+     */
+    static List<String> requiredLiterals(final String expression) {
+        final List<String> literals = new ArrayList<String>();
+        if (expression == null || expression.contains("\\Q")) {
+            return literals;
+        }
+
+        final int len = expression.length();
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+
+        for (int i = 0; i < len; i++) {
+            final char c = expression.charAt(i);
+            switch (c) {
+            case '\\':
+                if (i + 1 >= len) {
+                    return Collections.emptyList();
+                }
+                final char next = expression.charAt(++i);
+                if (next >= '1' && next <= '9') {
+                    // back-reference, with as many digits as follow
+                    endRun(literals, run);
+                    while (i + 1 < len && Character.isDigit(expression.charAt(i + 1))) {
+                        i++;
+                    }
+                } else if (SINGLE_CHARACTER_ESCAPES.indexOf(next) >= 0) {
+                    // character class, anchor or control character
+                    endRun(literals, run);
+                } else if (Character.isLetterOrDigit(next)) {
+                    // escapes with an operand such as \x41, \u0041, \0101,
+                    // \cA, \p{Alpha} or \k<name>
+                    return Collections.emptyList();
+                } else if (depth == 0) {
+                    run.append(next);
+                }
+                break;
+            case '[':
+                endRun(literals, run);
+                i = skipCharacterClass(expression, i);
+                if (i < 0) {
+                    return Collections.emptyList();
+                }
+                break;
+            case '(':
+                if (i + 2 < len && expression.charAt(i + 1) == '?') {
+                    final char flag = expression.charAt(i + 2);
+                    if (Character.isLetter(flag) || flag == '-') {
+                        // inline flags such as (?i) change how literals match
+                        return Collections.emptyList();
+                    }
+                }
+                endRun(literals, run);
+                depth++;
+                break;
+            case ')':
+                depth--;
+                break;
+            case '|':
+                if (depth == 0) {
+                    return Collections.emptyList();
+                }
+                break;
+            case '?':
+            case '*':
+            case '{':
+                // the preceding atom is optional
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                endRun(literals, run);
+                if (c == '{') {
+                    final int close = expression.indexOf('}', i);
+                    if (close < 0) {
+                        return Collections.emptyList();
+                    }
+                    i = close;
+                }
+                break;
+            case '+':
+            case '.':
+            case '^':
+            case '$':
+                endRun(literals, run);
+                break;
+            default:
+                if (depth == 0) {
+                    run.append(c);
+                }
+                break;
+            }
+        }
+        endRun(literals, run);
+        return literals;
+    }
+
+    private static void endRun(final List<String> literals, final StringBuilder run) {
+        if (run.length() >= MIN_PREFILTER_LENGTH) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /**
+     * Counts how many rules require each literal, so that every rule can be
+     * prefiltered on its most selective literal rather than on a phrase
+     * shared by the whole rule set.
+     */
+    private static void countLiterals(final String expression, final Map<String,Integer> frequency) {
+        for (final String literal : new HashSet<String>(requiredLiterals(expression))) {
+            final Integer count = frequency.get(literal);
+            frequency.put(literal, count == null ? 1 : count + 1);
+        }
+    }
+
+    private static int prefilter(final String expression, final Map<String,Integer> frequency, final LiteralAutomaton.Builder literals) {
+        String best = null;
+        int bestCount = Integer.MAX_VALUE;
+        for (final String literal : requiredLiterals(expression)) {
+            final int count = frequency.get(literal);
+            if (count < bestCount || (count == bestCount && literal.length() > best.length())) {
+                best = literal;
+                bestCount = count;
+            }
+        }
+        return best == null ? -1 : literals.add(best);
+    }
+
+    private static int skipCharacterClass(final String expression, final int start) {
+        int i = start + 1;
+        if (i < expression.length() && expression.charAt(i) == '^') i++;
+        if (i < expression.length() && expression.charAt(i) == ']') i++;
+        for (; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipCharacterClass(expression, i);
+                if (i < 0) return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class UeiRule {
+        private final int m_index;
+        private final UeiMatch m_uei;
+        private final Pattern m_pattern;
+        private final int m_literal;
+        private final Pattern m_processPattern;
+        private final Pattern m_hostnamePattern;
+        private final Pattern m_hostaddrPattern;
+
+        private UeiRule(final int index, final UeiMatch uei, final Pattern pattern, final int literal, final Pattern processPattern, final Pattern hostnamePattern, final Pattern hostaddrPattern) {
+            m_index = index;
+            m_uei = uei;
+            m_pattern = pattern;
+            m_literal = literal;
+            m_processPattern = processPattern;
+            m_hostnamePattern = hostnamePattern;
+            m_hostaddrPattern = hostaddrPattern;
+        }
+
+        static UeiRule compile(final int index, final UeiMatch uei, final Map<String,Integer> frequency, final LiteralAutomaton.Builder literals) {
+            final String type = uei.getMatch().getType();
+            final String expression = uei.getMatch().getExpression();
+
+            final Pattern pattern;
+            final int literal;
+            if ("substr".equals(type)) {
+                pattern = null;
+                literal = literals.add(expression);
+            } else if (type.startsWith("regex")) {
+                pattern = SyslogUeiMatcher.compile(expression);
+                if (pattern == null) {
+                    return null;
+                }
+                literal = prefilter(expression, frequency, literals);
+            } else {
+                return null;
+            }
+
+            return new UeiRule(index, uei, pattern, literal,
+                               uei.getProcessMatch() == null ? null : SyslogUeiMatcher.compile(uei.getProcessMatch().getExpression()),
+                               uei.getHostnameMatch() == null ? null : SyslogUeiMatcher.compile(uei.getHostnameMatch().getExpression()),
+                               uei.getHostaddrMatch() == null ? null : SyslogUeiMatcher.compile(uei.getHostaddrMatch().getExpression()));
+        }
+
+        boolean matchesHeader(final SyslogMessage message, final String facilityTxt, final String priorityTxt) {
+            return matchAny(m_uei.getFacilityCollection(), facilityTxt)
+                && matchAny(m_uei.getSeverityCollection(), priorityTxt)
+                && matchFind(m_uei.getProcessMatch() != null, m_processPattern, message.getProcessName())
+                && matchFind(m_uei.getHostnameMatch() != null, m_hostnamePattern, message.getHostName())
+                && matchFind(m_uei.getHostaddrMatch() != null, m_hostaddrPattern, message.getHostAddress());
+        }
+
+        void apply(final Matcher msgMat, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+            final boolean traceEnabled = LOG.isTraceEnabled();
+            if (discardUei.equals(m_uei.getUei())) {
+                LOG.debug("Specified UEI '{}' is same as discard-uei, discarding this message.", m_uei.getUei());
+                throw new MessageDiscardedException();
+            }
+
+            if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on {} match, to : {}", m_uei.getMatch().getType(), m_uei.getUei());
+            bldr.setUei(m_uei.getUei());
+
+            if (msgMat == null || msgMat.groupCount() == 0) {
+                return;
+            }
+            if (m_uei.getMatch().isDefaultParameterMapping()) {
+                if (traceEnabled) LOG.trace("Doing default parameter mappings for this regex match.");
+                for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                    if (traceEnabled) LOG.trace("Added parm 'group{}' with value '{}' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
+                    bldr.addParam("group"+groupNum, msgMat.group(groupNum));
+                }
+            }
+            if (m_uei.getParameterAssignmentCount() > 0) {
+                if (traceEnabled) LOG.trace("Doing user-specified parameter assignments for this regex match.");
+                for (final ParameterAssignment assignment : m_uei.getParameterAssignmentCollection()) {
+                    final String parmName = assignment.getParameterName();
+                    String parmValue = msgMat.group(assignment.getMatchingGroup());
+                    parmValue = parmValue == null ? "" : parmValue;
+                    bldr.addParam(parmName, parmValue);
+                    if (traceEnabled) LOG.trace("Added parm '{}' with value '{}' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
+                }
+            }
+        }
+
+        private static boolean matchAny(final List<String> values, final String text) {
+            if (values.size() == 0) return true;
+            for (final String value : values) {
+                if (value.equalsIgnoreCase(text)) return true;
+            }
+            return false;
+        }
+
+        private static boolean matchFind(final boolean configured, final Pattern pattern, final String input) {
+            if (!configured) return true;
+            if (pattern == null || input == null) return false;
+            return pattern.matcher(input).find();
+        }
+    }
+
+    private static final class HideRule {
+        private final Pattern m_pattern;
+        private final int m_literal;
+
+        private HideRule(final Pattern pattern, final int literal) {
+            m_pattern = pattern;
+            m_literal = literal;
+        }
+
+        static HideRule compile(final HideMatch hide, final Map<String,Integer> frequency, final LiteralAutomaton.Builder literals) {
+            final String type = hide.getMatch().getType();
+            final String expression = hide.getMatch().getExpression();
+            if ("substr".equals(type)) {
+                return new HideRule(null, literals.add(expression));
+            } else if ("regex".equals(type)) {
+                final Pattern pattern = SyslogUeiMatcher.compile(expression);
+                if (pattern == null) {
+                    return null;
+                }
+                return new HideRule(pattern, prefilter(expression, frequency, literals));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A minimal Aho-Corasick automaton that reports which of a set of
+     * literals occur anywhere in a string, in a single pass.
+     */
+    static final class LiteralAutomaton {
+        private final Map<Character,Integer>[] m_goto;
+        private final int[] m_fail;
+        private final int[][] m_output;
+        private final int m_size;
+
+        private LiteralAutomaton(final Map<Character,Integer>[] gotoFunction, final int[] fail, final int[][] output, final int size) {
+            m_goto = gotoFunction;
+            m_fail = fail;
+            m_output = output;
+            m_size = size;
+        }
+
+        int size() {
+            return m_size;
+        }
+
+        BitSet scan(final String text) {
+            final BitSet found = new BitSet(m_size);
+            if (m_size == 0 || text == null) {
+                return found;
+            }
+            // empty literals are contained in every string
+            for (final int literal : m_output[0]) {
+                found.set(literal);
+            }
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                final Character c = Character.valueOf(text.charAt(i));
+                Integer next = m_goto[state].get(c);
+                while (next == null && state != 0) {
+                    state = m_fail[state];
+                    next = m_goto[state].get(c);
+                }
+                state = next == null ? 0 : next.intValue();
+                for (final int literal : m_output[state]) {
+                    found.set(literal);
+                }
+            }
+            return found;
+        }
+
+        static final class Builder {
+            private final Map<String,Integer> m_literals = new HashMap<String,Integer>();
+            private final List<Map<Character,Integer>> m_goto = new ArrayList<Map<Character,Integer>>();
+            private final List<List<Integer>> m_output = new ArrayList<List<Integer>>();
+
+            Builder() {
+                newState();
+            }
+
+            /**
+             * Adds a literal and returns its id; equal literals share an id.
+             */
+            int add(final String literal) {
+                final Integer existing = m_literals.get(literal);
+                if (existing != null) {
+                    return existing.intValue();
+                }
+                final int id = m_literals.size();
+                m_literals.put(literal, id);
+
+                int state = 0;
+                for (int i = 0; i < literal.length(); i++) {
+                    final Character c = Character.valueOf(literal.charAt(i));
+                    Integer next = m_goto.get(state).get(c);
+                    if (next == null) {
+                        next = newState();
+                        m_goto.get(state).put(c, next);
+                    }
+                    state = next.intValue();
+                }
+                m_output.get(state).add(id);
+                return id;
+            }
+
+            private int newState() {
+                m_goto.add(new HashMap<Character,Integer>());
+                m_output.add(new ArrayList<Integer>());
+                return m_goto.size() - 1;
+            }
+
+            @SuppressWarnings("unchecked")
+            LiteralAutomaton build() {
+                final int states = m_goto.size();
+                final int[] fail = new int[states];
+
+                // breadth-first, so every failure target is final before it is used
+                final LinkedList<Integer> queue = new LinkedList<Integer>();
+                for (final Integer child : m_goto.get(0).values()) {
+                    fail[child.intValue()] = 0;
+                    queue.add(child);
+                }
+                while (!queue.isEmpty()) {
+                    final int state = queue.removeFirst().intValue();
+                    for (final Map.Entry<Character,Integer> entry : m_goto.get(state).entrySet()) {
+                        final int child = entry.getValue().intValue();
+                        queue.add(child);
+
+                        int f = fail[state];
+                        Integer target = m_goto.get(f).get(entry.getKey());
+                        while (target == null && f != 0) {
+                            f = fail[f];
+                            target = m_goto.get(f).get(entry.getKey());
+                        }
+                        fail[child] = target == null ? 0 : target.intValue();
+                        m_output.get(child).addAll(m_output.get(fail[child]));
+                    }
+                }
+
+                final int[][] output = new int[states][];
+                for (int i = 0; i < states; i++) {
+                    final List<Integer> ids = m_output.get(i);
+                    output[i] = new int[ids.size()];
+                    for (int j = 0; j < ids.size(); j++) {
+                        output[i][j] = ids.get(j).intValue();
+                    }
+                }
+                return new LiteralAutomaton(m_goto.toArray(new Map[states]), fail, output, m_literals.size());
+            }
+        }
+    }
+}
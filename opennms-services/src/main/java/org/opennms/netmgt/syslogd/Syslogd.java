@@ -36,6 +36,7 @@ import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.netmgt.config.SyslogdConfigFactory;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
+import org.opennms.netmgt.dao.api.AbstractInterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -114,7 +115,7 @@ import org.slf4j.LoggerFactory;
 
         try {
             // clear out the known nodes
-            SyslogdIPMgrJDBCImpl.getInstance().dataSourceSync();
+            getIpMgr().dataSourceSync();
         } catch (SQLException e) {
             LOG.error("Failed to load known IP address list", e);
             throw new UndeclaredThrowableException(e);
@@ -139,6 +140,12 @@ import org.slf4j.LoggerFactory;
         // Also this enables the syslogd to act as
         // trapd and see New suspects.
 
+        // The interface to node cache shared with the other daemons is
+        // updated by eventd; only the private JDBC map needs the events.
+        if (AbstractInterfaceToNodeCache.getInstance() != null) {
+            return;
+        }
+
         try {
             new BroadcastEventProcessor();
         } catch (Throwable ex) {
@@ -179,6 +186,20 @@ import org.slf4j.LoggerFactory;
         return m_singleton;
     }
 
+    /**
+     * Returns the manager used to map syslog source addresses to nodes: the
+     * interface to node cache shared with the other daemons when the DAO
+     * context is loaded, a private JDBC backed map otherwise.
+     *
+     * @return a {@link org.opennms.netmgt.syslogd.SyslogdIPMgr} object.
+     */
+    static SyslogdIPMgr getIpMgr() {
+        if (AbstractInterfaceToNodeCache.getInstance() != null) {
+            return SyslogdIPMgrDaoImpl.getInstance();
+        }
+        return SyslogdIPMgrJDBCImpl.getInstance();
+    }
+
     /*
     * @return EventDao
      */
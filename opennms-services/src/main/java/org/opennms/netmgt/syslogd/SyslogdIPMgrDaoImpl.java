@@ -28,107 +28,52 @@
 
 package org.opennms.netmgt.syslogd;
 
-//import java.sql.ResultSet;
-import java.sql.SQLException;
-//import java.sql.Statement;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-//import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.InetAddressUtils;
-import org.opennms.netmgt.dao.api.IpInterfaceDao;
-import org.opennms.netmgt.model.OnmsIpInterface;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.opennms.netmgt.dao.api.AbstractInterfaceToNodeCache;
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 
 /**
- * This class represents a singular instance that is used to map trap IP
- * addresses to known nodes.
- *
- * @author <a href="mailto:joed@opennms.org">Johan Edstrom</a>
- * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
- * @author <a href="mailto:tarus@opennms.org">Tarus Balog </a>
- * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ * Maps syslog source addresses to nodes through the
+ * {@link InterfaceToNodeCache} shared with trapd and eventd.
  */
 final class SyslogdIPMgrDaoImpl implements SyslogdIPMgr{
-        
-    @Autowired
-    private IpInterfaceDao ipInt;
 
-    /**
-     * A Map of IP addresses and node IDs
-     */
-    private static Map<String,Long> m_knownips = new ConcurrentHashMap<String,Long>();
-    
+    private static final SyslogdIPMgr s_instance = new SyslogdIPMgrDaoImpl();
+
     public static SyslogdIPMgr getInstance() {
-    	return new SyslogdIPMgrDaoImpl();
+    	return s_instance;
+    }
+
+    private static InterfaceToNodeCache getCache() {
+        return AbstractInterfaceToNodeCache.getInstance();
     }
 
-    /**
-     * Clears and synchronizes the internal known IP address cache with the
-     * current information contained in the database. To synchronize the cache
-     * the method opens a new connection to the database, loads the address,
-     * and then closes it's connection.
-     *
-     * @throws java.sql.SQLException
-     *             Thrown if the connection cannot be created or a database
-     *             error occurs.
-     */
     @Override
-    public synchronized void dataSourceSync() throws SQLException {
-    	
-    	List<OnmsIpInterface> list = ipInt.findAll();
-    	
-    	m_knownips.clear();
-    	for (OnmsIpInterface one: list) {
-    		if (one != null) {
-    			m_knownips.put(InetAddressUtils.str(one.getIpAddress()), (long) one.getId());
-    		}
-    		
-    	}
-    	
+    public void dataSourceSync() {
+        getCache().dataSourceSync();
     }
 
-    /**
-     * Returns the nodeid for the IP Address
-     *
-     * @param addr The IP Address to query.
-     * @return The node ID of the IP Address if known.
-     */
     @Override
-    public synchronized long getNodeId(final String addr) {
+    public long getNodeId(final String addr) {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.get(addr));
+        return getCache().getNodeId(InetAddressUtils.getInetAddress(addr));
     }
 
-    /**
-     * Sets the IP Address and Node ID in the Map.
-     *
-     * @param addr   The IP Address to add.
-     * @param nodeid The Node ID to add.
-     * @return The nodeid if it existed in the map.
-     */
     @Override
     public long setNodeId(final String addr, final long nodeid) {
         if (addr == null || nodeid == -1)
             return -1;
 
-        return longValue(m_knownips.put(addr, nodeid));
+        return getCache().setNodeId(InetAddressUtils.getInetAddress(addr), (int) nodeid);
     }
 
-    /**
-     * Removes an address from the node ID map.
-     *
-     * @param addr The address to remove from the node ID map.
-     * @return The nodeid that was in the map.
-     */
     @Override
     public long removeNodeId(final String addr) {
         if (addr == null)
             return -1;
-        return longValue(m_knownips.remove(addr));
+        return getCache().removeNodeId(InetAddressUtils.getInetAddress(addr));
     }
 
     @Override
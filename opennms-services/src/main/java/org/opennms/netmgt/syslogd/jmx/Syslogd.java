@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.syslogd.jmx;
 
+import org.opennms.netmgt.syslogd.SyslogUeiMatcher;
+
 /**
  * <p>Syslogd class.</p>
  *
@@ -88,4 +90,39 @@ public class Syslogd implements SyslogdMBean {
     public String getStatusText() {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getUeiMatchCount() {
+        final SyslogUeiMatcher matcher = SyslogUeiMatcher.getInstance();
+        return matcher == null ? 0 : matcher.getUeiMatchCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getUeiMatchHits() {
+        final SyslogUeiMatcher matcher = SyslogUeiMatcher.getInstance();
+        return matcher == null ? 0 : matcher.getTotalUeiMatchHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getUeiMatchMisses() {
+        final SyslogUeiMatcher matcher = SyslogUeiMatcher.getInstance();
+        return matcher == null ? 0 : matcher.getUeiMatchMisses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getUeiMatchRegexEvaluations() {
+        final SyslogUeiMatcher matcher = SyslogUeiMatcher.getInstance();
+        return matcher == null ? 0 : matcher.getRegexEvaluations();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHideMatchHits() {
+        final SyslogUeiMatcher matcher = SyslogUeiMatcher.getInstance();
+        return matcher == null ? 0 : matcher.getHideMatchHits();
+    }
 }
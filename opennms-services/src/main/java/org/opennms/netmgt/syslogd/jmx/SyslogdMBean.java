@@ -37,4 +37,28 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface SyslogdMBean extends BaseOnmsMBean {
+    /**
+     * @return the number of compiled ueiMatch rules
+     */
+    public int getUeiMatchCount();
+
+    /**
+     * @return the number of messages that were matched by a ueiMatch rule
+     */
+    public long getUeiMatchHits();
+
+    /**
+     * @return the number of messages that matched no ueiMatch rule
+     */
+    public long getUeiMatchMisses();
+
+    /**
+     * @return the number of ueiMatch regular expressions evaluated after prefiltering
+     */
+    public long getUeiMatchRegexEvaluations();
+
+    /**
+     * @return the number of messages that were hidden by a hideMatch rule
+     */
+    public long getHideMatchHits();
 }
@@ -29,6 +29,8 @@
 package org.opennms.netmgt.collectd;
 
 import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.isNull;
@@ -137,7 +139,12 @@ public class SnmpAttributeTest extends TestCase {
         m_rrdStrategy.createFile(isA(Object.class), (Map<String, String>) isNull());
 
         expect(m_rrdStrategy.openFile(isA(String.class))).andReturn(new Object());
-        m_rrdStrategy.updateFile(isA(Object.class), isA(String.class), matches(".*:" + matchValue));
+        if (matchValue.length() > 15) {
+            // too long to pass as a double without losing precision, so it goes through as text
+            m_rrdStrategy.updateFile(isA(Object.class), isA(String.class), matches(".*:" + matchValue));
+        } else {
+            m_rrdStrategy.updateFile(isA(Object.class), isA(String.class), anyLong(), aryEq(new double[] { Double.parseDouble(matchValue) }));
+        }
         m_rrdStrategy.closeFile(isA(Object.class));
 
         m_mocks.replayAll();
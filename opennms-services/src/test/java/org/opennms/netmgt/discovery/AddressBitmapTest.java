@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+public class AddressBitmapTest {
+
+    @Test
+    public void testAddRemove() throws Exception {
+        final AddressBitmap bitmap = new AddressBitmap();
+        final InetAddress first = InetAddress.getByName("10.0.0.1");
+        final InetAddress last = InetAddress.getByName("255.255.255.255");
+        final InetAddress v6 = InetAddress.getByName("fe80::1");
+
+        assertTrue(bitmap.add(first));
+        assertFalse(bitmap.add(first));
+        assertTrue(bitmap.add(last));
+        assertTrue(bitmap.add(v6));
+        assertEquals(3, bitmap.size());
+
+        assertTrue(bitmap.contains(first));
+        assertTrue(bitmap.contains(last));
+        assertTrue(bitmap.contains(v6));
+        assertFalse(bitmap.contains(InetAddress.getByName("10.0.0.2")));
+        assertFalse(bitmap.contains(InetAddress.getByName("11.0.0.1")));
+        assertFalse(bitmap.contains(null));
+
+        assertTrue(bitmap.remove(first));
+        assertFalse(bitmap.remove(first));
+        assertFalse(bitmap.contains(first));
+        assertEquals(2, bitmap.size());
+    }
+
+    @Test
+    public void testTokenBucketPacing() throws Exception {
+        final TokenBucket bucket = new TokenBucket(200);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 60; i++) {
+            bucket.acquire();
+        }
+        final long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+        // 60 packets at 200 per second, less the initial permit
+        assertTrue("sweep was too fast: " + elapsedMillis + "ms", elapsedMillis >= 280);
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class BridgeForwardingTablesTest {
+
+    @Test
+    public void testMacConversion() {
+        assertEquals(0x0012a9f3c0ffL, BridgeForwardingTables.fromMac("0012a9f3c0ff"));
+        assertEquals("0012a9f3c0ff", BridgeForwardingTables.toMac(0x0012a9f3c0ffL));
+        assertEquals(-1L, BridgeForwardingTables.fromMac("0012A9F3C0FF"));
+        assertEquals(-1L, BridgeForwardingTables.fromMac("00:12:a9:f3:c0:ff"));
+        assertEquals(-1L, BridgeForwardingTables.fromMac(null));
+    }
+
+    @Test
+    public void testPutAndRemoveOlderThan() {
+        final BridgeForwardingTables tables = new BridgeForwardingTables();
+        for (int i = 0; i < 100; i++) {
+            tables.put(1, i % 4, BridgeForwardingTables.toMac(0x000c29000000L + i), i < 50 ? 1000L : 2000L);
+        }
+        tables.put(1, 5, "0012A9F3C0FF", 1000L);
+        tables.put(1, 0, BridgeForwardingTables.toMac(0x000c29000000L), 2000L);
+        assertEquals(101, tables.size());
+
+        assertTrue(tables.hasOlderThan(1, 1500L));
+        assertFalse(tables.hasOlderThan(1, 1000L));
+        assertFalse(tables.hasOlderThan(2, 1500L));
+
+        tables.removeOlderThan(1, 1500L);
+        assertEquals(51, tables.size());
+        assertFalse(tables.hasOlderThan(1, 1500L));
+        final Map<Integer, Set<String>> bft = tables.getForwardingTable(1);
+        assertEquals(4, bft.size());
+        assertTrue(bft.get(0).contains("000c29000000"));
+        assertFalse(bft.get(0).contains("000c29000004"));
+        assertTrue(bft.get(0).contains("000c29000060"));
+
+        tables.removeOlderThan(1, 3000L);
+        assertEquals(0, tables.size());
+        assertTrue(tables.getForwardingTable(1).isEmpty());
+    }
+
+    @Test
+    public void testGetSavedAndRemove() {
+        final BridgeForwardingTables tables = new BridgeForwardingTables();
+        tables.put(1, 1, "000000000001", 0L);
+        tables.put(1, 1, "000000000002", 0L);
+        tables.put(1, 2, "not-a-mac", 0L);
+        tables.put(2, 1, "000000000003", 0L);
+        assertEquals(4, tables.size());
+
+        final Set<String> macs = new HashSet<String>(Arrays.asList("000000000001", "000000000003", "not-a-mac"));
+        assertEquals(Collections.singleton("000000000001"), tables.getSaved(1, 1, macs));
+        assertEquals(Collections.singleton("not-a-mac"), tables.getSaved(1, 2, macs));
+        assertTrue(tables.getSaved(1, 3, macs).isEmpty());
+        assertTrue(tables.getSaved(3, 1, macs).isEmpty());
+
+        tables.remove(1);
+        assertEquals(1, tables.size());
+        assertTrue(tables.getForwardingTable(1).isEmpty());
+        assertEquals(Collections.singleton("000000000003"), tables.getSaved(2, 1, macs));
+        tables.remove(1);
+        assertEquals(1, tables.size());
+    }
+
+    @Test
+    public void testDomain() {
+        final BridgeForwardingTables tables = new BridgeForwardingTables();
+        tables.put(2, 1, "000000000001", 0L);
+        tables.put(2, 2, "000000000002", 0L);
+        tables.put(3, 1, "000000000002", 0L);
+        tables.put(3, 2, "000000000003", 0L);
+        tables.put(4, 1, "000000000004", 0L);
+        tables.put(5, 1, "not-a-mac", 0L);
+        tables.put(6, 1, "000000000006", 0L);
+
+        final Map<Integer, Set<String>> bft = new HashMap<Integer, Set<String>>();
+        bft.put(1, new HashSet<String>(Arrays.asList("000000000001", "not-a-mac")));
+
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3, 5)), tables.getDomain(1, bft, Collections.<Integer>emptySet()));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3, 5, 6)), tables.getDomain(1, bft, Collections.singleton(6)));
+        assertEquals(new HashSet<Integer>(Arrays.asList(4)), tables.getDomain(4, new HashMap<Integer, Set<String>>(), Collections.<Integer>emptySet()));
+    }
+}
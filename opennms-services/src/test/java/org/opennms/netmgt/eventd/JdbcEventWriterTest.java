@@ -29,11 +29,16 @@
 package org.opennms.netmgt.eventd;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opennms.core.test.db.PopulatedTemporaryDatabaseTestCase;
 import org.opennms.netmgt.dao.mock.JdbcEventdServiceManager;
 import org.opennms.netmgt.eventd.processor.JdbcEventWriter;
 import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventProcessorException;
 import org.opennms.netmgt.mock.EventUtilJdbcImpl;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.snmp.SnmpUtils;
@@ -64,6 +69,7 @@ public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
         m_jdbcEventWriter.setEventUtil(m_eventUtil);
         m_jdbcEventWriter.setDataSource(getDataSource());
         m_jdbcEventWriter.setGetNextIdString("SELECT nextval('eventsNxtId')");
+        m_jdbcEventWriter.setGetNextIdBlockString("SELECT nextval('eventsNxtId') FROM generate_series(1, ?)");
         m_jdbcEventWriter.afterPropertiesSet();
     }
 
@@ -77,6 +83,85 @@ public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
         assertEquals(1, nextId);
     }
 
+    public void testNextEventIdBlock() throws Exception {
+        m_jdbcEventWriter.process(null, new EventBuilder("testUei", "testSource").setLogDest("logndisplay").getEvent());
+        m_jdbcEventWriter.process(null, new EventBuilder("testUei", "testSource").setLogDest("logndisplay").getEvent());
+
+        assertEquals(2, jdbcTemplate.queryForInt("SELECT count(DISTINCT eventId) FROM events"));
+        assertEquals(2L, m_jdbcEventWriter.getEventsPersisted());
+        assertEquals(0, m_jdbcEventWriter.getStagedEventCount());
+    }
+
+    public void testWriteBatch() throws Exception {
+        m_jdbcEventWriter.setBatchDelay(1000);
+
+        final List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 5; i++) {
+            events.add(new EventBuilder("testUei", "testSource").setLogDest("logndisplay").getEvent());
+        }
+        assertEquals(0, processConcurrently(events));
+
+        assertEquals(5, jdbcTemplate.queryForInt("SELECT count(DISTINCT eventId) FROM events"));
+        assertEquals(5L, m_jdbcEventWriter.getEventsPersisted());
+        assertEquals(1L, m_jdbcEventWriter.getBatchesFlushed());
+        assertEquals(5, m_jdbcEventWriter.getLastBatchSize());
+        for (final Event event : events) {
+            assertEquals(1, jdbcTemplate.queryForInt("SELECT count(*) FROM events WHERE eventId = ?", event.getDbid()));
+        }
+    }
+
+    public void testBatchFailureFallsBackToSingleInserts() throws Exception {
+        m_jdbcEventWriter.setBatchDelay(1000);
+
+        final List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 5; i++) {
+            events.add(new EventBuilder("testUei", "testSource").setLogDest("logndisplay").getEvent());
+        }
+        // eventSource is not nullable, so this event fails the batch
+        events.get(2).setSource(null);
+
+        assertEquals(1, processConcurrently(events));
+
+        assertEquals(4, jdbcTemplate.queryForInt("SELECT count(*) FROM events"));
+        assertEquals(4L, m_jdbcEventWriter.getEventsPersisted());
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT count(*) FROM events WHERE eventId = ?", events.get(2).getDbid()));
+        assertEquals(0, m_jdbcEventWriter.getStagedEventCount());
+    }
+
+    /**
+     * Hands each event to the writer on its own thread, the way the eventd
+     * handler threads do, so that they are staged into one batch.
+     *
+     * @return the number of events that failed
+     */
+    private int processConcurrently(final List<Event> events) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (final Event event : events) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        m_jdbcEventWriter.process(null, event);
+                    } catch (final InterruptedException e) {
+                        failures.incrementAndGet();
+                    } catch (final EventProcessorException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return failures.get();
+    }
+
     /**
      * Tests writing nulls to postgres db and the db encoding.
      * @throws SQLException
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.notificationCommands.Command;
+
+public class DelayQueueHandlerTest {
+
+    private final List<String> m_ran = new CopyOnWriteArrayList<String>();
+
+    private NoticeQueue m_noticeQueue;
+
+    private DelayQueueHandler m_handler;
+
+    private class RecordingTask extends NotificationTask {
+        private final String m_name;
+        private final Command[] m_commands;
+        private final CountDownLatch m_block;
+
+        RecordingTask(final String name, final long sendTime, final String command, final boolean binary, final CountDownLatch block) {
+            super(null, null, sendTime, new HashMap<String, String>(), Collections.<NotificationTask>emptyList(), null);
+            m_name = name;
+            final Command c = new Command();
+            c.setName(command);
+            c.setBinary(binary ? "true" : "false");
+            m_commands = new Command[] { c };
+            m_block = block;
+        }
+
+        @Override
+        public Command[] getCommands() {
+            return m_commands;
+        }
+
+        @Override
+        public void run() {
+            if (m_block != null) {
+                try {
+                    m_block.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            m_ran.add(m_name);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        m_noticeQueue = new NoticeQueue();
+        m_handler = new DelayQueueHandler();
+        m_handler.setQueueID("test");
+        m_handler.setNoticeQueue(m_noticeQueue);
+        m_handler.setInterval("20s");
+        m_handler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_handler.stop();
+    }
+
+    private void queue(final RecordingTask task) {
+        synchronized (m_noticeQueue) {
+            m_noticeQueue.putItem(task.getSendTime(), task);
+        }
+    }
+
+    private void waitFor(final int count) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 10000;
+        while (m_ran.size() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testTasksFireWhenDue() throws Exception {
+        final long now = System.currentTimeMillis();
+        queue(new RecordingTask("later", now + 300, "javaEmail", false, null));
+        queue(new RecordingTask("now", now, "javaEmail", false, null));
+
+        assertTrue("tasks go to the handler, not the map", m_noticeQueue.isEmpty());
+
+        waitFor(1);
+        assertEquals("[now]", m_ran.toString());
+        assertEquals(1, m_handler.getPending());
+
+        waitFor(2);
+        assertEquals("[now, later]", m_ran.toString());
+        assertTrue("the later task should not fire early", System.currentTimeMillis() - now >= 300);
+        assertEquals(2, m_handler.getScheduled());
+    }
+
+    @Test
+    public void testSlowCommandDoesNotBlockOthers() throws Exception {
+        final CountDownLatch block = new CountDownLatch(1);
+        final long now = System.currentTimeMillis();
+        queue(new RecordingTask("slow", now, "pageScript", true, block));
+        queue(new RecordingTask("mail", now, "javaEmail", false, null));
+
+        waitFor(1);
+        assertEquals("[mail]", m_ran.toString());
+        assertEquals(1, m_handler.getInFlight());
+
+        block.countDown();
+        waitFor(2);
+        assertEquals("[mail, slow]", m_ran.toString());
+        assertEquals(2, m_handler.getStrategyStatistics().length);
+    }
+
+    @Test
+    public void testTasksQueuedBeforeTheHandlerAreMoved() throws Exception {
+        m_handler.stop();
+
+        final NoticeQueue noticeQueue = new NoticeQueue();
+        final RecordingTask task = new RecordingTask("early", System.currentTimeMillis(), "javaEmail", false, null);
+        noticeQueue.putItem(task.getSendTime(), task);
+
+        m_handler = new DelayQueueHandler();
+        m_handler.setQueueID("test");
+        m_handler.setNoticeQueue(noticeQueue);
+        m_handler.start();
+
+        waitFor(1);
+        assertEquals("[early]", m_ran.toString());
+        assertTrue(noticeQueue.isEmpty());
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.rtc.NodeNotInCategoryException;
+import org.opennms.netmgt.rtc.RTCUtils;
+
+public class RTCDownTimeAggregateTest {
+    private static final long WINDOW = 10000L;
+    private static final String CATEGORY = "Test";
+
+    private RTCDownTimeAggregate m_downTime;
+    private List<RTCNode> m_nodes;
+    private long m_base;
+
+    @Before
+    public void setUp() {
+        m_downTime = new RTCDownTimeAggregate(WINDOW);
+        m_base = System.currentTimeMillis() + 1000L;
+        m_nodes = new ArrayList<RTCNode>();
+        for (int i = 1; i <= 3; i++) {
+            final RTCNode node = new RTCNode(i, InetAddress.getLoopbackAddress(), "ICMP", WINDOW);
+            node.addCategory(CATEGORY, m_downTime);
+            m_nodes.add(node);
+        }
+    }
+
+    @Test
+    public void testMatchesServiceTimes() throws Exception {
+        final Random random = new Random(42);
+        long time = m_base;
+        for (int i = 0; i < 2000; i++) {
+            time += random.nextInt(2500);
+            final RTCNode node = m_nodes.get(random.nextInt(m_nodes.size()));
+            switch (random.nextInt(3)) {
+            case 0:
+                node.nodeLostService(time);
+                break;
+            case 1:
+                node.nodeRegainedService(time);
+                break;
+            default:
+                // a historic outage, as read from the database
+                final long lost = time - random.nextInt((int)WINDOW * 2);
+                node.addSvcTime(lost, lost + random.nextInt(5000));
+                break;
+            }
+            assertEquals("after event " + i, getExpectedValue(time), m_downTime.getValue(time, WINDOW), 0.0001);
+        }
+    }
+
+    @Test
+    public void testRemoveService() throws Exception {
+        final RTCNode node = m_nodes.get(0);
+        node.nodeLostService(m_base);
+        node.nodeRegainedService(m_base + 4000L);
+        m_nodes.get(1).nodeLostService(m_base + 2000L);
+        assertEquals(getExpectedValue(m_base + 5000L), m_downTime.getValue(m_base + 5000L, WINDOW), 0.0001);
+
+        node.removeCategory(CATEGORY);
+        m_nodes.remove(node);
+        assertEquals(2, m_downTime.getServiceCount());
+        assertEquals(getExpectedValue(m_base + 6000L), m_downTime.getValue(m_base + 6000L, WINDOW), 0.0001);
+
+        for (RTCNode remaining : m_nodes) {
+            remaining.clearCategories();
+        }
+        assertEquals(0, m_downTime.getServiceCount());
+        assertEquals(100.0, m_downTime.getValue(m_base + 7000L, WINDOW), 0.0001);
+    }
+
+    @Test
+    public void testUnsupportedReads() {
+        m_downTime.getValue(m_base, WINDOW);
+        assertTrue(Double.isNaN(m_downTime.getValue(m_base - 1, WINDOW)));
+        assertTrue(Double.isNaN(m_downTime.getValue(m_base, WINDOW * 2)));
+    }
+
+    private double getExpectedValue(final long time) throws NodeNotInCategoryException {
+        long downTime = 0;
+        for (RTCNode node : m_nodes) {
+            downTime += node.getDownTime(CATEGORY, time, WINDOW);
+        }
+        return RTCUtils.getOutagePercentage(downTime, WINDOW, m_nodes.size());
+    }
+}
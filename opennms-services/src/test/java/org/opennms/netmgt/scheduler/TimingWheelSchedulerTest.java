@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.fiber.Fiber;
+import org.opennms.core.test.MockLogAppender;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler m_scheduler;
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+        // a tiny wheel so that the tests also cover multiple rounds
+        m_scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 2, 10L, 4);
+        m_scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    @Test
+    public void testRunsAfterInterval() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.currentTimeMillis();
+
+        m_scheduler.schedule(200L, new LatchRunnable(latch));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 200L);
+        assertEquals(1, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testRunsInDeadlineOrder() throws Exception {
+        final CountDownLatch late = new CountDownLatch(1);
+        final CountDownLatch early = new CountDownLatch(1);
+
+        m_scheduler.schedule(300L, new LatchRunnable(late));
+        m_scheduler.schedule(50L, new LatchRunnable(early));
+
+        assertTrue(early.await(5, TimeUnit.SECONDS));
+        assertEquals(1, late.getCount());
+        assertTrue(late.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNotReadyIsRetried() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean ready = new AtomicBoolean(false);
+
+        m_scheduler.schedule(0L, new LatchRunnable(latch) {
+            @Override
+            public boolean isReady() {
+                return ready.get();
+            }
+        });
+
+        assertEquals(false, latch.await(200, TimeUnit.MILLISECONDS));
+        ready.set(true);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectedEntriesAreKept() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            m_scheduler.schedule(100L, new LatchRunnable(latch));
+        }
+
+        // the worker keeps running but every dispatch is now rejected
+        m_scheduler.getRunner().shutdown();
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (m_scheduler.getStatus() != Fiber.STOPPED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertEquals(Fiber.STOPPED, m_scheduler.getStatus());
+        assertEquals(3, latch.getCount());
+        assertEquals(0, m_scheduler.getNumTasksExecuted());
+        assertEquals(3, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testRejectedEntriesAreRetriedOnNextTick() throws Exception {
+        final AtomicBoolean rejectNext = new AtomicBoolean(true);
+        final ThreadPoolExecutor runner = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            public void execute(final Runnable command) {
+                if (rejectNext.getAndSet(false)) {
+                    throw new RejectedExecutionException("busy");
+                }
+                super.execute(command);
+            }
+        };
+        // one rotation of this wheel takes more than ten seconds
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler(runner, 10L, 1024);
+        scheduler.start();
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final long start = System.currentTimeMillis();
+            scheduler.schedule(50L, new LatchRunnable(latch));
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertTrue(System.currentTimeMillis() - start < 1000L);
+            assertEquals(1, scheduler.getNumTasksExecuted());
+        } finally {
+            scheduler.stop();
+        }
+
+        // the rejection is logged as an error
+        MockLogAppender.resetEvents();
+        MockLogAppender.resetLogLevel();
+    }
+
+    private static class LatchRunnable implements ReadyRunnable {
+        private final CountDownLatch m_latch;
+
+        public LatchRunnable(final CountDownLatch latch) {
+            m_latch = latch;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+
+public class SyslogUeiMatcherTest {
+    private static final String DISCARD_UEI = "DISCARD-MATCHING-MESSAGES";
+
+    @Test
+    public void testRequiredLiterals() {
+        assertEquals(Arrays.asList("foo0: ", "load test ", " on "), SyslogUeiMatcher.requiredLiterals(".*foo0: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*"));
+        assertEquals(Arrays.asList("Accepted password for "), SyslogUeiMatcher.requiredLiterals("^Accepted password for (\\w+)"));
+        assertEquals(Arrays.asList("a.b.c"), SyslogUeiMatcher.requiredLiterals("a\\.b\\.c\\d"));
+        // the trailing 's' is optional
+        assertEquals(Arrays.asList("error"), SyslogUeiMatcher.requiredLiterals("errors?"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("foo|bar"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("(?i)failed login"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("[abc]+\\d{2}"));
+    }
+
+    @Test
+    public void testRequiredLiteralsWithEscapeOperands() {
+        // the operands of these escapes are not literals of the expression
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("foo\\x41bar"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("foo\\u0041bar"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("foo\\0101bar"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("foo\\cAbar"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("foo\\p{Alpha}bar"));
+        assertEquals(Collections.emptyList(), SyslogUeiMatcher.requiredLiterals("xyz(?<n>abc)\\k<n>zzz"));
+        // back-references may have more than one digit
+        assertEquals(Arrays.asList("abc", "xyz"), SyslogUeiMatcher.requiredLiterals("abc(d)\\12xyz"));
+        assertEquals(Arrays.asList("foo", "bar"), SyslogUeiMatcher.requiredLiterals("foo\\tbar"));
+    }
+
+    @Test
+    public void testEscapeOperandsAreNotPrefiltered() throws Exception {
+        final UeiList ueiList = new UeiList();
+        ueiList.addUeiMatch(ueiMatch("regex", "foo\\x41bar", "uei.example.org/hex"));
+        ueiList.addUeiMatch(ueiMatch("regex", "xyz(?<n>abc)\\k<n>zzz", "uei.example.org/named"));
+        final SyslogUeiMatcher matcher = new SyslogUeiMatcher(ueiList, null);
+
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        assertTrue(matcher.applyUeiMatch(message("fooAbar"), "User", "Info", bldr, DISCARD_UEI));
+        assertEquals("uei.example.org/hex", bldr.getEvent().getUei());
+
+        bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        assertTrue(matcher.applyUeiMatch(message("xyzabcabczzz"), "User", "Info", bldr, DISCARD_UEI));
+        assertEquals("uei.example.org/named", bldr.getEvent().getUei());
+    }
+
+    @Test
+    public void testLiteralAutomaton() {
+        final SyslogUeiMatcher.LiteralAutomaton.Builder builder = new SyslogUeiMatcher.LiteralAutomaton.Builder();
+        assertEquals(0, builder.add("he"));
+        assertEquals(1, builder.add("she"));
+        assertEquals(2, builder.add("his"));
+        assertEquals(3, builder.add("hers"));
+        assertEquals(1, builder.add("she"));
+        final SyslogUeiMatcher.LiteralAutomaton automaton = builder.build();
+        assertEquals(4, automaton.size());
+
+        final BitSet found = automaton.scan("ushers");
+        assertTrue(found.get(0));
+        assertTrue(found.get(1));
+        assertFalse(found.get(2));
+        assertTrue(found.get(3));
+
+        assertTrue(automaton.scan("nothing at all").isEmpty());
+    }
+
+    @Test
+    public void testFirstMatchWins() throws Exception {
+        final UeiList ueiList = new UeiList();
+        ueiList.addUeiMatch(ueiMatch("regex", "load test (\\S+) on (tty\\d+)", "uei.example.org/regex"));
+        ueiList.addUeiMatch(ueiMatch("substr", "load test", "uei.example.org/substr"));
+
+        final SyslogUeiMatcher matcher = new SyslogUeiMatcher(ueiList, null);
+
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        assertTrue(matcher.applyUeiMatch(message("foo23: load test 23 on tty1"), "User", "Info", bldr, DISCARD_UEI));
+        Event event = bldr.getEvent();
+        assertEquals("uei.example.org/regex", event.getUei());
+        assertEquals("23", event.getParmCollection().get(0).getValue().getContent());
+        assertEquals("tty1", event.getParmCollection().get(1).getValue().getContent());
+
+        bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        assertTrue(matcher.applyUeiMatch(message("foo23: load test 23 on pts/1"), "User", "Info", bldr, DISCARD_UEI));
+        assertEquals("uei.example.org/substr", bldr.getEvent().getUei());
+
+        bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        assertFalse(matcher.applyUeiMatch(message("something else entirely"), "User", "Info", bldr, DISCARD_UEI));
+        assertEquals("uei.opennms.org/syslogd/default", bldr.getEvent().getUei());
+
+        assertEquals(1, matcher.getUeiMatchHits(0));
+        assertEquals(1, matcher.getUeiMatchHits(1));
+        assertEquals(2, matcher.getTotalUeiMatchHits());
+        assertEquals(1, matcher.getUeiMatchMisses());
+        // the regex was skipped by its prefilter for the last message
+        assertEquals(2, matcher.getRegexEvaluations());
+    }
+
+    @Test
+    public void testParameterAssignment() throws Exception {
+        final UeiMatch ueiMatch = ueiMatch("regex", "user (\\w+) logged in from (\\S+)", "uei.example.org/login");
+        ueiMatch.getMatch().setDefaultParameterMapping(false);
+        final ParameterAssignment assignment = new ParameterAssignment();
+        assignment.setMatchingGroup(2);
+        assignment.setParameterName("source");
+        ueiMatch.addParameterAssignment(assignment);
+        final UeiList ueiList = new UeiList();
+        ueiList.addUeiMatch(ueiMatch);
+
+        final EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        assertTrue(new SyslogUeiMatcher(ueiList, null).applyUeiMatch(message("user bob logged in from 10.0.0.1"), "Auth", "Notice", bldr, DISCARD_UEI));
+        final Event event = bldr.getEvent();
+        assertEquals(1, event.getParmCollection().size());
+        assertEquals("source", event.getParmCollection().get(0).getParmName());
+        assertEquals("10.0.0.1", event.getParmCollection().get(0).getValue().getContent());
+    }
+
+    @Test(expected=MessageDiscardedException.class)
+    public void testDiscard() throws Exception {
+        final UeiList ueiList = new UeiList();
+        ueiList.addUeiMatch(ueiMatch("substr", "noise", DISCARD_UEI));
+        new SyslogUeiMatcher(ueiList, null).applyUeiMatch(message("some noise"), "User", "Info", new EventBuilder("uei.opennms.org/syslogd/default", "syslogd"), DISCARD_UEI);
+    }
+
+    @Test
+    public void testHide() {
+        final HideMessage hideMessage = new HideMessage();
+        hideMessage.addHideMatch(hideMatch("substr", "password"));
+        hideMessage.addHideMatch(hideMatch("regex", "secret=\\S+"));
+
+        final SyslogUeiMatcher matcher = new SyslogUeiMatcher(null, hideMessage);
+        assertTrue(matcher.shouldHide("login with password hunter2"));
+        assertTrue(matcher.shouldHide("token secret=abc"));
+        assertFalse(matcher.shouldHide("token secret= abc"));
+        assertFalse(matcher.shouldHide("nothing to see"));
+        assertEquals(2, matcher.getHideMatchHits());
+    }
+
+    @Test
+    public void testInstanceIsRebuiltOnNewConfig() {
+        final UeiList ueiList = new UeiList();
+        final SyslogUeiMatcher matcher = SyslogUeiMatcher.getInstance(ueiList, null);
+        assertTrue(matcher == SyslogUeiMatcher.getInstance(ueiList, null));
+        assertFalse(matcher == SyslogUeiMatcher.getInstance(new UeiList(), null));
+        SyslogUeiMatcher.invalidate();
+    }
+
+    private static SyslogMessage message(final String text) {
+        return new SyslogMessage(SyslogFacility.USER.getFacilityNumber(), SyslogSeverity.INFORMATIONAL.getSeverityNumber(), new Date(), "localhost", "test", 123, text);
+    }
+
+    private static UeiMatch ueiMatch(final String type, final String expression, final String uei) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setMatch(match);
+        ueiMatch.setUei(uei);
+        return ueiMatch;
+    }
+
+    private static HideMatch hideMatch(final String type, final String expression) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final HideMatch hideMatch = new HideMatch();
+        hideMatch.setMatch(match);
+        return hideMatch;
+    }
+}
@@ -103,6 +103,7 @@ public class DeleteNodesServlet extends HttpServlet {
                 LOG.debug("Attempting to delete node data directory: {}", nodeDir.getAbsolutePath());
                 if (deleteDir(nodeDir)) {
                     LOG.info("Node SNMP data directory deleted successfully: {}", nodeDir.getAbsolutePath());
+                    ResourceTypeUtils.invalidateDirectory(nodeDir);
                 } else {
                     LOG.warn("Node SNMP data directory *not* deleted successfully: {}", nodeDir.getAbsolutePath());
                 }
@@ -116,6 +117,7 @@ public class DeleteNodesServlet extends HttpServlet {
                     LOG.debug("Attempting to delete node response time data directory: {}", intfDir.getAbsolutePath());
                     if (deleteDir(intfDir)) {
                         LOG.info("Node response time data directory deleted successfully: {}", intfDir.getAbsolutePath());
+                        ResourceTypeUtils.invalidateDirectory(intfDir);
                     } else {
                         LOG.warn("Node response time data directory *not* deleted successfully: {}", intfDir.getAbsolutePath());
                     }
@@ -41,9 +41,11 @@ import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
@@ -55,6 +57,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -116,6 +119,12 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
     /** The Node Level Resource (temporary variable). It is initialized on each collection attempt. */
     private XmlSingleInstanceCollectionResource m_nodeResource;
 
+    /** Placeholder for the sources whose XPaths can't be streamed. */
+    private static final XmlStreamingParser NOT_STREAMABLE = XmlStreamingParser.compile(new XmlSource());
+
+    /** The compiled streaming parsers by source. Entries go away with the sources of a replaced configuration. */
+    private final Map<XmlSource, XmlStreamingParser> m_streamingParsers = Collections.synchronizedMap(new WeakHashMap<XmlSource, XmlStreamingParser>());
+
     /* (non-Javadoc)
      * @see org.opennms.protocols.xml.collector.XmlCollectionHandler#setServiceName(java.lang.String)
      */
@@ -222,15 +231,21 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
             LOG.debug("fillCollectionSet: getting resources for XML group {} using XPATH {}", group.getName(), group.getResourceXpath());
             Date timestamp = getTimeStamp(doc, xpath, group);
             NodeList resourceList = (NodeList) xpath.evaluate(group.getResourceXpath(), doc, XPathConstants.NODESET);
+            // Compile the object expressions once per group instead of once per resource.
+            List<XmlObject> objects = group.getXmlObjects();
+            XPathExpression[] expressions = new XPathExpression[objects.size()];
+            for (int i = 0; i < expressions.length; i++) {
+                expressions[i] = xpath.compile(objects.get(i).getXpath());
+            }
             for (int j = 0; j < resourceList.getLength(); j++) {
                 Node resource = resourceList.item(j);
                 String resourceName = getResourceName(xpath, group, resource);
                 LOG.debug("fillCollectionSet: processing XML resource {}", resourceName);
                 XmlCollectionResource collectionResource = getCollectionResource(agent, resourceName, group.getResourceType(), timestamp);
                 AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
-                for (XmlObject object : group.getXmlObjects()) {
-                    String value = (String) xpath.evaluate(object.getXpath(), resource, XPathConstants.STRING);
-                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(object, attribGroupType);
+                for (int i = 0; i < expressions.length; i++) {
+                    String value = (String) expressions[i].evaluate(resource, XPathConstants.STRING);
+                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(objects.get(i), attribGroupType);
                     collectionResource.setAttributeValue(attribType, value);
                 }
                 processXmlResource(collectionResource, attribGroupType);
@@ -239,6 +254,120 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
         }
     }
 
+    /**
+     * Fill collection set from the results of a streaming parser.
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param results the results of each group
+     */
+    protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, List<XmlStreamingParser.GroupResult> results) {
+        m_nodeResource = null; // Be sure that the temporary resource for node level data is clean before processing a new document.
+        for (XmlStreamingParser.GroupResult result : results) {
+            XmlGroup group = result.getGroup();
+            LOG.debug("fillCollectionSet: found {} resources for XML group {}", result.getResources().size(), group.getName());
+            Date timestamp = null;
+            if (group.getTimestampXpath() != null) {
+                if (result.getTimestamp() == null) {
+                    LOG.warn("fillCollectionSet: can't find the custom timestamp using XPATH {}",  group.getTimestampXpath());
+                } else {
+                    timestamp = parseTimeStamp(group, result.getTimestamp());
+                }
+            }
+            List<XmlObject> objects = group.getXmlObjects();
+            for (XmlStreamingParser.Resource resource : result.getResources()) {
+                LOG.debug("fillCollectionSet: processing XML resource {}", resource.getName());
+                XmlCollectionResource collectionResource = getCollectionResource(agent, resource.getName(), group.getResourceType(), timestamp);
+                AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
+                for (int i = 0; i < objects.size(); i++) {
+                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(objects.get(i), attribGroupType);
+                    collectionResource.setAttributeValue(attribType, resource.getValue(i));
+                }
+                processXmlResource(collectionResource, attribGroupType);
+                collectionSet.getCollectionResources().add(collectionResource);
+            }
+        }
+    }
+
+    /**
+     * Fill collection set by streaming the document of a URL.
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param parser the streaming parser
+     * @param urlString the URL string
+     * @param request the request
+     */
+    protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, XmlStreamingParser parser, String urlString, Request request) {
+        InputStream is = null;
+        URLConnection c = null;
+        try {
+            URL url = UrlFactory.getUrl(urlString, request);
+            c = url.openConnection();
+            is = c.getInputStream();
+            fillCollectionSet(agent, collectionSet, parser, is, request);
+        } catch (XmlCollectorException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new XmlCollectorException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(is);
+            UrlFactory.disconnect(c);
+        }
+    }
+
+    /**
+     * Fill collection set by streaming a document.
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param parser the streaming parser
+     * @param is the input stream
+     * @param request the request
+     */
+    protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, XmlStreamingParser parser, InputStream is, Request request) {
+        List<XmlStreamingParser.GroupResult> results;
+        try {
+            is = preProcessHtml(request, is);
+            is = applyXsltTransformation(request, is);
+            results = parser.parse(is);
+        } catch (XmlCollectorException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new XmlCollectorException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        fillCollectionSet(agent, collectionSet, results);
+    }
+
+    /**
+     * Gets the streaming parser for a source.
+     * <p>Streaming is enabled with the request parameter <b>streaming</b>. It avoids building a DOM for the
+     * whole document, which matters for large files like 3GPP PM files, but it only supports simple XPaths
+     * (see {@link XmlStreamingParser}). Sources using other XPaths are processed with the DOM. The parser is
+     * compiled on the first collection of a source and reused afterwards.</p>
+     *
+     * @param request the request
+     * @param source the XML source
+     * @return the streaming parser, or null if the source must be processed with the DOM
+     */
+    protected XmlStreamingParser getStreamingParser(Request request, XmlSource source) {
+        if (request == null || !Boolean.parseBoolean(request.getParameter("streaming"))) {
+            return null;
+        }
+        XmlStreamingParser parser = m_streamingParsers.get(source);
+        if (parser == null) {
+            parser = XmlStreamingParser.compile(source);
+            if (parser == null) {
+                LOG.warn("getStreamingParser: the XPaths of source {} can't be streamed, using DOM instead.", source.getUrl());
+                parser = NOT_STREAMABLE;
+            }
+            m_streamingParsers.put(source, parser);
+        }
+        return parser == NOT_STREAMABLE ? null : parser;
+    }
+
     /**
      * Gets the resource name.
      *
@@ -337,8 +466,20 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
             LOG.warn("getTimeStamp: can't find the custom timestamp using XPATH {}",  group.getTimestampXpath());
             return null;
         }
-        Date date = null;
         String value = tsNode.getNodeValue() == null ? tsNode.getTextContent() : tsNode.getNodeValue();
+        return parseTimeStamp(group, value);
+    }
+
+    /**
+     * Parses the time stamp.
+     *
+     * @param group the group
+     * @param value the time stamp value
+     * @return the time stamp, or null if it can't be parsed
+     */
+    protected Date parseTimeStamp(XmlGroup group, String value) {
+        String pattern = group.getTimestampFormat() == null ? "yyyy-MM-dd HH:mm:ss" : group.getTimestampFormat();
+        Date date = null;
         LOG.debug("getTimeStamp: time stamp value is {}", value);
         try {
             DateTimeFormatter dtf = DateTimeFormat.forPattern(pattern);
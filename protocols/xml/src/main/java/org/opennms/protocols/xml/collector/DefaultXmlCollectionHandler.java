@@ -58,6 +58,12 @@ public class DefaultXmlCollectionHandler extends AbstractXmlCollectionHandler {
      */
     @Override
     protected void fillCollectionSet(String urlString, Request request, CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source) throws Exception {
+        final XmlStreamingParser parser = getStreamingParser(request, source);
+        if (parser != null) {
+            fillCollectionSet(agent, collectionSet, parser, urlString, request);
+            LOG.debug("collect: streamed document for source url '{}' collection", source.getUrl());
+            return;
+        }
         final Document doc = getXmlDocument(urlString, request);
         LOG.debug("collect: parsed document for source url '{}' collection", source.getUrl());
         fillCollectionSet(agent, collectionSet, source, doc);
@@ -87,12 +87,17 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                 Request request = parseRequest(source.getRequest(), agent, collection.getXmlRrd().getStep());
                 URL url = UrlFactory.getUrl(urlStr, request);
                 String lastFile = Sftp3gppUtils.getLastFilename(getServiceName(), resourceDir, url.getPath());
+                XmlStreamingParser parser = getStreamingParser(request, source);
                 connection = (Sftp3gppUrlConnection) url.openConnection();
                 if (lastFile == null) {
                     lastFile = connection.get3gppFileName();
                     LOG.debug("collect(single): retrieving file from {}{}{} from {}", url.getPath(), File.separatorChar, lastFile, agent.getHostAddress());
-                    Document doc = getXmlDocument(urlStr, request);
-                    fillCollectionSet(agent, collectionSet, source, doc);
+                    if (parser == null) {
+                        Document doc = getXmlDocument(urlStr, request);
+                        fillCollectionSet(agent, collectionSet, source, doc);
+                    } else {
+                        fillCollectionSet(agent, collectionSet, parser, urlStr, request);
+                    }
                     Sftp3gppUtils.setLastFilename(getServiceName(), resourceDir, url.getPath(), lastFile);
                     Sftp3gppUtils.deleteFile(connection, lastFile);
                 } else {
@@ -105,9 +110,13 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                             LOG.debug("collect(multiple): retrieving file {} from {}", fileName, agent.getHostAddress());
                             InputStream is = connection.getFile(fileName);
                             try {
-                                Document doc = getXmlDocument(is, request);
-                                IOUtils.closeQuietly(is);
-                                fillCollectionSet(agent, collectionSet, source, doc);
+                                if (parser == null) {
+                                    Document doc = getXmlDocument(is, request);
+                                    IOUtils.closeQuietly(is);
+                                    fillCollectionSet(agent, collectionSet, source, doc);
+                                } else {
+                                    fillCollectionSet(agent, collectionSet, parser, is, request);
+                                }
                             } finally {
                                 IOUtils.closeQuietly(is);
                             }
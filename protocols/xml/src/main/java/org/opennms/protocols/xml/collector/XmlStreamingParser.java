@@ -0,0 +1,726 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2010-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.opennms.protocols.xml.config.XmlGroup;
+import org.opennms.protocols.xml.config.XmlObject;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class XML Streaming Parser.
+ * <p>Extracts the values of the XML groups of a source in a single StAX pass, without building a DOM.</p>
+ * <p>Only a subset of XPath can be evaluated this way: location paths made of child steps, where each
+ * step is an element name or <code>*</code> with optional attribute predicates like <code>[@p=1]</code>
+ * or <code>[@id='value']</code>, optionally ending in <code>@attribute</code> or <code>text()</code>.
+ * Resource and timestamp paths must be absolute, key and object paths are relative to the resource.
+ * {@link #compile(XmlSource)} returns null for sources that use anything else, so they can be processed
+ * with the DOM.</p>
+ * <p>A compiled parser keeps no state between documents, so it can be compiled once per source and
+ * shared by the collection threads.</p>
+ */
+public final class XmlStreamingParser {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(XmlStreamingParser.class);
+
+    /** The StAX factory. */
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * The values found for one resource of a group.
+     */
+    public static final class Resource {
+        private final String m_name;
+        private final String[] m_values;
+
+        private Resource(String name, String[] values) {
+            m_name = name;
+            m_values = values;
+        }
+
+        /**
+         * Gets the resource name.
+         *
+         * @return the resource name
+         */
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * Gets the value of an object.
+         *
+         * @param index the index of the object within the group
+         * @return the value, or an empty string if the object was not found
+         */
+        public String getValue(int index) {
+            return m_values[index] == null ? "" : m_values[index];
+        }
+    }
+
+    /**
+     * The resources found for a group.
+     */
+    public static final class GroupResult {
+        private final XmlGroup m_group;
+        private final List<Resource> m_resources = new ArrayList<Resource>();
+        private String m_timestamp;
+
+        private GroupResult(XmlGroup group) {
+            m_group = group;
+        }
+
+        /**
+         * Gets the group.
+         *
+         * @return the group
+         */
+        public XmlGroup getGroup() {
+            return m_group;
+        }
+
+        /**
+         * Gets the resources in document order.
+         *
+         * @return the resources
+         */
+        public List<Resource> getResources() {
+            return m_resources;
+        }
+
+        /**
+         * Gets the timestamp value.
+         *
+         * @return the value of the timestamp XPath, or null if it was not found
+         */
+        public String getTimestamp() {
+            return m_timestamp;
+        }
+    }
+
+    /** The compiled groups. */
+    private final List<GroupMatcher> m_groups;
+
+    /**
+     * Instantiates a new XML streaming parser.
+     *
+     * @param groups the compiled groups
+     */
+    private XmlStreamingParser(List<GroupMatcher> groups) {
+        m_groups = groups;
+    }
+
+    /**
+     * Compiles the XPaths of all the groups of a source.
+     *
+     * @param source the XML source
+     * @return the parser, or null if any of the XPaths can't be evaluated while streaming
+     */
+    public static XmlStreamingParser compile(XmlSource source) {
+        final List<GroupMatcher> groups = new ArrayList<GroupMatcher>();
+        for (XmlGroup group : source.getXmlGroups()) {
+            final GroupMatcher matcher = GroupMatcher.compile(group);
+            if (matcher == null) {
+                LOG.debug("compile: the XPaths of group {} can't be streamed", group.getName());
+                return null;
+            }
+            groups.add(matcher);
+        }
+        return new XmlStreamingParser(groups);
+    }
+
+    /**
+     * Parses a document.
+     *
+     * @param is the input stream
+     * @return the results of each group, in the order of the source
+     * @throws XMLStreamException if the document can't be parsed
+     */
+    public List<GroupResult> parse(InputStream is) throws XMLStreamException {
+        final List<GroupMatcher> groups = new ArrayList<GroupMatcher>(m_groups.size());
+        final List<GroupResult> results = new ArrayList<GroupResult>(m_groups.size());
+        for (GroupMatcher compiled : m_groups) {
+            final GroupMatcher group = new GroupMatcher(compiled);
+            groups.add(group);
+            results.add(group.reset());
+        }
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(is);
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    for (GroupMatcher group : groups) {
+                        group.startElement(reader, depth);
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    for (GroupMatcher group : groups) {
+                        group.characters(reader, depth);
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    for (GroupMatcher group : groups) {
+                        group.endElement(depth);
+                    }
+                    depth--;
+                    break;
+                default:
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        for (GroupMatcher group : groups) {
+            group.finish();
+        }
+        return results;
+    }
+
+    /**
+     * Matches the resources of a group and captures their keys and objects.
+     */
+    private static final class GroupMatcher {
+        private final XmlGroup m_group;
+        private final Path m_resourcePath;
+        private final Path m_timestampPath;
+        private final Path[] m_keyPaths;
+        private final Path[] m_objectPaths;
+
+        private GroupResult m_result;
+        private Capture m_timestamp;
+        private Capture[] m_keys;
+        private Capture[] m_objects;
+        private int m_resourceDepth;
+        private int m_matched;
+
+        private GroupMatcher(XmlGroup group, Path resourcePath, Path timestampPath, Path[] keyPaths, Path[] objectPaths) {
+            m_group = group;
+            m_resourcePath = resourcePath;
+            m_timestampPath = timestampPath;
+            m_keyPaths = keyPaths;
+            m_objectPaths = objectPaths;
+        }
+
+        /**
+         * Creates a matcher for one document that shares the compiled paths.
+         */
+        private GroupMatcher(GroupMatcher compiled) {
+            this(compiled.m_group, compiled.m_resourcePath, compiled.m_timestampPath, compiled.m_keyPaths, compiled.m_objectPaths);
+        }
+
+        private static GroupMatcher compile(XmlGroup group) {
+            final Path resourcePath = Path.compile(group.getResourceXpath(), true);
+            if (resourcePath == null || resourcePath.m_attribute != null || resourcePath.m_text || resourcePath.m_steps.length == 0) {
+                return null;
+            }
+            Path timestampPath = null;
+            if (group.getTimestampXpath() != null) {
+                timestampPath = Path.compile(group.getTimestampXpath(), true);
+                if (timestampPath == null) {
+                    return null;
+                }
+            }
+            final List<String> keys = new ArrayList<String>();
+            if (group.hasMultipleResourceKey()) {
+                keys.addAll(group.getXmlResourceKey().getKeyXpathList());
+            } else if (group.getKeyXpath() != null) {
+                keys.add(group.getKeyXpath());
+            }
+            final Path[] keyPaths = new Path[keys.size()];
+            for (int i = 0; i < keyPaths.length; i++) {
+                keyPaths[i] = Path.compile(keys.get(i), false);
+                if (keyPaths[i] == null) {
+                    return null;
+                }
+            }
+            final List<XmlObject> objects = group.getXmlObjects();
+            final Path[] objectPaths = new Path[objects.size()];
+            for (int i = 0; i < objectPaths.length; i++) {
+                objectPaths[i] = Path.compile(objects.get(i).getXpath(), false);
+                if (objectPaths[i] == null) {
+                    return null;
+                }
+            }
+            return new GroupMatcher(group, resourcePath, timestampPath, keyPaths, objectPaths);
+        }
+
+        private GroupResult reset() {
+            m_result = new GroupResult(m_group);
+            m_timestamp = m_timestampPath == null ? null : new Capture(m_timestampPath);
+            m_keys = null;
+            m_objects = null;
+            m_resourceDepth = m_resourcePath.m_steps.length;
+            m_matched = 0;
+            return m_result;
+        }
+
+        private void finish() {
+            if (m_timestamp != null && m_timestamp.m_done) {
+                m_result.m_timestamp = m_timestamp.m_value;
+            }
+        }
+
+        private void startElement(XMLStreamReader reader, int depth) {
+            if (m_timestamp != null) {
+                m_timestamp.startElement(reader, depth);
+            }
+            if (m_objects != null) {
+                for (Capture key : m_keys) {
+                    key.startElement(reader, depth - m_resourceDepth);
+                }
+                for (Capture object : m_objects) {
+                    object.startElement(reader, depth - m_resourceDepth);
+                }
+            } else if (depth == m_matched + 1 && m_resourcePath.matches(reader, depth)) {
+                m_matched = depth;
+                if (m_matched == m_resourceDepth) {
+                    m_keys = createCaptures(m_keyPaths, reader);
+                    m_objects = createCaptures(m_objectPaths, reader);
+                }
+            }
+        }
+
+        private void characters(XMLStreamReader reader, int depth) {
+            if (m_timestamp != null) {
+                m_timestamp.characters(reader, depth);
+            }
+            if (m_objects != null) {
+                for (Capture key : m_keys) {
+                    key.characters(reader, depth - m_resourceDepth);
+                }
+                for (Capture object : m_objects) {
+                    object.characters(reader, depth - m_resourceDepth);
+                }
+            }
+        }
+
+        private void endElement(int depth) {
+            if (m_timestamp != null) {
+                m_timestamp.endElement(depth);
+            }
+            if (m_objects != null) {
+                for (Capture key : m_keys) {
+                    key.endElement(depth - m_resourceDepth);
+                }
+                for (Capture object : m_objects) {
+                    object.endElement(depth - m_resourceDepth);
+                }
+                if (depth == m_resourceDepth) {
+                    m_result.m_resources.add(new Resource(getResourceName(), getValues(m_objects)));
+                    m_keys = null;
+                    m_objects = null;
+                }
+            }
+            if (depth == m_matched) {
+                m_matched--;
+            }
+        }
+
+        private String getResourceName() {
+            // If key-xpath doesn't exist, a node resource will be assumed.
+            if (m_keys.length == 0) {
+                return "node";
+            }
+            final StringBuilder name = new StringBuilder();
+            for (Capture key : m_keys) {
+                if (!key.m_done) {
+                    throw new XmlCollectorException("Can't find the resource key " + key.m_path.m_xpath + " for group " + m_group.getName());
+                }
+                if (name.length() > 0) {
+                    name.append('_');
+                }
+                name.append(key.m_value);
+            }
+            return name.toString();
+        }
+
+        private static String[] getValues(Capture[] captures) {
+            final String[] values = new String[captures.length];
+            for (int i = 0; i < captures.length; i++) {
+                values[i] = captures[i].m_value;
+            }
+            return values;
+        }
+
+        private static Capture[] createCaptures(Path[] paths, XMLStreamReader reader) {
+            final Capture[] captures = new Capture[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                captures[i] = new Capture(paths[i]);
+                if (paths[i].m_steps.length == 0) {
+                    captures[i].start(reader, 0);
+                }
+            }
+            return captures;
+        }
+    }
+
+    /**
+     * Captures the string value of the first node that matches a path.
+     * Depths are relative to the context node, which has the depth 0.
+     */
+    private static final class Capture {
+        private final Path m_path;
+        private int m_matched = 0;
+        private int m_captureDepth = -1;
+        private StringBuilder m_text;
+        private String m_value;
+        private boolean m_done;
+
+        private Capture(Path path) {
+            m_path = path;
+        }
+
+        private void startElement(XMLStreamReader reader, int depth) {
+            if (m_done || m_captureDepth >= 0) {
+                return;
+            }
+            if (depth == m_matched + 1 && depth <= m_path.m_steps.length && m_path.matches(reader, depth)) {
+                m_matched = depth;
+                if (m_matched == m_path.m_steps.length) {
+                    start(reader, depth);
+                }
+            }
+        }
+
+        private void start(XMLStreamReader reader, int depth) {
+            if (m_path.m_attribute != null) {
+                final String value = getAttributeValue(reader, m_path.m_attribute);
+                if (value != null) {
+                    m_value = value;
+                    m_done = true;
+                }
+            } else {
+                m_captureDepth = depth;
+                m_text = new StringBuilder();
+            }
+        }
+
+        private void characters(XMLStreamReader reader, int depth) {
+            if (m_captureDepth < 0) {
+                return;
+            }
+            if (!m_path.m_text) {
+                // the string value of an element is all of its text
+                m_text.append(reader.getText());
+            } else if (depth == m_captureDepth) {
+                // text() selects the first text node of the element
+                m_value = reader.getText();
+                m_done = true;
+                m_captureDepth = -1;
+            }
+        }
+
+        private void endElement(int depth) {
+            if (depth == m_captureDepth) {
+                if (!m_path.m_text) {
+                    m_value = m_text.toString();
+                    m_done = true;
+                }
+                m_captureDepth = -1;
+                m_text = null;
+            }
+            if (depth == m_matched && depth > 0) {
+                m_matched--;
+            }
+        }
+    }
+
+    /**
+     * A compiled location path.
+     */
+    private static final class Path {
+        private final String m_xpath;
+        private final Step[] m_steps;
+        private final String m_attribute;
+        private final boolean m_text;
+
+        private Path(String xpath, Step[] steps, String attribute, boolean text) {
+            m_xpath = xpath;
+            m_steps = steps;
+            m_attribute = attribute;
+            m_text = text;
+        }
+
+        private boolean matches(XMLStreamReader reader, int depth) {
+            return m_steps[depth - 1].matches(reader);
+        }
+
+        /**
+         * Compiles an XPath.
+         *
+         * @param xpath the XPath
+         * @param absolute true if the path is evaluated against the document
+         * @return the path, or null if the XPath is not supported
+         */
+        private static Path compile(String xpath, boolean absolute) {
+            if (xpath == null) {
+                return null;
+            }
+            String expression = xpath.trim();
+            if (expression.startsWith("/")) {
+                if (!absolute || expression.startsWith("//")) {
+                    return null;
+                }
+                expression = expression.substring(1);
+            }
+            final List<String> tokens = split(expression);
+            if (tokens == null) {
+                return null;
+            }
+            final List<Step> steps = new ArrayList<Step>();
+            String attribute = null;
+            boolean text = false;
+            for (int i = 0; i < tokens.size(); i++) {
+                final String token = tokens.get(i).trim();
+                final boolean last = i == tokens.size() - 1;
+                if (token.equals(".") && tokens.size() == 1 && !absolute) {
+                    break;
+                } else if (last && token.startsWith("@") && isName(token.substring(1))) {
+                    attribute = token.substring(1);
+                } else if (last && token.equals("text()")) {
+                    text = true;
+                } else {
+                    final Step step = Step.compile(token);
+                    if (step == null) {
+                        return null;
+                    }
+                    steps.add(step);
+                }
+            }
+            if (absolute && steps.isEmpty()) {
+                return null;
+            }
+            return new Path(xpath, steps.toArray(new Step[steps.size()]), attribute, text);
+        }
+
+        /**
+         * Splits a path on the slashes that are outside of predicates.
+         */
+        private static List<String> split(String expression) {
+            final List<String> tokens = new ArrayList<String>();
+            int brackets = 0;
+            char quote = 0;
+            int begin = 0;
+            for (int i = 0; i < expression.length(); i++) {
+                final char c = expression.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '[') {
+                    brackets++;
+                } else if (c == ']') {
+                    brackets--;
+                } else if (c == '/' && brackets == 0) {
+                    if (i == begin) {
+                        return null;
+                    }
+                    tokens.add(expression.substring(begin, i));
+                    begin = i + 1;
+                }
+            }
+            if (quote != 0 || brackets != 0 || begin == expression.length()) {
+                return null;
+            }
+            tokens.add(expression.substring(begin));
+            return tokens;
+        }
+    }
+
+    /**
+     * A compiled child step.
+     */
+    private static final class Step {
+        private final String m_name;
+        private final String[] m_attributes;
+        private final String[] m_values;
+        private final boolean[] m_numeric;
+
+        private Step(String name, String[] attributes, String[] values, boolean[] numeric) {
+            m_name = name;
+            m_attributes = attributes;
+            m_values = values;
+            m_numeric = numeric;
+        }
+
+        private boolean matches(XMLStreamReader reader) {
+            if (!m_name.equals("*") && !m_name.equals(getName(reader.getPrefix(), reader.getLocalName()))) {
+                return false;
+            }
+            for (int i = 0; i < m_attributes.length; i++) {
+                final String value = getAttributeValue(reader, m_attributes[i]);
+                if (value == null) {
+                    return false;
+                }
+                if (m_numeric[i]) {
+                    try {
+                        if (Double.parseDouble(value.trim()) != Double.parseDouble(m_values[i])) {
+                            return false;
+                        }
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                } else if (!value.equals(m_values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Compiles a step like <code>name[@attr='value'][@other=1]</code>.
+         */
+        private static Step compile(String token) {
+            final int bracket = token.indexOf('[');
+            final String name = (bracket < 0 ? token : token.substring(0, bracket)).trim();
+            if (!name.equals("*") && !isName(name)) {
+                return null;
+            }
+            final List<String> attributes = new ArrayList<String>();
+            final List<String> values = new ArrayList<String>();
+            final List<Boolean> numeric = new ArrayList<Boolean>();
+            int position = bracket;
+            while (position >= 0 && position < token.length()) {
+                if (token.charAt(position) != '[') {
+                    return null;
+                }
+                final int end = findClosingBracket(token, position);
+                if (end < 0) {
+                    return null;
+                }
+                final String predicate = token.substring(position + 1, end).trim();
+                final int equals = predicate.indexOf('=');
+                if (!predicate.startsWith("@") || equals < 0) {
+                    return null;
+                }
+                final String attribute = predicate.substring(1, equals).trim();
+                final String literal = predicate.substring(equals + 1).trim();
+                if (!isName(attribute) || literal.isEmpty() || predicate.charAt(equals - 1) == '!') {
+                    return null;
+                }
+                final char first = literal.charAt(0);
+                if ((first == '\'' || first == '"') && literal.length() > 1 && literal.charAt(literal.length() - 1) == first) {
+                    values.add(literal.substring(1, literal.length() - 1));
+                    numeric.add(Boolean.FALSE);
+                } else {
+                    try {
+                        Double.parseDouble(literal);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    values.add(literal);
+                    numeric.add(Boolean.TRUE);
+                }
+                attributes.add(attribute);
+                position = end + 1;
+                while (position < token.length() && Character.isWhitespace(token.charAt(position))) {
+                    position++;
+                }
+            }
+            final boolean[] numericArray = new boolean[numeric.size()];
+            for (int i = 0; i < numericArray.length; i++) {
+                numericArray[i] = numeric.get(i);
+            }
+            return new Step(name, attributes.toArray(new String[attributes.size()]), values.toArray(new String[values.size()]), numericArray);
+        }
+
+        private static int findClosingBracket(String token, int open) {
+            char quote = 0;
+            for (int i = open + 1; i < token.length(); i++) {
+                final char c = token.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '[') {
+                    return -1;
+                } else if (c == ']') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static String getAttributeValue(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static String getName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    /**
+     * Checks if a string is a plain, optionally prefixed, XML name.
+     */
+    private static boolean isName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':')) {
+                return false;
+            }
+        }
+        return !Character.isDigit(name.charAt(0)) && name.charAt(0) != '-' && name.charAt(0) != '.' && name.indexOf("::") < 0;
+    }
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2010-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.protocols.xml.config.XmlGroup;
+import org.opennms.protocols.xml.config.XmlObject;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The Test Class for XmlStreamingParser.
+ */
+public class XmlStreamingParserTest {
+
+    /** The 3GPP sample file. */
+    private static final File SAMPLE_FILE = new File("src/test/resources/A20111025.0030-0500-0045-0500_MME00001.xml");
+
+    /**
+     * Test that the streaming parser finds the same values as the DOM on a 3GPP file.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSameValuesAsDom() throws Exception {
+        XmlSource source = new XmlSource();
+        for (String measInfo : new String[] { "platform-system|resource", "ga|msg", "gb|bssgp", "dns|dns" }) {
+            XmlGroup group = createGroup(measInfo, "/measCollecFile/measData/measInfo[@measInfoId='" + measInfo + "']/measValue", "@measObjLdn");
+            group.setTimestampXpath("/measCollecFile/fileFooter/measCollec/@endTime");
+            for (int p = 1; p <= 5; p++) {
+                addObject(group, "r" + p, "r[@p=" + p + "]");
+            }
+            addObject(group, "suspect", "suspect");
+            source.addXmlGroup(group);
+        }
+        XmlStreamingParser parser = XmlStreamingParser.compile(source);
+        Assert.assertNotNull(parser);
+
+        List<XmlStreamingParser.GroupResult> results;
+        InputStream is = new FileInputStream(SAMPLE_FILE);
+        try {
+            results = parser.parse(is);
+        } finally {
+            is.close();
+        }
+
+        // The XML collector evaluates XPaths on a non namespace aware DOM when the document has a default namespace.
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(SAMPLE_FILE);
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        Assert.assertEquals(source.getXmlGroups().size(), results.size());
+        int resources = 0;
+        for (XmlStreamingParser.GroupResult result : results) {
+            XmlGroup group = result.getGroup();
+            Assert.assertEquals(xpath.evaluate(group.getTimestampXpath(), doc), result.getTimestamp());
+            NodeList nodes = (NodeList) xpath.evaluate(group.getResourceXpath(), doc, XPathConstants.NODESET);
+            Assert.assertEquals(nodes.getLength(), result.getResources().size());
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Node node = nodes.item(i);
+                XmlStreamingParser.Resource resource = result.getResources().get(i);
+                Assert.assertEquals(xpath.evaluate(group.getKeyXpath(), node), resource.getName());
+                for (int j = 0; j < group.getXmlObjects().size(); j++) {
+                    Assert.assertEquals(xpath.evaluate(group.getXmlObjects().get(j).getXpath(), node), resource.getValue(j));
+                }
+                resources++;
+            }
+        }
+        Assert.assertTrue(resources > 0);
+    }
+
+    /**
+     * Test the supported location paths on a small document.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testLocationPaths() throws Exception {
+        String xml = "<zones><zone name='global' id='0'><parameter key='mem'>10<unit>MB</unit></parameter><notes>a<b>c</b></notes></zone>"
+                + "<other><zone name='skipped'/></other><zone name='zone1'><parameter key='mem'>20</parameter></zone></zones>";
+        XmlSource source = new XmlSource();
+        XmlGroup group = createGroup("zones", "/zones/zone", "@name");
+        addObject(group, "mem", "parameter[@key='mem']/text()");
+        addObject(group, "unit", "parameter[@key=\"mem\"]/unit");
+        addObject(group, "notes", "notes");
+        addObject(group, "id", "@id");
+        source.addXmlGroup(group);
+        XmlStreamingParser parser = XmlStreamingParser.compile(source);
+        Assert.assertNotNull(parser);
+
+        List<XmlStreamingParser.Resource> resources = parser.parse(new ByteArrayInputStream(xml.getBytes("UTF-8"))).get(0).getResources();
+        Assert.assertEquals(2, resources.size());
+        Assert.assertEquals("global", resources.get(0).getName());
+        Assert.assertEquals("10", resources.get(0).getValue(0));
+        Assert.assertEquals("MB", resources.get(0).getValue(1));
+        Assert.assertEquals("ac", resources.get(0).getValue(2));
+        Assert.assertEquals("0", resources.get(0).getValue(3));
+        Assert.assertEquals("zone1", resources.get(1).getName());
+        Assert.assertEquals("20", resources.get(1).getValue(0));
+        Assert.assertEquals("", resources.get(1).getValue(1));
+        Assert.assertEquals("", resources.get(1).getValue(3));
+    }
+
+    /**
+     * Test that a compiled parser can be reused, also by several threads at once.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReuse() throws Exception {
+        final XmlStreamingParser parser = compile("/zones/zone", "@name", "value");
+        Assert.assertNotNull(parser);
+
+        List<XmlStreamingParser.Resource> first = parser.parse(new ByteArrayInputStream("<zones><zone name='a'><value>1</value></zone></zones>".getBytes("UTF-8"))).get(0).getResources();
+        List<XmlStreamingParser.Resource> second = parser.parse(new ByteArrayInputStream("<zones><zone name='b'><value>2</value></zone></zones>".getBytes("UTF-8"))).get(0).getResources();
+        Assert.assertEquals(1, first.size());
+        Assert.assertEquals("a", first.get(0).getName());
+        Assert.assertEquals(1, second.size());
+        Assert.assertEquals("b", second.get(0).getName());
+
+        final StringBuilder xml = new StringBuilder("<zones>");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<zone name='z").append(i).append("'><value>").append(i).append("</value></zone>");
+        }
+        final byte[] document = xml.append("</zones>").toString().getBytes("UTF-8");
+        final AtomicInteger failures = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < 20; n++) {
+                            final List<XmlStreamingParser.Resource> resources = parser.parse(new ByteArrayInputStream(document)).get(0).getResources();
+                            if (resources.size() != 1000 || !"999".equals(resources.get(999).getValue(0))) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, failures.get());
+    }
+
+    /**
+     * Test that unsupported XPaths are left to the DOM.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testUnsupportedXpaths() throws Exception {
+        Assert.assertNull(compile("//zone", "@name", "value"));
+        Assert.assertNull(compile("/zones/zone[1]", "@name", "value"));
+        Assert.assertNull(compile("/zones/zone", "../@name", "value"));
+        Assert.assertNull(compile("/zones/zone", "@name", "count(value)"));
+        Assert.assertNull(compile("/zones/zone", "@name", "value[@p>1]"));
+        Assert.assertNull(compile("/zones/zone", "@name", "/zones/value"));
+        Assert.assertNotNull(compile("/zones/*[@type='a']", "@name", "value[@p = 1]/@unit"));
+    }
+
+    private static XmlStreamingParser compile(String resourceXpath, String keyXpath, String objectXpath) {
+        XmlSource source = new XmlSource();
+        XmlGroup group = createGroup("test", resourceXpath, keyXpath);
+        addObject(group, "value", objectXpath);
+        source.addXmlGroup(group);
+        return XmlStreamingParser.compile(source);
+    }
+
+    private static XmlGroup createGroup(String name, String resourceXpath, String keyXpath) {
+        XmlGroup group = new XmlGroup();
+        group.setName(name);
+        group.setResourceType("node");
+        group.setResourceXpath(resourceXpath);
+        group.setKeyXpath(keyXpath);
+        return group;
+    }
+
+    private static void addObject(XmlGroup group, String name, String xpath) {
+        XmlObject object = new XmlObject(name, "gauge");
+        object.setXpath(xpath);
+        group.addXmlObject(object);
+    }
+}